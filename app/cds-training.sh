@@ -0,0 +1,21 @@
+#!/bin/sh
+#
+# Writes atsea.jsa, the class data sharing archive for the fast-start jar in the
+# current directory: target/fast-start after mvn -Pfast-start package, or /app in
+# the image. An archive only works on the JVM that wrote it.
+#
+# The application is started once on an in-memory H2 database and stops when it
+# is ready; the classes it loaded, less H2's, are then archived. H2 1.4 predates
+# JDBC 4.1, and the JVM crashes calling the methods its archived classes lack.
+
+set -e
+
+JAVA=${JAVA:-java}
+JAR=$(ls *-fast-start.jar)
+
+"$JAVA" -XX:DumpLoadedClassList=atsea.classlist -Dspring.aot.enabled=true -jar "$JAR" \
+	--spring.profiles.active=local,fast-start --datasource.atsea.url=jdbc:h2:mem:training \
+	--server.port=0 --atsea.startup.exitOnReady=true
+grep -v '^org/h2/' atsea.classlist > atsea.classlist.app
+"$JAVA" -Xshare:dump -XX:SharedClassListFile=atsea.classlist.app -XX:SharedArchiveFile=atsea.jsa -cp "$JAR"
+rm atsea.classlist atsea.classlist.app
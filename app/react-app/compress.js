@@ -0,0 +1,27 @@
+// Writes brotli (.br) and gzip (.gz) copies of the text files in build/ beside them,
+// for the application server to send to browsers that accept them. Runs after build.
+const fs = require('fs');
+const path = require('path');
+const zlib = require('zlib');
+
+const COMPRESSIBLE = /\.(html|js|css|json|svg|txt|map|ico)$/;
+
+function compress(dir) {
+  fs.readdirSync(dir).forEach(name => {
+    const file = path.join(dir, name);
+    if (fs.statSync(file).isDirectory()) {
+      compress(file);
+    } else if (COMPRESSIBLE.test(name)) {
+      const content = fs.readFileSync(file);
+      fs.writeFileSync(file + '.br', zlib.brotliCompressSync(content, {
+        params: {
+          [zlib.constants.BROTLI_PARAM_QUALITY]: zlib.constants.BROTLI_MAX_QUALITY,
+          [zlib.constants.BROTLI_PARAM_SIZE_HINT]: content.length
+        }
+      }));
+      fs.writeFileSync(file + '.gz', zlib.gzipSync(content, { level: zlib.constants.Z_BEST_COMPRESSION }));
+    }
+  });
+}
+
+compress(path.join(__dirname, 'build'));
@@ -3,33 +3,78 @@ package com.docker.atsea;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.autoconfigure.domain.EntityScan;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
 import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.ConfigurableApplicationContext;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Import;
-import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.context.annotation.ImportRuntimeHints;
+import org.springframework.core.Ordered;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
+import com.docker.atsea.configuration.AtSeaRuntimeHints;
 import com.docker.atsea.configuration.JpaConfiguration;
 import com.docker.atsea.controller.LoginController;
 import com.docker.atsea.security.JwtFilter;
+import com.docker.atsea.security.PathCaseFilter;
+import com.docker.atsea.security.RateLimitFilter;
 
 
 @Import(JpaConfiguration.class)
 @SpringBootApplication(scanBasePackages={"com.docker.atsea"})
 @EntityScan("com.docker.atsea.model")
-@EnableJpaRepositories("com.docker.atsea.repository")
+@EnableScheduling
+@ImportRuntimeHints(AtSeaRuntimeHints.class)
 public class AtSeaApp {
 
+	// Startup steps kept for StartupReport; a startup records a few thousand.
+	private static final int STARTUP_STEPS = 10000;
+
 	@Bean
     public FilterRegistrationBean<JwtFilter> jwtFilter() {
         final FilterRegistrationBean<JwtFilter> registrationBean = new FilterRegistrationBean<>();
         registrationBean.setFilter(new JwtFilter());
-        registrationBean.addUrlPatterns("/purchase/*");
+        registrationBean.addUrlPatterns("/purchase/*", "/api/product/import", "/api/customer/batch", "/api/order/batch",
+                "/api/stock/*", "/utility/orders/*", "/utility/data/*", "/utility/report/*",
+                "/utility/partitions/*", "/utility/orderview/*",
+                "/utility/recommendations/*", "/utility/payment/fake/*");
+
+        return registrationBean;
+    }
+
+	@Bean
+    public FilterRegistrationBean<PathCaseFilter> pathCaseFilterRegistration(PathCaseFilter pathCaseFilter) {
+        final FilterRegistrationBean<PathCaseFilter> registrationBean = new FilterRegistrationBean<>();
+        registrationBean.setFilter(pathCaseFilter);
+        registrationBean.addUrlPatterns("/*");
+        // First of all, so every other filter is mapped against the canonical path.
+        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE);
+
+        return registrationBean;
+    }
+
+	@Bean
+    public FilterRegistrationBean<RateLimitFilter> rateLimitFilterRegistration(RateLimitFilter rateLimitFilter) {
+        final FilterRegistrationBean<RateLimitFilter> registrationBean = new FilterRegistrationBean<>();
+        registrationBean.setFilter(rateLimitFilter);
+        registrationBean.addUrlPatterns("/login/*", "/api/customer/");
+        // Ahead of Spring Security, so shed requests never reach a JDBC authentication lookup.
+        registrationBean.setOrder(Ordered.HIGHEST_PRECEDENCE + 1);
 
         return registrationBean;
     }
 	
+	/*
+	 * With --atsea.startup.exitOnReady=true the application stops once it is
+	 * ready, as the class data sharing training run of the fast-start build does.
+	 */
 	public static void main(String[] args) {
-		SpringApplication.run(AtSeaApp.class, args);
+		SpringApplication application = new SpringApplication(AtSeaApp.class);
+		application.setApplicationStartup(new BufferingApplicationStartup(STARTUP_STEPS));
+		ConfigurableApplicationContext context = application.run(args);
+		if (context.getEnvironment().getProperty("atsea.startup.exitOnReady", Boolean.class, false)) {
+			System.exit(SpringApplication.exit(context));
+		}
 	}
 }
@@ -0,0 +1,287 @@
+package com.docker.atsea.assets;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.HttpRequestHandler;
+
+/*
+ * Serves the storefront build from an index made at startup instead of
+ * resolving each request against the disk. Every file gets an ETag from a hash
+ * of its content. Files named with a content hash, as the React build names
+ * its scripts and styles, are cached for a year as immutable; anything else
+ * must be revalidated. Text files up to maxInMemoryBytes are held in memory
+ * with their compressed variants: brotli and gzip copies the storefront build
+ * wrote beside them (name.br, name.gz), or gzip made here. Larger files, such
+ * as the product images, are left on disk and handed to Tomcat to send with
+ * sendfile. The index is fixed until the next start.
+ */
+@Component
+public class StaticAssets implements HttpRequestHandler {
+
+	public static final Logger logger = LoggerFactory.getLogger(StaticAssets.class);
+
+	// Request attributes of Tomcat's sendfile support (org.apache.catalina.Globals).
+	static final String SENDFILE_SUPPORTED = "org.apache.tomcat.sendfile.support";
+
+	static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+
+	static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+
+	static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+	static final String IMMUTABLE = "public, max-age=31536000, immutable";
+
+	static final String REVALIDATE = "no-cache";
+
+	// name.0123abcd.js and the like.
+	private static final Pattern FINGERPRINTED = Pattern.compile(".*\\.[0-9a-f]{8,}\\.[A-Za-z0-9]+$");
+
+	private static final Pattern COMPRESSIBLE = Pattern.compile(
+			"text/.*|application/(javascript|json|xml|manifest\\+json)|image/svg\\+xml");
+
+	// A compressed variant is kept only if it is smaller than this share of the original.
+	private static final double MAX_COMPRESSED_RATIO = 0.9;
+
+	private static class Asset {
+
+		private Path file;
+
+		private String contentType;
+
+		private long length;
+
+		private String etag;
+
+		private boolean immutable;
+
+		// Null for a file served from disk.
+		private byte[] content;
+
+		private byte[] brotli;
+
+		private byte[] gzip;
+	}
+
+	private final Path root;
+
+	private final int maxInMemoryBytes;
+
+	private final long maxTotalInMemoryBytes;
+
+	private volatile Map<String, Asset> assets = Collections.emptyMap();
+
+	public StaticAssets(@Value("${atsea.assets.root:/static/}") String root,
+			@Value("${atsea.assets.maxInMemoryBytes:65536}") int maxInMemoryBytes,
+			@Value("${atsea.assets.maxTotalInMemoryBytes:67108864}") long maxTotalInMemoryBytes) throws IOException {
+		this.root = Paths.get(root).toAbsolutePath().normalize();
+		this.maxInMemoryBytes = maxInMemoryBytes;
+		this.maxTotalInMemoryBytes = maxTotalInMemoryBytes;
+		index();
+	}
+
+	/*
+	 * Reads the root directory into a new index. Files ending .br or .gz are
+	 * variants of the file without the suffix, not assets of their own.
+	 */
+	public void index() throws IOException {
+		if (!Files.isDirectory(root)) {
+			logger.info("No static assets at {}", root);
+			assets = Collections.emptyMap();
+			return;
+		}
+		List<Path> files;
+		try (Stream<Path> walk = Files.walk(root)) {
+			files = walk.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+		}
+		Map<String, Asset> index = new HashMap<String, Asset>();
+		long inMemory = 0;
+		int compressed = 0;
+		for (Path file : files) {
+			String name = file.getFileName().toString();
+			if (name.endsWith(".br") || name.endsWith(".gz")) {
+				continue;
+			}
+			Asset asset = new Asset();
+			asset.file = file;
+			asset.length = Files.size(file);
+			asset.contentType = MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+			asset.immutable = FINGERPRINTED.matcher(name).matches();
+			boolean compressible = COMPRESSIBLE.matcher(asset.contentType).matches();
+			if (asset.length <= maxInMemoryBytes && inMemory + asset.length <= maxTotalInMemoryBytes) {
+				asset.content = Files.readAllBytes(file);
+				asset.etag = "\"" + DigestUtils.md5DigestAsHex(asset.content) + "\"";
+				if (compressible) {
+					asset.brotli = variant(file.resolveSibling(name + ".br"), asset.length);
+					asset.gzip = variant(file.resolveSibling(name + ".gz"), asset.length);
+					if (asset.gzip == null) {
+						asset.gzip = smaller(gzip(asset.content), asset.length);
+					}
+				}
+				inMemory += asset.length + length(asset.brotli) + length(asset.gzip);
+				compressed += asset.brotli != null || asset.gzip != null ? 1 : 0;
+			} else {
+				try (InputStream in = Files.newInputStream(file)) {
+					asset.etag = "\"" + DigestUtils.md5DigestAsHex(in) + "\"";
+				}
+			}
+			index.put("/" + root.relativize(file).toString().replace('\\', '/'), asset);
+		}
+		assets = index;
+		logger.info("Indexed {} static assets under {}: {} KB in memory, {} with compressed variants", index.size(), root,
+				inMemory / 1024, compressed);
+	}
+
+	@Override
+	public void handleRequest(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+			response.setHeader(HttpHeaders.ALLOW, "GET, HEAD");
+			response.sendError(HttpServletResponse.SC_METHOD_NOT_ALLOWED);
+			return;
+		}
+		String path = URLDecoder.decode(request.getRequestURI().substring(request.getContextPath().length()),
+				StandardCharsets.UTF_8);
+		Asset asset = assets.get(path);
+		if (asset == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		String encoding = null;
+		byte[] body = asset.content;
+		String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (asset.brotli != null && accepts(acceptEncoding, "br")) {
+			encoding = "br";
+			body = asset.brotli;
+		} else if (asset.gzip != null && accepts(acceptEncoding, "gzip")) {
+			encoding = "gzip";
+			body = asset.gzip;
+		}
+		// Each encoding is its own representation, so it has its own tag.
+		String etag = encoding == null ? asset.etag
+				: asset.etag.substring(0, asset.etag.length() - 1) + (encoding.equals("br") ? "-br\"" : "-gz\"");
+
+		response.setHeader(HttpHeaders.ETAG, etag);
+		response.setHeader(HttpHeaders.CACHE_CONTROL, asset.immutable ? IMMUTABLE : REVALIDATE);
+		if (asset.brotli != null || asset.gzip != null) {
+			response.setHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		}
+		if (matches(request.getHeader(HttpHeaders.IF_NONE_MATCH), etag)) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+			return;
+		}
+		response.setContentType(asset.contentType);
+		if (encoding != null) {
+			response.setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+		}
+		response.setContentLengthLong(body != null ? body.length : asset.length);
+		if ("HEAD".equals(request.getMethod())) {
+			return;
+		}
+		if (body != null) {
+			response.getOutputStream().write(body);
+		} else if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED))) {
+			// Tomcat copies the file to the socket itself once this returns.
+			request.setAttribute(SENDFILE_FILENAME, asset.file.toString());
+			request.setAttribute(SENDFILE_START, 0L);
+			request.setAttribute(SENDFILE_END, asset.length);
+		} else {
+			Files.copy(asset.file, response.getOutputStream());
+		}
+	}
+
+	public int size() {
+		return assets.size();
+	}
+
+	// A prebuilt variant, if there is one and it is worth sending.
+	private static byte[] variant(Path file, long length) throws IOException {
+		return Files.isRegularFile(file) ? smaller(Files.readAllBytes(file), length) : null;
+	}
+
+	private static byte[] smaller(byte[] compressed, long length) {
+		return compressed.length < length * MAX_COMPRESSED_RATIO ? compressed : null;
+	}
+
+	private static byte[] gzip(byte[] content) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(content.length / 2 + 64);
+		try (OutputStream out = new GZIPOutputStream(bytes)) {
+			out.write(content);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static long length(byte[] bytes) {
+		return bytes == null ? 0 : bytes.length;
+	}
+
+	/*
+	 * True if an Accept-Encoding header allows the coding: named, or covered
+	 * by *, without q=0.
+	 */
+	static boolean accepts(String acceptEncoding, String coding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		boolean accepted = false;
+		for (String entry : acceptEncoding.split(",")) {
+			String[] parts = entry.trim().split(";");
+			String name = parts[0].trim();
+			boolean refused = false;
+			for (int i = 1; i < parts.length; i++) {
+				String parameter = parts[i].trim().replace(" ", "");
+				refused |= parameter.matches("q=0(\\.0*)?");
+			}
+			if (name.equalsIgnoreCase(coding)) {
+				return !refused;
+			}
+			if (name.equals("*")) {
+				accepted = !refused;
+			}
+		}
+		return accepted;
+	}
+
+	// If-None-Match uses weak comparison.
+	private static boolean matches(String ifNoneMatch, String etag) {
+		if (ifNoneMatch == null) {
+			return false;
+		}
+		for (String candidate : ifNoneMatch.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,92 @@
+package com.docker.atsea.configuration;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.springframework.aot.hint.BindingReflectionHintsRegistrar;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.RuntimeHintsRegistrar;
+import org.springframework.aot.hint.TypeReference;
+
+import com.docker.atsea.model.Cart;
+import com.docker.atsea.model.Customer;
+import com.docker.atsea.model.DailyProductSales;
+import com.docker.atsea.model.DailySales;
+import com.docker.atsea.model.IdempotencyRecord;
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.OrderLines;
+import com.docker.atsea.model.OrderLinesType;
+import com.docker.atsea.model.OrderView;
+import com.docker.atsea.model.OutboxEvent;
+import com.docker.atsea.model.Payment;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.model.ProductImport;
+import com.docker.atsea.model.ProductStock;
+import com.docker.atsea.model.RecommendationSnapshot;
+import com.docker.atsea.model.StockLease;
+import com.docker.atsea.model.StockReservation;
+import com.docker.atsea.payment.PaymentRequest;
+import com.docker.atsea.payment.PaymentResult;
+import com.docker.atsea.util.BatchItemResult;
+import com.docker.atsea.util.BatchResponse;
+import com.docker.atsea.util.CustomErrorType;
+import com.docker.atsea.util.CustomerInfo;
+
+/*
+ * What the native image (mvn -Pnative) must keep for reflection that Spring
+ * AOT cannot see: the entities, which Hibernate reads and writes field by
+ * field, the types written as JSON, the jjwt implementation classes, the JDBC
+ * drivers named in application.yml and the JDK proxies of TimedDataSource.
+ */
+public class AtSeaRuntimeHints implements RuntimeHintsRegistrar {
+
+	static final Class<?>[] ENTITIES = { Customer.class, Order.class, Product.class, ProductStock.class,
+			DailySales.class, DailyProductSales.class, DailyProductSales.Key.class, IdempotencyRecord.class,
+			OutboxEvent.class, OrderView.class, RecommendationSnapshot.class, Payment.class,
+			StockLease.class, StockLease.Key.class };
+
+	static final Class<?>[] RESPONSES = { OrderLines.class, Cart.class, ProductImport.class, StockReservation.class,
+			CustomErrorType.class, CustomerInfo.class, BatchResponse.class, BatchItemResult.class,
+			PaymentRequest.class, PaymentResult.class, JSONObject.class, JSONArray.class };
+
+	static final String[] JJWT = { "io.jsonwebtoken.impl.DefaultJwtBuilder", "io.jsonwebtoken.impl.DefaultJwtParser",
+			"io.jsonwebtoken.impl.DefaultClaims", "io.jsonwebtoken.impl.DefaultHeader",
+			"io.jsonwebtoken.impl.DefaultJwsHeader" };
+
+	static final String[] DRIVERS = { "org.h2.Driver", "org.h2.engine.Engine", "org.postgresql.Driver",
+			"com.microsoft.sqlserver.jdbc.SQLServerDriver" };
+
+	@Override
+	public void registerHints(RuntimeHints hints, ClassLoader classLoader) {
+		for (Class<?> entity : ENTITIES) {
+			hints.reflection().registerType(entity, MemberCategory.DECLARED_FIELDS,
+					MemberCategory.INVOKE_DECLARED_CONSTRUCTORS, MemberCategory.INVOKE_DECLARED_METHODS);
+		}
+		// Named in an annotation on Order and created by Hibernate.
+		hints.reflection().registerType(OrderLinesType.class, MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+		BindingReflectionHintsRegistrar bindings = new BindingReflectionHintsRegistrar();
+		bindings.registerReflectionHints(hints.reflection(), ENTITIES);
+		bindings.registerReflectionHints(hints.reflection(), RESPONSES);
+		for (String type : JJWT) {
+			hints.reflection().registerType(TypeReference.of(type), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS,
+					MemberCategory.INVOKE_PUBLIC_METHODS);
+		}
+		for (String driver : DRIVERS) {
+			hints.reflection().registerType(TypeReference.of(driver), MemberCategory.INVOKE_PUBLIC_CONSTRUCTORS);
+		}
+		hints.proxies().registerJdkProxy(DataSource.class);
+		hints.proxies().registerJdkProxy(Connection.class);
+		hints.proxies().registerJdkProxy(Statement.class);
+		hints.proxies().registerJdkProxy(PreparedStatement.class);
+		hints.proxies().registerJdkProxy(CallableStatement.class);
+		hints.proxies().registerJdkProxy(ResultSet.class);
+	}
+}
@@ -0,0 +1,38 @@
+package com.docker.atsea.configuration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.invalidation.LoopbackInvalidationBus;
+import com.docker.atsea.invalidation.PostgresInvalidationBus;
+
+/*
+ * Cache invalidation between application servers. With PostgreSQL the
+ * database carries the messages; otherwise there is only this node to tell.
+ */
+@Configuration
+public class InvalidationConfiguration {
+
+	public static final Logger logger = LoggerFactory.getLogger(InvalidationConfiguration.class);
+
+	@Bean
+	public InvalidationBus invalidationBus(JdbcTemplate jdbcTemplate, DataSourceProperties dataSourceProperties,
+			@Value("${atsea.invalidation.mode:auto}") String mode,
+			@Value("${atsea.invalidation.pollMillis:500}") int pollMillis,
+			@Value("${datasource.atsea.hibernate.dialect}") String dialect) {
+		if ("postgres".equalsIgnoreCase(mode) || ("auto".equalsIgnoreCase(mode) && dialect.contains("PostgreSQL"))) {
+			PostgresInvalidationBus bus = new PostgresInvalidationBus(jdbcTemplate, dataSourceProperties.getUrl(),
+					dataSourceProperties.getUsername(), dataSourceProperties.getPassword(), pollMillis);
+			bus.start();
+			return bus;
+		}
+		logger.info("Cache invalidations stay on this node");
+		return new LoopbackInvalidationBus();
+	}
+}
@@ -17,17 +17,24 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
+import org.springframework.core.NativeDetector;
 import org.springframework.core.env.Environment;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
 import org.springframework.orm.jpa.JpaTransactionManager;
 import org.springframework.orm.jpa.JpaVendorAdapter;
 import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypes;
+import org.springframework.orm.jpa.persistenceunit.PersistenceManagedTypesScanner;
 import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 import org.springframework.boot.jdbc.DataSourceBuilder;
 import com.zaxxer.hikari.HikariDataSource;
 
+import com.docker.atsea.jdbc.QueryStats;
+import com.docker.atsea.jdbc.TimedDataSource;
+
 @Configuration
 @EnableJpaRepositories(basePackages = "com.docker.atsea.repositories",
 		entityManagerFactoryRef = "entityManagerFactory",
@@ -67,7 +74,16 @@ public class JpaConfiguration {
 	}
 
 	/*
-	 * Configure HikariCP pooled DataSource.
+	 * Timings of the statements run through dataSource(), per SQL fingerprint.
+	 */
+	@Bean
+	public QueryStats queryStats() {
+		return new QueryStats(environment.getProperty("atsea.jdbc.slowMillis", Long.class, 200L),
+				environment.getProperty("atsea.jdbc.maxStatements", Integer.class, 500));
+	}
+
+	/*
+	 * Configure HikariCP pooled DataSource, timing every statement unless atsea.jdbc.timing is false.
 	 */
 	@Bean
 	public DataSource dataSource() {
@@ -80,17 +96,29 @@ public class JpaConfiguration {
 					.password(dataSourceProperties.getPassword())
 					.type(HikariDataSource.class)
 					.build();
-			return dataSource;
+			if (!environment.getProperty("atsea.jdbc.timing", Boolean.class, true)) {
+				return dataSource;
+			}
+			return TimedDataSource.wrap(dataSource, queryStats());
+	}
+
+	/*
+	 * The entity classes. As a bean, Spring AOT resolves the scan at build time,
+	 * so the native image, which cannot scan its class path, gets the list.
+	 */
+	@Bean
+	public PersistenceManagedTypes persistenceManagedTypes(ResourceLoader resourceLoader) {
+		return new PersistenceManagedTypesScanner(resourceLoader).scan("com.docker.atsea.model");
 	}
 
 	/*
 	 * Entity Manager Factory setup.
 	 */
 	@Bean
-	public LocalContainerEntityManagerFactoryBean entityManagerFactory() throws NamingException {
+	public LocalContainerEntityManagerFactoryBean entityManagerFactory(PersistenceManagedTypes persistenceManagedTypes) throws NamingException {
 		LocalContainerEntityManagerFactoryBean factoryBean = new LocalContainerEntityManagerFactoryBean();
 		factoryBean.setDataSource(dataSource());
-		factoryBean.setPackagesToScan(new String[] { "com.docker.atsea.model" });
+		factoryBean.setManagedTypes(persistenceManagedTypes);
 		factoryBean.setJpaVendorAdapter(jpaVendorAdapter());
 		factoryBean.setJpaProperties(jpaProperties());
 		return factoryBean;
@@ -114,6 +142,14 @@ public class JpaConfiguration {
 		properties.put("hibernate.hbm2ddl.auto", environment.getRequiredProperty("datasource.atsea.hibernate.hbm2ddl.method"));
 		properties.put("hibernate.show_sql", environment.getRequiredProperty("datasource.atsea.hibernate.show_sql"));
 		properties.put("hibernate.format_sql", environment.getRequiredProperty("datasource.atsea.hibernate.format_sql"));
+		// Lets a transaction writing many rows send them as JDBC batches (identity-keyed inserts excepted).
+		properties.put("hibernate.jdbc.batch_size", environment.getProperty("atsea.batch.jdbcBatchSize", "50"));
+		properties.put("hibernate.order_inserts", "true");
+		properties.put("hibernate.order_updates", "true");
+		// No runtime bytecode generation in a native image; the entities have no lazy to-one associations to proxy.
+		if (NativeDetector.inNativeImage()) {
+			properties.put("hibernate.bytecode.provider", "none");
+		}
 		if(StringUtils.isNotEmpty(environment.getRequiredProperty("datasource.atsea.defaultSchema"))){
 			properties.put("hibernate.default_schema", environment.getRequiredProperty("datasource.atsea.defaultSchema"));
 		}
@@ -121,7 +157,6 @@ public class JpaConfiguration {
 	}
 
 	@Bean
-	@Autowired
 	public PlatformTransactionManager transactionManager(EntityManagerFactory emf) {
 		JpaTransactionManager txManager = new JpaTransactionManager();
 		txManager.setEntityManagerFactory(emf);
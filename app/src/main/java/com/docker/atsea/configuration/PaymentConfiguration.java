@@ -0,0 +1,67 @@
+package com.docker.atsea.configuration;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+
+import com.docker.atsea.payment.CircuitBreaker;
+import com.docker.atsea.payment.FakePaymentGateway;
+import com.docker.atsea.payment.HttpPaymentGateway;
+import com.docker.atsea.payment.PaymentClient;
+import com.docker.atsea.payment.PaymentGateway;
+
+/*
+ * Payment client wiring. Gateway I/O runs on its own small, bounded pool so a
+ * slow gateway can never exhaust Tomcat's request threads.
+ */
+@Configuration
+public class PaymentConfiguration {
+
+	public static final Logger logger = LoggerFactory.getLogger(PaymentConfiguration.class);
+
+	@Bean(destroyMethod = "shutdownNow")
+	public ThreadPoolExecutor paymentExecutor(@Value("${atsea.payment.bulkhead.threads:8}") int threads,
+			@Value("${atsea.payment.bulkhead.queueSize:256}") int queueSize) {
+		return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize),
+				new CustomizableThreadFactory("payment-"),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	@Bean
+	public PaymentGateway paymentGateway(ThreadPoolExecutor paymentExecutor,
+			@Value("${atsea.payment.mode:fake}") String mode,
+			@Value("${atsea.payment.url:http://payment_gateway:8081/}") String url,
+			@Value("${atsea.payment.connectTimeoutMillis:1000}") long connectTimeoutMillis,
+			@Value("${atsea.payment.timeoutMillis:3000}") long timeoutMillis,
+			@Value("${atsea.payment.fake.latencyMillis:50}") long latencyMillis,
+			@Value("${atsea.payment.fake.failureRate:0.0}") double failureRate) {
+		if ("http".equalsIgnoreCase(mode)) {
+			logger.info("Using payment gateway at {}", url);
+			return new HttpPaymentGateway(url, connectTimeoutMillis, timeoutMillis, paymentExecutor);
+		}
+		logger.info("Using in-process fake payment gateway ({} ms latency, {} failure rate)", latencyMillis, failureRate);
+		CustomizableThreadFactory threadFactory = new CustomizableThreadFactory("payment-fake-");
+		threadFactory.setDaemon(true);
+		ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(threadFactory);
+		return new FakePaymentGateway(timer, latencyMillis, failureRate);
+	}
+
+	@Bean
+	public PaymentClient paymentClient(PaymentGateway paymentGateway,
+			@Value("${atsea.payment.bulkhead.maxConcurrent:64}") int maxConcurrent,
+			@Value("${atsea.payment.timeoutMillis:3000}") long timeoutMillis,
+			@Value("${atsea.payment.breaker.failureThreshold:5}") int failureThreshold,
+			@Value("${atsea.payment.breaker.openMillis:10000}") long openMillis) {
+		return new PaymentClient(paymentGateway, new CircuitBreaker(failureThreshold, openMillis), maxConcurrent, timeoutMillis);
+	}
+}
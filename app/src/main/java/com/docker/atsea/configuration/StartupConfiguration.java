@@ -0,0 +1,38 @@
+package com.docker.atsea.configuration;
+
+import java.util.Map;
+
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/*
+ * With spring.main.lazy-initialization (the fast-start profile) beans are
+ * created on first use. Beans with @Scheduled methods are still created at
+ * startup, as nothing else would ever start their schedules, and so is the
+ * entity manager factory, so the first request does not boot Hibernate.
+ */
+@Configuration
+public class StartupConfiguration {
+
+	@Bean
+	public static LazyInitializationExcludeFilter eagerBeans() {
+		return (beanName, beanDefinition, beanType) -> beanType != null
+				&& (EntityManagerFactory.class.isAssignableFrom(beanType) || hasScheduledMethods(beanType));
+	}
+
+	// Only the application's own beans schedule anything; introspecting every bean type would cost startup time.
+	private static boolean hasScheduledMethods(Class<?> beanType) {
+		if (!beanType.getName().startsWith("com.docker.atsea.")) {
+			return false;
+		}
+		Map<?, Scheduled> scheduled = MethodIntrospector.selectMethods(beanType,
+				(MethodIntrospector.MetadataLookup<Scheduled>) method -> AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class));
+		return !scheduled.isEmpty();
+	}
+}
@@ -1,20 +1,29 @@
 package com.docker.atsea.configuration;
 
+import java.util.Collections;
+
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.util.AntPathMatcher;
-import org.springframework.web.servlet.config.annotation.ResourceHandlerRegistry;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.handler.SimpleUrlHandlerMapping;
+import org.springframework.web.util.pattern.PathPatternParser;
 import org.springframework.web.servlet.config.annotation.ViewControllerRegistry;
 import org.springframework.web.servlet.config.annotation.EnableWebMvc;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 import org.springframework.web.servlet.config.annotation.PathMatchConfigurer;
 
+import com.docker.atsea.assets.StaticAssets;
+
 @Configuration 
 @EnableWebMvc
 public class WebConfiguration implements WebMvcConfigurer  {
 	
-	@Override
-	public void addResourceHandlers(ResourceHandlerRegistry registry) {
-		registry.addResourceHandler("/**").addResourceLocations("file:/static/");
+	/*
+	 * The storefront, from the StaticAssets index, for whatever no controller handles.
+	 */
+	@Bean
+	public SimpleUrlHandlerMapping staticAssetMapping(StaticAssets staticAssets) {
+		return new SimpleUrlHandlerMapping(Collections.singletonMap("/**", staticAssets), Ordered.LOWEST_PRECEDENCE - 1);
 	}
 	
 	@Override
@@ -22,10 +31,12 @@ public class WebConfiguration implements WebMvcConfigurer  {
 		registry.addViewController("/").setViewName("redirect:/index.html");
 	}
 
-        @Override
-        public void configurePathMatch(PathMatchConfigurer configurer) {
-        	AntPathMatcher matcher = new AntPathMatcher();
-        	matcher.setCaseSensitive(false);
-       		configurer.setPathMatcher(matcher);
-    	}
+	/*
+	 * Routes are parsed once into path patterns and matched case-sensitively;
+	 * PathCaseFilter redirects requests that differ from a route only in case.
+	 */
+	@Override
+	public void configurePathMatch(PathMatchConfigurer configurer) {
+		configurer.setPatternParser(new PathPatternParser());
+	}
 }
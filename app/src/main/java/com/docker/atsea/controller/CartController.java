@@ -0,0 +1,113 @@
+package com.docker.atsea.controller;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.docker.atsea.model.Cart;
+import com.docker.atsea.service.CartService;
+import com.docker.atsea.util.CustomErrorType;
+
+@RestController
+@RequestMapping("/api")
+public class CartController {
+
+	public static final Logger logger = LoggerFactory.getLogger(CartController.class);
+
+	@Autowired
+	CartService cartService;
+
+	private static class CartItem {
+		public Integer productId;
+		public int quantity;
+	}
+
+	// -------------------------------------------------------------------
+	//                   Cart methods
+	//--------------------------------------------------------------------
+
+	// -------------------Retrieve a Cart------------------------------------------
+
+	@RequestMapping(value = "/cart/{customerId}", method = RequestMethod.GET)
+	public ResponseEntity<Cart> getCart(@PathVariable("customerId") long customerId) {
+		return new ResponseEntity<Cart>(cartService.findCart(customerId), HttpStatus.OK);
+	}
+
+	// -------------------Add an Item to a Cart------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/cart/{customerId}/item/", method = RequestMethod.POST)
+	public ResponseEntity<?> addItem(@PathVariable("customerId") long customerId, @RequestBody CartItem item) {
+		logger.info("Adding product {} x {} to cart of customer {}", item.productId, item.quantity, customerId);
+		try {
+			return new ResponseEntity<Cart>(cartService.addItem(customerId, item.productId, item.quantity), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			logger.error("Unable to add to cart. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to add to cart. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// -------------------Update an Item in a Cart------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/cart/{customerId}/item/{productId}", method = RequestMethod.PUT)
+	public ResponseEntity<?> updateItem(@PathVariable("customerId") long customerId,
+			@PathVariable("productId") int productId, @RequestBody CartItem item) {
+		logger.info("Setting product {} x {} in cart of customer {}", productId, item.quantity, customerId);
+		try {
+			return new ResponseEntity<Cart>(cartService.updateItem(customerId, productId, item.quantity), HttpStatus.OK);
+		} catch (IllegalArgumentException e) {
+			logger.error("Unable to update cart. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to update cart. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// -------------------Remove an Item from a Cart------------------------------------------
+
+	@RequestMapping(value = "/cart/{customerId}/item/{productId}", method = RequestMethod.DELETE)
+	public ResponseEntity<Cart> removeItem(@PathVariable("customerId") long customerId,
+			@PathVariable("productId") int productId) {
+		return new ResponseEntity<Cart>(cartService.removeItem(customerId, productId), HttpStatus.OK);
+	}
+
+	// -------------------Empty a Cart------------------------------------------
+
+	@RequestMapping(value = "/cart/{customerId}", method = RequestMethod.DELETE)
+	public ResponseEntity<Cart> clearCart(@PathVariable("customerId") long customerId) {
+		cartService.clearCart(customerId);
+		return new ResponseEntity<Cart>(HttpStatus.NO_CONTENT);
+	}
+
+	// -------------------Check out a Cart------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/cart/{customerId}/checkout/", method = RequestMethod.POST)
+	public ResponseEntity<?> checkout(@PathVariable("customerId") long customerId) {
+		logger.info("Checking out cart of customer {}", customerId);
+		Cart cart;
+		try {
+			cart = cartService.checkout(customerId);
+		} catch (IllegalStateException e) {
+			logger.error("Unable to check out. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to check out. " + e.getMessage()), HttpStatus.CONFLICT);
+		} catch (IllegalArgumentException e) {
+			logger.error("Unable to check out. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to check out. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+
+		JSONObject orderInfo = new JSONObject();
+		orderInfo.put("orderId", cart.getOrderId());
+		orderInfo.put("customerId", cart.getCustomerId());
+		orderInfo.put("productsOrdered", cart.getProductsOrdered());
+		orderInfo.put("total", cart.getTotal());
+		return new ResponseEntity<JSONObject>(orderInfo, HttpStatus.CREATED);
+	}
+}
@@ -1,26 +1,35 @@
 package com.docker.atsea.controller;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
 import com.docker.atsea.model.Customer;
+import com.docker.atsea.service.BatchLoader;
 import com.docker.atsea.service.CustomerService;
+import com.docker.atsea.util.BatchResponse;
 import com.docker.atsea.util.CustomErrorType;
 import com.docker.atsea.util.CustomerInfo;
+import com.docker.atsea.util.ETags;
 
 @RestController
 @RequestMapping("/api")
@@ -32,6 +41,9 @@ public class CustomerController {
 	@Autowired
 	CustomerService customerService;
 
+	@Autowired
+	BatchLoader batchLoader;
+
 	// -------------------------------------------------------------------
 	//                   Customer methods
 	//--------------------------------------------------------------------
@@ -54,11 +66,19 @@ public class CustomerController {
 	}
 
 	// -------------------Retrieve Single Customer by Id------------------------------------------
+	// The ETag is the version column, so a revalidation is answered from that column alone.
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/customer/{customerId}", method = RequestMethod.GET)
-	public ResponseEntity<?> getCustomer(@PathVariable("customerId") long customerId) {
+	public ResponseEntity<?> getCustomer(@PathVariable("customerId") long customerId,
+			@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 		logger.info("Fetching Customer with id {}", customerId);
+		if (ifNoneMatch != null) {
+			Long version = customerService.findVersionById(customerId);
+			if (ETags.matchesWeakly(ifNoneMatch, version)) {
+				return new ResponseEntity(ETags.headers(version), HttpStatus.NOT_MODIFIED);
+			}
+		}
 		Customer customer = customerService.findById(customerId);
 		if (customer == null) {
 			logger.error("Customer with id {} not found.", customerId);
@@ -68,7 +88,7 @@ public class CustomerController {
 		
 		CustomerInfo customerInfo = new CustomerInfo();
 		JSONObject customerData = customerInfo.getCustomerInfo(customer);
-		return new ResponseEntity<JSONObject>(customerData, HttpStatus.OK);
+		return new ResponseEntity<JSONObject>(customerData, ETags.headers(customer.getVersion()), HttpStatus.OK);
 	}
 	
 	// -------------------Retrieve Single Customer by UserName------------------------------------------
@@ -132,11 +152,25 @@ public class CustomerController {
 		return new ResponseEntity<JSONObject>(customerInfo, HttpStatus.CREATED);
 	}
 
+	// -------------------Create Customers in Bulk-------------------------------------------
+	// A JSON array or newline-delimited JSON, streamed and written in chunks.
+
+	@RequestMapping(value = "/customer/batch", method = RequestMethod.POST)
+	public ResponseEntity<BatchResponse> createCustomers(HttpServletRequest request) throws IOException {
+		logger.info("Creating customers in bulk");
+		BatchResponse response = batchLoader.load(request.getInputStream(), Customer.class, customerService::createCustomers);
+		logger.info("Created {} customers, {} failed", response.getCreated(), response.getFailed());
+		return new ResponseEntity<BatchResponse>(response, HttpStatus.valueOf(response.getStatus()));
+	}
+
 	// ------------------- Update a Customer ------------------------------------------------
+	// With If-Match, the update applies only to the version the client read; either way,
+	// an update that races another one fails rather than overwriting it.
 
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@RequestMapping(value = "/customer/{customerId}", method = RequestMethod.PUT)
-	public ResponseEntity<?> updateCustomer(@PathVariable("customerId") long customerId, @RequestBody Customer customer) {
+	public ResponseEntity<?> updateCustomer(@PathVariable("customerId") long customerId, @RequestBody Customer customer,
+			@RequestHeader(value = "If-Match", required = false) String ifMatch) {
 		logger.info("Updating customer with id {}", customerId);
 
 		Customer currentCustomer = customerService.findById(customerId);
@@ -146,6 +180,9 @@ public class CustomerController {
 			return new ResponseEntity(new CustomErrorType("Unable to upate. Customer with id " + customerId + " not found."),
 					HttpStatus.NOT_FOUND);
 		}
+		if (ifMatch != null && !ETags.matches(ifMatch, currentCustomer.getVersion())) {
+			return changed("update", customerId, ifMatch);
+		}
 
 		currentCustomer.setName(customer.getName());
 		currentCustomer.setUsername(customer.getUsername());
@@ -156,8 +193,49 @@ public class CustomerController {
 		currentCustomer.setRole(customer.getRole());
 		currentCustomer.setEnabled(customer.getEnabled());
 
-		customerService.updateCustomer(currentCustomer);
-		return new ResponseEntity<Customer>(currentCustomer, HttpStatus.OK);
+		try {
+			customerService.updateCustomer(currentCustomer);
+		} catch (OptimisticLockingFailureException e) {
+			return changed("update", customerId, ifMatch);
+		}
+		return new ResponseEntity<Customer>(currentCustomer, ETags.headers(currentCustomer.getVersion()), HttpStatus.OK);
+	}
+
+	// ------------------- Patch a Customer ------------------------------------------------
+	// JSON Merge Patch: only the members sent are changed, and only changed columns are written.
+
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@RequestMapping(value = "/customer/{customerId}", method = RequestMethod.PATCH,
+			consumes = { "application/merge-patch+json", "application/json" })
+	public ResponseEntity<?> patchCustomer(@PathVariable("customerId") long customerId, @RequestBody Map<String, Object> patch,
+			@RequestHeader(value = "If-Match", required = false) String ifMatch) {
+		logger.info("Patching customer with id {}: {}", customerId, patch.keySet());
+		Customer customer;
+		try {
+			customer = customerService.patchCustomer(customerId, patch, ifMatch);
+		} catch (OptimisticLockingFailureException e) {
+			return changed("patch", customerId, ifMatch);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to patch. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		} catch (IllegalStateException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to patch. " + e.getMessage()), HttpStatus.CONFLICT);
+		}
+		if (customer == null) {
+			logger.error("Unable to patch. Customer with id {} not found.", customerId);
+			return new ResponseEntity(new CustomErrorType("Unable to patch. Customer with id " + customerId + " not found."),
+					HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<JSONObject>(new CustomerInfo().getCustomerInfo(customer), ETags.headers(customer.getVersion()),
+				HttpStatus.OK);
+	}
+
+	// 412 if the client's If-Match named an older version, 409 if it sent none and lost a race.
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private ResponseEntity<?> changed(String action, long customerId, String ifMatch) {
+		logger.error("Unable to {}. Customer with id {} was changed by another request.", action, customerId);
+		return new ResponseEntity(new CustomErrorType("Unable to " + action + ". Customer with id " + customerId
+				+ " was changed by another request; fetch it again."),
+				ifMatch == null ? HttpStatus.CONFLICT : HttpStatus.PRECONDITION_FAILED);
 	}
 
 	// ------------------- Delete a Customer-----------------------------------------
@@ -165,15 +243,13 @@ public class CustomerController {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/customer/{customerId}", method = RequestMethod.DELETE)
 	public ResponseEntity<?> deleteCustomer(@PathVariable("customerId") long customerId) {
-		logger.info("Fetching & Deleting customer with id {}", customerId);
+		logger.info("Deleting customer with id {}", customerId);
 
-		Customer customer = customerService.findById(customerId);
-		if (customer == null) {
+		if (!customerService.deleteCustomerById(customerId)) {
 			logger.error("Unable to delete. User with customer {} not found.", customerId);
 			return new ResponseEntity(new CustomErrorType("Unable to delete. Customer with id " + customerId + " not found."),
 					HttpStatus.NOT_FOUND);
 		}
-		customerService.deleteCustomerById(customerId);
 		return new ResponseEntity<Customer>(HttpStatus.NO_CONTENT);
 	}
 
@@ -183,7 +259,8 @@ public class CustomerController {
 	public ResponseEntity<Customer> deleteAllCustomers() {
 		logger.info("Deleting All Customers");
 
-		customerService.deleteAllCustomers();
+		long deleted = customerService.deleteAllCustomers();
+		logger.info("Deleted {} customers", deleted);
 		return new ResponseEntity<Customer>(HttpStatus.NO_CONTENT);
 	}
 	
@@ -1,24 +1,46 @@
 package com.docker.atsea.controller;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import jakarta.servlet.http.HttpServletRequest;
 
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.util.UriComponentsBuilder;
 
+import com.docker.atsea.model.IdempotencyRecord;
 import com.docker.atsea.model.Order;
+import com.docker.atsea.service.BatchLoader;
+import com.docker.atsea.service.IdempotencyService;
 import com.docker.atsea.service.OrderService;
+import com.docker.atsea.util.BatchResponse;
 import com.docker.atsea.util.CustomErrorType;
+import com.docker.atsea.util.ETags;
 
 @RestController
 @RequestMapping("/api")
@@ -26,33 +48,133 @@ public class OrderController {
 	
 	public static final Logger logger = LoggerFactory.getLogger(OrderController.class);
 	
+	private static final int MAX_IDEMPOTENCY_KEY_LENGTH = 255;
+
 	@Autowired
 	OrderService orderService;
+
+	@Autowired
+	IdempotencyService idempotencyService;
+
+	@Autowired
+	BatchLoader batchLoader;
+
 	// -------------------------------------------------------------------
 	//                   Order methods
 	//--------------------------------------------------------------------
 
 
 	// -------------------Create an Order-------------------------------------------
+	// An Idempotency-Key header makes retries safe: the first response is stored
+	// with the order and replayed for any repeat of the same request.
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/order/", method = RequestMethod.POST)
-	public ResponseEntity<?> createOrder(@RequestBody Order order, UriComponentsBuilder ucBuilder) {
+	public ResponseEntity<?> createOrder(@RequestBody Order order,
+			@RequestHeader(value = "Stock-Reservation", required = false) String reservationId,
+			@RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey, UriComponentsBuilder ucBuilder) {
 		logger.info("Creating order : {}", order);
 
-		if (orderService.orderExists(order)) {
-			logger.error("Unable to create. An order with id {} already exist", order.getOrderId());
-			return new ResponseEntity(new CustomErrorType("Unable to create. An order with id " + 
-			order.getOrderId() + " already exists."),HttpStatus.CONFLICT);
+		IdempotencyRecord idempotency = null;
+		if (idempotencyKey != null) {
+			if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAX_IDEMPOTENCY_KEY_LENGTH) {
+				return new ResponseEntity(new CustomErrorType("Idempotency-Key must be 1 to " + MAX_IDEMPOTENCY_KEY_LENGTH
+						+ " characters."), HttpStatus.BAD_REQUEST);
+			}
+			String requestHash = requestHash(order, reservationId);
+			IdempotencyRecord previous = idempotencyService.find(idempotencyKey);
+			if (previous != null) {
+				return replay(previous, requestHash);
+			}
+			if (!idempotencyService.begin(idempotencyKey)) {
+				logger.error("Unable to create. Order with Idempotency-Key {} is already in progress", idempotencyKey);
+				return new ResponseEntity(new CustomErrorType("Unable to create. A request with this Idempotency-Key is "
+						+ "already in progress."), HttpStatus.CONFLICT);
+			}
+			idempotency = new IdempotencyRecord(idempotencyKey, requestHash);
 		}
-				
-		Order currentOrder = orderService.createOrder(order);
-		Long currentOrderId = currentOrder.getOrderId();
-		JSONObject orderInfo = new JSONObject();
-		orderInfo.put("orderId", currentOrderId);
 
+		try {
+			if (orderService.orderExists(order)) {
+				logger.error("Unable to create. An order with id {} already exist", order.getOrderId());
+				return new ResponseEntity(new CustomErrorType("Unable to create. An order with id " + 
+				order.getOrderId() + " already exists."),HttpStatus.CONFLICT);
+			}
+
+			Order currentOrder;
+			try {
+				currentOrder = orderService.createOrder(order, reservationId, idempotency);
+			} catch (IllegalStateException e) {
+				logger.error("Unable to create order. {}", e.getMessage());
+				return new ResponseEntity(new CustomErrorType("Unable to create order. " + e.getMessage()), HttpStatus.CONFLICT);
+			} catch (IllegalArgumentException e) {
+				logger.error("Unable to create order. {}", e.getMessage());
+				return new ResponseEntity(new CustomErrorType("Unable to create order. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+			} catch (DataIntegrityViolationException e) {
+				// Another node completed the same key first; answer with its response.
+				IdempotencyRecord previous = idempotency == null ? null : idempotencyService.find(idempotencyKey);
+				if (previous == null) {
+					throw e;
+				}
+				return replay(previous, idempotency.getRequestHash());
+			}
+			Long currentOrderId = currentOrder.getOrderId();
+			JSONObject orderInfo = new JSONObject();
+			orderInfo.put("orderId", currentOrderId);
+
+			HttpHeaders headers = new HttpHeaders();
+			headers.setLocation(ucBuilder.path("/api/order/").buildAndExpand(order.getOrderId()).toUri());
+			return new ResponseEntity<JSONObject>(orderInfo, HttpStatus.CREATED);
+		} finally {
+			if (idempotency != null) {
+				idempotencyService.end(idempotencyKey);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private ResponseEntity<?> replay(IdempotencyRecord previous, String requestHash) {
+		if (!previous.getRequestHash().equals(requestHash)) {
+			logger.error("Idempotency-Key {} reused for a different request", previous.getKey());
+			return new ResponseEntity(new CustomErrorType("Idempotency-Key was already used for a different request."),
+					HttpStatus.UNPROCESSABLE_ENTITY);
+		}
+		logger.info("Replaying response for Idempotency-Key {}", previous.getKey());
 		HttpHeaders headers = new HttpHeaders();
-		headers.setLocation(ucBuilder.path("/api/order/").buildAndExpand(order.getOrderId()).toUri());
-		return new ResponseEntity<JSONObject>(orderInfo, HttpStatus.CREATED);
+		headers.setContentType(MediaType.APPLICATION_JSON);
+		headers.set("Idempotent-Replayed", "true");
+		return new ResponseEntity<String>(previous.getResponseBody(), headers, HttpStatus.valueOf(previous.getStatusCode()));
+	}
+
+	// Fingerprint of what the order asks for, so a key cannot be reused for a different order.
+	private static String requestHash(Order order, String reservationId) {
+		StringBuilder request = new StringBuilder();
+		request.append(order.getCustomerId()).append('|')
+				.append(order.getOrderDate() == null ? "" : order.getOrderDate().getTime()).append('|')
+				.append(order.getProductsOrdered() == null ? "" : new TreeMap<Integer, Integer>(order.getProductsOrdered()))
+				.append('|').append(reservationId == null ? "" : reservationId);
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(request.toString().getBytes(StandardCharsets.UTF_8));
+			StringBuilder hex = new StringBuilder(digest.length * 2);
+			for (byte b : digest) {
+				hex.append(String.format("%02x", b));
+			}
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+
+	// -------------------Create Orders in Bulk-------------------------------------------
+	// A JSON array or newline-delimited JSON, streamed and written in chunks.
+	// Each order takes its stock directly; holds and Idempotency-Key are single-order only.
+
+	@RequestMapping(value = "/order/batch", method = RequestMethod.POST)
+	public ResponseEntity<BatchResponse> createOrders(HttpServletRequest request) throws IOException {
+		logger.info("Creating orders in bulk");
+		BatchResponse response = batchLoader.load(request.getInputStream(), Order.class, orderService::createOrders);
+		logger.info("Created {} orders, {} failed", response.getCreated(), response.getFailed());
+		return new ResponseEntity<BatchResponse>(response, HttpStatus.valueOf(response.getStatus()));
 	}
 
 
@@ -61,50 +183,131 @@ public class OrderController {
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/order/{orderId}", method = RequestMethod.DELETE)
 	public ResponseEntity<?> deleteItemById(@PathVariable("orderId") long orderId) {
-		logger.info("Fetching & Deleting Item with id {}", orderId);
+		logger.info("Deleting Item with id {}", orderId);
 
-		Order order = orderService.findById(orderId);
-		if (order == null) {
+		if (!orderService.deleteOrderById(orderId)) {
 			logger.error("Unable to delete item with orderid {} not found.", orderId);
 			return new ResponseEntity(new CustomErrorType("Unable to delete order. Order with id " + orderId + " not found."),
 					HttpStatus.NOT_FOUND);
 		}
-		orderService.deleteOrderById(orderId);
 		return new ResponseEntity<Order>(HttpStatus.NO_CONTENT);
 	}
 
 	
 	// ------------------- Get All Orders-----------------------------
+	// With from and/or to (yyyy-MM-dd, to exclusive), only orders placed in that range are read.
 	
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/order/", method = RequestMethod.GET)
-	public ResponseEntity<List<Order>> listAllOrderss() {
-		List<Order> order = orderService.findAllOrders();
+	public ResponseEntity<?> listAllOrderss(@RequestParam(value = "from", required = false) String from,
+			@RequestParam(value = "to", required = false) String to) {
+		List<Order> order;
+		if (from == null && to == null) {
+			order = orderService.findAllOrders();
+		} else {
+			try {
+				order = orderService.findOrdersBetween(day(from, LocalDate.of(1900, 1, 1)), day(to, LocalDate.of(9999, 12, 31)));
+			} catch (DateTimeParseException e) {
+				return new ResponseEntity(new CustomErrorType("from and to must be dates as yyyy-MM-dd."), HttpStatus.BAD_REQUEST);
+			}
+		}
 		if (order.isEmpty()) {
 			return new ResponseEntity<List<Order>>(HttpStatus.NO_CONTENT);
 
 		}
 		return new ResponseEntity<List<Order>>(order, HttpStatus.OK);
 	}
+
+	private static Date day(String value, LocalDate otherwise) {
+		return java.sql.Date.valueOf(value == null ? otherwise : LocalDate.parse(value));
+	}
 	
 	// -------------------Retrieve Single Order By Id------------------------------------------
+	// The ETag is the version column, so a revalidation is answered from that column alone.
 
 	@SuppressWarnings({ "unchecked", "rawtypes" })
 	@RequestMapping(value = "/order/{orderId}", method = RequestMethod.GET)
-	public ResponseEntity<?> getOrder(@PathVariable("orderId") long orderId) {
+	public ResponseEntity<?> getOrder(@PathVariable("orderId") long orderId,
+			@RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 		logger.info("Fetching Order with id {}", orderId);
+		if (ifNoneMatch != null) {
+			Long version = orderService.findVersionById(orderId);
+			if (ETags.matchesWeakly(ifNoneMatch, version)) {
+				return new ResponseEntity(ETags.headers(version), HttpStatus.NOT_MODIFIED);
+			}
+		}
 		Order order = orderService.findById(orderId);
 		if (order == null) {
 			logger.error("Order with id {} not found.", orderId);
 			return new ResponseEntity(new CustomErrorType("Order with id " + orderId 
 					+ " not found"), HttpStatus.NOT_FOUND);
 		}
-		return new ResponseEntity<Order>(order, HttpStatus.OK);
+		return new ResponseEntity<Order>(order, ETags.headers(order.getVersion()), HttpStatus.OK);
 	}
 	
+	// -------------------Retrieve Order Documents------------------------------------------
+	// Read from order_view: the order with its customer's name and priced lines, in one row.
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/order/view/{orderId}", method = RequestMethod.GET)
+	public ResponseEntity<?> getOrderView(@PathVariable("orderId") long orderId) {
+		JSONObject view = orderService.findView(orderId);
+		if (view == null) {
+			logger.error("Order with id {} not found.", orderId);
+			return new ResponseEntity(new CustomErrorType("Order with id " + orderId 
+					+ " not found"), HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<JSONObject>(view, HttpStatus.OK);
+	}
+
+	// A customer's newest orders first.
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/order/view/", method = RequestMethod.GET)
+	public ResponseEntity<?> listOrderViews(@RequestParam("customerId") long customerId,
+			@RequestParam(value = "limit", defaultValue = "50") int limit) {
+		if (limit < 1) {
+			return new ResponseEntity(new CustomErrorType("limit must be at least 1."), HttpStatus.BAD_REQUEST);
+		}
+		List<JSONObject> views = orderService.findViewsByCustomer(customerId, limit);
+		if (views.isEmpty()) {
+			return new ResponseEntity<List<JSONObject>>(HttpStatus.NO_CONTENT);
+		}
+		return new ResponseEntity<List<JSONObject>>(views, HttpStatus.OK);
+	}
+	
+	// ---------------------Patch an order-------------------------------
+	// JSON Merge Patch; {"productsOrdered": {"3": 2, "5": null}} sets product 3 and removes product 5.
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	@RequestMapping(value = "/order/{orderId}", method = RequestMethod.PATCH,
+			consumes = { "application/merge-patch+json", "application/json" })
+	public ResponseEntity<?> patchOrder(@PathVariable("orderId") long orderId, @RequestBody Map<String, Object> patch,
+			@RequestHeader(value = "If-Match", required = false) String ifMatch) {
+		logger.info("Patching order with id {}: {}", orderId, patch.keySet());
+		Order order;
+		try {
+			order = orderService.patchOrder(orderId, patch, ifMatch);
+		} catch (OptimisticLockingFailureException e) {
+			return changed("patch", orderId, ifMatch);
+		} catch (IllegalStateException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to patch. " + e.getMessage()), HttpStatus.CONFLICT);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to patch. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+		if (order == null) {
+			logger.error("Unable to patch. Order with id {} not found.", orderId);
+			return new ResponseEntity(new CustomErrorType("Unable to patch. Order with id " + orderId + " not found."),
+					HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<Order>(order, ETags.headers(order.getVersion()), HttpStatus.OK);
+	}
+
 	// ---------------------Update an order-------------------------------
+	// With If-Match, the update applies only to the version the client read; either way,
+	// an update that races another one fails rather than overwriting it.
 	@SuppressWarnings({ "rawtypes", "unchecked" })
 	@RequestMapping(value = "/order/{orderId}", method = RequestMethod.PUT)
-	public ResponseEntity<?> updateOrder(@PathVariable("orderId") long orderId, @RequestBody Order order) {
+	public ResponseEntity<?> updateOrder(@PathVariable("orderId") long orderId, @RequestBody Order order,
+			@RequestHeader(value = "If-Match", required = false) String ifMatch) {
 		logger.info("Updating order with id {}", orderId);
 
 		Order currentOrder = orderService.findById(orderId);
@@ -114,18 +317,44 @@ public class OrderController {
 			return new ResponseEntity(new CustomErrorType("Unable to upate. Order with id " + orderId + " not found."),
 					HttpStatus.NOT_FOUND);
 		}
+		if (ifMatch != null && !ETags.matches(ifMatch, currentOrder.getVersion())) {
+			return changed("update", orderId, ifMatch);
+		}
 
 		currentOrder.setCustomerId(order.getCustomerId());
 		currentOrder.setOrderDate(order.getOrderDate());
-		currentOrder.setProductsOrdered(order.getProductsOrdered());
-		orderService.updateOrder(currentOrder);
+		// Changed in place rather than replaced, so only the lines that differ are written.
+		Map<Integer, Integer> productsOrdered = order.getProductsOrdered() == null
+				? Collections.<Integer, Integer>emptyMap() : order.getProductsOrdered();
+		currentOrder.getProductsOrdered().keySet().retainAll(productsOrdered.keySet());
+		currentOrder.getProductsOrdered().putAll(productsOrdered);
+		try {
+			orderService.updateOrder(currentOrder);
+		} catch (OptimisticLockingFailureException e) {
+			return changed("update", orderId, ifMatch);
+		} catch (IllegalStateException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to update. " + e.getMessage()), HttpStatus.CONFLICT);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType("Unable to update. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
 		
 		JSONObject orderInfo = new JSONObject();
 		orderInfo.put("orderId", currentOrder.getOrderId());
 		orderInfo.put("customerId", currentOrder.getCustomerId());
 		orderInfo.put("orderDate", currentOrder.getOrderDate());
 		orderInfo.put("productsOrdered", currentOrder.getProductsOrdered());
-		return new ResponseEntity<JSONObject>(orderInfo, HttpStatus.OK);
+		orderInfo.put("linePrices", currentOrder.getLinePrices());
+		orderInfo.put("total", currentOrder.getTotal());
+		return new ResponseEntity<JSONObject>(orderInfo, ETags.headers(currentOrder.getVersion()), HttpStatus.OK);
+	}
+
+	// 412 if the client's If-Match named an older version, 409 if it sent none and lost a race.
+	@SuppressWarnings({ "rawtypes", "unchecked" })
+	private ResponseEntity<?> changed(String action, long orderId, String ifMatch) {
+		logger.error("Unable to {}. Order with id {} was changed by another request.", action, orderId);
+		return new ResponseEntity(new CustomErrorType("Unable to " + action + ". Order with id " + orderId
+				+ " was changed by another request; fetch it again."),
+				ifMatch == null ? HttpStatus.CONFLICT : HttpStatus.PRECONDITION_FAILED);
 	}
 
 }
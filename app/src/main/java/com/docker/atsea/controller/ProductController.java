@@ -1,25 +1,37 @@
 package com.docker.atsea.controller;
 
+import java.io.IOException;
 import java.util.List;
 
+import jakarta.servlet.http.HttpServletRequest;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import com.docker.atsea.model.Product;
+import com.docker.atsea.model.ProductImport;
 import com.docker.atsea.service.ProductService;
 import com.docker.atsea.util.CustomErrorType;
+import com.fasterxml.jackson.core.JsonProcessingException;
 
 @RestController
 @RequestMapping("/api")
 public class ProductController {
 	public static final Logger logger = LoggerFactory.getLogger(ProductController.class);
+
+	private static final int MAX_SEARCH_RESULTS = 100;
+
+	@Value("${atsea.recommendations.maxRelated:10}")
+	private int maxRelated;
 	
 	@Autowired
 	ProductService productService;
@@ -54,4 +66,72 @@ public class ProductController {
 		}
 		return new ResponseEntity<Product>(product, HttpStatus.OK);
 	}
+
+	// -------------------Search Products------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/product/search", method = RequestMethod.GET)
+	public ResponseEntity<?> searchProducts(@RequestParam(value = "q", required = false) String query,
+			@RequestParam(value = "limit", defaultValue = "20") int limit) {
+		if (query == null || query.trim().isEmpty()) {
+			return new ResponseEntity(new CustomErrorType("Search query q is required."), HttpStatus.BAD_REQUEST);
+		}
+		List<Product> products = productService.searchProducts(query, Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS)));
+		if (products.isEmpty()) {
+			return new ResponseEntity<List<Product>>(HttpStatus.NO_CONTENT);
+		}
+		return new ResponseEntity<List<Product>>(products, HttpStatus.OK);
+	}
+
+	// -------------------Related Products------------------------------------------
+	// "Frequently bought together", answered from counts kept as orders are written.
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/product/{productId}/related", method = RequestMethod.GET)
+	public ResponseEntity<?> getRelatedProducts(@PathVariable("productId") long productId,
+			@RequestParam(value = "limit", defaultValue = "5") int limit) {
+		List<Product> products = productService.findRelated(productId, Math.max(1, Math.min(limit, maxRelated)));
+		if (products == null) {
+			logger.error("Product with id {} not found.", productId);
+			return new ResponseEntity(new CustomErrorType("Product with id " + productId
+					+ " not found"), HttpStatus.NOT_FOUND);
+		}
+		if (products.isEmpty()) {
+			return new ResponseEntity<List<Product>>(HttpStatus.NO_CONTENT);
+		}
+		return new ResponseEntity<List<Product>>(products, HttpStatus.OK);
+	}
+
+	// -------------------Import Products------------------------------------------
+	// The feed is streamed straight from the request body, never held in memory.
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/product/import", method = RequestMethod.POST)
+	public ResponseEntity<?> importProducts(HttpServletRequest request) throws IOException {
+		boolean csv = request.getContentType() != null && request.getContentType().contains("csv");
+		logger.info("Importing products from a {} feed", csv ? "CSV" : "JSON");
+		try {
+			return new ResponseEntity<ProductImport>(productService.importProducts(request.getInputStream(), csv), HttpStatus.OK);
+		} catch (IllegalStateException e) {
+			logger.error("Unable to import products. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to import products. " + e.getMessage()), HttpStatus.CONFLICT);
+		} catch (JsonProcessingException e) {
+			ProductImport partial = productService.getLastImport();
+			logger.error("Unable to import products. {}", e.getOriginalMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to import products. " + e.getOriginalMessage()
+					+ ". " + (partial.getUpserted() + partial.getInserted()) + " products were imported before the error."),
+					HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// -------------------Product Import Progress------------------------------------------
+
+	@RequestMapping(value = "/product/import", method = RequestMethod.GET)
+	public ResponseEntity<ProductImport> getImport() {
+		ProductImport productImport = productService.getLastImport();
+		if (productImport == null) {
+			return new ResponseEntity<ProductImport>(HttpStatus.NO_CONTENT);
+		}
+		return new ResponseEntity<ProductImport>(productImport, HttpStatus.OK);
+	}
 }
@@ -1,14 +1,33 @@
 package com.docker.atsea.controller;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
 import org.json.simple.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.Payment;
+import com.docker.atsea.payment.PaymentClient;
+import com.docker.atsea.payment.PaymentException;
+import com.docker.atsea.payment.PaymentRequest;
+import com.docker.atsea.payment.PaymentResult;
+import com.docker.atsea.repositories.PaymentRepository;
+import com.docker.atsea.service.OrderService;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.util.CustomErrorType;
+
 
 @RestController
 @RequestMapping(path = "/purchase/")
@@ -16,6 +35,18 @@ public class PurchaseController {
 	
 	public static final Logger logger = LoggerFactory.getLogger(PurchaseController.class);
 	
+	@Autowired
+	OrderService orderService;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	PaymentClient paymentClient;
+
+	@Autowired
+	PaymentRepository paymentRepository;
+
 	@SuppressWarnings("unchecked")
 	@RequestMapping(value="", method = RequestMethod.GET)
     public ResponseEntity<?> purchase() {
@@ -27,4 +58,78 @@ public class PurchaseController {
     	return new ResponseEntity<JSONObject>(message, HttpStatus.OK);
     }
 
+	// -------------------Pay for an Order------------------------------------------
+	// Returns a future so the request thread is released while the gateway works.
+	// The payment row keyed by order id is claimed before the gateway is called, so
+	// an order is charged at most once; a repeat of a paid order gets the same answer.
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="{orderId}", method = RequestMethod.POST)
+	public CompletableFuture<ResponseEntity<?>> payOrder(@PathVariable("orderId") long orderId) {
+		logger.info("Performing payment for order {}", orderId);
+
+		Order order = orderService.findById(orderId);
+		if (order == null) {
+			logger.error("Order with id {} not found.", orderId);
+			return CompletableFuture.completedFuture(new ResponseEntity(new CustomErrorType("Order with id " + orderId
+					+ " not found"), HttpStatus.NOT_FOUND));
+		}
+
+		// The total the order was placed at; orders written before totals were kept are priced now.
+		double amount;
+		try {
+			amount = order.getTotal() != null ? order.getTotal() : productCache.price(order.getProductsOrdered());
+		} catch (IllegalArgumentException e) {
+			logger.error("Unable to price order {}. {}", orderId, e.getMessage());
+			return CompletableFuture.completedFuture(new ResponseEntity(new CustomErrorType("Unable to price order. "
+					+ e.getMessage()), HttpStatus.CONFLICT));
+		}
+
+		try {
+			paymentRepository.saveAndFlush(new Payment(orderId, amount));
+		} catch (DataIntegrityViolationException e) {
+			Payment previous = paymentRepository.findById(orderId).orElse(null);
+			if (previous != null && Payment.PAID.equals(previous.getStatus())) {
+				logger.info("Order {} is already paid", orderId);
+				return CompletableFuture.completedFuture(paid(orderId, previous.getAmount(), previous.getTransactionId()));
+			}
+			logger.error("Payment for order {} is already in progress", orderId);
+			return CompletableFuture.completedFuture(new ResponseEntity(new CustomErrorType("A payment for order "
+					+ orderId + " is already in progress."), HttpStatus.CONFLICT));
+		}
+
+		// Recorded from the gateway's own answer, which may come after this request has timed out.
+		BiConsumer<PaymentResult, Throwable> record = (result, error) -> {
+			if (error == null) {
+				paymentRepository.markPaid(orderId, result.getTransactionId());
+			} else {
+				paymentRepository.deletePending(orderId);
+			}
+		};
+		return paymentClient.charge(new PaymentRequest(orderId, order.getCustomerId(), amount), record).handle((result, error) -> {
+			if (error == null) {
+				return paid(orderId, amount, result.getTransactionId());
+			}
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			if (cause instanceof PaymentException && ((PaymentException) cause).isRejected()) {
+				return new ResponseEntity(new CustomErrorType("Payments are temporarily unavailable, please retry."),
+						HttpStatus.SERVICE_UNAVAILABLE);
+			}
+			if (cause.getCause() instanceof TimeoutException) {
+				return new ResponseEntity(new CustomErrorType("Payment gateway timed out. The payment stays in progress "
+						+ "until the gateway answers."), HttpStatus.GATEWAY_TIMEOUT);
+			}
+			return new ResponseEntity(new CustomErrorType("Payment failed. " + cause.getMessage()), HttpStatus.BAD_GATEWAY);
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static ResponseEntity<?> paid(long orderId, double amount, String transactionId) {
+		JSONObject message = new JSONObject();
+		message.put("orderId", orderId);
+		message.put("amount", amount);
+		message.put("transactionId", transactionId);
+		message.put("message", "Thank you for shopping @Sea! We're sending a confirmation email shortly and getting your order ready!");
+		return new ResponseEntity<JSONObject>(message, HttpStatus.OK);
+	}
 }
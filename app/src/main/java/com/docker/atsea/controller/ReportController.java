@@ -0,0 +1,113 @@
+package com.docker.atsea.controller;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.docker.atsea.service.ReportService;
+import com.docker.atsea.util.CustomErrorType;
+
+@RestController
+@RequestMapping("/api")
+public class ReportController {
+
+	public static final Logger logger = LoggerFactory.getLogger(ReportController.class);
+
+	private static final int DEFAULT_DAYS = 30;
+
+	@Autowired
+	ReportService reportService;
+
+	@Value("${atsea.report.maxDays:366}")
+	int maxDays;
+
+	// -------------------------------------------------------------------
+	//                   Sales reports
+	//--------------------------------------------------------------------
+	// from and to are yyyy-MM-dd and inclusive; by default the last 30 days.
+
+	// -------------------Orders, units and revenue per day---------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/report/daily", method = RequestMethod.GET)
+	public ResponseEntity<?> dailySales(@RequestParam(value = "from", required = false) String from,
+			@RequestParam(value = "to", required = false) String to) {
+		LocalDate[] range;
+		try {
+			range = range(from, to);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<List<JSONObject>>(reportService.dailySales(range[0], range[1]), HttpStatus.OK);
+	}
+
+	// -------------------One product per day---------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/report/product/{productId}", method = RequestMethod.GET)
+	public ResponseEntity<?> productSales(@PathVariable("productId") long productId,
+			@RequestParam(value = "from", required = false) String from,
+			@RequestParam(value = "to", required = false) String to) {
+		LocalDate[] range;
+		try {
+			range = range(from, to);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<List<JSONObject>>(reportService.dailyProductSales(productId, range[0], range[1]),
+				HttpStatus.OK);
+	}
+
+	// -------------------Revenue by product---------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/report/products", method = RequestMethod.GET)
+	public ResponseEntity<?> topProducts(@RequestParam(value = "from", required = false) String from,
+			@RequestParam(value = "to", required = false) String to,
+			@RequestParam(value = "limit", defaultValue = "20") int limit) {
+		LocalDate[] range;
+		try {
+			range = range(from, to);
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+		if (limit < 1) {
+			return new ResponseEntity(new CustomErrorType("limit must be at least 1."), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<List<JSONObject>>(reportService.topProducts(range[0], range[1], limit), HttpStatus.OK);
+	}
+
+	private LocalDate[] range(String from, String to) {
+		LocalDate end = to == null ? LocalDate.now() : date("to", to);
+		LocalDate start = from == null ? end.minusDays(DEFAULT_DAYS - 1) : date("from", from);
+		if (start.isAfter(end)) {
+			throw new IllegalArgumentException("from must not be after to.");
+		}
+		if (ChronoUnit.DAYS.between(start, end) >= maxDays) {
+			throw new IllegalArgumentException("A report covers at most " + maxDays + " days.");
+		}
+		return new LocalDate[] { start, end };
+	}
+
+	private static LocalDate date(String name, String value) {
+		try {
+			return LocalDate.parse(value);
+		} catch (DateTimeParseException e) {
+			throw new IllegalArgumentException(name + " must be a date as yyyy-MM-dd.");
+		}
+	}
+}
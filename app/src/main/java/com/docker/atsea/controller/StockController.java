@@ -0,0 +1,178 @@
+package com.docker.atsea.controller;
+
+import java.util.Map;
+
+import jakarta.annotation.PostConstruct;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestAttribute;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import com.docker.atsea.model.Customer;
+import com.docker.atsea.model.StockReservation;
+import com.docker.atsea.security.RateLimiter;
+import com.docker.atsea.service.CustomerService;
+import com.docker.atsea.service.InsufficientStockException;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockService;
+import com.docker.atsea.util.CustomErrorType;
+
+import io.jsonwebtoken.Claims;
+
+/*
+ * Stock levels, restocking and holds. Every endpoint sits behind the JWT
+ * filter; holds belong to the logged-in customer, and each customer may only
+ * place so many of them a second.
+ */
+@RestController
+@RequestMapping("/api")
+public class StockController {
+
+	public static final Logger logger = LoggerFactory.getLogger(StockController.class);
+
+	@Autowired
+	StockService stockService;
+
+	@Autowired
+	CustomerService customerService;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Value("${atsea.stock.reservation.permitsPerSecond:1}")
+	private double reservationsPerSecond;
+
+	@Value("${atsea.stock.reservation.burst:10}")
+	private int reservationBurst;
+
+	@Value("${atsea.ratelimit.maxKeys:100000}")
+	private int maxKeys;
+
+	@Value("${atsea.ratelimit.overflowBuckets:4096}")
+	private int overflowBuckets;
+
+	private RateLimiter reservationLimiter;
+
+	@PostConstruct
+	public void createLimiter() {
+		reservationLimiter = new RateLimiter(reservationsPerSecond, reservationBurst, maxKeys, overflowBuckets);
+	}
+
+	private static class StockChange {
+		public long quantity;
+	}
+
+	private static class ReservationRequest {
+		public Map<Integer, Integer> productsOrdered;
+	}
+
+	// -------------------------------------------------------------------
+	//                   Stock methods
+	//--------------------------------------------------------------------
+
+	// -------------------Retrieve Stock for a Product------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/stock/{productId}", method = RequestMethod.GET)
+	public ResponseEntity<?> getStock(@PathVariable("productId") long productId) {
+		if (!stockService.isTracked(productId)) {
+			return new ResponseEntity(new CustomErrorType("Stock for product " + productId + " is not tracked"),
+					HttpStatus.NOT_FOUND);
+		}
+		JSONObject stock = new JSONObject();
+		stock.put("productId", productId);
+		stock.put("available", stockService.available(productId));
+		return new ResponseEntity<JSONObject>(stock, HttpStatus.OK);
+	}
+
+	// -------------------Restock a Product------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/stock/{productId}", method = RequestMethod.POST)
+	public ResponseEntity<?> addStock(@PathVariable("productId") long productId, @RequestBody StockChange change) {
+		if (productCache.get(productId) == null) {
+			return new ResponseEntity(new CustomErrorType("Product with id " + productId + " not found"), HttpStatus.NOT_FOUND);
+		}
+		if (change.quantity <= 0) {
+			return new ResponseEntity(new CustomErrorType("Unable to restock. Quantity must be positive."), HttpStatus.BAD_REQUEST);
+		}
+		logger.info("Adding {} units of stock for product {}", change.quantity, productId);
+		stockService.addStock(productId, change.quantity);
+		return getStock(productId);
+	}
+
+	// -------------------Reserve Stock------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/stock/reservation/", method = RequestMethod.POST)
+	public ResponseEntity<?> reserve(@RequestAttribute(name = "claims", required = false) Claims claims,
+			@RequestBody(required = false) ReservationRequest request) {
+		Customer customer = customer(claims);
+		if (customer == null) {
+			return new ResponseEntity(new CustomErrorType("Unable to reserve stock. No customer is logged in."),
+					HttpStatus.FORBIDDEN);
+		}
+		long waitNanos = reservationLimiter.tryAcquire(customer.getCustomerId().toString());
+		if (waitNanos > 0) {
+			logger.warn("Rate limited stock reservations for customer {}", customer.getCustomerId());
+			return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+					.header("Retry-After", String.valueOf(Math.max(1, (waitNanos + 999999999L) / 1000000000L)))
+					.body(new CustomErrorType("Too many reservations, please retry later."));
+		}
+		Map<Integer, Integer> productsOrdered = request == null ? null : request.productsOrdered;
+		if (productsOrdered != null) {
+			for (Integer productId : productsOrdered.keySet()) {
+				if (productId == null || productCache.get(productId) == null) {
+					return new ResponseEntity(new CustomErrorType("Unable to reserve stock. Product with id " + productId
+							+ " not found."), HttpStatus.BAD_REQUEST);
+				}
+			}
+		}
+		try {
+			StockReservation reservation = stockService.reserve(customer.getCustomerId(), productsOrdered);
+			return new ResponseEntity<StockReservation>(reservation, HttpStatus.CREATED);
+		} catch (InsufficientStockException e) {
+			logger.info("Unable to reserve stock. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to reserve stock. " + e.getMessage()), HttpStatus.CONFLICT);
+		} catch (IllegalArgumentException e) {
+			logger.info("Unable to reserve stock. {}", e.getMessage());
+			return new ResponseEntity(new CustomErrorType("Unable to reserve stock. " + e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+	}
+
+	// -------------------Release Reserved Stock------------------------------------------
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value = "/stock/reservation/{reservationId}", method = RequestMethod.DELETE)
+	public ResponseEntity<?> release(@RequestAttribute(name = "claims", required = false) Claims claims,
+			@PathVariable("reservationId") String reservationId) {
+		Customer customer = customer(claims);
+		// Another customer's hold is reported as missing, so holds cannot be probed for.
+		if (customer == null || !stockService.release(reservationId, customer.getCustomerId())) {
+			return new ResponseEntity(new CustomErrorType("Reservation " + reservationId + " not found"),
+					HttpStatus.NOT_FOUND);
+		}
+		return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.ratelimit.evictionIntervalMillis:60000}")
+	public void evictIdle() {
+		reservationLimiter.evictIdle();
+	}
+
+	// The customer the token was issued to, whose username is the token's subject.
+	private Customer customer(Claims claims) {
+		return claims == null || claims.getSubject() == null ? null : customerService.findByUserName(claims.getSubject());
+	}
+}
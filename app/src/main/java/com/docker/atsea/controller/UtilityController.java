@@ -2,12 +2,36 @@ package com.docker.atsea.controller;
 
 import org.json.simple.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.ApplicationAvailability;
+import org.springframework.boot.availability.ReadinessState;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.invalidation.PostgresInvalidationBus;
+import com.docker.atsea.jdbc.QueryStats;
+import com.docker.atsea.outbox.OutboxDispatcher;
+import com.docker.atsea.payment.FakePaymentGateway;
+import com.docker.atsea.payment.PaymentClient;
+import com.docker.atsea.security.ConcurrencyLimiter;
+import com.docker.atsea.security.RateLimitFilter;
+import com.docker.atsea.service.BulkDelete;
+import com.docker.atsea.service.CustomerService;
+import com.docker.atsea.service.IdempotencyService;
+import com.docker.atsea.service.OrderPartitions;
+import com.docker.atsea.service.OrderService;
+import com.docker.atsea.service.ProductService;
+import com.docker.atsea.service.Recommendations;
+import com.docker.atsea.service.ReportService;
+import com.docker.atsea.service.SingleFlight;
+import com.docker.atsea.service.StockService;
+import com.docker.atsea.startup.StartupReport;
+import com.docker.atsea.startup.Warmup;
 import com.docker.atsea.util.CustomErrorType;
 
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -16,6 +40,14 @@ import org.slf4j.LoggerFactory;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 @RestController
@@ -26,13 +58,75 @@ public class UtilityController {
 	
 	@Autowired
 	JdbcTemplate jdbcTemplate;
+	
+	@Autowired
+	PaymentClient paymentClient;
+	
+	@Autowired
+	OutboxDispatcher outboxDispatcher;
+	
+	@Autowired
+	RateLimitFilter rateLimitFilter;
+	
+	@Autowired
+	OrderService orderService;
+	
+	@Autowired
+	IdempotencyService idempotencyService;
+	
+	@Autowired
+	ProductService productService;
+	
+	@Autowired
+	CustomerService customerService;
+	
+	@Autowired
+	BulkDelete bulkDelete;
+	
+	@Autowired
+	ReportService reportService;
+	
+	@Autowired
+	OrderPartitions orderPartitions;
+	
+	@Autowired
+	QueryStats queryStats;
+	
+	@Autowired
+	StartupReport startupReport;
+	
+	@Autowired
+	Warmup warmup;
+	
+	@Autowired
+	ApplicationAvailability applicationAvailability;
+	
+	@Autowired
+	InvalidationBus invalidationBus;
+	
+	@Autowired
+	Recommendations recommendations;
+	
+	@Autowired
+	StockService stockService;
+	
+	private final AtomicLong stubEventsReceived = new AtomicLong();
+	
+	private static class GatewayDegradation {
+		public Long latencyMillis;
+		public Double failureRate;
+	}
 
 	
 	// ---------------------Healthcheck -----------------------------------
+	// Unavailable until the application is ready, which is after the warm-up.
 	@SuppressWarnings("unchecked")
 	@RequestMapping(value="/healthcheck/", method = RequestMethod.GET)
     public ResponseEntity<?> healthCheck() {
     	logger.info("Performing healthcheck");
+    	if (applicationAvailability.getReadinessState() != ReadinessState.ACCEPTING_TRAFFIC) {
+    		return new ResponseEntity<Object>(new CustomErrorType("Warming up."), HttpStatus.SERVICE_UNAVAILABLE);
+    	}
     	JSONObject healthcheck = new JSONObject();
     	try
     	{
@@ -66,5 +160,263 @@ public class UtilityController {
 		
 	}
 	
+	// -----------------------Payment client status -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/payment/", method = RequestMethod.GET)
+	public ResponseEntity<?> paymentStatus() {
+		JSONObject status = new JSONObject();
+		status.put("circuit", paymentClient.getCircuitState().toString());
+		status.put("inFlight", paymentClient.getInFlight());
+		status.put("attempts", paymentClient.getAttempts());
+		status.put("approved", paymentClient.getApproved());
+		status.put("failed", paymentClient.getFailed());
+		status.put("timedOut", paymentClient.getTimedOut());
+		status.put("rejected", paymentClient.getRejected());
+		if (paymentClient.getGateway() instanceof FakePaymentGateway) {
+			FakePaymentGateway fake = (FakePaymentGateway) paymentClient.getGateway();
+			status.put("fakeLatencyMillis", fake.getLatencyMillis());
+			status.put("fakeFailureRate", fake.getFailureRate());
+		}
+		return new ResponseEntity<JSONObject>(status, HttpStatus.OK);
+	}
+	
+	// -----------------------Degrade the fake payment gateway -------------------------------------
+	@RequestMapping(value="/payment/fake/", method = RequestMethod.PUT)
+	public ResponseEntity<?> degradePaymentGateway(@RequestBody GatewayDegradation degradation) {
+		if (!(paymentClient.getGateway() instanceof FakePaymentGateway)) {
+			return new ResponseEntity<Object>(new CustomErrorType("The fake payment gateway is not in use."), HttpStatus.NOT_FOUND);
+		}
+		FakePaymentGateway fake = (FakePaymentGateway) paymentClient.getGateway();
+		if (degradation.latencyMillis != null) {
+			fake.setLatencyMillis(degradation.latencyMillis);
+		}
+		if (degradation.failureRate != null) {
+			fake.setFailureRate(degradation.failureRate);
+		}
+		logger.info("Fake payment gateway now at {} ms latency, {} failure rate", fake.getLatencyMillis(), fake.getFailureRate());
+		return paymentStatus();
+	}
+	
+	// -----------------------Outbox dispatcher status -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/outbox/", method = RequestMethod.GET)
+	public ResponseEntity<?> outboxStatus() {
+		long[] pending = outboxDispatcher.pending();
+		JSONObject status = new JSONObject();
+		status.put("pending", pending[0]);
+		status.put("oldestPendingAgeMillis", pending[1]);
+		status.put("dispatched", outboxDispatcher.getDispatched());
+		status.put("batches", outboxDispatcher.getBatches());
+		status.put("failedBatches", outboxDispatcher.getFailedBatches());
+		status.put("abandoned", outboxDispatcher.getAbandoned());
+		status.put("eventsPerSecond", outboxDispatcher.getEventsPerSecond());
+		status.put("lastLagMillis", outboxDispatcher.getLastLagMillis());
+		status.put("maxLagMillis", outboxDispatcher.getMaxLagMillis());
+		status.put("stubEventsReceived", stubEventsReceived.get());
+		return new ResponseEntity<JSONObject>(status, HttpStatus.OK);
+	}
+	
+	// -----------------------Outbox HTTP sink stub -------------------------------------
+	@RequestMapping(value="/outbox/stub/", method = RequestMethod.POST)
+	public ResponseEntity<?> outboxStub(@RequestBody List<Map<String, Object>> events) {
+		logger.debug("Outbox stub received {} events", events.size());
+		stubEventsReceived.addAndGet(events.size());
+		return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+	}
+
+	// -----------------------Login and signup rate limiting -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/ratelimit/", method = RequestMethod.GET)
+	public ResponseEntity<?> rateLimitStatus() {
+		ConcurrencyLimiter concurrency = rateLimitFilter.getConcurrencyLimiter();
+		JSONObject status = new JSONObject();
+		status.put("allowed", rateLimitFilter.getAllowed());
+		status.put("limitedByAddress", rateLimitFilter.getLimitedByAddress());
+		status.put("limitedByUsername", rateLimitFilter.getLimitedByUsername());
+		status.put("shed", rateLimitFilter.getShed());
+		status.put("trackedKeys", rateLimitFilter.getTrackedKeys());
+		status.put("concurrencyLimit", concurrency.getLimit());
+		status.put("inFlight", concurrency.getInFlight());
+		status.put("baselineLatencyMicros", concurrency.getBaselineMicros());
+		return new ResponseEntity<JSONObject>(status, HttpStatus.OK);
+	}
+
+	// -----------------------Coalesced lookups -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/coalescing/", method = RequestMethod.GET)
+	public ResponseEntity<?> coalescingStatus() {
+		JSONObject status = new JSONObject();
+		for (SingleFlight<?, ?> lookups : new SingleFlight<?, ?>[] { productService.getLookups(), customerService.getLookups() }) {
+			JSONObject counts = new JSONObject();
+			counts.put("loads", lookups.getLoads());
+			counts.put("coalesced", lookups.getCoalesced());
+			counts.put("timedOut", lookups.getTimedOut());
+			counts.put("maxWaiting", lookups.getMaxWaiting());
+			counts.put("inFlight", lookups.getInFlight());
+			status.put(lookups.getName(), counts);
+		}
+		return new ResponseEntity<JSONObject>(status, HttpStatus.OK);
+	}
+
+	// -----------------------Cache invalidation -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/invalidation/", method = RequestMethod.GET)
+	public ResponseEntity<?> invalidationStatus() {
+		JSONObject status = new JSONObject();
+		status.put("mode", invalidationBus.getMode());
+		status.put("listening", invalidationBus.isListening());
+		status.put("published", invalidationBus.getPublished());
+		status.put("received", invalidationBus.getReceived());
+		status.put("delivered", invalidationBus.getDelivered());
+		if (invalidationBus instanceof PostgresInvalidationBus) {
+			status.put("reconnects", ((PostgresInvalidationBus) invalidationBus).getReconnects());
+		}
+		return new ResponseEntity<JSONObject>(status, HttpStatus.OK);
+	}
+
+	// -----------------------Statement timings -------------------------------------
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="/queries/", method = RequestMethod.GET)
+	public ResponseEntity<?> queryStats(@RequestParam(value = "limit", defaultValue = "20") int limit,
+			@RequestParam(value = "sort", defaultValue = "total") String sort) {
+		if (limit < 1) {
+			return new ResponseEntity(new CustomErrorType("limit must be at least 1."), HttpStatus.BAD_REQUEST);
+		}
+		JSONObject result = new JSONObject();
+		try {
+			result.put("statements", queryStats.top(limit, sort));
+		} catch (IllegalArgumentException e) {
+			return new ResponseEntity(new CustomErrorType(e.getMessage()), HttpStatus.BAD_REQUEST);
+		}
+		result.put("since", queryStats.getSince().toString());
+		return new ResponseEntity<JSONObject>(result, HttpStatus.OK);
+	}
+
+	@RequestMapping(value="/queries/", method = RequestMethod.DELETE)
+	public ResponseEntity<?> resetQueryStats() {
+		queryStats.reset();
+		return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+	}
+
+	// -----------------------Startup timeline -------------------------------------
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="/startup/", method = RequestMethod.GET)
+	public ResponseEntity<?> startupReport(@RequestParam(value = "limit", defaultValue = "20") int limit) {
+		if (limit < 1) {
+			return new ResponseEntity(new CustomErrorType("limit must be at least 1."), HttpStatus.BAD_REQUEST);
+		}
+		return new ResponseEntity<JSONObject>(startupReport.report(limit), HttpStatus.OK);
+	}
+
+	// -----------------------Warm-up -------------------------------------
+	@RequestMapping(value="/warmup/", method = RequestMethod.GET)
+	public ResponseEntity<?> warmupReport() {
+		JSONObject report = warmup.getReport();
+		if (report == null) {
+			return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+		}
+		return new ResponseEntity<JSONObject>(report, HttpStatus.OK);
+	}
+
+	// -----------------------Purge old orders -------------------------------------
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="/orders/", method = RequestMethod.DELETE)
+	public ResponseEntity<?> purgeOrders(@RequestParam("before") String before) {
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd");
+		format.setLenient(false);
+		Date cutoff;
+		try {
+			cutoff = format.parse(before);
+		} catch (ParseException e) {
+			return new ResponseEntity(new CustomErrorType("before must be a date as yyyy-MM-dd."), HttpStatus.BAD_REQUEST);
+		}
+		long started = System.currentTimeMillis();
+		long deleted = orderService.deleteOrdersBefore(cutoff);
+		logger.info("Purged {} orders placed before {}", deleted, before);
+		JSONObject result = new JSONObject();
+		result.put("deleted", deleted);
+		result.put("millis", System.currentTimeMillis() - started);
+		return new ResponseEntity<JSONObject>(result, HttpStatus.OK);
+	}
+
+	// -----------------------Backfill sales rollups -------------------------------------
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="/report/backfill", method = RequestMethod.POST)
+	public ResponseEntity<?> backfillReports(@RequestParam(value = "from", required = false) String from,
+			@RequestParam(value = "to", required = false) String to) {
+		LocalDate start;
+		LocalDate end;
+		try {
+			start = from == null ? null : LocalDate.parse(from);
+			end = to == null ? null : LocalDate.parse(to);
+		} catch (DateTimeParseException e) {
+			return new ResponseEntity(new CustomErrorType("from and to must be dates as yyyy-MM-dd."), HttpStatus.BAD_REQUEST);
+		}
+		long started = System.currentTimeMillis();
+		int days = reportService.backfill(start, end);
+		logger.info("Backfilled sales rollups for {} days", days);
+		JSONObject result = new JSONObject();
+		result.put("days", days);
+		result.put("millis", System.currentTimeMillis() - started);
+		return new ResponseEntity<JSONObject>(result, HttpStatus.OK);
+	}
+
+	// -----------------------Rebuild order views -------------------------------------
+	@SuppressWarnings("unchecked")
+	@RequestMapping(value="/orderview/rebuild", method = RequestMethod.POST)
+	public ResponseEntity<JSONObject> rebuildOrderViews() {
+		long started = System.currentTimeMillis();
+		long views = orderService.rebuildViews();
+		logger.info("Rebuilt {} order views", views);
+		JSONObject result = new JSONObject();
+		result.put("views", views);
+		result.put("millis", System.currentTimeMillis() - started);
+		return new ResponseEntity<JSONObject>(result, HttpStatus.OK);
+	}
+
+	// -----------------------Recommendations -------------------------------------
+	@RequestMapping(value="/recommendations/", method = RequestMethod.GET)
+	public ResponseEntity<JSONObject> getRecommendations() {
+		return new ResponseEntity<JSONObject>(recommendations.getStatus(), HttpStatus.OK);
+	}
+
+	// -----------------------Rebuild recommendations -------------------------------------
+	// Counts the whole order history again, in parallel ranges of order ids.
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@RequestMapping(value="/recommendations/rebuild", method = RequestMethod.POST)
+	public ResponseEntity<?> rebuildRecommendations() {
+		long started = System.currentTimeMillis();
+		long orders;
+		try {
+			orders = recommendations.rebuild();
+		} catch (IllegalStateException e) {
+			return new ResponseEntity(new CustomErrorType(e.getMessage()), HttpStatus.CONFLICT);
+		}
+		logger.info("Rebuilt recommendations from {} orders", orders);
+		JSONObject result = new JSONObject();
+		result.put("orders", orders);
+		result.put("millis", System.currentTimeMillis() - started);
+		return new ResponseEntity<JSONObject>(result, HttpStatus.OK);
+	}
+
+	// -----------------------Maintain order partitions -------------------------------------
+	@RequestMapping(value="/partitions/", method = RequestMethod.POST)
+	public ResponseEntity<Map<String, List<String>>> maintainPartitions() {
+		logger.info("Running order partition maintenance");
+		return new ResponseEntity<Map<String, List<String>>>(orderPartitions.maintain(), HttpStatus.OK);
+	}
+
+	// -----------------------Reset customer and order data -------------------------------------
+	@RequestMapping(value="/data/", method = RequestMethod.DELETE)
+	public ResponseEntity<?> resetData() {
+		logger.warn("Resetting all customer and order data");
+		// Orders go through the order service so their stock goes back on sale with them; holds belonged to the customers.
+		stockService.releaseAll();
+		orderService.deleteAllItems();
+		bulkDelete.truncate("orderquantities", "orderprices", "order_view", "orders", "outbox", "customer", "idempotency_key");
+		idempotencyService.clearCache();
+		invalidationBus.publish(InvalidationBus.CUSTOMER, null);
+		return new ResponseEntity<Object>(HttpStatus.NO_CONTENT);
+	}
 
 }
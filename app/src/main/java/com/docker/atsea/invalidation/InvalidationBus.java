@@ -0,0 +1,36 @@
+package com.docker.atsea.invalidation;
+
+import java.util.function.Consumer;
+
+/*
+ * Tells every application server that rows they may have cached have changed.
+ * The service layer publishes the key of the changed row, or null when a whole
+ * table changed. Inside a transaction, nothing is sent until it commits, and
+ * nothing at all if it rolls back. Listeners hear about this node's writes as
+ * well as other nodes'.
+ */
+public interface InvalidationBus {
+
+	String PRODUCT = "product";
+
+	String CUSTOMER = "customer";
+
+	// A product_stock row was added; every node starts tracking the product.
+	String STOCK = "stock";
+
+	void publish(String topic, String key);
+
+	// The listener is given the changed key, or null for everything in the topic.
+	void subscribe(String topic, Consumer<String> listener);
+
+	String getMode();
+
+	long getPublished();
+
+	long getDelivered();
+
+	// Messages from other nodes.
+	long getReceived();
+
+	boolean isListening();
+}
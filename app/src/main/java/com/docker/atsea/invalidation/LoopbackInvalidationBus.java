@@ -0,0 +1,93 @@
+package com.docker.atsea.invalidation;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/*
+ * Delivers invalidations to listeners in this JVM only, once the publishing
+ * transaction commits. Used with H2 and in tests, where there is one node.
+ */
+public class LoopbackInvalidationBus implements InvalidationBus {
+
+	public static final Logger logger = LoggerFactory.getLogger(LoopbackInvalidationBus.class);
+
+	private final Map<String, List<Consumer<String>>> listeners = new ConcurrentHashMap<String, List<Consumer<String>>>();
+
+	private final AtomicLong published = new AtomicLong();
+
+	private final AtomicLong delivered = new AtomicLong();
+
+	public void publish(final String topic, final String key) {
+		published.incrementAndGet();
+		send(topic, key);
+		if (TransactionSynchronizationManager.isSynchronizationActive()) {
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					deliver(topic, key);
+				}
+			});
+		} else {
+			deliver(topic, key);
+		}
+	}
+
+	public void subscribe(String topic, Consumer<String> listener) {
+		listeners.computeIfAbsent(topic, t -> new CopyOnWriteArrayList<Consumer<String>>()).add(listener);
+	}
+
+	// Sends the invalidation to the other nodes, in the caller's transaction. There are none here.
+	protected void send(String topic, String key) {
+	}
+
+	protected void deliver(String topic, String key) {
+		List<Consumer<String>> subscribed = listeners.get(topic);
+		if (subscribed == null) {
+			return;
+		}
+		for (Consumer<String> listener : subscribed) {
+			try {
+				listener.accept(key);
+				delivered.incrementAndGet();
+			} catch (RuntimeException e) {
+				logger.warn("Invalidating {} {} failed: {}", topic, key == null ? "(all)" : key, e.toString());
+			}
+		}
+	}
+
+	// Everything in every topic, for when invalidations may have been missed.
+	protected void deliverAll() {
+		for (String topic : listeners.keySet()) {
+			deliver(topic, null);
+		}
+	}
+
+	public String getMode() {
+		return "loopback";
+	}
+
+	public long getPublished() {
+		return published.get();
+	}
+
+	public long getDelivered() {
+		return delivered.get();
+	}
+
+	public long getReceived() {
+		return 0;
+	}
+
+	public boolean isListening() {
+		return true;
+	}
+}
@@ -0,0 +1,148 @@
+package com.docker.atsea.invalidation;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+ * Invalidations between application servers sharing a PostgreSQL database.
+ * publish runs pg_notify in the caller's transaction, so PostgreSQL only
+ * delivers it once that transaction commits. Each node keeps one connection
+ * of its own, outside the pool, LISTENing on the channel. Messages carry the
+ * sending node's id, and a node skips its own, which it has already delivered
+ * locally. After losing the connection a node may have missed messages, so on
+ * reconnecting it invalidates everything.
+ */
+public class PostgresInvalidationBus extends LoopbackInvalidationBus {
+
+	public static final Logger logger = LoggerFactory.getLogger(PostgresInvalidationBus.class);
+
+	public static final String CHANNEL = "atsea_invalidation";
+
+	private static final String ALL = "*";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final String url;
+
+	private final String username;
+
+	private final String password;
+
+	private final int pollMillis;
+
+	private final String node = UUID.randomUUID().toString();
+
+	private final AtomicLong received = new AtomicLong();
+
+	private final AtomicLong reconnects = new AtomicLong();
+
+	private volatile boolean running;
+
+	private volatile boolean listening;
+
+	private Thread listener;
+
+	public PostgresInvalidationBus(JdbcTemplate jdbcTemplate, String url, String username, String password, int pollMillis) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.pollMillis = pollMillis;
+	}
+
+	public synchronized void start() {
+		running = true;
+		listener = new Thread(this::listen, "invalidation-listener");
+		listener.setDaemon(true);
+		listener.start();
+	}
+
+	public synchronized void close() {
+		running = false;
+		if (listener != null) {
+			listener.interrupt();
+		}
+	}
+
+	@Override
+	protected void send(String topic, String key) {
+		jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, node + " " + topic + " " + (key == null ? ALL : key));
+	}
+
+	private void listen() {
+		boolean connectedBefore = false;
+		while (running) {
+			try (Connection connection = DriverManager.getConnection(url, username, password);
+					Statement statement = connection.createStatement()) {
+				statement.execute("LISTEN " + CHANNEL);
+				listening = true;
+				if (connectedBefore) {
+					reconnects.incrementAndGet();
+					logger.info("Listening for invalidations again; invalidating all cached data");
+					deliverAll();
+				} else {
+					logger.info("Listening for invalidations on channel {} as node {}", CHANNEL, node);
+				}
+				connectedBefore = true;
+				PGConnection notifications = connection.unwrap(PGConnection.class);
+				while (running) {
+					PGNotification[] batch = notifications.getNotifications(pollMillis);
+					if (batch != null) {
+						for (PGNotification notification : batch) {
+							receive(notification.getParameter());
+						}
+					}
+				}
+			} catch (SQLException e) {
+				listening = false;
+				if (running) {
+					logger.warn("Invalidation listener lost its connection, retrying in 1s: {}", e.toString());
+					try {
+						Thread.sleep(1000);
+					} catch (InterruptedException interrupted) {
+						return;
+					}
+				}
+			}
+		}
+		listening = false;
+	}
+
+	private void receive(String payload) {
+		String[] parts = payload.split(" ", 3);
+		if (parts.length != 3 || parts[0].equals(node)) {
+			return;
+		}
+		received.incrementAndGet();
+		deliver(parts[1], ALL.equals(parts[2]) ? null : parts[2]);
+	}
+
+	@Override
+	public String getMode() {
+		return "postgres";
+	}
+
+	@Override
+	public long getReceived() {
+		return received.get();
+	}
+
+	@Override
+	public boolean isListening() {
+		return listening;
+	}
+
+	public long getReconnects() {
+		return reconnects.get();
+	}
+}
@@ -0,0 +1,272 @@
+package com.docker.atsea.jdbc;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Statement timings, aggregated per SQL fingerprint: the statement with its
+ * literals replaced by ? and its lists of parameters collapsed, so every
+ * execution of one query lands in one entry whatever its arguments. Each entry
+ * keeps a count, total and maximum time, rows and a log-linear histogram of
+ * times for percentiles. Statements slower than slowMillis are logged.
+ */
+public class QueryStats {
+
+	public static final Logger logger = LoggerFactory.getLogger(QueryStats.class);
+
+	// Once maxStatements fingerprints are tracked, new ones are counted together under this one.
+	public static final String OTHER = "(other statements)";
+
+	private static final int MAX_CACHED_SQL = 10000;
+
+	// Eight buckets per power of two of microseconds, so a percentile is at most 12.5% high.
+	private static final int SUB_BITS = 3;
+
+	private static final int SUB_BUCKETS = 1 << SUB_BITS;
+
+	private static final int BUCKETS = (40 - SUB_BITS + 1) * SUB_BUCKETS;
+
+	private static final Pattern PARAMETER_LIST = Pattern.compile("\\(\\s*\\?(?:\\s*,\\s*\\?)*\\s*\\)");
+
+	private static final Pattern REPEATED_LISTS = Pattern.compile("\\(\\?\\.\\.\\.\\)(?:\\s*,\\s*\\(\\?\\.\\.\\.\\))+");
+
+	private static class Timings {
+
+		private final LongAdder count = new LongAdder();
+
+		private final LongAdder errors = new LongAdder();
+
+		private final LongAdder nanos = new LongAdder();
+
+		private final LongAdder rows = new LongAdder();
+
+		private final AtomicLong maxNanos = new AtomicLong();
+
+		private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+
+		private void record(long elapsed, long rowCount, boolean failed) {
+			count.increment();
+			nanos.add(elapsed);
+			rows.add(rowCount);
+			if (failed) {
+				errors.increment();
+			}
+			maxNanos.accumulateAndGet(elapsed, Math::max);
+			buckets.incrementAndGet(bucket(elapsed / 1000));
+		}
+
+		// Upper bound of the bucket holding the given percentile, in nanoseconds, but never above the maximum.
+		private long percentile(double percentile) {
+			long total = 0;
+			long[] counts = new long[BUCKETS];
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets.get(i);
+				total += counts[i];
+			}
+			long rank = (long) Math.ceil(total * percentile / 100);
+			long seen = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				seen += counts[i];
+				if (seen >= Math.max(rank, 1)) {
+					return Math.min(upperBound(i) * 1000, maxNanos.get());
+				}
+			}
+			return maxNanos.get();
+		}
+	}
+
+	private final long slowNanos;
+
+	private final int maxStatements;
+
+	private final Map<String, Timings> timings = new ConcurrentHashMap<String, Timings>();
+
+	private final Map<String, String> fingerprints = new ConcurrentHashMap<String, String>();
+
+	private volatile Instant since = Instant.now();
+
+	/*
+	 * slowMillis 0 logs every statement, and a negative slowMillis none.
+	 */
+	public QueryStats(long slowMillis, int maxStatements) {
+		this.slowNanos = slowMillis < 0 ? Long.MAX_VALUE : slowMillis * 1000000;
+		this.maxStatements = maxStatements;
+	}
+
+	/*
+	 * Records one execution of sql taking nanos, including fetching the rows
+	 * of a query. rows is the rows read or changed.
+	 */
+	public void record(String sql, long nanos, long rows, boolean failed) {
+		String fingerprint = fingerprint(sql);
+		Timings statement = timings.get(fingerprint);
+		if (statement == null) {
+			if (timings.size() >= maxStatements) {
+				fingerprint = OTHER;
+			}
+			statement = timings.computeIfAbsent(fingerprint, key -> new Timings());
+		}
+		statement.record(nanos, rows, failed);
+		if (nanos >= slowNanos) {
+			logger.warn("Slow statement ({} ms, {} rows{}): {}", String.format("%.1f", nanos / 1e6), rows,
+					failed ? ", failed" : "", fingerprint);
+		}
+	}
+
+	/*
+	 * The statements with the most of the given measure, one of total, count,
+	 * mean, p99, max or rows, most first.
+	 */
+	@SuppressWarnings("unchecked")
+	public List<JSONObject> top(int limit, String sort) {
+		Comparator<JSONObject> order;
+		switch (sort) {
+		case "total":
+		case "mean":
+		case "p99":
+		case "max":
+			order = Comparator.comparingDouble(statement -> (Double) statement.get(sort + "Millis"));
+			break;
+		case "count":
+		case "rows":
+			order = Comparator.comparingLong(statement -> (Long) statement.get(sort));
+			break;
+		default:
+			throw new IllegalArgumentException("sort must be one of total, count, mean, p99, max or rows.");
+		}
+		List<JSONObject> statements = new ArrayList<JSONObject>();
+		for (Map.Entry<String, Timings> entry : timings.entrySet()) {
+			Timings statement = entry.getValue();
+			long count = statement.count.sum();
+			JSONObject json = new JSONObject();
+			json.put("sql", entry.getKey());
+			json.put("count", count);
+			json.put("errors", statement.errors.sum());
+			json.put("rows", statement.rows.sum());
+			json.put("totalMillis", millis(statement.nanos.sum()));
+			json.put("meanMillis", millis(count == 0 ? 0 : statement.nanos.sum() / count));
+			json.put("p99Millis", millis(statement.percentile(99)));
+			json.put("maxMillis", millis(statement.maxNanos.get()));
+			statements.add(json);
+		}
+		statements.sort(order.reversed());
+		return statements.subList(0, Math.min(limit, statements.size()));
+	}
+
+	public Instant getSince() {
+		return since;
+	}
+
+	public void reset() {
+		timings.clear();
+		since = Instant.now();
+	}
+
+	/*
+	 * Fingerprints are cached by statement text, as most statements come from
+	 * Hibernate or JdbcTemplate with the same text every time.
+	 */
+	private String fingerprint(String sql) {
+		String fingerprint = fingerprints.get(sql);
+		if (fingerprint == null) {
+			fingerprint = fingerprintOf(sql);
+			if (fingerprints.size() < MAX_CACHED_SQL) {
+				fingerprints.put(sql, fingerprint);
+			}
+		}
+		return fingerprint;
+	}
+
+	/*
+	 * Replaces string and number literals with ?, drops comments, collapses
+	 * whitespace and turns each parenthesised list of parameters, such as an
+	 * IN list or the rows of a multi-row insert, into (?...).
+	 */
+	public static String fingerprintOf(String sql) {
+		StringBuilder out = new StringBuilder(sql.length());
+		int length = sql.length();
+		int i = 0;
+		while (i < length) {
+			char c = sql.charAt(i);
+			if (c == '\'') {
+				i++;
+				while (i < length && (sql.charAt(i) != '\'' || (i + 1 < length && sql.charAt(i + 1) == '\''))) {
+					i += sql.charAt(i) == '\'' ? 2 : 1;
+				}
+				out.append('?');
+				i++;
+			} else if (c == '"') {
+				int end = sql.indexOf('"', i + 1);
+				end = end < 0 ? length : end + 1;
+				out.append(sql, i, end);
+				i = end;
+			} else if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+				int end = sql.indexOf('\n', i);
+				i = end < 0 ? length : end;
+			} else if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+				int end = sql.indexOf("*/", i + 2);
+				i = end < 0 ? length : end + 2;
+			} else if (Character.isWhitespace(c)) {
+				while (i < length && Character.isWhitespace(sql.charAt(i))) {
+					i++;
+				}
+				if (out.length() > 0 && out.charAt(out.length() - 1) != ' ' && i < length) {
+					out.append(' ');
+				}
+			} else if (Character.isDigit(c) && !isIdentifierPart(out)) {
+				while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				out.append('?');
+			} else {
+				out.append(c);
+				i++;
+			}
+		}
+		String fingerprint = PARAMETER_LIST.matcher(out.toString().trim()).replaceAll(Matcher.quoteReplacement("(?...)"));
+		return REPEATED_LISTS.matcher(fingerprint).replaceAll(Matcher.quoteReplacement("(?...), ..."));
+	}
+
+	private static boolean isIdentifierPart(StringBuilder out) {
+		if (out.length() == 0) {
+			return false;
+		}
+		char last = out.charAt(out.length() - 1);
+		return Character.isLetterOrDigit(last) || last == '_' || last == '$';
+	}
+
+	static int bucket(long micros) {
+		if (micros < SUB_BUCKETS) {
+			return (int) Math.max(micros, 0);
+		}
+		int exponent = 63 - Long.numberOfLeadingZeros(micros);
+		int bucket = (exponent - SUB_BITS + 1) * SUB_BUCKETS + (int) ((micros >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+		return Math.min(bucket, BUCKETS - 1);
+	}
+
+	static long upperBound(int bucket) {
+		if (bucket < SUB_BUCKETS) {
+			return bucket;
+		}
+		int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+		long sub = bucket % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+	}
+
+	private static double millis(long nanos) {
+		return Math.round(nanos / 1000.0) / 1000.0;
+	}
+}
@@ -0,0 +1,247 @@
+package com.docker.atsea.jdbc;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import javax.sql.DataSource;
+
+/*
+ * Wraps a DataSource so every statement run on its connections is timed into
+ * QueryStats. The time of a query runs from execute to its last row, counting
+ * only the time spent in the driver, so rows read slowly by the caller do not
+ * make a query look slow. Anything unwrapped, such as the pool's own
+ * DataSource or the driver's connection, is the object underneath.
+ */
+public final class TimedDataSource {
+
+	private TimedDataSource() {
+	}
+
+	public static DataSource wrap(DataSource dataSource, QueryStats stats) {
+		return proxy(DataSource.class, new Forwarding(dataSource) {
+			@Override
+			Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+				Object result = forward(method, args);
+				return result instanceof Connection ? proxy(Connection.class, new TimedConnection((Connection) result, stats)) : result;
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return (T) Proxy.newProxyInstance(TimedDataSource.class.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+
+	private abstract static class Forwarding implements InvocationHandler {
+
+		final Object target;
+
+		Forwarding(Object target) {
+			this.target = target;
+		}
+
+		@Override
+		public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "equals":
+				return proxy == args[0];
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			default:
+				return handle(proxy, method, args);
+			}
+		}
+
+		abstract Object handle(Object proxy, Method method, Object[] args) throws Throwable;
+
+		Object forward(Method method, Object[] args) throws Throwable {
+			try {
+				return method.invoke(target, args);
+			} catch (InvocationTargetException e) {
+				throw e.getCause();
+			}
+		}
+	}
+
+	private static class TimedConnection extends Forwarding {
+
+		private final QueryStats stats;
+
+		TimedConnection(Connection connection, QueryStats stats) {
+			super(connection);
+			this.stats = stats;
+		}
+
+		@Override
+		Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+			switch (method.getName()) {
+			case "createStatement":
+				return proxy(Statement.class, new TimedStatement(forward(method, args), null, stats));
+			case "prepareStatement":
+				return proxy(PreparedStatement.class, new TimedStatement(forward(method, args), (String) args[0], stats));
+			case "prepareCall":
+				return proxy(CallableStatement.class, new TimedStatement(forward(method, args), (String) args[0], stats));
+			default:
+				return forward(method, args);
+			}
+		}
+	}
+
+	/*
+	 * An execution waiting for its rows. It is recorded once, when its result
+	 * set is read to the end or closed, or its statement closed or run again.
+	 */
+	private static class Execution {
+
+		private final QueryStats stats;
+
+		private final String sql;
+
+		private long nanos;
+
+		private long rows;
+
+		private boolean recorded;
+
+		Execution(QueryStats stats, String sql, long nanos) {
+			this.stats = stats;
+			this.sql = sql;
+			this.nanos = nanos;
+		}
+
+		void record() {
+			if (!recorded) {
+				recorded = true;
+				stats.record(sql, nanos, rows, false);
+			}
+		}
+	}
+
+	private static class TimedStatement extends Forwarding {
+
+		private final String sql;
+
+		private final QueryStats stats;
+
+		// The SQL of the first statement added to a batch on a plain Statement.
+		private String batchSql;
+
+		private Execution open;
+
+		TimedStatement(Object statement, String sql, QueryStats stats) {
+			super(statement);
+			this.sql = sql;
+			this.stats = stats;
+		}
+
+		@Override
+		Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+			String name = method.getName();
+			if (name.startsWith("execute")) {
+				return execute(method, args);
+			}
+			switch (name) {
+			case "getResultSet":
+				Object resultSet = forward(method, args);
+				return resultSet == null || open == null ? resultSet : timed((ResultSet) resultSet, open);
+			case "addBatch":
+				if (batchSql == null && args != null && args.length == 1) {
+					batchSql = (String) args[0];
+				}
+				return forward(method, args);
+			case "clearBatch":
+				batchSql = null;
+				return forward(method, args);
+			case "close":
+				finish();
+				return forward(method, args);
+			default:
+				return forward(method, args);
+			}
+		}
+
+		private Object execute(Method method, Object[] args) throws Throwable {
+			finish();
+			String text = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0]
+					: sql != null ? sql : batchSql != null ? batchSql : "(batch)";
+			long started = System.nanoTime();
+			Object result;
+			try {
+				result = forward(method, args);
+			} catch (Throwable e) {
+				stats.record(text, System.nanoTime() - started, 0, true);
+				throw e;
+			}
+			long nanos = System.nanoTime() - started;
+			if (method.getName().endsWith("Batch")) {
+				batchSql = null;
+			}
+			if (result instanceof ResultSet) {
+				open = new Execution(stats, text, nanos);
+				return timed((ResultSet) result, open);
+			}
+			if (Boolean.TRUE.equals(result)) {
+				// Rows come from getResultSet.
+				open = new Execution(stats, text, nanos);
+				return result;
+			}
+			stats.record(text, nanos, rows(result), false);
+			return result;
+		}
+
+		private void finish() {
+			if (open != null) {
+				open.record();
+				open = null;
+			}
+		}
+
+		private static long rows(Object result) {
+			long rows = 0;
+			if (result instanceof Number) {
+				rows = ((Number) result).longValue();
+			} else if (result instanceof int[]) {
+				for (int count : (int[]) result) {
+					rows += Math.max(count, 0);
+				}
+			} else if (result instanceof long[]) {
+				for (long count : (long[]) result) {
+					rows += Math.max(count, 0);
+				}
+			}
+			return Math.max(rows, 0);
+		}
+
+		private static ResultSet timed(ResultSet resultSet, Execution execution) {
+			return proxy(ResultSet.class, new Forwarding(resultSet) {
+				@Override
+				Object handle(Object proxy, Method method, Object[] args) throws Throwable {
+					switch (method.getName()) {
+					case "next":
+						long started = System.nanoTime();
+						Object more = forward(method, args);
+						execution.nanos += System.nanoTime() - started;
+						if (Boolean.TRUE.equals(more)) {
+							execution.rows++;
+						} else {
+							execution.record();
+						}
+						return more;
+					case "close":
+						execution.record();
+						return forward(method, args);
+					default:
+						return forward(method, args);
+					}
+				}
+			});
+		}
+	}
+}
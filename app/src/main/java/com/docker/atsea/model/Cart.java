@@ -0,0 +1,118 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * Server-side shopping cart. Carts are held in memory by the CartService and
+ * are never persisted; only checkout turns a cart into an Order.
+ */
+@JsonInclude(Include.NON_NULL)
+public class Cart implements Serializable {
+
+	private static final long serialVersionUID = -2215793046771185431L;
+
+	private Long customerId;
+
+	private Long orderId;
+
+	private Map<Integer, Integer> productsOrdered = new HashMap<Integer, Integer>();
+
+	// Current catalog price of each line.
+	private Map<Integer, Double> linePrices = new HashMap<Integer, Double>();
+
+	// Products in the cart that have left the catalog; left out of the total, and block checkout.
+	private List<Integer> unavailable = new ArrayList<Integer>();
+
+	private Double total;
+
+	@JsonIgnore
+	private long lastAccess;
+
+	public Cart() {
+
+	}
+
+	public Cart(Long customerId) {
+		this.customerId = customerId;
+		this.lastAccess = System.currentTimeMillis();
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public void setCustomerId(Long customerId) {
+		this.customerId = customerId;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(Long orderId) {
+		this.orderId = orderId;
+	}
+
+	public Map<Integer, Integer> getProductsOrdered() {
+		return productsOrdered;
+	}
+
+	public void setProductsOrdered(Map<Integer, Integer> productsOrdered) {
+		this.productsOrdered = productsOrdered;
+	}
+
+	public Map<Integer, Double> getLinePrices() {
+		return linePrices;
+	}
+
+	public void setLinePrices(Map<Integer, Double> linePrices) {
+		this.linePrices = linePrices;
+	}
+
+	public List<Integer> getUnavailable() {
+		return unavailable;
+	}
+
+	public void setUnavailable(List<Integer> unavailable) {
+		this.unavailable = unavailable;
+	}
+
+	public Double getTotal() {
+		return total;
+	}
+
+	public void setTotal(Double total) {
+		this.total = total;
+	}
+
+	public long getLastAccess() {
+		return lastAccess;
+	}
+
+	public void touch() {
+		this.lastAccess = System.currentTimeMillis();
+	}
+
+	@JsonIgnore
+	public boolean isEmpty() {
+		return productsOrdered.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "Cart [customerId=" + customerId +
+				", orderId=" + orderId +
+				", productsOrdered=" + productsOrdered +
+				", unavailable=" + unavailable +
+				", total=" + total +
+				"]";
+	}
+}
@@ -6,16 +6,23 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.Table;
 import jakarta.persistence.Column;
+import jakarta.persistence.Version;
 
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.JdbcTypeCode;
 import org.hibernate.type.SqlTypes;
 import org.hibernate.annotations.Type;
 import org.hibernate.validator.constraints.NotEmpty;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
 @Entity
-@Table(name = "customer")
+@DynamicUpdate
+// Login, signup and bulk creates all look customers up by username.
+@Table(name = "customer", indexes = @Index(name = "customer_username", columnList = "username"))
 public class Customer implements Serializable {
 	
 	private static final long serialVersionUID = -8697455919895226841L;
@@ -55,6 +62,12 @@ public class Customer implements Serializable {
 	@NotEmpty
 	@Column(name = "role", columnDefinition = "varchar(5) DEFAULT 'USER'")
 	private String role;
+
+	// Optimistic lock; sent to clients as the ETag. The default covers rows inserted over JDBC.
+	@JsonIgnore
+	@Version
+	@Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+	private Long version;
 	
 	public Customer() {
 		
@@ -144,6 +157,11 @@ public class Customer implements Serializable {
     public void setRole(String role) {
     	this.role = role;
     }
+
+    @JsonIgnore
+    public Long getVersion() {
+    	return version;
+    }
     
 	@Override
 	public String toString() {
@@ -0,0 +1,85 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+import java.util.Objects;
+
+import jakarta.persistence.*;
+
+/*
+ * Orders, units and revenue for one product on one day; orders counts the
+ * orders that included the product. Written over JDBC by SalesRollups.
+ */
+@Entity
+@IdClass(DailyProductSales.Key.class)
+@Table(name = "sales_daily_product", indexes = { @Index(name = "sales_daily_product_idx", columnList = "productid, saledate") })
+public class DailyProductSales implements Serializable {
+
+	private static final long serialVersionUID = 6127790342811546028L;
+
+	public static class Key implements Serializable {
+
+		private static final long serialVersionUID = 2271453097720448116L;
+
+		private Date saleDate;
+
+		private Long productId;
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return Objects.equals(saleDate, key.saleDate) && Objects.equals(productId, key.productId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(saleDate, productId);
+		}
+	}
+
+	@Id
+	@Temporal(TemporalType.DATE)
+	@Column(name = "saledate")
+	private Date saleDate;
+
+	@Id
+	@Column(name = "productid")
+	private Long productId;
+
+	@Column(name = "orders", nullable = false)
+	private long orders;
+
+	@Column(name = "quantity", nullable = false)
+	private long quantity;
+
+	@Column(name = "revenue", nullable = false, precision = 19, scale = 2)
+	private BigDecimal revenue;
+
+	public DailyProductSales() {
+
+	}
+
+	public Date getSaleDate() {
+		return saleDate;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public long getOrders() {
+		return orders;
+	}
+
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public BigDecimal getRevenue() {
+		return revenue;
+	}
+}
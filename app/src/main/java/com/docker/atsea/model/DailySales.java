@@ -0,0 +1,53 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/*
+ * Orders, units and revenue for one day, kept up to date as orders are
+ * created, changed and deleted. Written over JDBC by SalesRollups; the entity
+ * exists so the table is created with the others.
+ */
+@Entity
+@Table(name = "sales_daily")
+public class DailySales implements Serializable {
+
+	private static final long serialVersionUID = 3904817726150337214L;
+
+	@Id
+	@Temporal(TemporalType.DATE)
+	@Column(name = "saledate")
+	private Date saleDate;
+
+	@Column(name = "orders", nullable = false)
+	private long orders;
+
+	@Column(name = "quantity", nullable = false)
+	private long quantity;
+
+	@Column(name = "revenue", nullable = false, precision = 19, scale = 2)
+	private BigDecimal revenue;
+
+	public DailySales() {
+
+	}
+
+	public Date getSaleDate() {
+		return saleDate;
+	}
+
+	public long getOrders() {
+		return orders;
+	}
+
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public BigDecimal getRevenue() {
+		return revenue;
+	}
+}
@@ -0,0 +1,95 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+import org.springframework.data.domain.Persistable;
+
+/*
+ * The response given to the first request carrying an Idempotency-Key. The key
+ * is the primary key, so a second node racing on the same key fails its insert
+ * and rolls back instead of writing a duplicate. Records are always inserted,
+ * never merged, which is why the entity reports itself as new until loaded.
+ */
+@Entity
+@Table(name = "idempotency_key", indexes = { @Index(name = "idempotency_key_created_idx", columnList = "createdat") })
+public class IdempotencyRecord implements Persistable<String>, Serializable {
+
+	private static final long serialVersionUID = 5893471204418362051L;
+
+	@Id
+	@Column(name = "idempotencykey", length = 255)
+	private String key;
+
+	@Column(name = "requesthash", length = 64, nullable = false)
+	private String requestHash;
+
+	@Column(name = "statuscode", nullable = false)
+	private int statusCode;
+
+	@Column(name = "responsebody", length = 65536, nullable = false)
+	private String responseBody;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "createdat", nullable = false)
+	private Date createdAt;
+
+	@Transient
+	private boolean stored;
+
+	public IdempotencyRecord() {
+
+	}
+
+	public IdempotencyRecord(String key, String requestHash) {
+		this.key = key;
+		this.requestHash = requestHash;
+		this.createdAt = new Date();
+	}
+
+	public String getId() {
+		return key;
+	}
+
+	public boolean isNew() {
+		return !stored;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markStored() {
+		stored = true;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public String getRequestHash() {
+		return requestHash;
+	}
+
+	public int getStatusCode() {
+		return statusCode;
+	}
+
+	public String getResponseBody() {
+		return responseBody;
+	}
+
+	public void setResponse(int statusCode, String responseBody) {
+		this.statusCode = statusCode;
+		this.responseBody = responseBody;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return "IdempotencyRecord [key=" + key + ", statusCode=" + statusCode + ", createdAt=" + createdAt + "]";
+	}
+}
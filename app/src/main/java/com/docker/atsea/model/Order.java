@@ -5,12 +5,21 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
 import jakarta.persistence.*;
+import org.hibernate.annotations.CollectionType;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Fetch;
+import org.hibernate.annotations.FetchMode;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.fasterxml.jackson.annotation.JsonProperty.Access;
 import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
 
 @Entity
+@DynamicUpdate
 @Table(name = "orders")
 @JsonInclude(Include.NON_NULL)
 public class Order implements Serializable {
@@ -29,11 +38,39 @@ public class Order implements Serializable {
     @Column(name = "customerid")
     private Long customerId;
     
+    // Held as OrderLines, int arrays rather than boxed map entries; still a {"productId": quantity} map in JSON.
     @ElementCollection
+    @CollectionType(type = OrderLinesType.class)
     @MapKeyColumn(name="productid")
     @Column(name = "productsordered")
     @CollectionTable(name="orderquantities", joinColumns=@JoinColumn(name="orderid"))
-    Map<Integer, Integer> productsOrdered = new HashMap<Integer, Integer>();
+    Map<Integer, Integer> productsOrdered = new OrderLines();
+
+    // Unit price of each line when it was ordered; set by OrderService, never read from requests.
+    // A line keeps its price when the catalog changes. Loaded for a whole list of orders at once.
+    @JsonProperty(access = Access.READ_ONLY)
+    @ElementCollection
+    @Fetch(FetchMode.SUBSELECT)
+    @MapKeyColumn(name="productid")
+    @Column(name = "unitprice")
+    @CollectionTable(name="orderprices", joinColumns=@JoinColumn(name="orderid"))
+    Map<Integer, Double> linePrices = new HashMap<Integer, Double>();
+
+    // The lines at their unit prices.
+    @JsonProperty(access = Access.READ_ONLY)
+    @Column(name = "total")
+    private Double total;
+
+    // False until the stock this order took has been flushed to product_stock; null if it took none.
+    @JsonIgnore
+    @Column(name = "stockapplied")
+    private Boolean stockApplied;
+
+    // Optimistic lock; sent to clients as the ETag.
+    @JsonIgnore
+    @Version
+    @Column(name = "version", nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
 
     
     public Order(){
@@ -43,13 +80,13 @@ public class Order implements Serializable {
 	public Order(Long orderId, Date orderDate, Long productId, Map<Integer, Integer> productsOrdered) {
     	this.orderId = orderId;
     	this.orderDate = orderDate;
-    	this.productsOrdered = productsOrdered;
+    	setProductsOrdered(productsOrdered);
 	}
 
     public Order(Long orderId, Date orderDate, Long productId, Map<Integer, Integer> productsOrdered, Long customerId) { 
     	this.orderId = orderId;
     	this.orderDate = orderDate;
-    	this.productsOrdered = productsOrdered;
+    	setProductsOrdered(productsOrdered);
     	this.customerId = customerId;
     };
 
@@ -64,6 +101,11 @@ public class Order implements Serializable {
     public long getOrderId() {
     	return orderId;
     }
+
+    @JsonIgnore
+    public Long getOrderIdOrNull() {
+    	return orderId;
+    }
     
     public void setOrderId(long orderId) {
         this.orderId = orderId;
@@ -81,8 +123,40 @@ public class Order implements Serializable {
     	return productsOrdered;
     }
     
+    // Other maps are copied into OrderLines; JSON is read straight into one.
+    @JsonDeserialize(as = OrderLines.class)
     public void setProductsOrdered(Map<Integer, Integer> productsOrdered) {
-    	this.productsOrdered = productsOrdered;
+    	this.productsOrdered = productsOrdered == null || productsOrdered instanceof OrderLines
+    			? productsOrdered : new OrderLines(productsOrdered);
+    }
+    
+    public Map<Integer, Double> getLinePrices() {
+    	return linePrices;
+    }
+
+    public void setLinePrices(Map<Integer, Double> linePrices) {
+    	this.linePrices = linePrices;
+    }
+
+    public Double getTotal() {
+    	return total;
+    }
+
+    public void setTotal(Double total) {
+    	this.total = total;
+    }
+    
+    public Boolean getStockApplied() {
+    	return stockApplied;
+    }
+    
+    public void setStockApplied(Boolean stockApplied) {
+    	this.stockApplied = stockApplied;
+    }
+
+    @JsonIgnore
+    public Long getVersion() {
+    	return version;
     }
     	
 	@Override
@@ -91,6 +165,7 @@ public class Order implements Serializable {
 				      "orderDate= " + orderDate + 
 				      "orderId = "+ orderId + 
 				      "productsOrdered = " + productsOrdered +
+				      "total = " + total +
 				      "]";
 	}
 }
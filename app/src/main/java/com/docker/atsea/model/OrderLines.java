@@ -0,0 +1,344 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * An order's lines, product id to quantity, kept in int arrays rather than a
+ * HashMap of boxed Integers. The lines sit densely in productIds and
+ * quantities in the order they were added; slots is an open-addressing
+ * (linear probing) table of line index + 1, 0 marking an empty slot. A line
+ * costs about 16 bytes against some 55 in a HashMap. As a Map it boxes on
+ * the way out; code that walks every line can use size(), productIdAt(i)
+ * and quantityAt(i) instead. Not thread-safe, like the HashMap it replaces.
+ */
+public class OrderLines extends AbstractMap<Integer, Integer> implements Serializable {
+
+	private static final long serialVersionUID = -3148262717440981852L;
+
+	private static final int[] NONE = new int[0];
+
+	private int[] productIds = NONE;
+	private int[] quantities = NONE;
+	private int size;
+	private int[] slots = NONE;
+	private transient int modCount;
+
+	public OrderLines() {
+
+	}
+
+	public OrderLines(int expectedLines) {
+		ensureCapacity(expectedLines);
+	}
+
+	public OrderLines(Map<Integer, Integer> lines) {
+		ensureCapacity(lines.size());
+		putAll(lines);
+	}
+
+	/*
+	 * The lines of an order's productsOrdered as OrderLines: the map itself,
+	 * what a loaded order's Hibernate collection wraps, or else a copy.
+	 */
+	public static OrderLines of(Map<Integer, Integer> lines) {
+		if (lines instanceof OrderLines) {
+			return (OrderLines) lines;
+		}
+		if (lines instanceof OrderLinesType.PersistentOrderLines) {
+			return ((OrderLinesType.PersistentOrderLines) lines).lines();
+		}
+		return new OrderLines(lines);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	public int productIdAt(int index) {
+		checkIndex(index);
+		return productIds[index];
+	}
+
+	public int quantityAt(int index) {
+		checkIndex(index);
+		return quantities[index];
+	}
+
+	// The quantity ordered of the product, 0 if it is not ordered.
+	public int quantity(int productId) {
+		int index = indexOf(productId);
+		return index < 0 ? 0 : quantities[index];
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return key instanceof Integer && indexOf((Integer) key) >= 0;
+	}
+
+	@Override
+	public Integer get(Object key) {
+		if (!(key instanceof Integer)) {
+			return null;
+		}
+		int index = indexOf((Integer) key);
+		return index < 0 ? null : quantities[index];
+	}
+
+	@Override
+	public Integer put(Integer productId, Integer quantity) {
+		if (productId == null || quantity == null) {
+			throw new IllegalArgumentException("Each product ordered needs a positive quantity.");
+		}
+		int index = indexOf(productId);
+		if (index < 0) {
+			add(productId, quantity);
+			return null;
+		}
+		int previous = quantities[index];
+		quantities[index] = quantity;
+		return previous;
+	}
+
+	// Returns the previous quantity, 0 if the product was not ordered.
+	public int set(int productId, int quantity) {
+		int index = indexOf(productId);
+		if (index < 0) {
+			add(productId, quantity);
+			return 0;
+		}
+		int previous = quantities[index];
+		quantities[index] = quantity;
+		return previous;
+	}
+
+	@Override
+	public Integer remove(Object key) {
+		if (!(key instanceof Integer)) {
+			return null;
+		}
+		int index = indexOf((Integer) key);
+		if (index < 0) {
+			return null;
+		}
+		int quantity = quantities[index];
+		removeAt(index);
+		return quantity;
+	}
+
+	@Override
+	public void clear() {
+		Arrays.fill(slots, 0);
+		size = 0;
+		modCount++;
+	}
+
+	@Override
+	public Set<Map.Entry<Integer, Integer>> entrySet() {
+		return new AbstractSet<Map.Entry<Integer, Integer>>() {
+
+			@Override
+			public Iterator<Map.Entry<Integer, Integer>> iterator() {
+				return new Lines();
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+
+			@Override
+			public void clear() {
+				OrderLines.this.clear();
+			}
+		};
+	}
+
+	private void add(int productId, int quantity) {
+		ensureCapacity(size + 1);
+		productIds[size] = productId;
+		quantities[size] = quantity;
+		slots[freeSlot(productId)] = ++size;
+		modCount++;
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size) {
+			throw new IndexOutOfBoundsException("Line " + index + " of " + size);
+		}
+	}
+
+	private int home(int productId) {
+		int hash = productId * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & (slots.length - 1);
+	}
+
+	private int indexOf(int productId) {
+		if (size == 0) {
+			return -1;
+		}
+		int mask = slots.length - 1;
+		for (int slot = home(productId); slots[slot] != 0; slot = (slot + 1) & mask) {
+			if (productIds[slots[slot] - 1] == productId) {
+				return slots[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	private int slotOf(int productId) {
+		int mask = slots.length - 1;
+		int slot = home(productId);
+		while (productIds[slots[slot] - 1] != productId) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private int freeSlot(int productId) {
+		int mask = slots.length - 1;
+		int slot = home(productId);
+		while (slots[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/*
+	 * Empties the line's slot, shifting back the entries probed past it, and
+	 * moves the last line into the gap so the arrays stay dense.
+	 */
+	private void removeAt(int index) {
+		int mask = slots.length - 1;
+		int hole = slotOf(productIds[index]);
+		for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+			int home = home(productIds[slots[next] - 1]);
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				slots[hole] = slots[next];
+				hole = next;
+			}
+		}
+		slots[hole] = 0;
+		int last = --size;
+		if (index != last) {
+			productIds[index] = productIds[last];
+			quantities[index] = quantities[last];
+			slots[slotOf(productIds[index])] = index + 1;
+		}
+		modCount++;
+	}
+
+	// Room for the given number of lines, with the table at most three quarters full.
+	private void ensureCapacity(int lines) {
+		if (lines > productIds.length) {
+			int capacity = Math.max(lines, Math.max(4, productIds.length + (productIds.length >> 1)));
+			productIds = Arrays.copyOf(productIds, capacity);
+			quantities = Arrays.copyOf(quantities, capacity);
+		}
+		if (lines * 4L > slots.length * 3L) {
+			slots = new int[Integer.highestOneBit(Math.max(lines * 4 / 3, 3)) << 1];
+			for (int index = 0; index < size; index++) {
+				slots[freeSlot(productIds[index])] = index + 1;
+			}
+		}
+	}
+
+	/*
+	 * Walks the lines in order. remove() moves the last line into the removed
+	 * one's place, so that line is visited next.
+	 */
+	private class Lines implements Iterator<Map.Entry<Integer, Integer>> {
+
+		private int next;
+		private int current = -1;
+		private int expectedModCount = modCount;
+
+		@Override
+		public boolean hasNext() {
+			return next < size;
+		}
+
+		@Override
+		public Map.Entry<Integer, Integer> next() {
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			if (next >= size) {
+				throw new NoSuchElementException();
+			}
+			current = next++;
+			return new Line(current);
+		}
+
+		@Override
+		public void remove() {
+			if (current < 0) {
+				throw new IllegalStateException();
+			}
+			if (modCount != expectedModCount) {
+				throw new ConcurrentModificationException();
+			}
+			removeAt(current);
+			next = current;
+			current = -1;
+			expectedModCount = modCount;
+		}
+	}
+
+	// Reads and writes through to the arrays until the map is next changed in size.
+	private class Line implements Map.Entry<Integer, Integer> {
+
+		private final int index;
+
+		Line(int index) {
+			this.index = index;
+		}
+
+		@Override
+		public Integer getKey() {
+			return productIds[index];
+		}
+
+		@Override
+		public Integer getValue() {
+			return quantities[index];
+		}
+
+		@Override
+		public Integer setValue(Integer quantity) {
+			if (quantity == null) {
+				throw new IllegalArgumentException("Each product ordered needs a positive quantity.");
+			}
+			int previous = quantities[index];
+			quantities[index] = quantity;
+			return previous;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Map.Entry)) {
+				return false;
+			}
+			Map.Entry<?, ?> entry = (Map.Entry<?, ?>) other;
+			return getKey().equals(entry.getKey()) && getValue().equals(entry.getValue());
+		}
+
+		@Override
+		public int hashCode() {
+			return productIds[index] ^ quantities[index];
+		}
+
+		@Override
+		public String toString() {
+			return productIds[index] + "=" + quantities[index];
+		}
+	}
+}
@@ -0,0 +1,107 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.Map;
+
+import org.hibernate.HibernateException;
+import org.hibernate.collection.spi.PersistentCollection;
+import org.hibernate.collection.spi.PersistentMap;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.metamodel.CollectionClassification;
+import org.hibernate.persister.collection.CollectionPersister;
+import org.hibernate.usertype.UserCollectionType;
+
+/*
+ * Maps Order.productsOrdered onto the orderquantities table as before, but
+ * loads it into OrderLines instead of a HashMap. The snapshot Hibernate keeps
+ * of a loaded order for dirty checking is an OrderLines too, so a managed
+ * order's lines are not held boxed twice.
+ */
+public class OrderLinesType implements UserCollectionType {
+
+	@Override
+	public CollectionClassification getClassification() {
+		return CollectionClassification.MAP;
+	}
+
+	@Override
+	public Class<?> getCollectionClass() {
+		return Map.class;
+	}
+
+	@Override
+	public PersistentCollection<?> instantiate(SharedSessionContractImplementor session, CollectionPersister persister)
+			throws HibernateException {
+		return new PersistentOrderLines(session);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public PersistentCollection<?> wrap(SharedSessionContractImplementor session, Object collection) {
+		return new PersistentOrderLines(session, (Map<Integer, Integer>) collection);
+	}
+
+	@Override
+	public Iterator<?> getElementsIterator(Object collection) {
+		return ((Map<?, ?>) collection).values().iterator();
+	}
+
+	@Override
+	public boolean contains(Object collection, Object entity) {
+		return ((Map<?, ?>) collection).containsValue(entity);
+	}
+
+	@Override
+	public Object indexOf(Object collection, Object entity) {
+		for (Map.Entry<?, ?> line : ((Map<?, ?>) collection).entrySet()) {
+			if (line.getValue().equals(entity)) {
+				return line.getKey();
+			}
+		}
+		return null;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	@Override
+	public Object replaceElements(Object original, Object target, CollectionPersister persister, Object owner,
+			Map copyCache, SharedSessionContractImplementor session) throws HibernateException {
+		Map<Integer, Integer> lines = (Map<Integer, Integer>) target;
+		lines.clear();
+		lines.putAll((Map<Integer, Integer>) original);
+		return lines;
+	}
+
+	@Override
+	public Object instantiate(int anticipatedSize) {
+		return new OrderLines(Math.max(anticipatedSize, 0));
+	}
+
+	public static class PersistentOrderLines extends PersistentMap<Integer, Integer> {
+
+		private static final long serialVersionUID = 4430964623170787529L;
+
+		public PersistentOrderLines() {
+
+		}
+
+		public PersistentOrderLines(SharedSessionContractImplementor session) {
+			super(session);
+		}
+
+		public PersistentOrderLines(SharedSessionContractImplementor session, Map<Integer, Integer> lines) {
+			super(session, lines);
+		}
+
+		// Quantities are immutable Integers, so the snapshot needs no deep copy.
+		@Override
+		public Serializable getSnapshot(CollectionPersister persister) throws HibernateException {
+			return new OrderLines(map);
+		}
+
+		OrderLines lines() {
+			read();
+			return map instanceof OrderLines ? (OrderLines) map : new OrderLines(map);
+		}
+	}
+}
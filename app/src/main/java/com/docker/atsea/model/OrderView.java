@@ -0,0 +1,69 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/*
+ * One order as clients read it: the order, its customer's name, and its lines
+ * with product names and prices as a JSON array, so a whole order document is
+ * one primary key read. Written over JDBC by OrderViews in the transactions
+ * that change orders; the entity exists so the table is created with the others.
+ */
+@Entity
+@Table(name = "order_view", indexes = { @Index(name = "order_view_customer_idx", columnList = "customerid, orderid") })
+public class OrderView implements Serializable {
+
+	private static final long serialVersionUID = 5526018741195373470L;
+
+	@Id
+	@Column(name = "orderid")
+	private Long orderId;
+
+	@Column(name = "customerid")
+	private Long customerId;
+
+	@Column(name = "customername")
+	private String customerName;
+
+	@Temporal(TemporalType.DATE)
+	@Column(name = "orderdate")
+	private Date orderDate;
+
+	@Column(name = "total", nullable = false, precision = 19, scale = 2)
+	private BigDecimal total;
+
+	// [{"productId":1,"name":"...","price":25.0,"quantity":2,"lineTotal":50.0}, ...]
+	@Column(name = "orderlines", nullable = false, length = 1048576)
+	private String lines;
+
+	public OrderView() {
+
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public String getCustomerName() {
+		return customerName;
+	}
+
+	public Date getOrderDate() {
+		return orderDate;
+	}
+
+	public BigDecimal getTotal() {
+		return total;
+	}
+
+	public String getLines() {
+		return lines;
+	}
+}
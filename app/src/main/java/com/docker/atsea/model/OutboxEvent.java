@@ -0,0 +1,147 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonRawValue;
+
+/*
+ * An event waiting to be delivered downstream. Rows are written in the same
+ * transaction as the change they describe and picked up later by the
+ * OutboxDispatcher.
+ */
+@Entity
+@Table(name = "outbox", indexes = { @Index(name = "outbox_status_idx", columnList = "status, eventid") })
+public class OutboxEvent implements Serializable {
+
+	private static final long serialVersionUID = -3630981718286395412L;
+
+	public static final String NEW = "NEW";
+
+	public static final String CLAIMED = "CLAIMED";
+
+	public static final String SENT = "SENT";
+
+	public static final String FAILED = "FAILED";
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "eventid")
+	private Long eventId;
+
+	@Column(name = "eventtype", length = 64, nullable = false)
+	private String eventType;
+
+	@Column(name = "aggregateid", nullable = false)
+	private Long aggregateId;
+
+	@Column(name = "payload", length = 10485760, nullable = false)
+	private String payload;
+
+	@Column(name = "status", length = 8, nullable = false)
+	private String status = NEW;
+
+	@Column(name = "attempts", nullable = false)
+	private int attempts;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "createdat", nullable = false)
+	private Date createdAt;
+
+	// When a dispatcher claimed the event; a claim older than the lease is taken over.
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "claimedat")
+	private Date claimedAt;
+
+	public OutboxEvent() {
+
+	}
+
+	public OutboxEvent(String eventType, Long aggregateId, String payload) {
+		this.eventType = eventType;
+		this.aggregateId = aggregateId;
+		this.payload = payload;
+		this.createdAt = new Date();
+	}
+
+	public Long getEventId() {
+		return eventId;
+	}
+
+	public void setEventId(Long eventId) {
+		this.eventId = eventId;
+	}
+
+	public String getEventType() {
+		return eventType;
+	}
+
+	public void setEventType(String eventType) {
+		this.eventType = eventType;
+	}
+
+	public Long getAggregateId() {
+		return aggregateId;
+	}
+
+	public void setAggregateId(Long aggregateId) {
+		this.aggregateId = aggregateId;
+	}
+
+	@JsonRawValue
+	public String getPayload() {
+		return payload;
+	}
+
+	public void setPayload(String payload) {
+		this.payload = payload;
+	}
+
+	@JsonIgnore
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	@JsonIgnore
+	public int getAttempts() {
+		return attempts;
+	}
+
+	public void setAttempts(int attempts) {
+		this.attempts = attempts;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	public void setCreatedAt(Date createdAt) {
+		this.createdAt = createdAt;
+	}
+
+	@JsonIgnore
+	public Date getClaimedAt() {
+		return claimedAt;
+	}
+
+	public void setClaimedAt(Date claimedAt) {
+		this.claimedAt = claimedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "OutboxEvent [eventId=" + eventId +
+				", eventType=" + eventType +
+				", aggregateId=" + aggregateId +
+				", status=" + status +
+				", attempts=" + attempts +
+				"]";
+	}
+}
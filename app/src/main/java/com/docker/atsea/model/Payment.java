@@ -0,0 +1,97 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+import org.springframework.data.domain.Persistable;
+
+/*
+ * The charge taken for an order. The order id is the primary key, so a second
+ * payment for the same order, on this node or another, fails its insert rather
+ * than charging the customer twice. A row is PENDING while the gateway works
+ * and PAID once it has approved the charge; failed charges are deleted so the
+ * order can be paid again.
+ */
+@Entity
+@Table(name = "payment")
+public class Payment implements Persistable<Long>, Serializable {
+
+	private static final long serialVersionUID = 2310984576621349770L;
+
+	public static final String PENDING = "PENDING";
+
+	public static final String PAID = "PAID";
+
+	@Id
+	@Column(name = "orderid")
+	private Long orderId;
+
+	@Column(name = "amount", nullable = false)
+	private double amount;
+
+	@Column(name = "status", length = 16, nullable = false)
+	private String status;
+
+	@Column(name = "transactionid", length = 255)
+	private String transactionId;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "createdat", nullable = false)
+	private Date createdAt;
+
+	@Transient
+	private boolean stored;
+
+	public Payment() {
+
+	}
+
+	public Payment(Long orderId, double amount) {
+		this.orderId = orderId;
+		this.amount = amount;
+		this.status = PENDING;
+		this.createdAt = new Date();
+	}
+
+	public Long getId() {
+		return orderId;
+	}
+
+	public boolean isNew() {
+		return !stored;
+	}
+
+	@PostLoad
+	@PostPersist
+	void markStored() {
+		stored = true;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public String getTransactionId() {
+		return transactionId;
+	}
+
+	public Date getCreatedAt() {
+		return createdAt;
+	}
+
+	@Override
+	public String toString() {
+		return "Payment [orderId=" + orderId + ", amount=" + amount + ", status=" + status
+				+ ", transactionId=" + transactionId + "]";
+	}
+}
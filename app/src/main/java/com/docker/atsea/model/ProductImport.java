@@ -0,0 +1,102 @@
+package com.docker.atsea.model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Progress of a product import. Written by the importing thread only and read
+ * by anyone asking for status, hence the volatile counters.
+ */
+public class ProductImport {
+
+	private static final int MAX_ERRORS = 20;
+
+	private final long startedAt = System.currentTimeMillis();
+
+	private volatile Long finishedAt;
+
+	private volatile long read;
+
+	private volatile long upserted;
+
+	private volatile long inserted;
+
+	private volatile long rejected;
+
+	private volatile String failure;
+
+	private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+	public void rowRead() {
+		read++;
+	}
+
+	public void written(int upserted, int inserted) {
+		this.upserted += upserted;
+		this.inserted += inserted;
+	}
+
+	public void reject(long row, String reason) {
+		rejected++;
+		if (errors.size() < MAX_ERRORS) {
+			errors.add("Row " + row + ": " + reason);
+		}
+	}
+
+	public void fail(String failure) {
+		this.failure = failure;
+	}
+
+	public void finish() {
+		finishedAt = System.currentTimeMillis();
+	}
+
+	public boolean isRunning() {
+		return finishedAt == null;
+	}
+
+	public long getStartedAt() {
+		return startedAt;
+	}
+
+	public Long getFinishedAt() {
+		return finishedAt;
+	}
+
+	public long getRead() {
+		return read;
+	}
+
+	public long getUpserted() {
+		return upserted;
+	}
+
+	public long getInserted() {
+		return inserted;
+	}
+
+	public long getRejected() {
+		return rejected;
+	}
+
+	public String getFailure() {
+		return failure;
+	}
+
+	public List<String> getErrors() {
+		return errors;
+	}
+
+	public long getRowsPerSecond() {
+		long end = finishedAt == null ? System.currentTimeMillis() : finishedAt;
+		return (upserted + inserted) * 1000 / Math.max(1, end - startedAt);
+	}
+
+	@Override
+	public String toString() {
+		return "ProductImport [read=" + read + ", upserted=" + upserted + ", inserted=" + inserted
+				+ ", rejected=" + rejected + ", rowsPerSecond=" + getRowsPerSecond()
+				+ (failure == null ? "" : ", failure=" + failure) + "]";
+	}
+}
@@ -0,0 +1,76 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+
+/*
+ * Units of a product left for sale as of the last stock flush. Products
+ * without a row are not stock-tracked. Leased is how many of them are leased
+ * out to application servers (see StockLease) and is never more than quantity.
+ */
+@Entity
+@Table(name = "product_stock")
+public class ProductStock implements Serializable {
+
+	private static final long serialVersionUID = 1482262961846216087L;
+
+	@Id
+	@Column(name = "productid")
+	private Long productId;
+
+	@Column(name = "quantity", nullable = false)
+	private long quantity;
+
+	@Column(name = "leased", nullable = false, columnDefinition = "bigint default 0")
+	private long leased;
+
+	public ProductStock() {
+
+	}
+
+	public ProductStock(Long productId, long quantity) {
+		this(productId, quantity, 0);
+	}
+
+	public ProductStock(Long productId, long quantity, long leased) {
+		this.productId = productId;
+		this.quantity = quantity;
+		this.leased = leased;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public void setProductId(Long productId) {
+		this.productId = productId;
+	}
+
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public void setQuantity(long quantity) {
+		this.quantity = quantity;
+	}
+
+	public long getLeased() {
+		return leased;
+	}
+
+	public void setLeased(long leased) {
+		this.leased = leased;
+	}
+
+	@Override
+	public String toString() {
+		return "ProductStock [productId=" + productId +
+				", quantity=" + quantity +
+				", leased=" + leased +
+				"]";
+	}
+}
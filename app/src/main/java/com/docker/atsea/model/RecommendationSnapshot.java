@@ -0,0 +1,53 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Date;
+
+import jakarta.persistence.*;
+
+/*
+ * The product co-occurrence counts behind recommendations, gzipped, with the
+ * highest order id they include, so a restart loads them and counts only the
+ * orders placed since. Only a rebuild of every order is written here. One row, written over JDBC by Recommendations; the
+ * entity exists so the table is created with the others.
+ */
+@Entity
+@Table(name = "recommendation_snapshot")
+public class RecommendationSnapshot implements Serializable {
+
+	private static final long serialVersionUID = -6406617012730932471L;
+
+	@Id
+	@Column(name = "snapshotid")
+	private Integer snapshotId;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "takenat", nullable = false)
+	private Date takenAt;
+
+	@Column(name = "lastorderid", nullable = false)
+	private long lastOrderId;
+
+	@Column(name = "counts", nullable = false, length = 268435456)
+	private byte[] counts;
+
+	public RecommendationSnapshot() {
+
+	}
+
+	public Integer getSnapshotId() {
+		return snapshotId;
+	}
+
+	public Date getTakenAt() {
+		return takenAt;
+	}
+
+	public long getLastOrderId() {
+		return lastOrderId;
+	}
+
+	public byte[] getCounts() {
+		return counts;
+	}
+}
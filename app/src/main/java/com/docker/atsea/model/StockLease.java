@@ -0,0 +1,87 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Date;
+import java.util.Objects;
+
+import jakarta.persistence.*;
+
+/*
+ * Units of a product that one application server may sell without asking the
+ * database: what it has on sale, on hold, and sold but not yet flushed. The
+ * leases of a product add up to its product_stock.leased, so servers can never
+ * sell more between them than product_stock holds. A server renews its leases
+ * while it runs; the leases of one that stops renewing are reclaimed by the
+ * others. Written over JDBC by StockServiceImpl.
+ */
+@Entity
+@IdClass(StockLease.Key.class)
+@Table(name = "stock_lease")
+public class StockLease implements Serializable {
+
+	private static final long serialVersionUID = 4410729375518460213L;
+
+	public static class Key implements Serializable {
+
+		private static final long serialVersionUID = 8803162297345051174L;
+
+		private String nodeId;
+
+		private Long productId;
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return Objects.equals(nodeId, key.nodeId) && Objects.equals(productId, key.productId);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(nodeId, productId);
+		}
+	}
+
+	@Id
+	@Column(name = "nodeid", length = 64)
+	private String nodeId;
+
+	@Id
+	@Column(name = "productid")
+	private Long productId;
+
+	@Column(name = "quantity", nullable = false)
+	private long quantity;
+
+	@Temporal(TemporalType.TIMESTAMP)
+	@Column(name = "renewedat", nullable = false)
+	private Date renewedAt;
+
+	public StockLease() {
+
+	}
+
+	public String getNodeId() {
+		return nodeId;
+	}
+
+	public Long getProductId() {
+		return productId;
+	}
+
+	public long getQuantity() {
+		return quantity;
+	}
+
+	public Date getRenewedAt() {
+		return renewedAt;
+	}
+
+	@Override
+	public String toString() {
+		return "StockLease [nodeId=" + nodeId + ", productId=" + productId + ", quantity=" + quantity
+				+ ", renewedAt=" + renewedAt + "]";
+	}
+}
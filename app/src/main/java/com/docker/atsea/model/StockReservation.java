@@ -0,0 +1,89 @@
+package com.docker.atsea.model;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Map;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * Stock held for a customer until it is confirmed by an order or expires.
+ * Reservations live in memory only; a restart releases every open hold.
+ */
+@JsonInclude(Include.NON_NULL)
+public class StockReservation implements Serializable {
+
+	private static final long serialVersionUID = 5184393265006317482L;
+
+	private final String reservationId;
+
+	private final Map<Long, Long> quantities;
+
+	private final long expiresAt;
+
+	private final boolean hold;
+
+	// The customer a hold was placed for; only their orders can claim it.
+	private final Long customerId;
+
+	private volatile Long orderId;
+
+	public StockReservation(String reservationId, Map<Long, Long> quantities, long expiresAt, boolean hold) {
+		this(reservationId, quantities, expiresAt, hold, null);
+	}
+
+	public StockReservation(String reservationId, Map<Long, Long> quantities, long expiresAt, boolean hold, Long customerId) {
+		this.reservationId = reservationId;
+		this.quantities = Collections.unmodifiableMap(quantities);
+		this.expiresAt = expiresAt;
+		this.hold = hold;
+		this.customerId = customerId;
+	}
+
+	public String getReservationId() {
+		return reservationId;
+	}
+
+	public Map<Long, Long> getQuantities() {
+		return quantities;
+	}
+
+	public long getExpiresAt() {
+		return expiresAt;
+	}
+
+	// True for holds placed through the reservation API, false for stock taken directly by an order.
+	@JsonIgnore
+	public boolean isHold() {
+		return hold;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(Long orderId) {
+		this.orderId = orderId;
+	}
+
+	@JsonIgnore
+	public boolean isEmpty() {
+		return quantities.isEmpty();
+	}
+
+	@Override
+	public String toString() {
+		return "StockReservation [reservationId=" + reservationId +
+				", quantities=" + quantities +
+				", expiresAt=" + expiresAt +
+				", customerId=" + customerId +
+				", orderId=" + orderId +
+				"]";
+	}
+}
@@ -0,0 +1,54 @@
+package com.docker.atsea.outbox;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.model.OutboxEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * POSTs each batch as a JSON array to an HTTP endpoint. By default that is the
+ * stub receiver in UtilityController, so no external service is needed.
+ */
+@Component
+public class HttpOutboxSink implements OutboxSink {
+
+	private final URI uri;
+
+	private final Duration timeout;
+
+	private final HttpClient client;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	public HttpOutboxSink(@Value("${atsea.outbox.http.url:http://localhost:8080/utility/outbox/stub/}") String url,
+			@Value("${atsea.outbox.http.timeoutMillis:2000}") long timeoutMillis) {
+		this.uri = URI.create(url);
+		this.timeout = Duration.ofMillis(timeoutMillis);
+		this.client = HttpClient.newBuilder().connectTimeout(timeout).build();
+	}
+
+	public String getName() {
+		return "http";
+	}
+
+	public void publish(List<OutboxEvent> events) throws IOException, InterruptedException {
+		HttpRequest request = HttpRequest.newBuilder(uri)
+				.timeout(timeout)
+				.header("Content-Type", "application/json")
+				.POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(events)))
+				.build();
+		HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+		if (response.statusCode() / 100 != 2) {
+			throw new IOException("Outbox endpoint " + uri + " answered HTTP " + response.statusCode());
+		}
+	}
+}
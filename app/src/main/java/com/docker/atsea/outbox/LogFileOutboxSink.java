@@ -0,0 +1,80 @@
+package com.docker.atsea.outbox;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.model.OutboxEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Appends events to a local file, one JSON document per line. Once the file
+ * reaches maxBytes it is rolled over to file.1, file.1 to file.2 and so on,
+ * keeping at most maxFiles old files.
+ */
+@Component
+public class LogFileOutboxSink implements OutboxSink {
+
+	private final Path file;
+
+	private final long maxBytes;
+
+	private final int maxFiles;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	public LogFileOutboxSink(@Value("${atsea.outbox.logFile:logs/order-events.log}") String file,
+			@Value("${atsea.outbox.logMaxBytes:10485760}") long maxBytes,
+			@Value("${atsea.outbox.logMaxFiles:5}") int maxFiles) {
+		this.file = Paths.get(file);
+		this.maxBytes = maxBytes;
+		this.maxFiles = maxFiles;
+	}
+
+	public String getName() {
+		return "log";
+	}
+
+	public synchronized void publish(List<OutboxEvent> events) throws IOException {
+		if (file.getParent() != null) {
+			Files.createDirectories(file.getParent());
+		}
+		if (maxBytes > 0 && Files.exists(file) && Files.size(file) >= maxBytes) {
+			rotate();
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+				StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+			for (OutboxEvent event : events) {
+				writer.write(objectMapper.writeValueAsString(event));
+				writer.newLine();
+			}
+		}
+	}
+
+	private void rotate() throws IOException {
+		Files.deleteIfExists(rotated(maxFiles));
+		for (int i = maxFiles - 1; i >= 1; i--) {
+			if (Files.exists(rotated(i))) {
+				Files.move(rotated(i), rotated(i + 1), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		if (maxFiles > 0) {
+			Files.move(file, rotated(1), StandardCopyOption.REPLACE_EXISTING);
+		} else {
+			Files.delete(file);
+		}
+	}
+
+	private Path rotated(int index) {
+		return file.resolveSibling(file.getFileName() + "." + index);
+	}
+}
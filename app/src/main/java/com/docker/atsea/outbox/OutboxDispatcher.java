@@ -0,0 +1,251 @@
+package com.docker.atsea.outbox;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.model.OutboxEvent;
+
+/*
+ * Background delivery of outbox events. A batch is claimed in a short
+ * transaction of its own (SELECT ... FOR UPDATE SKIP LOCKED, then marked
+ * CLAIMED), so several application servers can poll the same table without
+ * handing out an event twice and no row lock is held while the sinks are
+ * called. Rows are marked SENT once every enabled sink accepted them; a
+ * failed batch goes back to NEW, or to FAILED after maxAttempts. A claim not
+ * settled within claimTimeoutMillis (its dispatcher died) is taken over.
+ * Delivery is at-least-once: a batch that fails in one sink is retried in all.
+ */
+@Component
+public class OutboxDispatcher {
+
+	public static final Logger logger = LoggerFactory.getLogger(OutboxDispatcher.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final List<OutboxSink> sinks = new ArrayList<OutboxSink>();
+
+	private final String claimSql;
+
+	// Whether the row limit is the first parameter of claimSql rather than the last.
+	private final boolean limitFirst;
+
+	@Value("${atsea.outbox.batchSize:200}")
+	private int batchSize;
+
+	@Value("${atsea.outbox.maxBatchesPerPoll:20}")
+	private int maxBatchesPerPoll;
+
+	@Value("${atsea.outbox.maxAttempts:10}")
+	private int maxAttempts;
+
+	@Value("${atsea.outbox.claimTimeoutMillis:60000}")
+	private long claimTimeoutMillis;
+
+	private final AtomicLong dispatched = new AtomicLong();
+
+	private final AtomicLong batches = new AtomicLong();
+
+	private final AtomicLong failedBatches = new AtomicLong();
+
+	private final AtomicLong abandoned = new AtomicLong();
+
+	private volatile long lastLagMillis;
+
+	private volatile long maxLagMillis;
+
+	private volatile double eventsPerSecond;
+
+	private long rateWindowStart = System.currentTimeMillis();
+
+	private long rateWindowCount;
+
+	@Autowired
+	public OutboxDispatcher(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			List<OutboxSink> availableSinks,
+			@Value("${atsea.outbox.sinks:log}") String enabledSinks,
+			@Value("${datasource.atsea.hibernate.dialect}") String dialect) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		List<String> enabled = Arrays.asList(enabledSinks.split("\\s*,\\s*"));
+		for (OutboxSink sink : availableSinks) {
+			if (enabled.contains(sink.getName())) {
+				sinks.add(sink);
+			}
+		}
+		String claimable = " WHERE (status = '" + OutboxEvent.NEW + "' OR (status = '" + OutboxEvent.CLAIMED
+				+ "' AND claimedat < ?)) ORDER BY eventid";
+		if (dialect.contains("SQLServer")) {
+			// No LIMIT or FOR UPDATE on SQL Server: TOP for the row limit, READPAST to skip locked rows.
+			this.claimSql = "SELECT TOP (?) eventid, eventtype, aggregateid, payload, attempts, createdat"
+					+ " FROM outbox WITH (UPDLOCK, ROWLOCK, READPAST)" + claimable;
+		} else {
+			// SKIP LOCKED is what lets concurrent dispatchers share the table; H2 only has plain FOR UPDATE.
+			String lock = dialect.contains("PostgreSQL") ? " FOR UPDATE SKIP LOCKED" : " FOR UPDATE";
+			this.claimSql = "SELECT eventid, eventtype, aggregateid, payload, attempts, createdat FROM outbox"
+					+ claimable + " LIMIT ?" + lock;
+		}
+		this.limitFirst = dialect.contains("SQLServer");
+		logger.info("Outbox dispatcher delivering to sinks {}", enabled);
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.outbox.pollMillis:500}")
+	public void poll() {
+		if (sinks.isEmpty()) {
+			return;
+		}
+		for (int i = 0; i < maxBatchesPerPoll; i++) {
+			try {
+				if (dispatchBatch() < batchSize) {
+					return;
+				}
+			} catch (RuntimeException e) {
+				logger.warn("Outbox poll failed: {}", e.getMessage());
+				return;
+			}
+		}
+	}
+
+	public int dispatchBatch() {
+		List<OutboxEvent> events = claim();
+		if (events.isEmpty()) {
+			return 0;
+		}
+
+		// Published outside any transaction: the claim is committed, so no lock is held while sinks are slow.
+		for (OutboxSink sink : sinks) {
+			try {
+				sink.publish(events);
+			} catch (Exception e) {
+				failedBatches.incrementAndGet();
+				logger.warn("Outbox sink {} failed for {} events: {}", sink.getName(), events.size(), e.getMessage());
+				release(events);
+				return 0;
+			}
+		}
+		List<Object[]> ids = new ArrayList<Object[]>(events.size());
+		for (OutboxEvent event : events) {
+			ids.add(new Object[] { event.getEventId() });
+		}
+		jdbcTemplate.batchUpdate("UPDATE outbox SET status = '" + OutboxEvent.SENT + "', claimedat = NULL WHERE eventid = ?", ids);
+		recordDelivered(events);
+		return events.size();
+	}
+
+	// Locks the next batch and marks it CLAIMED in one short transaction.
+	private List<OutboxEvent> claim() {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		Timestamp expired = new Timestamp(now.getTime() - claimTimeoutMillis);
+		Object[] args = limitFirst ? new Object[] { batchSize, expired } : new Object[] { expired, batchSize };
+		List<OutboxEvent> events = transactionTemplate.execute(status -> {
+			List<OutboxEvent> claimed = jdbcTemplate.query(claimSql, (rs, rowNum) -> {
+				OutboxEvent event = new OutboxEvent(rs.getString("eventtype"), rs.getLong("aggregateid"), rs.getString("payload"));
+				event.setEventId(rs.getLong("eventid"));
+				event.setAttempts(rs.getInt("attempts"));
+				event.setCreatedAt(rs.getTimestamp("createdat"));
+				return event;
+			}, args);
+			List<Object[]> ids = new ArrayList<Object[]>(claimed.size());
+			for (OutboxEvent event : claimed) {
+				event.setStatus(OutboxEvent.CLAIMED);
+				event.setClaimedAt(now);
+				ids.add(new Object[] { now, event.getEventId() });
+			}
+			jdbcTemplate.batchUpdate("UPDATE outbox SET status = '" + OutboxEvent.CLAIMED + "', claimedat = ? WHERE eventid = ?", ids);
+			return claimed;
+		});
+		return events == null ? new ArrayList<OutboxEvent>() : events;
+	}
+
+	// Hands a failed batch back for another attempt, or gives up on the events that have had maxAttempts.
+	private void release(List<OutboxEvent> events) {
+		List<Object[]> rows = new ArrayList<Object[]>(events.size());
+		int gaveUp = 0;
+		for (OutboxEvent event : events) {
+			int attempts = event.getAttempts() + 1;
+			boolean giveUp = attempts >= maxAttempts;
+			if (giveUp) {
+				gaveUp++;
+			}
+			rows.add(new Object[] { attempts, giveUp ? OutboxEvent.FAILED : OutboxEvent.NEW, event.getEventId() });
+		}
+		jdbcTemplate.batchUpdate("UPDATE outbox SET attempts = ?, status = ?, claimedat = NULL WHERE eventid = ?", rows);
+		if (gaveUp > 0) {
+			abandoned.addAndGet(gaveUp);
+			logger.error("Gave up on {} outbox events after {} attempts", gaveUp, maxAttempts);
+		}
+	}
+
+	private synchronized void recordDelivered(List<OutboxEvent> events) {
+		long now = System.currentTimeMillis();
+		long lag = now - events.get(0).getCreatedAt().getTime();
+		lastLagMillis = lag;
+		maxLagMillis = Math.max(maxLagMillis, lag);
+		dispatched.addAndGet(events.size());
+		batches.incrementAndGet();
+		rateWindowCount += events.size();
+		if (now - rateWindowStart >= 1000) {
+			eventsPerSecond = rateWindowCount * 1000.0 / (now - rateWindowStart);
+			rateWindowStart = now;
+			rateWindowCount = 0;
+		}
+	}
+
+	/*
+	 * Number of undelivered events and the age of the oldest one, i.e. the
+	 * current end-to-end lag.
+	 */
+	public long[] pending() {
+		Map<String, Object> row = jdbcTemplate.queryForMap(
+				"SELECT COUNT(*) AS pending, MIN(createdat) AS oldest FROM outbox WHERE status IN (?, ?)",
+				OutboxEvent.NEW, OutboxEvent.CLAIMED);
+		Object oldest = row.get("oldest");
+		long age = oldest instanceof Timestamp ? System.currentTimeMillis() - ((Timestamp) oldest).getTime() : 0;
+		return new long[] { ((Number) row.get("pending")).longValue(), age };
+	}
+
+	public long getDispatched() {
+		return dispatched.get();
+	}
+
+	public long getBatches() {
+		return batches.get();
+	}
+
+	public long getFailedBatches() {
+		return failedBatches.get();
+	}
+
+	public long getAbandoned() {
+		return abandoned.get();
+	}
+
+	public long getLastLagMillis() {
+		return lastLagMillis;
+	}
+
+	public long getMaxLagMillis() {
+		return maxLagMillis;
+	}
+
+	public synchronized double getEventsPerSecond() {
+		long elapsed = System.currentTimeMillis() - rateWindowStart;
+		// Let the rate decay when deliveries stall instead of reporting the last busy second forever.
+		return elapsed >= 2000 ? rateWindowCount * 1000.0 / elapsed : eventsPerSecond;
+	}
+}
@@ -0,0 +1,16 @@
+package com.docker.atsea.outbox;
+
+import java.util.List;
+
+import com.docker.atsea.model.OutboxEvent;
+
+/*
+ * A downstream consumer of outbox events. A sink receives whole batches and
+ * must either deliver all of them or throw; failed batches are retried.
+ */
+public interface OutboxSink {
+
+	String getName();
+
+	void publish(List<OutboxEvent> events) throws Exception;
+}
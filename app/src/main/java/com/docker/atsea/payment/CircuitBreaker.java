@@ -0,0 +1,57 @@
+package com.docker.atsea.payment;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ * Consecutive-failure circuit breaker. After failureThreshold failures in a row
+ * the circuit opens and calls are refused for openMillis; then a single trial
+ * call is let through and its outcome closes or re-opens the circuit.
+ */
+public class CircuitBreaker {
+
+	public enum State { CLOSED, OPEN, HALF_OPEN }
+
+	private final int failureThreshold;
+
+	private final long openMillis;
+
+	private final AtomicReference<State> state = new AtomicReference<State>(State.CLOSED);
+
+	private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+	private volatile long openedAt;
+
+	public CircuitBreaker(int failureThreshold, long openMillis) {
+		this.failureThreshold = failureThreshold;
+		this.openMillis = openMillis;
+	}
+
+	public boolean allowRequest() {
+		switch (state.get()) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			return System.currentTimeMillis() - openedAt >= openMillis
+					&& state.compareAndSet(State.OPEN, State.HALF_OPEN);
+		default:
+			return false;
+		}
+	}
+
+	public void onSuccess() {
+		consecutiveFailures.set(0);
+		state.set(State.CLOSED);
+	}
+
+	public void onFailure() {
+		if (state.get() == State.HALF_OPEN || consecutiveFailures.incrementAndGet() >= failureThreshold) {
+			openedAt = System.currentTimeMillis();
+			state.set(State.OPEN);
+		}
+	}
+
+	public State getState() {
+		return state.get();
+	}
+}
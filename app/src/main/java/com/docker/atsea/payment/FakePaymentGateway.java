@@ -0,0 +1,56 @@
+package com.docker.atsea.payment;
+
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * In-process stand-in for the payment gateway. Replies are scheduled on a timer
+ * rather than slept on, so injected latency costs no threads, and a share of
+ * charges can be made to fail to exercise the breaker and bulkhead.
+ */
+public class FakePaymentGateway implements PaymentGateway {
+
+	private final ScheduledExecutorService timer;
+
+	private volatile long latencyMillis;
+
+	private volatile double failureRate;
+
+	public FakePaymentGateway(ScheduledExecutorService timer, long latencyMillis, double failureRate) {
+		this.timer = timer;
+		this.latencyMillis = latencyMillis;
+		this.failureRate = failureRate;
+	}
+
+	public CompletableFuture<PaymentResult> charge(PaymentRequest request) {
+		CompletableFuture<PaymentResult> result = new CompletableFuture<PaymentResult>();
+		boolean fail = ThreadLocalRandom.current().nextDouble() < failureRate;
+		timer.schedule(() -> {
+			if (fail) {
+				result.completeExceptionally(new PaymentException("Injected gateway failure for " + request));
+			} else {
+				result.complete(new PaymentResult(UUID.randomUUID().toString(), "APPROVED"));
+			}
+		}, latencyMillis, TimeUnit.MILLISECONDS);
+		return result;
+	}
+
+	public long getLatencyMillis() {
+		return latencyMillis;
+	}
+
+	public void setLatencyMillis(long latencyMillis) {
+		this.latencyMillis = latencyMillis;
+	}
+
+	public double getFailureRate() {
+		return failureRate;
+	}
+
+	public void setFailureRate(double failureRate) {
+		this.failureRate = failureRate;
+	}
+}
@@ -0,0 +1,61 @@
+package com.docker.atsea.payment;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Talks to the payment gateway over HTTP using the JDK client's asynchronous
+ * API. Response handling runs on the supplied executor, never on the caller.
+ */
+public class HttpPaymentGateway implements PaymentGateway {
+
+	private final HttpClient client;
+
+	private final URI chargeUri;
+
+	private final Duration requestTimeout;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	public HttpPaymentGateway(String url, long connectTimeoutMillis, long requestTimeoutMillis, Executor executor) {
+		this.client = HttpClient.newBuilder()
+				.connectTimeout(Duration.ofMillis(connectTimeoutMillis))
+				.executor(executor)
+				.build();
+		this.chargeUri = URI.create(url.endsWith("/") ? url + "charge" : url + "/charge");
+		this.requestTimeout = Duration.ofMillis(requestTimeoutMillis);
+	}
+
+	public CompletableFuture<PaymentResult> charge(PaymentRequest request) {
+		HttpRequest httpRequest;
+		try {
+			httpRequest = HttpRequest.newBuilder(chargeUri)
+					.timeout(requestTimeout)
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(request)))
+					.build();
+		} catch (JsonProcessingException e) {
+			return CompletableFuture.failedFuture(new PaymentException("Unable to encode " + request, e));
+		}
+
+		return client.sendAsync(httpRequest, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+			if (response.statusCode() / 100 != 2) {
+				throw new PaymentException("Gateway answered HTTP " + response.statusCode() + " for " + request);
+			}
+			try {
+				return objectMapper.readValue(response.body(), PaymentResult.class);
+			} catch (IOException e) {
+				throw new PaymentException("Unreadable gateway response for " + request, e);
+			}
+		});
+	}
+}
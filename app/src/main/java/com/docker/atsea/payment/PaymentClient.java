@@ -0,0 +1,159 @@
+package com.docker.atsea.payment;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Entry point for charging orders. Every charge takes one of a bounded number
+ * of in-flight permits (the bulkhead) and passes the circuit breaker before it
+ * reaches the gateway, and is failed after the configured timeout whatever the gateway does.
+ * Callers get a future back straight away; request threads are never parked on
+ * the gateway. A charge that times out keeps its permit until the gateway does
+ * answer, so the bulkhead bounds the calls really open against the gateway, and
+ * that answer is handed to the caller's settle callback.
+ */
+public class PaymentClient {
+
+	public static final Logger logger = LoggerFactory.getLogger(PaymentClient.class);
+
+	private final PaymentGateway gateway;
+
+	private final CircuitBreaker circuitBreaker;
+
+	private final Semaphore bulkhead;
+
+	private final int maxConcurrent;
+
+	private final long timeoutMillis;
+
+	private final AtomicLong attempts = new AtomicLong();
+
+	private final AtomicLong approved = new AtomicLong();
+
+	private final AtomicLong failed = new AtomicLong();
+
+	private final AtomicLong timedOut = new AtomicLong();
+
+	private final AtomicLong rejected = new AtomicLong();
+
+	public PaymentClient(PaymentGateway gateway, CircuitBreaker circuitBreaker, int maxConcurrent, long timeoutMillis) {
+		this.gateway = gateway;
+		this.circuitBreaker = circuitBreaker;
+		this.bulkhead = new Semaphore(maxConcurrent);
+		this.maxConcurrent = maxConcurrent;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	public CompletableFuture<PaymentResult> charge(PaymentRequest request) {
+		return charge(request, (result, error) -> { });
+	}
+
+	/*
+	 * As charge(request), and onSettled is given the gateway's own outcome once it
+	 * is known: the result, or the error if the charge failed or never reached the
+	 * gateway. Unlike the returned future it is not cut short by the timeout.
+	 */
+	public CompletableFuture<PaymentResult> charge(PaymentRequest request,
+			BiConsumer<PaymentResult, Throwable> onSettled) {
+		attempts.incrementAndGet();
+		// The permit comes first: once the breaker lets a trial call through, that call must reach the
+		// gateway, as only its outcome moves the breaker out of HALF_OPEN.
+		if (!bulkhead.tryAcquire()) {
+			rejected.incrementAndGet();
+			return rejected(request, "Too many payments in flight.", onSettled);
+		}
+		if (!circuitBreaker.allowRequest()) {
+			bulkhead.release();
+			rejected.incrementAndGet();
+			return rejected(request, "Payment gateway circuit is open.", onSettled);
+		}
+
+		CompletableFuture<PaymentResult> charge;
+		try {
+			charge = gateway.charge(request);
+		} catch (RuntimeException e) {
+			charge = CompletableFuture.failedFuture(e);
+		}
+		// orTimeout completes the future it is called on, so it goes on a copy and the
+		// gateway's own future still reports when the call is really over.
+		CompletableFuture<PaymentResult> settled = charge.whenComplete((result, error) -> {
+			bulkhead.release();
+			settle(request, result, error, onSettled);
+		});
+		return settled.copy().orTimeout(timeoutMillis, TimeUnit.MILLISECONDS).handle((result, error) -> {
+			if (error == null) {
+				approved.incrementAndGet();
+				circuitBreaker.onSuccess();
+				return result;
+			}
+			circuitBreaker.onFailure();
+			Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+			if (cause instanceof TimeoutException) {
+				timedOut.incrementAndGet();
+				logger.warn("Payment for {} timed out after {} ms", request, timeoutMillis);
+				throw new CompletionException(new PaymentException("Payment gateway timed out.", cause));
+			}
+			failed.incrementAndGet();
+			logger.warn("Payment for {} failed: {}", request, cause.getMessage());
+			throw new CompletionException(cause instanceof PaymentException ? cause
+					: new PaymentException("Payment gateway call failed.", cause));
+		});
+	}
+
+	private CompletableFuture<PaymentResult> rejected(PaymentRequest request, String message,
+			BiConsumer<PaymentResult, Throwable> onSettled) {
+		PaymentException error = new PaymentException(message, true);
+		settle(request, null, error, onSettled);
+		return CompletableFuture.failedFuture(error);
+	}
+
+	private static void settle(PaymentRequest request, PaymentResult result, Throwable error,
+			BiConsumer<PaymentResult, Throwable> onSettled) {
+		try {
+			onSettled.accept(result, error instanceof CompletionException && error.getCause() != null
+					? error.getCause() : error);
+		} catch (RuntimeException e) {
+			logger.error("Unable to settle payment for {}", request, e);
+		}
+	}
+
+	public PaymentGateway getGateway() {
+		return gateway;
+	}
+
+	public CircuitBreaker.State getCircuitState() {
+		return circuitBreaker.getState();
+	}
+
+	public int getInFlight() {
+		return maxConcurrent - bulkhead.availablePermits();
+	}
+
+	public long getAttempts() {
+		return attempts.get();
+	}
+
+	public long getApproved() {
+		return approved.get();
+	}
+
+	public long getFailed() {
+		return failed.get();
+	}
+
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+
+	public long getRejected() {
+		return rejected.get();
+	}
+}
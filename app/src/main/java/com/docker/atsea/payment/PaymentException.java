@@ -0,0 +1,31 @@
+package com.docker.atsea.payment;
+
+/*
+ * Raised when a charge could not be completed. Rejections by the client itself
+ * (open circuit, full bulkhead) are flagged so callers can ask for a retry
+ * instead of reporting a gateway failure.
+ */
+public class PaymentException extends RuntimeException {
+
+	private static final long serialVersionUID = 4217093316471843410L;
+
+	private final boolean rejected;
+
+	public PaymentException(String message) {
+		this(message, false);
+	}
+
+	public PaymentException(String message, boolean rejected) {
+		super(message);
+		this.rejected = rejected;
+	}
+
+	public PaymentException(String message, Throwable cause) {
+		super(message, cause);
+		this.rejected = false;
+	}
+
+	public boolean isRejected() {
+		return rejected;
+	}
+}
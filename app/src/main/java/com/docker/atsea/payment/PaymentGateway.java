@@ -0,0 +1,12 @@
+package com.docker.atsea.payment;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface PaymentGateway {
+
+	/*
+	 * Starts a charge and returns immediately. Implementations must not block
+	 * the calling thread while waiting on the gateway.
+	 */
+	CompletableFuture<PaymentResult> charge(PaymentRequest request);
+}
@@ -0,0 +1,52 @@
+package com.docker.atsea.payment;
+
+public class PaymentRequest {
+
+	private Long orderId;
+
+	private Long customerId;
+
+	private double amount;
+
+	public PaymentRequest() {
+
+	}
+
+	public PaymentRequest(Long orderId, Long customerId, double amount) {
+		this.orderId = orderId;
+		this.customerId = customerId;
+		this.amount = amount;
+	}
+
+	public Long getOrderId() {
+		return orderId;
+	}
+
+	public void setOrderId(Long orderId) {
+		this.orderId = orderId;
+	}
+
+	public Long getCustomerId() {
+		return customerId;
+	}
+
+	public void setCustomerId(Long customerId) {
+		this.customerId = customerId;
+	}
+
+	public double getAmount() {
+		return amount;
+	}
+
+	public void setAmount(double amount) {
+		this.amount = amount;
+	}
+
+	@Override
+	public String toString() {
+		return "PaymentRequest [orderId=" + orderId +
+				", customerId=" + customerId +
+				", amount=" + amount +
+				"]";
+	}
+}
@@ -0,0 +1,40 @@
+package com.docker.atsea.payment;
+
+public class PaymentResult {
+
+	private String transactionId;
+
+	private String status;
+
+	public PaymentResult() {
+
+	}
+
+	public PaymentResult(String transactionId, String status) {
+		this.transactionId = transactionId;
+		this.status = status;
+	}
+
+	public String getTransactionId() {
+		return transactionId;
+	}
+
+	public void setTransactionId(String transactionId) {
+		this.transactionId = transactionId;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public void setStatus(String status) {
+		this.status = status;
+	}
+
+	@Override
+	public String toString() {
+		return "PaymentResult [transactionId=" + transactionId +
+				", status=" + status +
+				"]";
+	}
+}
@@ -1,6 +1,10 @@
 package com.docker.atsea.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
@@ -15,5 +19,15 @@ public interface CustomerRepository extends JpaRepository<Customer, Long> {
 	// adding find by username
 	@Query("SELECT c FROM Customer c WHERE c.username = :userName")
 	Customer findByUserName(@Param("userName") String userName);
+
+	@Query("SELECT c.customerId, c.username FROM Customer c WHERE c.username IN :userNames")
+	List<Object[]> findIdsByUserNames(@Param("userNames") Collection<String> userNames);
+
+	@Query("SELECT c.version FROM Customer c WHERE c.customerId = :customerId")
+	Long findVersionById(@Param("customerId") Long customerId);
+
+	@Modifying
+	@Query("DELETE FROM Customer c WHERE c.customerId = :customerId")
+	int deleteByCustomerId(@Param("customerId") Long customerId);
 }
 
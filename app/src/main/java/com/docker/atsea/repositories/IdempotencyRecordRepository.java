@@ -0,0 +1,21 @@
+package com.docker.atsea.repositories;
+
+import java.util.Date;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.docker.atsea.model.IdempotencyRecord;
+
+@Repository
+@Transactional
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+
+	@Modifying
+	@Query("DELETE FROM IdempotencyRecord r WHERE r.createdAt < :cutoff")
+	int deleteCreatedBefore(@Param("cutoff") Date cutoff);
+}
@@ -1,6 +1,12 @@
 package com.docker.atsea.repositories;
 
+import java.util.Date;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -10,5 +16,21 @@ import com.docker.atsea.model.Order;
 @Transactional
 public interface OrderRepository extends JpaRepository<Order, Long> {
 
+	// Bounded by orderdate, so on a partitioned orders table only the partitions in range are read.
+	@Query("SELECT o FROM Order o LEFT JOIN FETCH o.productsOrdered WHERE o.orderDate >= :from AND o.orderDate < :to"
+			+ " ORDER BY o.orderDate, o.orderId")
+	List<Order> findByOrderDateRange(@Param("from") Date from, @Param("to") Date to);
+
+	@Query("SELECT o.version FROM Order o WHERE o.orderId = :orderId")
+	Long findVersionById(@Param("orderId") Long orderId);
+
+	// Takes the row lock, and fails any concurrent optimistic update of the order.
+	@Modifying
+	@Query("UPDATE Order o SET o.version = o.version + 1 WHERE o.orderId = :orderId")
+	int incrementVersion(@Param("orderId") Long orderId);
 
+	// Hibernate removes the order's orderquantities rows in the same bulk delete.
+	@Modifying
+	@Query("DELETE FROM Order o WHERE o.orderId = :orderId")
+	int deleteByOrderId(@Param("orderId") Long orderId);
 }
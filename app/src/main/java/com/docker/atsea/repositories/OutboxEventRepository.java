@@ -0,0 +1,13 @@
+package com.docker.atsea.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.docker.atsea.model.OutboxEvent;
+
+@Repository
+@Transactional
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+}
@@ -0,0 +1,23 @@
+package com.docker.atsea.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.docker.atsea.model.Payment;
+
+@Repository
+@Transactional
+public interface PaymentRepository extends JpaRepository<Payment, Long> {
+
+	@Modifying
+	@Query("UPDATE Payment p SET p.status = 'PAID', p.transactionId = :transactionId WHERE p.orderId = :orderId")
+	int markPaid(@Param("orderId") Long orderId, @Param("transactionId") String transactionId);
+
+	@Modifying
+	@Query("DELETE FROM Payment p WHERE p.orderId = :orderId AND p.status = 'PENDING'")
+	int deletePending(@Param("orderId") Long orderId);
+}
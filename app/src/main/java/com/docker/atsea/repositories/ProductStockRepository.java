@@ -0,0 +1,13 @@
+package com.docker.atsea.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.docker.atsea.model.ProductStock;
+
+@Repository
+@Transactional
+public interface ProductStockRepository extends JpaRepository<ProductStock, Long> {
+
+}
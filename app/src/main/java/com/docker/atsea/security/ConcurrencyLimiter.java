@@ -0,0 +1,76 @@
+package com.docker.atsea.security;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * Adaptive cap on concurrent requests (AIMD). While requests complete near the
+ * best latency seen and the limit is in use, it grows by about one per limit's
+ * worth of completions. It is cut by the backoff factor whenever a request
+ * takes longer than tolerance times that baseline, i.e. once requests start
+ * queueing for connections. Requests over the limit are turned away at once
+ * instead of waiting on the pool.
+ */
+public class ConcurrencyLimiter {
+
+	private final int minLimit;
+
+	private final int maxLimit;
+
+	private final double tolerance;
+
+	private final double backoff;
+
+	private final AtomicInteger inFlight = new AtomicInteger();
+
+	private volatile double limit;
+
+	// Smallest latency seen, drifting slowly upwards so it can recover from an outlier.
+	private volatile long baselineNanos = Long.MAX_VALUE;
+
+	public ConcurrencyLimiter(int initialLimit, int minLimit, int maxLimit, double tolerance, double backoff) {
+		this.limit = initialLimit;
+		this.minLimit = minLimit;
+		this.maxLimit = maxLimit;
+		this.tolerance = tolerance;
+		this.backoff = backoff;
+	}
+
+	public boolean tryAcquire() {
+		if (inFlight.incrementAndGet() > (int) limit) {
+			inFlight.decrementAndGet();
+			return false;
+		}
+		return true;
+	}
+
+	public void release(long latencyNanos) {
+		int current = inFlight.getAndDecrement();
+		long baseline = baselineNanos;
+		if (latencyNanos < baseline) {
+			baselineNanos = latencyNanos;
+			baseline = latencyNanos;
+		} else {
+			baselineNanos = baseline + (latencyNanos - baseline) / 1000;
+		}
+		synchronized (this) {
+			if (latencyNanos > baseline * tolerance) {
+				limit = Math.max(minLimit, limit * backoff);
+			} else if (current * 2 >= (int) limit) {
+				limit = Math.min(maxLimit, limit + 1.0 / limit);
+			}
+		}
+	}
+
+	public int getLimit() {
+		return (int) limit;
+	}
+
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	public long getBaselineMicros() {
+		long baseline = baselineNanos;
+		return baseline == Long.MAX_VALUE ? 0 : baseline / 1000;
+	}
+}
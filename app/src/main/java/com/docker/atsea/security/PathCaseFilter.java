@@ -0,0 +1,172 @@
+package com.docker.atsea.security;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.GenericFilterBean;
+import org.springframework.web.servlet.mvc.method.RequestMappingInfo;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+/*
+ * Routes are matched case-sensitively by precompiled path patterns. A request
+ * that differs from a route only in the case of the route's fixed parts, such
+ * as /API/Product/ or /api/customer/USERNAME=Sally, is redirected with 308 to
+ * the path with those parts as the route writes them. Path variables keep
+ * their case, even where they happen to spell a fixed part of another route.
+ * The redirect runs first, so the servlet filters, whose URL patterns are
+ * case-sensitive, see the path the controllers see.
+ */
+@Component
+public class PathCaseFilter extends GenericFilterBean {
+
+	public static final Logger logger = LoggerFactory.getLogger(PathCaseFilter.class);
+
+	/*
+	 * A route's path pattern split into segments, each a fixed segment such as
+	 * "customer" or one with a variable, such as "username={userName}".
+	 */
+	private static class Route {
+
+		private final String[] segments;
+
+		// The count of fixed characters; of several routes a request matches, the one with most is used.
+		private final int literals;
+
+		private Route(String pattern) {
+			segments = pattern.split("/", -1);
+			int count = 0;
+			for (String segment : segments) {
+				int variable = indexOfVariable(segment);
+				count += variable < 0 ? segment.length() : variable;
+			}
+			literals = count;
+		}
+
+		/*
+		 * The path's segments with this route's fixed parts in the route's
+		 * case, or null if the path does not match the route ignoring case. A
+		 * final ** matches any remaining segments.
+		 */
+		private String[] canonical(String[] path) {
+			int fixed = segments.length;
+			boolean rest = fixed > 0 && segments[fixed - 1].equals("**");
+			if (rest ? path.length < fixed - 1 : path.length != fixed) {
+				return null;
+			}
+			String[] canonical = path.clone();
+			for (int i = 0; i < (rest ? fixed - 1 : fixed); i++) {
+				String segment = segments[i];
+				int variable = indexOfVariable(segment);
+				if (variable < 0) {
+					if (!segment.equalsIgnoreCase(path[i])) {
+						return null;
+					}
+					canonical[i] = segment;
+				} else {
+					if (path[i].length() <= variable || !path[i].regionMatches(true, 0, segment, 0, variable)) {
+						return null;
+					}
+					canonical[i] = segment.substring(0, variable) + path[i].substring(variable);
+				}
+			}
+			return canonical;
+		}
+	}
+
+	// Looked up on first use, so registering the filter does not create the MVC beans.
+	private final ObjectProvider<RequestMappingHandlerMapping> handlerMapping;
+
+	private volatile List<Route> routes;
+
+	public PathCaseFilter(ObjectProvider<RequestMappingHandlerMapping> handlerMapping) {
+		this.handlerMapping = handlerMapping;
+	}
+
+	@Override
+	public void doFilter(final ServletRequest req, final ServletResponse res, final FilterChain chain)
+			throws IOException, ServletException {
+		final HttpServletRequest request = (HttpServletRequest) req;
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		String canonical = canonicalPath(path);
+		if (canonical.equals(path)) {
+			chain.doFilter(req, res);
+			return;
+		}
+		String query = request.getQueryString();
+		logger.debug("Redirecting {} to {}", path, canonical);
+		final HttpServletResponse response = (HttpServletResponse) res;
+		response.setStatus(HttpStatus.PERMANENT_REDIRECT.value());
+		response.setHeader(HttpHeaders.LOCATION, request.getContextPath() + canonical + (query == null ? "" : "?" + query));
+	}
+
+	/*
+	 * The path as the route it matches, ignoring case, writes it: each fixed
+	 * part in the route's case, each variable as the request sent it. A path
+	 * without capitals, or matching no route, is returned as it is.
+	 */
+	public String canonicalPath(String path) {
+		if (!hasCapitals(path)) {
+			return path;
+		}
+		String[] segments = path.split("/", -1);
+		for (Route route : routes()) {
+			String[] canonical = route.canonical(segments);
+			if (canonical != null) {
+				String joined = String.join("/", canonical);
+				return joined.equals(path) ? path : joined;
+			}
+		}
+		return path;
+	}
+
+	private List<Route> routes() {
+		List<Route> known = routes;
+		if (known == null) {
+			known = new ArrayList<Route>();
+			for (RequestMappingInfo mapping : handlerMapping.getObject().getHandlerMethods().keySet()) {
+				for (String pattern : mapping.getPatternValues()) {
+					known.add(new Route(pattern));
+				}
+			}
+			// Most specific first, so the first route that matches is the one to use.
+			known.sort(Comparator.comparingInt((Route route) -> route.literals).reversed());
+			routes = known;
+		}
+		return known;
+	}
+
+	private static int indexOfVariable(String segment) {
+		for (int i = 0; i < segment.length(); i++) {
+			char c = segment.charAt(i);
+			if (c == '{' || c == '*' || c == '?') {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static boolean hasCapitals(String path) {
+		for (int i = 0; i < path.length(); i++) {
+			char c = path.charAt(i);
+			if (c >= 'A' && c <= 'Z') {
+				return true;
+			}
+		}
+		return false;
+	}
+}
@@ -0,0 +1,239 @@
+package com.docker.atsea.security;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.ServletRequest;
+import jakarta.servlet.ServletResponse;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.GenericFilterBean;
+
+import com.docker.atsea.startup.Warmup;
+import com.docker.atsea.util.CustomErrorType;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Guards the login and signup endpoints, which hit the database on every call.
+ * A POST must get a token from its client address bucket and, if the body names
+ * a username, from that username's bucket (429 otherwise), and then a slot from
+ * the adaptive concurrency limit (503 otherwise). Everything is decided before
+ * the request reaches a controller or borrows a connection. The application's
+ * own warm-up requests pass unchecked.
+ */
+@Component
+public class RateLimitFilter extends GenericFilterBean {
+
+	public static final Logger logger = LoggerFactory.getLogger(RateLimitFilter.class);
+
+	// Login and signup bodies are small; only this much is inspected for a username.
+	private static final int MAX_INSPECTED_BODY = 16384;
+
+	private final RateLimiter addressLimiter;
+
+	private final RateLimiter usernameLimiter;
+
+	private final ConcurrencyLimiter concurrencyLimiter;
+
+	private final boolean trustForwardedFor;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	// Looked up per request, so registering the filter does not create the warm-up and the JPA beans it needs.
+	private final ObjectProvider<Warmup> warmup;
+
+	private final AtomicLong allowed = new AtomicLong();
+
+	private final AtomicLong limitedByAddress = new AtomicLong();
+
+	private final AtomicLong limitedByUsername = new AtomicLong();
+
+	private final AtomicLong shed = new AtomicLong();
+
+	public RateLimitFilter(@Value("${atsea.ratelimit.address.permitsPerSecond:5}") double addressRate,
+			@Value("${atsea.ratelimit.address.burst:20}") int addressBurst,
+			@Value("${atsea.ratelimit.username.permitsPerSecond:0.2}") double usernameRate,
+			@Value("${atsea.ratelimit.username.burst:5}") int usernameBurst,
+			@Value("${atsea.ratelimit.maxKeys:100000}") int maxKeys,
+			@Value("${atsea.ratelimit.overflowBuckets:4096}") int overflowBuckets,
+			@Value("${atsea.ratelimit.trustForwardedFor:false}") boolean trustForwardedFor,
+			@Value("${atsea.ratelimit.concurrency.initialLimit:4}") int initialLimit,
+			@Value("${atsea.ratelimit.concurrency.minLimit:1}") int minLimit,
+			@Value("${atsea.ratelimit.concurrency.maxLimit:8}") int maxLimit,
+			@Value("${atsea.ratelimit.concurrency.tolerance:2.0}") double tolerance,
+			@Value("${atsea.ratelimit.concurrency.backoff:0.9}") double backoff,
+			ObjectProvider<Warmup> warmup) {
+		this.addressLimiter = new RateLimiter(addressRate, addressBurst, maxKeys, overflowBuckets);
+		this.usernameLimiter = new RateLimiter(usernameRate, usernameBurst, maxKeys, overflowBuckets);
+		this.concurrencyLimiter = new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, tolerance, backoff);
+		this.trustForwardedFor = trustForwardedFor;
+		this.warmup = warmup;
+	}
+
+	@Override
+	public void doFilter(final ServletRequest req, final ServletResponse res, final FilterChain chain)
+			throws IOException, ServletException {
+		final HttpServletRequest request = (HttpServletRequest) req;
+		final HttpServletResponse response = (HttpServletResponse) res;
+		if (!"POST".equals(request.getMethod()) || warmup.getObject().isWarmupRequest(request)) {
+			chain.doFilter(req, res);
+			return;
+		}
+
+		long waitNanos = addressLimiter.tryAcquire(clientAddress(request));
+		if (waitNanos > 0) {
+			limitedByAddress.incrementAndGet();
+			reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos, "Too many requests, please retry later.");
+			return;
+		}
+
+		byte[] head = request.getInputStream().readNBytes(MAX_INSPECTED_BODY);
+		String username = username(head);
+		if (username != null) {
+			waitNanos = usernameLimiter.tryAcquire(username);
+			if (waitNanos > 0) {
+				limitedByUsername.incrementAndGet();
+				logger.warn("Rate limited requests for username {}", username);
+				reject(response, HttpStatus.TOO_MANY_REQUESTS, waitNanos, "Too many attempts for this user, please retry later.");
+				return;
+			}
+		}
+
+		if (!concurrencyLimiter.tryAcquire()) {
+			shed.incrementAndGet();
+			reject(response, HttpStatus.SERVICE_UNAVAILABLE, TimeUnit.SECONDS.toNanos(1), "Server is busy, please retry.");
+			return;
+		}
+		allowed.incrementAndGet();
+		long start = System.nanoTime();
+		try {
+			chain.doFilter(new ReplayedBodyRequest(request, head), res);
+		} finally {
+			concurrencyLimiter.release(System.nanoTime() - start);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.ratelimit.evictionIntervalMillis:60000}")
+	public void evictIdle() {
+		int evicted = addressLimiter.evictIdle() + usernameLimiter.evictIdle();
+		logger.debug("Evicted {} idle rate limit buckets", evicted);
+	}
+
+	public long getAllowed() {
+		return allowed.get();
+	}
+
+	public long getLimitedByAddress() {
+		return limitedByAddress.get();
+	}
+
+	public long getLimitedByUsername() {
+		return limitedByUsername.get();
+	}
+
+	public long getShed() {
+		return shed.get();
+	}
+
+	public int getTrackedKeys() {
+		return addressLimiter.size() + usernameLimiter.size();
+	}
+
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return concurrencyLimiter;
+	}
+
+	private String clientAddress(HttpServletRequest request) {
+		if (trustForwardedFor) {
+			String forwardedFor = request.getHeader("X-Forwarded-For");
+			if (forwardedFor != null && !forwardedFor.isEmpty()) {
+				int comma = forwardedFor.indexOf(',');
+				return (comma < 0 ? forwardedFor : forwardedFor.substring(0, comma)).trim();
+			}
+		}
+		return request.getRemoteAddr();
+	}
+
+	private String username(byte[] body) {
+		try {
+			JsonNode username = objectMapper.readTree(body).get("username");
+			return username == null || !username.isTextual() ? null : username.asText().toLowerCase();
+		} catch (IOException | RuntimeException e) {
+			// Not JSON, or cut short; leave it to the controller to reject.
+			return null;
+		}
+	}
+
+	private void reject(HttpServletResponse response, HttpStatus status, long waitNanos, String message) throws IOException {
+		response.setStatus(status.value());
+		response.setHeader("Retry-After", String.valueOf(Math.max(1, (waitNanos + 999999999L) / 1000000000L)));
+		response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+		objectMapper.writeValue(response.getOutputStream(), new CustomErrorType(message));
+	}
+
+	// Hands the controller the bytes already read, followed by the rest of the body.
+	private static class ReplayedBodyRequest extends HttpServletRequestWrapper {
+
+		private final InputStream body;
+
+		ReplayedBodyRequest(HttpServletRequest request, byte[] head) throws IOException {
+			super(request);
+			this.body = new SequenceInputStream(new ByteArrayInputStream(head), request.getInputStream());
+		}
+
+		@Override
+		public ServletInputStream getInputStream() {
+			return new ServletInputStream() {
+				private boolean finished;
+
+				@Override
+				public int read() throws IOException {
+					int b = body.read();
+					finished = b < 0;
+					return b;
+				}
+
+				@Override
+				public int read(byte[] buffer, int offset, int length) throws IOException {
+					int n = body.read(buffer, offset, length);
+					finished = n < 0;
+					return n;
+				}
+
+				@Override
+				public boolean isFinished() {
+					return finished;
+				}
+
+				@Override
+				public boolean isReady() {
+					return true;
+				}
+
+				@Override
+				public void setReadListener(ReadListener listener) {
+					throw new UnsupportedOperationException();
+				}
+			};
+		}
+	}
+}
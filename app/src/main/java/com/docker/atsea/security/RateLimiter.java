@@ -0,0 +1,97 @@
+package com.docker.atsea.security;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/*
+ * Token buckets keyed by an arbitrary string (client address, username). Each
+ * bucket is a single AtomicLong holding the time at which it will be full again
+ * (the GCRA formulation of a token bucket), so taking a token is one CAS and no
+ * lock. A full bucket carries no state worth keeping, which lets idle keys be
+ * dropped freely. Once maxKeys live keys are tracked, further keys share a fixed
+ * array of hashed buckets: memory stays bounded, and colliding keys are limited
+ * together rather than not at all.
+ */
+public class RateLimiter {
+
+	private final long intervalNanos;
+
+	private final long burstNanos;
+
+	private final int maxKeys;
+
+	private final LongSupplier clock;
+
+	private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<String, AtomicLong>();
+
+	private final AtomicLong[] overflow;
+
+	public RateLimiter(double permitsPerSecond, int burst, int maxKeys, int overflowBuckets) {
+		this(permitsPerSecond, burst, maxKeys, overflowBuckets, System::nanoTime);
+	}
+
+	public RateLimiter(double permitsPerSecond, int burst, int maxKeys, int overflowBuckets, LongSupplier clock) {
+		if (permitsPerSecond <= 0 || burst < 1) {
+			throw new IllegalArgumentException("Rate and burst must be positive.");
+		}
+		this.intervalNanos = (long) (1000000000L / permitsPerSecond);
+		this.burstNanos = intervalNanos * burst;
+		this.maxKeys = maxKeys;
+		this.clock = clock;
+		this.overflow = new AtomicLong[Integer.highestOneBit(Math.max(overflowBuckets, 1))];
+		for (int i = 0; i < overflow.length; i++) {
+			overflow[i] = new AtomicLong(Long.MIN_VALUE);
+		}
+	}
+
+	/*
+	 * Takes a token for key. Returns 0 if one was available, otherwise the
+	 * nanoseconds until the next token.
+	 */
+	public long tryAcquire(String key) {
+		AtomicLong bucket = buckets.get(key);
+		if (bucket == null) {
+			bucket = buckets.size() < maxKeys ? buckets.computeIfAbsent(key, k -> new AtomicLong(Long.MIN_VALUE))
+					: overflow[spread(key.hashCode()) & (overflow.length - 1)];
+		}
+		long now = clock.getAsLong();
+		while (true) {
+			long full = bucket.get();
+			long next = Math.max(full, now) + intervalNanos;
+			if (next - now > burstNanos) {
+				return next - now - burstNanos;
+			}
+			if (bucket.compareAndSet(full, next)) {
+				return 0;
+			}
+		}
+	}
+
+	/*
+	 * Drops keys whose buckets have refilled. A token taken between the check
+	 * and the removal is forgotten, which costs at most one extra permit.
+	 */
+	public int evictIdle() {
+		long now = clock.getAsLong();
+		int evicted = 0;
+		Iterator<AtomicLong> iterator = buckets.values().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().get() <= now) {
+				iterator.remove();
+				evicted++;
+			}
+		}
+		return evicted;
+	}
+
+	public int size() {
+		return buckets.size();
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+}
@@ -0,0 +1,126 @@
+package com.docker.atsea.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.util.BatchItemResult;
+import com.docker.atsea.util.BatchResponse;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Reads a batch request body, a JSON array or newline-delimited JSON, one item
+ * at a time and hands the items to a writer in chunks, each chunk written in
+ * one transaction. A chunk the database rejects is retried item by item so
+ * the failure is reported against the item that caused it.
+ */
+@Component
+public class BatchLoader {
+
+	public static final Logger logger = LoggerFactory.getLogger(BatchLoader.class);
+
+	/*
+	 * Writes a chunk in one transaction and returns a result for each item,
+	 * indexed from firstIndex.
+	 */
+	public interface ChunkWriter<T> {
+		List<BatchItemResult> write(List<T> items, int firstIndex);
+	}
+
+	private final ObjectMapper objectMapper;
+
+	private final int chunkSize;
+
+	private final int maxItems;
+
+	// The application's mapper, so items bind exactly as they would in a single-item request.
+	@Autowired
+	public BatchLoader(ObjectMapper objectMapper,
+			@Value("${atsea.batch.chunkSize:500}") int chunkSize,
+			@Value("${atsea.batch.maxItems:100000}") int maxItems) {
+		this.objectMapper = objectMapper;
+		this.chunkSize = chunkSize;
+		this.maxItems = maxItems;
+	}
+
+	public <T> BatchResponse load(InputStream body, Class<T> type, ChunkWriter<T> writer) throws IOException {
+		BatchResponse response = new BatchResponse();
+		List<T> chunk = new ArrayList<T>(chunkSize);
+		int index = 0;
+		try (MappingIterator<T> items = objectMapper.readerFor(type).readValues(body)) {
+			while (true) {
+				T item;
+				try {
+					if (!items.hasNextValue()) {
+						break;
+					}
+					item = items.nextValue();
+				} catch (JsonParseException e) {
+					write(chunk, index - chunk.size(), writer, response);
+					response.stop(400, "Unable to read item " + index + ". " + e.getOriginalMessage());
+					return response;
+				} catch (JsonMappingException e) {
+					// The item is well-formed JSON but not a valid value; the iterator skips past it.
+					write(chunk, index - chunk.size(), writer, response);
+					response.add(BatchItemResult.failed(index++, 400, e.getOriginalMessage()));
+					continue;
+				}
+				if (index == maxItems) {
+					write(chunk, index - chunk.size(), writer, response);
+					response.stop(413, "A batch is limited to " + maxItems + " items; the rest were not read.");
+					return response;
+				}
+				chunk.add(item);
+				index++;
+				if (chunk.size() == chunkSize) {
+					write(chunk, index - chunk.size(), writer, response);
+				}
+			}
+		}
+		write(chunk, index - chunk.size(), writer, response);
+		return response;
+	}
+
+	private <T> void write(List<T> chunk, int firstIndex, ChunkWriter<T> writer, BatchResponse response) {
+		if (chunk.isEmpty()) {
+			return;
+		}
+		for (BatchItemResult result : writeOrSplit(chunk, firstIndex, writer)) {
+			response.add(result);
+		}
+		chunk.clear();
+	}
+
+	private <T> List<BatchItemResult> writeOrSplit(List<T> chunk, int firstIndex, ChunkWriter<T> writer) {
+		try {
+			return writer.write(chunk, firstIndex);
+		} catch (RuntimeException e) {
+			String reason = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+			if (chunk.size() == 1) {
+				logger.error("Unable to write batch item {}. {}", firstIndex, reason);
+				return Collections.singletonList(BatchItemResult.failed(firstIndex,
+						e instanceof DataIntegrityViolationException ? 409 : 500, reason));
+			}
+			logger.warn("Batch chunk from item {} failed, writing its {} items one at a time. {}", firstIndex,
+					chunk.size(), reason);
+			List<BatchItemResult> results = new ArrayList<BatchItemResult>(chunk.size());
+			for (int i = 0; i < chunk.size(); i++) {
+				results.addAll(writeOrSplit(Collections.singletonList(chunk.get(i)), firstIndex + i, writer));
+			}
+			return results;
+		}
+	}
+}
@@ -0,0 +1,132 @@
+package com.docker.atsea.service;
+
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Set-based deletes for large tables. A chunked delete walks the primary key
+ * in ranges and commits each range on its own, so no statement holds locks on
+ * more than one range of rows and the purge can run beside normal traffic.
+ * Truncate empties whole tables for an admin reset.
+ */
+@Component
+public class BulkDelete {
+
+	public static final Logger logger = LoggerFactory.getLogger(BulkDelete.class);
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final String dialect;
+
+	private final long chunkSize;
+
+	@Autowired
+	public BulkDelete(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			@Value("${datasource.atsea.hibernate.dialect}") String dialect,
+			@Value("${atsea.batch.deleteChunkSize:5000}") long chunkSize) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.dialect = dialect;
+		this.chunkSize = chunkSize;
+	}
+
+	// Told about each chunk inside its transaction, before its rows are deleted.
+	public interface ChunkListener {
+
+		void deleting(String where, Object[] args);
+	}
+
+	public long deleteInChunks(String table, String idColumn, String condition, Object[] args, String... childTables) {
+		return deleteInChunks(table, idColumn, condition, args, null, childTables);
+	}
+
+	/*
+	 * Deletes the rows of table that match condition (null for all of them),
+	 * chunkSize ids at a time. Rows in each child table whose idColumn refers to
+	 * a deleted row are deleted with it, in the same transaction. Must not be
+	 * called inside a transaction. Returns the number of table rows deleted.
+	 */
+	public long deleteInChunks(String table, String idColumn, String condition, Object[] args, ChunkListener listener,
+			String... childTables) {
+		String where = idColumn + " >= ? AND " + idColumn + " < ?" + (condition == null ? "" : " AND " + condition);
+		Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(" + idColumn + ") lo, MAX(" + idColumn + ") hi FROM "
+				+ table + (condition == null ? "" : " WHERE " + condition), args == null ? new Object[0] : args);
+		if (bounds.get("lo") == null) {
+			return 0;
+		}
+		long lo = ((Number) bounds.get("lo")).longValue();
+		long hi = ((Number) bounds.get("hi")).longValue();
+		long deleted = 0;
+		for (long from = lo; from <= hi; from += chunkSize) {
+			Object[] rangeArgs = rangeArgs(from, from + chunkSize, args);
+			deleted += transactionTemplate.execute(status -> {
+				if (listener != null) {
+					listener.deleting(where, rangeArgs);
+				}
+				for (String childTable : childTables) {
+					jdbcTemplate.update("DELETE FROM " + childTable + " WHERE " + idColumn + " IN (SELECT " + idColumn
+							+ " FROM " + table + " WHERE " + where + ")", rangeArgs);
+				}
+				return jdbcTemplate.update("DELETE FROM " + table + " WHERE " + where, rangeArgs);
+			});
+		}
+		logger.info("Deleted {} rows from {} in chunks of {} ids", deleted, table, chunkSize);
+		return deleted;
+	}
+
+	/*
+	 * Empties the tables, given children first. Tables that cannot be truncated
+	 * because a foreign key refers to them (H2, SQL Server) are emptied with a
+	 * plain delete once their children are gone.
+	 */
+	public void truncate(String... tables) {
+		if (dialect.contains("PostgreSQL")) {
+			jdbcTemplate.execute("TRUNCATE TABLE " + String.join(", ", tables));
+			return;
+		}
+		if (dialect.contains("MySQL")) {
+			// Session setting, so every statement must run on the same connection.
+			transactionTemplate.executeWithoutResult(status -> {
+				jdbcTemplate.execute("SET FOREIGN_KEY_CHECKS = 0");
+				try {
+					for (String table : tables) {
+						jdbcTemplate.execute("TRUNCATE TABLE " + table);
+					}
+				} finally {
+					jdbcTemplate.execute("SET FOREIGN_KEY_CHECKS = 1");
+				}
+			});
+			return;
+		}
+		for (String table : tables) {
+			try {
+				jdbcTemplate.execute("TRUNCATE TABLE " + table);
+			} catch (DataAccessException e) {
+				logger.info("Unable to truncate {}, deleting its rows instead. {}", table, e.getMostSpecificCause().getMessage());
+				jdbcTemplate.update("DELETE FROM " + table);
+			}
+		}
+	}
+
+	private static Object[] rangeArgs(long from, long to, Object[] args) {
+		int extra = args == null ? 0 : args.length;
+		Object[] rangeArgs = new Object[2 + extra];
+		rangeArgs[0] = from;
+		rangeArgs[1] = to;
+		if (extra > 0) {
+			System.arraycopy(args, 0, rangeArgs, 2, extra);
+		}
+		return rangeArgs;
+	}
+}
@@ -0,0 +1,20 @@
+package com.docker.atsea.service;
+
+import com.docker.atsea.model.Cart;
+
+public interface CartService {
+
+	Cart findCart(Long customerId);
+
+	Cart addItem(Long customerId, Integer productId, int quantity);
+
+	Cart updateItem(Long customerId, Integer productId, int quantity);
+
+	Cart removeItem(Long customerId, Integer productId);
+
+	void clearCart(Long customerId);
+
+	Cart checkout(Long customerId);
+
+	int evictExpiredCarts();
+}
@@ -0,0 +1,247 @@
+package com.docker.atsea.service;
+
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import com.docker.atsea.model.Cart;
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.repositories.CustomerRepository;
+
+/*
+ * In-memory carts keyed by customer. Cart operations never touch the database;
+ * only checkout writes, through a single OrderService transaction. Carts are
+ * guarded by a fixed set of striped locks rather than one lock per customer.
+ * The class is deliberately not @Transactional so that cart edits do not open
+ * JPA transactions (and borrow pooled connections) for nothing.
+ */
+@Service("cartService")
+public class CartServiceImpl implements CartService {
+
+	public static final Logger logger = LoggerFactory.getLogger(CartServiceImpl.class);
+
+	private static final int LOCK_STRIPES = 64;
+
+	@Autowired
+	private OrderService orderService;
+
+	@Autowired
+	private ProductCache productCache;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+
+	@Value("${atsea.cart.ttlMinutes:30}")
+	private long ttlMinutes;
+
+	private final Map<Long, Cart> carts = new ConcurrentHashMap<Long, Cart>();
+
+	private final ReentrantLock[] locks = new ReentrantLock[LOCK_STRIPES];
+
+	public CartServiceImpl() {
+		for (int i = 0; i < LOCK_STRIPES; i++) {
+			locks[i] = new ReentrantLock();
+		}
+	}
+
+	public Cart findCart(Long customerId) {
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			return price(existingCart(customerId));
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Cart addItem(Long customerId, Integer productId, int quantity) {
+		if (quantity <= 0) {
+			throw new IllegalArgumentException("Quantity must be positive.");
+		}
+		requireProduct(productId);
+		requireCustomer(customerId);
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			Cart cart = cartFor(customerId);
+			cart.getProductsOrdered().merge(productId, quantity, Integer::sum);
+			return price(cart);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Cart updateItem(Long customerId, Integer productId, int quantity) {
+		if (quantity <= 0) {
+			return removeItem(customerId, productId);
+		}
+		requireProduct(productId);
+		requireCustomer(customerId);
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			Cart cart = cartFor(customerId);
+			cart.getProductsOrdered().put(productId, quantity);
+			return price(cart);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public Cart removeItem(Long customerId, Integer productId) {
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			Cart cart = existingCart(customerId);
+			cart.getProductsOrdered().remove(productId);
+			return price(cart);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	public void clearCart(Long customerId) {
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			carts.remove(customerId);
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/*
+	 * Prices the cart against the catalog cache and writes the order at those
+	 * prices. The stripe lock is held across the write so that concurrent edits
+	 * cannot slip in between pricing and commit; the cart is only dropped once
+	 * the order exists. A cart holding products that have left the catalog is
+	 * refused until they are removed.
+	 */
+	public Cart checkout(Long customerId) {
+		ReentrantLock lock = lockFor(customerId);
+		lock.lock();
+		try {
+			Cart cart = carts.get(customerId);
+			if (cart == null || cart.isEmpty()) {
+				throw new IllegalStateException("Cart for customer " + customerId + " is empty.");
+			}
+			Cart priced = price(cart);
+			if (!priced.getUnavailable().isEmpty()) {
+				throw new IllegalArgumentException("Products " + priced.getUnavailable()
+						+ " are no longer available; remove them from the cart.");
+			}
+
+			Order order = new Order();
+			order.setCustomerId(customerId);
+			order.setOrderDate(new Date());
+			order.setProductsOrdered(priced.getProductsOrdered());
+			order.getLinePrices().putAll(priced.getLinePrices());
+			order = orderService.createOrder(order);
+
+			carts.remove(customerId);
+			priced.setOrderId(order.getOrderId());
+			logger.info("Checked out cart for customer {} as order {}", customerId, order.getOrderId());
+			return priced;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.cart.evictionIntervalMillis:60000}")
+	public int evictExpiredCarts() {
+		long cutoff = System.currentTimeMillis() - ttlMinutes * 60000L;
+		int evicted = 0;
+		Iterator<Map.Entry<Long, Cart>> entries = carts.entrySet().iterator();
+		while (entries.hasNext()) {
+			Map.Entry<Long, Cart> entry = entries.next();
+			if (entry.getValue().getLastAccess() >= cutoff) {
+				continue;
+			}
+			ReentrantLock lock = lockFor(entry.getKey());
+			lock.lock();
+			try {
+				if (entry.getValue().getLastAccess() < cutoff && carts.remove(entry.getKey(), entry.getValue())) {
+					evicted++;
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		if (evicted > 0) {
+			logger.info("Evicted {} expired carts", evicted);
+		}
+		return evicted;
+	}
+
+	private ReentrantLock lockFor(Long customerId) {
+		int hash = customerId.hashCode();
+		hash ^= (hash >>> 16);
+		return locks[hash & (LOCK_STRIPES - 1)];
+	}
+
+	/*
+	 * The customer's cart, or an empty one that is not kept, so reading or
+	 * emptying the cart of a customer who has none stores nothing. Caller must
+	 * hold the stripe lock for customerId.
+	 */
+	private Cart existingCart(Long customerId) {
+		Cart cart = carts.get(customerId);
+		if (cart == null) {
+			return new Cart(customerId);
+		}
+		cart.touch();
+		return cart;
+	}
+
+	// Creates the cart if there is none; the customer must exist. Caller must hold the stripe lock for customerId.
+	private Cart cartFor(Long customerId) {
+		Cart cart = carts.computeIfAbsent(customerId, Cart::new);
+		cart.touch();
+		return cart;
+	}
+
+	// Only looked up for a customer without a cart, as a cart is only created for a customer that exists.
+	private void requireCustomer(Long customerId) {
+		if (!carts.containsKey(customerId) && !customerRepository.existsById(customerId)) {
+			throw new IllegalArgumentException("Customer with id " + customerId + " not found.");
+		}
+	}
+
+	private void requireProduct(Integer productId) {
+		if (productId == null || productCache.get(productId) == null) {
+			throw new IllegalArgumentException("Product with id " + productId + " not found.");
+		}
+	}
+
+	/*
+	 * Returns a detached, priced copy so callers never see the live cart. Lines
+	 * whose product has left the catalog stay in the cart, so they can be
+	 * removed, but are listed as unavailable rather than priced.
+	 */
+	private Cart price(Cart cart) {
+		Cart priced = new Cart(cart.getCustomerId());
+		priced.getProductsOrdered().putAll(cart.getProductsOrdered());
+		double total = 0;
+		for (Map.Entry<Integer, Integer> line : priced.getProductsOrdered().entrySet()) {
+			Product product = productCache.get(line.getKey());
+			if (product == null) {
+				priced.getUnavailable().add(line.getKey());
+				continue;
+			}
+			priced.getLinePrices().put(line.getKey(), product.getPrice());
+			total += product.getPrice() * line.getValue();
+		}
+		priced.setTotal(total);
+		return priced;
+	}
+}
@@ -0,0 +1,258 @@
+package com.docker.atsea.service;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/*
+ * How many orders contain each pair of products. Each product has a Row, a
+ * sparse counter of the products ordered with it, kept as int arrays with an
+ * open-addressing (linear probing) table. A row caches its most frequent
+ * partners, so related() is a map lookup until the row next changes.
+ */
+public class CoOccurrence {
+
+	private static final int[] NONE = new int[0];
+
+	private final Map<Integer, Row> rows = new ConcurrentHashMap<Integer, Row>();
+
+	private final int maxRelated;
+
+	private long pairs;
+
+	private static class Row {
+
+		// Orders containing the product itself.
+		int orders;
+
+		// A slot is empty while its count is 0.
+		int[] productIds = NONE;
+		int[] counts = NONE;
+		int size;
+
+		// Partners with the highest counts, or null once the row has changed.
+		volatile int[] top;
+
+		int indexOf(int productId) {
+			if (size == 0) {
+				return -1;
+			}
+			int mask = productIds.length - 1;
+			for (int slot = home(productId, mask); counts[slot] != 0; slot = (slot + 1) & mask) {
+				if (productIds[slot] == productId) {
+					return slot;
+				}
+			}
+			return -1;
+		}
+
+		// Returns 1 if the pair is new, -1 if its count has dropped to nothing, otherwise 0.
+		int add(int productId, int delta) {
+			int slot = indexOf(productId);
+			if (slot >= 0) {
+				counts[slot] += delta;
+				if (counts[slot] > 0) {
+					return 0;
+				}
+				remove(slot);
+				return -1;
+			}
+			if (delta <= 0) {
+				return 0;
+			}
+			if ((size + 1) * 4L > productIds.length * 3L) {
+				resize(size + 1);
+			}
+			int mask = productIds.length - 1;
+			slot = home(productId, mask);
+			while (counts[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			productIds[slot] = productId;
+			counts[slot] = delta;
+			size++;
+			return 1;
+		}
+
+		// Empties the slot, shifting back the entries probed past it.
+		void remove(int slot) {
+			int mask = productIds.length - 1;
+			int hole = slot;
+			for (int next = (hole + 1) & mask; counts[next] != 0; next = (next + 1) & mask) {
+				int home = home(productIds[next], mask);
+				if (((next - home) & mask) >= ((next - hole) & mask)) {
+					productIds[hole] = productIds[next];
+					counts[hole] = counts[next];
+					hole = next;
+				}
+			}
+			productIds[hole] = 0;
+			counts[hole] = 0;
+			size--;
+		}
+
+		// Room for the given number of partners, with the table at most three quarters full.
+		void resize(int entries) {
+			int[] oldIds = productIds;
+			int[] oldCounts = counts;
+			int capacity = Integer.highestOneBit(Math.max(entries * 4 / 3, 3)) << 1;
+			productIds = new int[capacity];
+			counts = new int[capacity];
+			int mask = capacity - 1;
+			for (int i = 0; i < oldIds.length; i++) {
+				if (oldCounts[i] != 0) {
+					int slot = home(oldIds[i], mask);
+					while (counts[slot] != 0) {
+						slot = (slot + 1) & mask;
+					}
+					productIds[slot] = oldIds[i];
+					counts[slot] = oldCounts[i];
+				}
+			}
+		}
+
+		// Highest count first, then lowest product id.
+		int[] rank(int limit) {
+			long[] keys = new long[size];
+			int n = 0;
+			for (int i = 0; i < productIds.length; i++) {
+				if (counts[i] != 0) {
+					keys[n++] = ((long) counts[i] << 32) | (0xFFFFFFFFL & ~productIds[i]);
+				}
+			}
+			Arrays.sort(keys, 0, n);
+			int[] ranked = new int[Math.min(limit, n)];
+			for (int i = 0; i < ranked.length; i++) {
+				ranked[i] = ~(int) keys[n - 1 - i];
+			}
+			return ranked;
+		}
+	}
+
+	public CoOccurrence(int maxRelated) {
+		this.maxRelated = maxRelated;
+	}
+
+	private static int home(int productId, int mask) {
+		int hash = productId * 0x9E3779B9;
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+	/*
+	 * Counts an order's products (sign 1), or takes them back out (sign -1).
+	 * productIds must be distinct.
+	 */
+	public synchronized void add(int[] productIds, int sign) {
+		for (int i = 0; i < productIds.length; i++) {
+			Row row = rows.computeIfAbsent(productIds[i], productId -> new Row());
+			row.orders += sign;
+			for (int j = 0; j < productIds.length; j++) {
+				if (i != j) {
+					pairs += row.add(productIds[j], sign);
+				}
+			}
+			row.top = null;
+			if (row.orders <= 0 && row.size == 0) {
+				rows.remove(productIds[i]);
+			}
+		}
+	}
+
+	// Adds the counts of other, which is left as it was.
+	public synchronized void merge(CoOccurrence other) {
+		synchronized (other) {
+			for (Map.Entry<Integer, Row> entry : other.rows.entrySet()) {
+				Row from = entry.getValue();
+				Row row = rows.computeIfAbsent(entry.getKey(), productId -> new Row());
+				row.orders += from.orders;
+				if (row.size + from.size > row.productIds.length * 3L / 4) {
+					row.resize(row.size + from.size);
+				}
+				for (int i = 0; i < from.productIds.length; i++) {
+					if (from.counts[i] != 0) {
+						pairs += row.add(from.productIds[i], from.counts[i]);
+					}
+				}
+				row.top = null;
+			}
+		}
+	}
+
+	// The products most often ordered with the given one, at most maxRelated of them.
+	public int[] related(int productId) {
+		Row row = rows.get(productId);
+		if (row == null) {
+			return NONE;
+		}
+		int[] top = row.top;
+		if (top == null) {
+			synchronized (this) {
+				top = row.top;
+				if (top == null) {
+					top = row.rank(maxRelated);
+					row.top = top;
+				}
+			}
+		}
+		return top;
+	}
+
+	// Orders containing both products.
+	public synchronized int count(int productId, int otherId) {
+		Row row = rows.get(productId);
+		int slot = row == null ? -1 : row.indexOf(otherId);
+		return slot < 0 ? 0 : row.counts[slot];
+	}
+
+	// Orders containing the product.
+	public synchronized int orders(int productId) {
+		Row row = rows.get(productId);
+		return row == null ? 0 : row.orders;
+	}
+
+	public int getProducts() {
+		return rows.size();
+	}
+
+	// Pairs with a count; each pair of products is counted in both of its rows.
+	public synchronized long getPairs() {
+		return pairs;
+	}
+
+	public synchronized void write(DataOutputStream out) throws IOException {
+		out.writeInt(rows.size());
+		for (Map.Entry<Integer, Row> entry : rows.entrySet()) {
+			Row row = entry.getValue();
+			out.writeInt(entry.getKey());
+			out.writeInt(row.orders);
+			out.writeInt(row.size);
+			for (int i = 0; i < row.productIds.length; i++) {
+				if (row.counts[i] != 0) {
+					out.writeInt(row.productIds[i]);
+					out.writeInt(row.counts[i]);
+				}
+			}
+		}
+	}
+
+	public static CoOccurrence read(DataInputStream in, int maxRelated) throws IOException {
+		CoOccurrence matrix = new CoOccurrence(maxRelated);
+		int products = in.readInt();
+		for (int p = 0; p < products; p++) {
+			int productId = in.readInt();
+			Row row = new Row();
+			row.orders = in.readInt();
+			int size = in.readInt();
+			row.resize(size);
+			for (int i = 0; i < size; i++) {
+				int otherId = in.readInt();
+				matrix.pairs += row.add(otherId, in.readInt());
+			}
+			matrix.rows.put(productId, row);
+		}
+		return matrix;
+	}
+}
@@ -1,28 +1,38 @@
 package com.docker.atsea.service;
 
 import java.util.List;
+import java.util.Map;
 
 import com.docker.atsea.model.Customer;
+import com.docker.atsea.util.BatchItemResult;
 
 public interface CustomerService {
 
 	Customer findById(Long customerId);
 
+	Long findVersionById(Long customerId);
+
 	Customer findByUserName(String name);
 	
 	Customer findByName(String name);
 	
 	Customer createCustomer(Customer customer);
 
+	List<BatchItemResult> createCustomers(List<Customer> customers, int firstIndex);
+
 	void saveCustomer(Customer customer);
 
 	void updateCustomer(Customer customer);
 
-	void deleteCustomerById(Long customerId);
+	Customer patchCustomer(Long customerId, Map<String, Object> patch, String ifMatch);
 
-	void deleteAllCustomers();
+	boolean deleteCustomerById(Long customerId);
+
+	long deleteAllCustomers();
 
 	List<Customer> findAllCustomers();
 
 	boolean customerExist(Customer customer);
+
+	SingleFlight<String, Customer> getLookups();
 }
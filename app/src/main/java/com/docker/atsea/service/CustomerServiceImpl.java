@@ -1,28 +1,138 @@
 package com.docker.atsea.service;
 
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import jakarta.annotation.PostConstruct;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.docker.atsea.invalidation.InvalidationBus;
 import com.docker.atsea.model.Customer;
 import com.docker.atsea.repositories.CustomerRepository;
+import com.docker.atsea.util.BatchItemResult;
+import com.docker.atsea.util.ETags;
 
 @Service("customerService")
 @Transactional
 public class CustomerServiceImpl implements CustomerService {
 	
+	private static final String INSERT = "INSERT INTO customer (name, address, email, phone, username, password, enabled, role)"
+			+ " VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+
 	@Autowired
 	private CustomerRepository customerRepository;
 
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private BulkDelete bulkDelete;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private OrderViews orderViews;
+
+	private final SingleFlight<String, Customer> byUserName;
+
+	// Customers by username, evicted on every node when a customer changes.
+	private final Map<String, Customer> cached;
+
+	// Counts evictions, so a query that started before one is not cached after it.
+	private long evictions;
+
+	public CustomerServiceImpl() {
+		this(2000, 10000);
+	}
+
+	@Autowired
+	public CustomerServiceImpl(@Value("${atsea.singleflight.maxWaitMillis:2000}") long maxWaitMillis,
+			@Value("${atsea.customer.cacheSize:10000}") final int cacheSize) {
+		this.byUserName = new SingleFlight<String, Customer>("customer", maxWaitMillis);
+		this.cached = new LinkedHashMap<String, Customer>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Customer> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	@PostConstruct
+	public void subscribe() {
+		invalidationBus.subscribe(InvalidationBus.CUSTOMER, this::evict);
+	}
+
 	public Customer findById(Long customerId) {
 		return customerRepository.findById(customerId).orElse(null);
 	}
 
+	// The version column alone, for answering a conditional request without loading the customer.
+	public Long findVersionById(Long customerId) {
+		return customerRepository.findVersionById(customerId);
+	}
+
+	/*
+	 * Lookups by the customer page and login are answered from the cache. On a
+	 * miss, concurrent lookups of the same username share one query. Either way
+	 * callers share one Customer, which they must not change. Runs outside the
+	 * service transaction, so waiting callers hold no connection.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public Customer findByUserName(String name) {
-		return customerRepository.findByUserName(name);
+		Customer customer;
+		synchronized (cached) {
+			customer = cached.get(name);
+		}
+		return customer != null ? customer : byUserName.get(name, () -> load(name));
+	}
+
+	// Unknown usernames are not cached, so creating a customer needs no invalidation.
+	private Customer load(String name) {
+		long before;
+		synchronized (cached) {
+			before = evictions;
+		}
+		Customer customer = customerRepository.findByUserName(name);
+		if (customer != null) {
+			synchronized (cached) {
+				if (evictions == before) {
+					cached.put(name, customer);
+				}
+			}
+		}
+		return customer;
+	}
+
+	private void evict(String customerId) {
+		synchronized (cached) {
+			evictions++;
+			if (customerId == null) {
+				cached.clear();
+			} else {
+				cached.values().removeIf(customer -> customerId.equals(String.valueOf(customer.getCustomerId())));
+			}
+		}
+	}
+
+	private void changed(Long customerId) {
+		invalidationBus.publish(InvalidationBus.CUSTOMER, customerId == null ? null : customerId.toString());
 	}
 
 	public Customer findByName(String name) {
@@ -35,16 +145,171 @@ public class CustomerServiceImpl implements CustomerService {
 		return customer;
 	}
 	
+	/*
+	 * Creates a chunk of customers in one transaction: taken usernames are looked
+	 * up with one query and the rest go in as a single JDBC batch. Customers
+	 * that are incomplete or whose username is taken are reported and skipped.
+	 */
+	public List<BatchItemResult> createCustomers(List<Customer> customers, int firstIndex) {
+		BatchItemResult[] results = new BatchItemResult[customers.size()];
+		Set<String> userNames = new HashSet<String>();
+		for (Customer customer : customers) {
+			if (customer != null && customer.getUsername() != null) {
+				userNames.add(customer.getUsername());
+			}
+		}
+		Set<String> taken = new HashSet<String>();
+		if (!userNames.isEmpty()) {
+			for (Object[] row : customerRepository.findIdsByUserNames(userNames)) {
+				taken.add((String) row[1]);
+			}
+		}
+
+		List<Object[]> rows = new ArrayList<Object[]>();
+		List<Integer> rowPositions = new ArrayList<Integer>();
+		for (int i = 0; i < customers.size(); i++) {
+			Customer customer = customers.get(i);
+			String problem = validate(customer);
+			if (problem != null) {
+				results[i] = BatchItemResult.failed(firstIndex + i, 400, problem);
+			} else if (!taken.add(customer.getUsername())) {
+				results[i] = BatchItemResult.failed(firstIndex + i, 409, "A customer with username "
+						+ customer.getUsername() + " already exists.");
+			} else {
+				rows.add(new Object[] { customer.getName(), customer.getAddress(), customer.getEmail(), customer.getPhone(),
+						customer.getUsername(), customer.getPassword(), customer.getEnabled(),
+						customer.getRole() == null ? "USER" : customer.getRole() });
+				rowPositions.add(i);
+			}
+		}
+		if (!rows.isEmpty()) {
+			jdbcTemplate.batchUpdate(INSERT, rows);
+			List<String> inserted = new ArrayList<String>(rows.size());
+			for (Object[] row : rows) {
+				inserted.add((String) row[4]);
+			}
+			Map<String, Long> ids = new HashMap<String, Long>();
+			for (Object[] row : customerRepository.findIdsByUserNames(inserted)) {
+				ids.put((String) row[1], (Long) row[0]);
+			}
+			for (int i = 0; i < rowPositions.size(); i++) {
+				int position = rowPositions.get(i);
+				results[position] = BatchItemResult.created(firstIndex + position, ids.get(inserted.get(i)));
+			}
+		}
+		return Arrays.asList(results);
+	}
+
+	// Mirrors the column constraints on Customer, so one bad item cannot fail the whole batch.
+	private static String validate(Customer customer) {
+		if (customer == null) {
+			return "A customer is required.";
+		}
+		String problem = checkLength("name", customer.getName(), 255);
+		problem = problem != null ? problem : checkLength("address", customer.getAddress(), 512);
+		problem = problem != null ? problem : checkLength("email", customer.getEmail(), 128);
+		problem = problem != null ? problem : checkLength("phone", customer.getPhone(), 32);
+		problem = problem != null ? problem : checkLength("username", customer.getUsername(), 255);
+		problem = problem != null ? problem : checkLength("password", customer.getPassword(), 255);
+		if (problem == null && customer.getRole() != null && customer.getRole().length() > 5) {
+			problem = "role must be at most 5 characters.";
+		}
+		return problem;
+	}
+
+	private static String checkLength(String field, String value, int maxLength) {
+		if (value == null || value.isEmpty()) {
+			return field + " is required.";
+		}
+		return value.length() > maxLength ? field + " must be at most " + maxLength + " characters." : null;
+	}
+	
 	public void saveCustomer(Customer customer) {
-		customerRepository.save(customer);
+		updateCustomer(customer);
 	}
 
 	public void updateCustomer(Customer customer) {
-		customerRepository.save(customer);
+		customer = customerRepository.save(customer);
+		orderViews.customerRenamed(customer.getCustomerId(), customer.getName());
+		changed(customer.getCustomerId());
+	}
+
+	/*
+	 * Applies a JSON Merge Patch (RFC 7396): members present are set, the rest
+	 * are left alone. Customer uses dynamic updates, so the UPDATE carries only
+	 * the columns whose values changed, or is skipped if none did. Returns null
+	 * if there is no such customer. If an If-Match header is given and names no
+	 * version the customer is still at, nothing is changed.
+	 */
+	public Customer patchCustomer(Long customerId, Map<String, Object> patch, String ifMatch) {
+		Customer customer = customerRepository.findById(customerId).orElse(null);
+		if (customer == null) {
+			return null;
+		}
+		if (ifMatch != null && !ETags.matches(ifMatch, customer.getVersion())) {
+			throw new ObjectOptimisticLockingFailureException(Customer.class, customerId);
+		}
+		for (Map.Entry<String, Object> member : patch.entrySet()) {
+			switch (member.getKey()) {
+			case "customerId":
+				if (!(member.getValue() instanceof Number) || ((Number) member.getValue()).longValue() != customerId) {
+					throw new IllegalArgumentException("customerId cannot be changed.");
+				}
+				break;
+			case "name":
+				customer.setName(text(member));
+				orderViews.customerRenamed(customerId, customer.getName());
+				break;
+			case "address": customer.setAddress(text(member)); break;
+			case "email": customer.setEmail(text(member)); break;
+			case "phone": customer.setPhone(text(member)); break;
+			case "password": customer.setPassword(text(member)); break;
+			case "role": customer.setRole(text(member)); break;
+			case "enabled": customer.setEnabled(flag(member)); break;
+			case "username":
+				String username = text(member);
+				if (!username.equals(customer.getUsername()) && customerRepository.findByUserName(username) != null) {
+					throw new IllegalStateException("A customer with username " + username + " already exists.");
+				}
+				customer.setUsername(username);
+				break;
+			default:
+				throw new IllegalArgumentException("Customers have no member " + member.getKey() + ".");
+			}
+		}
+		String problem = validate(customer);
+		if (problem != null) {
+			throw new IllegalArgumentException(problem);
+		}
+		changed(customerId);
+		return customer;
 	}
 
-	public void deleteAllCustomers() {
-		customerRepository.deleteAll();
+	// Every customer member is required, so none can be removed with null.
+	private static String text(Map.Entry<String, Object> member) {
+		if (!(member.getValue() instanceof String)) {
+			throw new IllegalArgumentException(member.getKey() + (member.getValue() == null ? " cannot be removed."
+					: " must be a string."));
+		}
+		return (String) member.getValue();
+	}
+
+	private static Boolean flag(Map.Entry<String, Object> member) {
+		if (member.getValue() instanceof Boolean) {
+			return (Boolean) member.getValue();
+		}
+		if ("true".equals(member.getValue()) || "false".equals(member.getValue())) {
+			return Boolean.valueOf((String) member.getValue());
+		}
+		throw new IllegalArgumentException(member.getKey() + " must be true or false.");
+	}
+
+	// Each chunk commits on its own, so this runs outside the service transaction.
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public long deleteAllCustomers() {
+		long deleted = bulkDelete.deleteInChunks("customer", "customerid", null, null);
+		changed(null);
+		return deleted;
 	}
 
 	public List<Customer> findAllCustomers() {
@@ -56,7 +321,15 @@ public class CustomerServiceImpl implements CustomerService {
 		return customerRepository.findByUserName(customer.getUsername()) != null;
 	}
 
-	public void deleteCustomerById(Long customerId) {
-		customerRepository.deleteById(customerId);
+	public SingleFlight<String, Customer> getLookups() {
+		return byUserName;
+	}
+
+	public boolean deleteCustomerById(Long customerId) {
+		if (customerRepository.deleteByCustomerId(customerId) == 0) {
+			return false;
+		}
+		changed(customerId);
+		return true;
 	}
 }
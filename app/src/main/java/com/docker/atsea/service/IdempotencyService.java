@@ -0,0 +1,18 @@
+package com.docker.atsea.service;
+
+import com.docker.atsea.model.IdempotencyRecord;
+
+public interface IdempotencyService {
+
+	IdempotencyRecord find(String key);
+
+	boolean begin(String key);
+
+	void end(String key);
+
+	void save(IdempotencyRecord record);
+
+	int purgeExpired();
+
+	void clearCache();
+}
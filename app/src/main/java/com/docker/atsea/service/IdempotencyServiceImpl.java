@@ -0,0 +1,124 @@
+package com.docker.atsea.service;
+
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docker.atsea.model.IdempotencyRecord;
+import com.docker.atsea.repositories.IdempotencyRecordRepository;
+
+/*
+ * Idempotency-Key bookkeeping. Recently answered keys are kept in a bounded LRU
+ * map so that client retries are replayed without a query; older keys fall
+ * back to the idempotency_key table, whose primary key also stops two nodes
+ * from both completing the same request. Keys being processed on this node are
+ * tracked separately so a concurrent retry is turned away instead of racing.
+ */
+@Service("idempotencyService")
+public class IdempotencyServiceImpl implements IdempotencyService {
+
+	public static final Logger logger = LoggerFactory.getLogger(IdempotencyServiceImpl.class);
+
+	@Autowired
+	private IdempotencyRecordRepository idempotencyRecordRepository;
+
+	@Value("${atsea.idempotency.ttlHours:24}")
+	private long ttlHours;
+
+	private final Map<String, IdempotencyRecord> recent;
+
+	private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+	public IdempotencyServiceImpl(@Value("${atsea.idempotency.cacheSize:10000}") final int cacheSize) {
+		this.recent = new LinkedHashMap<String, IdempotencyRecord>(cacheSize, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecord> eldest) {
+				return size() > cacheSize;
+			}
+		};
+	}
+
+	public IdempotencyRecord find(String key) {
+		IdempotencyRecord record;
+		synchronized (recent) {
+			record = recent.get(key);
+		}
+		if (record == null) {
+			record = idempotencyRecordRepository.findById(key).orElse(null);
+			if (record == null) {
+				return null;
+			}
+			remember(record);
+		}
+		return record.getCreatedAt().getTime() >= cutoff() ? record : null;
+	}
+
+	public boolean begin(String key) {
+		return inFlight.add(key);
+	}
+
+	public void end(String key) {
+		inFlight.remove(key);
+	}
+
+	/*
+	 * Inserts the record in the caller's transaction, so it commits or rolls back
+	 * with the work it describes. It only becomes visible in the cache on commit.
+	 * An expired row the purge has not reached yet is deleted first, so its key
+	 * can be reused; a live row still fails the insert and is replayed.
+	 */
+	public void save(final IdempotencyRecord record) {
+		idempotencyRecordRepository.findById(record.getKey())
+				.filter(stale -> stale.getCreatedAt().getTime() < cutoff())
+				.ifPresent(stale -> {
+					idempotencyRecordRepository.delete(stale);
+					idempotencyRecordRepository.flush();
+				});
+		idempotencyRecordRepository.saveAndFlush(record);
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCommit() {
+				remember(record);
+			}
+		});
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.idempotency.purgeIntervalMillis:3600000}")
+	public int purgeExpired() {
+		int purged = idempotencyRecordRepository.deleteCreatedBefore(new Date(cutoff()));
+		if (purged > 0) {
+			logger.info("Purged {} expired idempotency keys", purged);
+		}
+		return purged;
+	}
+
+	// After the idempotency_key table has been emptied behind the service's back.
+	public void clearCache() {
+		synchronized (recent) {
+			recent.clear();
+		}
+	}
+
+	private void remember(IdempotencyRecord record) {
+		synchronized (recent) {
+			recent.put(record.getKey(), record);
+		}
+	}
+
+	private long cutoff() {
+		return System.currentTimeMillis() - ttlHours * 3600000L;
+	}
+}
@@ -0,0 +1,24 @@
+package com.docker.atsea.service;
+
+public class InsufficientStockException extends IllegalStateException {
+
+	private static final long serialVersionUID = -1953786398307757114L;
+
+	private final long productId;
+
+	private final long requested;
+
+	public InsufficientStockException(long productId, long requested, long available) {
+		super("Only " + available + " of product " + productId + " left, " + requested + " requested.");
+		this.productId = productId;
+		this.requested = requested;
+	}
+
+	public long getProductId() {
+		return productId;
+	}
+
+	public long getRequested() {
+		return requested;
+	}
+}
@@ -0,0 +1,294 @@
+package com.docker.atsea.service;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/*
+ * Maintains monthly range partitions of orders on PostgreSQL, where
+ * init-db.sql creates the table partitioned by orderdate. Partitions are
+ * created monthsAhead months in advance. Once a month is more than
+ * retainMonths months old, its partition is detached and written with its
+ * order lines to a gzipped file of JSON orders under archiveDir, then dropped
+ * and its orderquantities, orderprices and order_view rows deleted. Each step can be resumed, so a
+ * partition left detached by a crash is archived on the next run. Elsewhere,
+ * or if orders is a plain table, this does nothing.
+ */
+@Component
+public class OrderPartitions {
+
+	public static final Logger logger = LoggerFactory.getLogger(OrderPartitions.class);
+
+	private static final Pattern PARTITION = Pattern.compile("orders_y(\\d{4})m(\\d{2})");
+
+	private static final int EXPORT_FETCH_SIZE = 1000;
+
+	/*
+	 * What a maintenance run should do: the months to create partitions for,
+	 * and the partitions to archive, oldest first.
+	 */
+	public static class Plan {
+
+		private final List<YearMonth> create = new ArrayList<YearMonth>();
+
+		private final List<String> archive = new ArrayList<String>();
+
+		public List<YearMonth> getCreate() {
+			return create;
+		}
+
+		public List<String> getArchive() {
+			return archive;
+		}
+	}
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final JdbcTemplate exportTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final BulkDelete bulkDelete;
+
+	private final String dialect;
+
+	private final int monthsAhead;
+
+	private final int retainMonths;
+
+	private final Path archiveDir;
+
+	@Autowired
+	public OrderPartitions(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, BulkDelete bulkDelete,
+			@Value("${datasource.atsea.hibernate.dialect}") String dialect,
+			@Value("${atsea.partitions.monthsAhead:3}") int monthsAhead,
+			@Value("${atsea.partitions.retainMonths:12}") int retainMonths,
+			@Value("${atsea.partitions.archiveDir:archive/orders}") String archiveDir) {
+		this.jdbcTemplate = jdbcTemplate;
+		// PostgreSQL only streams a result set with a fetch size, inside a transaction.
+		this.exportTemplate = new JdbcTemplate(jdbcTemplate.getDataSource());
+		this.exportTemplate.setFetchSize(EXPORT_FETCH_SIZE);
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.bulkDelete = bulkDelete;
+		this.dialect = dialect;
+		this.monthsAhead = monthsAhead;
+		this.retainMonths = retainMonths;
+		this.archiveDir = Paths.get(archiveDir);
+	}
+
+	/*
+	 * Plans a run on the given day. Partitions are named orders_yYYYYmMM;
+	 * retainMonths 0 keeps every partition.
+	 */
+	public static Plan plan(LocalDate today, int monthsAhead, int retainMonths, Collection<String> attached,
+			Collection<String> detached) {
+		Plan plan = new Plan();
+		YearMonth current = YearMonth.from(today);
+		Set<YearMonth> existing = new HashSet<YearMonth>();
+		for (String name : attached) {
+			YearMonth month = month(name);
+			if (month != null) {
+				existing.add(month);
+			}
+		}
+		for (int i = 0; i <= monthsAhead; i++) {
+			if (!existing.contains(current.plusMonths(i))) {
+				plan.create.add(current.plusMonths(i));
+			}
+		}
+		TreeSet<String> archive = new TreeSet<String>(detached);
+		if (retainMonths > 0) {
+			YearMonth oldestKept = current.minusMonths(retainMonths);
+			for (String name : attached) {
+				YearMonth month = month(name);
+				if (month != null && month.isBefore(oldestKept)) {
+					archive.add(name);
+				}
+			}
+		}
+		plan.archive.addAll(archive);
+		return plan;
+	}
+
+	public static String name(YearMonth month) {
+		return String.format("orders_y%04dm%02d", month.getYear(), month.getMonthValue());
+	}
+
+	private static YearMonth month(String name) {
+		Matcher matcher = PARTITION.matcher(name);
+		return matcher.matches() ? YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))) : null;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void maintainOnStart() {
+		if (!isPartitioned()) {
+			logger.info("orders is not a partitioned table; partition maintenance is off");
+			return;
+		}
+		maintain();
+	}
+
+	/*
+	 * Creates the partitions that are due and archives the ones past
+	 * retention. Returns the partitions created and archived, by name.
+	 */
+	@Scheduled(cron = "${atsea.partitions.cron:0 15 3 * * *}")
+	public synchronized Map<String, List<String>> maintain() {
+		Map<String, List<String>> result = new HashMap<String, List<String>>();
+		result.put("created", new ArrayList<String>());
+		result.put("archived", new ArrayList<String>());
+		if (!isPartitioned()) {
+			return result;
+		}
+		List<String> attached = jdbcTemplate.queryForList("SELECT c.relname FROM pg_inherits i"
+				+ " JOIN pg_class c ON c.oid = i.inhrelid JOIN pg_class p ON p.oid = i.inhparent"
+				+ " WHERE p.relname = 'orders' AND pg_table_is_visible(p.oid)", String.class);
+		List<String> detached = jdbcTemplate.queryForList("SELECT c.relname FROM pg_class c WHERE c.relkind = 'r'"
+				+ " AND c.relname ~ '^orders_y[0-9]{4}m[0-9]{2}$' AND pg_table_is_visible(c.oid)"
+				+ " AND NOT EXISTS (SELECT 1 FROM pg_inherits i WHERE i.inhrelid = c.oid)", String.class);
+		Plan plan = plan(LocalDate.now(), monthsAhead, retainMonths, attached, detached);
+		for (YearMonth month : plan.getCreate()) {
+			try {
+				create(month);
+				result.get("created").add(name(month));
+			} catch (DataAccessException e) {
+				// Typically orders for that month already sitting in the default partition.
+				logger.error("Unable to create partition {}. {}", name(month), e.getMostSpecificCause().getMessage());
+			}
+		}
+		for (String partition : plan.getArchive()) {
+			try {
+				archive(partition, attached.contains(partition));
+				result.get("archived").add(partition);
+			} catch (IOException | DataAccessException e) {
+				logger.error("Unable to archive partition {}; it will be retried on the next run. {}", partition,
+						e.getMessage());
+				break;
+			}
+		}
+		return result;
+	}
+
+	private boolean isPartitioned() {
+		if (!dialect.contains("PostgreSQL")) {
+			return false;
+		}
+		return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM pg_partitioned_table pt JOIN pg_class c ON c.oid = pt.partrelid"
+				+ " WHERE c.relname = 'orders' AND pg_table_is_visible(c.oid)", Long.class) > 0;
+	}
+
+	private void create(YearMonth month) {
+		jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS " + name(month) + " PARTITION OF orders FOR VALUES FROM ('"
+				+ month.atDay(1) + "') TO ('" + month.plusMonths(1).atDay(1) + "')");
+		logger.info("Created order partition {}", name(month));
+	}
+
+	/*
+	 * Detached first, so nothing reads or writes the partition while it is
+	 * archived. The archive is written under a temporary name and moved into
+	 * place, so an existing archive file is always complete and is not
+	 * rewritten from a partition that may already be partly deleted.
+	 */
+	private void archive(String partition, boolean attached) throws IOException {
+		if (attached) {
+			jdbcTemplate.execute("ALTER TABLE orders DETACH PARTITION " + partition);
+		}
+		Files.createDirectories(archiveDir);
+		Path file = archiveDir.resolve(partition + ".ndjson.gz");
+		long orders = 0;
+		if (!Files.exists(file)) {
+			Path partial = archiveDir.resolve(partition + ".ndjson.gz.partial");
+			orders = export(partition, partial);
+			Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		bulkDelete.deleteInChunks(partition, "orderid", null, null, "orderquantities", "orderprices", "order_view");
+		jdbcTemplate.execute("DROP TABLE " + partition);
+		logger.info("Archived order partition {} to {} ({} orders)", partition, file, orders);
+	}
+
+	// One JSON order per line, in the form the order endpoints use.
+	@SuppressWarnings("unchecked")
+	private long export(String partition, Path file) throws IOException {
+		try (Writer out = new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(file)), StandardCharsets.UTF_8)) {
+			long[] orders = new long[1];
+			JSONObject[] order = new JSONObject[1];
+			transactionTemplate.executeWithoutResult(status -> exportTemplate.query(
+					"SELECT o.orderid, o.orderdate, o.customerid, o.total, q.productid, q.productsordered, p.unitprice FROM "
+							+ partition + " o LEFT JOIN orderquantities q ON q.orderid = o.orderid"
+							+ " LEFT JOIN orderprices p ON p.orderid = q.orderid AND p.productid = q.productid ORDER BY o.orderid",
+					rs -> {
+						long orderId = rs.getLong("orderid");
+						if (order[0] == null || !order[0].get("orderId").equals(orderId)) {
+							write(out, order[0]);
+							order[0] = new JSONObject();
+							order[0].put("orderId", orderId);
+							order[0].put("orderDate", rs.getDate("orderdate").toLocalDate().toString());
+							order[0].put("customerId", rs.getObject("customerid"));
+							order[0].put("productsOrdered", new JSONObject());
+							order[0].put("linePrices", new JSONObject());
+							if (rs.getObject("total") != null) {
+								order[0].put("total", rs.getDouble("total"));
+							}
+							orders[0]++;
+						}
+						if (rs.getObject("productid") != null) {
+							((JSONObject) order[0].get("productsOrdered")).put(String.valueOf(rs.getInt("productid")),
+									rs.getInt("productsordered"));
+							if (rs.getObject("unitprice") != null) {
+								((JSONObject) order[0].get("linePrices")).put(String.valueOf(rs.getInt("productid")),
+										rs.getDouble("unitprice"));
+							}
+						}
+					}));
+			write(out, order[0]);
+			return orders[0];
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	private static void write(Writer out, JSONObject order) {
+		if (order == null) {
+			return;
+		}
+		try {
+			out.write(order.toJSONString());
+			out.write('\n');
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
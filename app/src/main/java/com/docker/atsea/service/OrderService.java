@@ -1,24 +1,50 @@
 package com.docker.atsea.service;
 
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import org.json.simple.JSONObject;
+
+import com.docker.atsea.model.IdempotencyRecord;
 import com.docker.atsea.model.Order;
+import com.docker.atsea.util.BatchItemResult;
 
 public interface OrderService {
 
 	List<Order> findAllOrders();
+
+	List<Order> findOrdersBetween(Date from, Date to);
 	
 	Order findById(Long orderId);
+
+	Long findVersionById(Long orderId);
+
+	JSONObject findView(long orderId);
+
+	List<JSONObject> findViewsByCustomer(long customerId, int limit);
+
+	long rebuildViews();
 	
 	Order createOrder(Order order);
 	
+	Order createOrder(Order order, String reservationId);
+	
+	Order createOrder(Order order, String reservationId, IdempotencyRecord idempotency);
+
+	List<BatchItemResult> createOrders(List<Order> orders, int firstIndex);
+	
 	void saveOrder(Order order);
 	
 	void updateOrder(Order order);
+
+	Order patchOrder(Long orderId, Map<String, Object> patch, String ifMatch);
 	
-	void deleteOrderById(Long orderId);
+	boolean deleteOrderById(Long orderId);
 	
-	void deleteAllItems();
+	long deleteAllItems();
+
+	long deleteOrdersBefore(Date cutoff);
 
 	boolean orderExists(Order order);	
 }
\ No newline at end of file
@@ -1,14 +1,33 @@
 package com.docker.atsea.service;
 
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+
+import org.json.simple.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.docker.atsea.model.IdempotencyRecord;
 import com.docker.atsea.model.Order;
+import com.docker.atsea.model.OutboxEvent;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.model.StockReservation;
 import com.docker.atsea.repositories.CustomerRepository;
 import com.docker.atsea.repositories.OrderRepository;
+import com.docker.atsea.repositories.OutboxEventRepository;
+import com.docker.atsea.util.BatchItemResult;
+import com.docker.atsea.util.ETags;
+import com.fasterxml.jackson.databind.util.StdDateFormat;
 
 @Service("orderService")
 @Transactional
@@ -16,38 +35,393 @@ public class OrderServiceImpl implements OrderService {
 
 	@Autowired
 	private OrderRepository orderRepository;
+	
+	@Autowired
+	private OutboxEventRepository outboxEventRepository;
+	
+	@Autowired
+	private StockService stockService;
+	
+	@Autowired
+	private IdempotencyService idempotencyService;
+
+	@Autowired
+	private BulkDelete bulkDelete;
+
+	@Autowired
+	private SalesRollups salesRollups;
+
+	@Autowired
+	private OrderViews orderViews;
+
+	@Autowired
+	private Recommendations recommendations;
+
+	@Autowired
+	private ProductCache productCache;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+
+	@PersistenceContext
+	private EntityManager entityManager;
 		
 	public Order findById(Long orderId) {
 		return orderRepository.findById(orderId).orElse(null) ;
 	}
 
-	public Order createOrder(Order order) {		
-		order = orderRepository.save(order);
+	// The whole order document from order_view, in one primary key read.
+	public JSONObject findView(long orderId) {
+		return orderViews.find(orderId);
+	}
+
+	public List<JSONObject> findViewsByCustomer(long customerId, int limit) {
+		return orderViews.findByCustomer(customerId, limit);
+	}
+
+	// Each chunk commits on its own, so this runs outside the service transaction.
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public long rebuildViews() {
+		return orderViews.rebuild();
+	}
+
+	// The version column alone, for answering a conditional request without loading the order.
+	public Long findVersionById(Long orderId) {
+		return orderRepository.findVersionById(orderId);
+	}
+
+	public Order createOrder(Order order) {
+		return createOrder(order, null);
+	}
+
+	public Order createOrder(Order order, String reservationId) {
+		return createOrder(order, reservationId, null);
+	}
+
+	/*
+	 * When an idempotency record is given, the response is stored with the
+	 * order so that a retry can be answered from it.
+	 */
+	@SuppressWarnings("unchecked")
+	public Order createOrder(Order order, String reservationId, IdempotencyRecord idempotency) {
+		order = insert(order, reservationId, true);
+		if (idempotency != null) {
+			JSONObject orderInfo = new JSONObject();
+			orderInfo.put("orderId", order.getOrderId());
+			idempotency.setResponse(201, orderInfo.toJSONString());
+			idempotencyService.save(idempotency);
+		}
+		return order;
+	}
+
+	/*
+	 * Creates a chunk of orders in one transaction, flushed once at the end so
+	 * the order lines go out as JDBC batches. Orders that are incomplete, already
+	 * exist or cannot get their stock are reported and skipped.
+	 */
+	public List<BatchItemResult> createOrders(List<Order> orders, int firstIndex) {
+		List<BatchItemResult> results = new ArrayList<BatchItemResult>(orders.size());
+		for (int i = 0; i < orders.size(); i++) {
+			Order order = orders.get(i);
+			String problem = validate(order);
+			if (problem != null) {
+				results.add(BatchItemResult.failed(firstIndex + i, 400, problem));
+				continue;
+			}
+			if (orderExists(order)) {
+				results.add(BatchItemResult.failed(firstIndex + i, 409, "An order with id " + order.getOrderId()
+						+ " already exists."));
+				continue;
+			}
+			try {
+				order = insert(order, null, false);
+			} catch (IllegalStateException e) {
+				results.add(BatchItemResult.failed(firstIndex + i, 409, "Unable to create order. " + e.getMessage()));
+				continue;
+			} catch (IllegalArgumentException e) {
+				results.add(BatchItemResult.failed(firstIndex + i, 400, "Unable to create order. " + e.getMessage()));
+				continue;
+			}
+			results.add(BatchItemResult.created(firstIndex + i, order.getOrderId()));
+		}
 		orderRepository.flush();
+		// Open-in-view keeps one persistence context for the whole request; without
+		// this every later chunk's flush would walk the orders of all earlier ones.
+		entityManager.clear();
+		return results;
+	}
+
+	/*
+	 * Takes stock for the order (or claims the given hold) before writing it.
+	 * The stock is settled when the transaction completes: sold on commit,
+	 * returned on rollback.
+	 */
+	private Order insert(Order order, String reservationId, boolean flush) {
+		checkOrder(order);
+		priceLines(order);
+		StockReservation stock = stockService.takeForOrder(order.getCustomerId(), order.getProductsOrdered(), reservationId);
+		if (!stock.isEmpty()) {
+			order.setStockApplied(Boolean.FALSE);
+		}
+		try {
+			order = orderRepository.save(order);
+			if (flush) {
+				orderRepository.flush();
+			}
+		} catch (RuntimeException e) {
+			stockService.cancel(stock);
+			throw e;
+		}
+		stockService.settleOnCompletion(stock, order);
+		salesRollups.orderAdded(order);
+		orderViews.orderChanged(order);
+		recommendations.orderAdded(order);
+		publish("ORDER_CREATED", order);
 		return order;
 	}
 
+	/*
+	 * What every write of an order checks: the fields validate() asks for and
+	 * a customer that exists. Products are checked as the lines are priced.
+	 */
+	private void checkOrder(Order order) {
+		String problem = validate(order);
+		if (problem == null && !customerRepository.existsById(order.getCustomerId())) {
+			problem = "Customer with id " + order.getCustomerId() + " not found.";
+		}
+		if (problem != null) {
+			throw new IllegalArgumentException(problem);
+		}
+	}
+
+	private static String validate(Order order) {
+		if (order == null) {
+			return "An order is required.";
+		}
+		if (order.getCustomerId() == null) {
+			return "customerId is required.";
+		}
+		if (order.getProductsOrdered() == null || order.getProductsOrdered().isEmpty()) {
+			return "productsOrdered is required.";
+		}
+		for (Map.Entry<Integer, Integer> line : order.getProductsOrdered().entrySet()) {
+			if (line.getKey() == null || line.getValue() == null || line.getValue() <= 0) {
+				return "Each product ordered needs a positive quantity.";
+			}
+		}
+		return null;
+	}
+
 	public void saveOrder(Order order) {
-		orderRepository.save(order);
+		orderViews.orderChanged(orderRepository.save(order));
 	}
 	
+	// The entity has already been changed, so the rollups and stock take out the order as the database still has it.
 	public void updateOrder(Order order) {
+		checkOrder(order);
+		priceLines(order);
+		stockService.adjustForOrder(order.getOrderId(), order.getProductsOrdered());
+		salesRollups.orderRemoved(order.getOrderId());
+		recommendations.orderRemoved(order.getOrderId());
 		orderRepository.save(order);
+		salesRollups.orderAdded(order);
+		orderViews.orderChanged(order);
+		recommendations.orderAdded(order);
+		publish("ORDER_UPDATED", order);
 	}
 
-	public void deleteOrderById(Long orderId) {
-		orderRepository.deleteById(orderId);
+	/*
+	 * Applies a JSON Merge Patch (RFC 7396). productsOrdered is merged entry by
+	 * entry, a null quantity removing the product, so only the order lines that
+	 * changed are written; the orders row is updated only in the columns that
+	 * changed. Stock follows the new lines, as with a full update. Returns null if
+	 * there is no such order. If an If-Match header is given and names no
+	 * version the order is still at, nothing is changed.
+	 */
+	@SuppressWarnings("unchecked")
+	public Order patchOrder(Long orderId, Map<String, Object> patch, String ifMatch) {
+		Order order = findById(orderId);
+		if (order == null) {
+			return null;
+		}
+		if (ifMatch != null && !ETags.matches(ifMatch, order.getVersion())) {
+			throw new ObjectOptimisticLockingFailureException(Order.class, orderId);
+		}
+		salesRollups.orderRemoved(order);
+		recommendations.orderRemoved(order);
+		boolean changed = false;
+		for (Map.Entry<String, Object> member : patch.entrySet()) {
+			Object value = member.getValue();
+			switch (member.getKey()) {
+			case "orderId":
+				if (!(value instanceof Number) || ((Number) value).longValue() != orderId) {
+					throw new IllegalArgumentException("orderId cannot be changed.");
+				}
+				break;
+			case "customerId":
+				if (!(value instanceof Number)) {
+					throw new IllegalArgumentException("customerId must be a number.");
+				}
+				changed |= !Long.valueOf(((Number) value).longValue()).equals(order.getCustomerId());
+				order.setCustomerId(((Number) value).longValue());
+				break;
+			case "orderDate":
+				Date orderDate = date(value);
+				changed |= !orderDate.equals(order.getOrderDate());
+				order.setOrderDate(orderDate);
+				break;
+			case "productsOrdered":
+				if (!(value instanceof Map)) {
+					throw new IllegalArgumentException("productsOrdered must be an object of product ids to quantities.");
+				}
+				changed |= mergeLines(order.getProductsOrdered(), (Map<String, Object>) value);
+				break;
+			default:
+				throw new IllegalArgumentException("Orders have no member " + member.getKey() + ".");
+			}
+		}
+		if (order.getProductsOrdered().isEmpty()) {
+			throw new IllegalArgumentException("An order needs at least one product.");
+		}
+		checkOrder(order);
+		priceLines(order);
+		stockService.adjustForOrder(orderId, order.getProductsOrdered());
+		salesRollups.orderAdded(order);
+		recommendations.orderAdded(order);
+		if (changed) {
+			orderViews.orderChanged(order);
+			publish("ORDER_UPDATED", order);
+		}
+		return order;
 	}
 
-	public void deleteAllItems() {
-		orderRepository.deleteAll();
+	private static boolean mergeLines(Map<Integer, Integer> lines, Map<String, Object> patch) {
+		boolean changed = false;
+		for (Map.Entry<String, Object> line : patch.entrySet()) {
+			Integer productId;
+			try {
+				productId = Integer.valueOf(line.getKey());
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Product id " + line.getKey() + " is not a number.");
+			}
+			if (line.getValue() == null) {
+				changed |= lines.remove(productId) != null;
+			} else if (line.getValue() instanceof Integer && (Integer) line.getValue() > 0) {
+				changed |= !line.getValue().equals(lines.put(productId, (Integer) line.getValue()));
+			} else {
+				throw new IllegalArgumentException("Quantity for product " + productId + " must be a positive number.");
+			}
+		}
+		return changed;
+	}
+
+	private static Date date(Object value) {
+		if (value instanceof Number) {
+			return new Date(((Number) value).longValue());
+		}
+		if (value instanceof String) {
+			try {
+				return new StdDateFormat().parse((String) value);
+			} catch (ParseException e) {
+				throw new IllegalArgumentException("orderDate is not a date: " + value);
+			}
+		}
+		throw new IllegalArgumentException(value == null ? "orderDate cannot be removed." : "orderDate must be a date.");
+	}
+
+	// Locked first, so the lines taken out of the sales rollups and put back on sale are the ones deleted.
+	public boolean deleteOrderById(Long orderId) {
+		if (orderRepository.incrementVersion(orderId) == 0) {
+			return false;
+		}
+		stockService.adjustForOrder(orderId, Collections.<Integer, Integer>emptyMap());
+		salesRollups.orderRemoved(orderId);
+		orderViews.orderRemoved(orderId);
+		recommendations.orderRemoved(orderId);
+		orderRepository.deleteByOrderId(orderId);
+		outboxEventRepository.save(new OutboxEvent("ORDER_DELETED", orderId, "{\"orderId\":" + orderId + "}"));
+		return true;
+	}
+
+	/*
+	 * Each chunk commits on its own, so these run outside the service
+	 * transaction. As with deleting one order, the stock of every deleted
+	 * order goes back on sale.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public long deleteAllItems() {
+		long deleted = bulkDelete.deleteInChunks("orders", "orderid", null, null,
+				(where, args) -> stockService.settleDeletedOrders(where, args, true), "orderquantities", "orderprices",
+				"order_view");
+		salesRollups.clear();
+		recommendations.clear();
+		return deleted;
+	}
+
+	/*
+	 * Purges orders placed before the cutoff, with their order views. No
+	 * ORDER_DELETED events are published, the sales rollups and
+	 * recommendations keep counting them and their stock stays sold; a purge
+	 * is retention, not a change to live orders. Orders whose stock had not
+	 * been flushed yet are applied before they go.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public long deleteOrdersBefore(Date cutoff) {
+		return bulkDelete.deleteInChunks("orders", "orderid", "orderdate < ?", new Object[] { cutoff },
+				(where, args) -> stockService.settleDeletedOrders(where, args, false), "orderquantities", "orderprices",
+				"order_view");
+	}
+
+	/*
+	 * Gives lines without a unit price the catalog's current price, drops the
+	 * prices of lines no longer ordered and recomputes the total. Lines that
+	 * already have a price keep it, even if their quantity changes. Checkout
+	 * sets the prices the cart showed before the order is written.
+	 */
+	private void priceLines(Order order) {
+		Map<Integer, Double> prices = order.getLinePrices();
+		prices.keySet().retainAll(order.getProductsOrdered().keySet());
+		double total = 0;
+		for (Map.Entry<Integer, Integer> line : order.getProductsOrdered().entrySet()) {
+			Double price = prices.get(line.getKey());
+			if (price == null) {
+				Product product = productCache.get(line.getKey());
+				if (product == null) {
+					throw new IllegalArgumentException("Product with id " + line.getKey() + " not found.");
+				}
+				price = product.getPrice();
+				prices.put(line.getKey(), price);
+			}
+			total += price * line.getValue();
+		}
+		if (order.getTotal() == null || order.getTotal() != total) {
+			order.setTotal(total);
+		}
 	}
 
 	public boolean orderExists(Order order) {
-		return findById(order.getOrderId()) != null;
+		// A new order arrives without an id; the generator assigns one on save.
+		Long orderId = order.getOrderIdOrNull();
+		return orderId != null && findById(orderId) != null;
 	}
 
 	public List<Order> findAllOrders() {
 		return (List<Order>) orderRepository.findAll();
-	}	
+	}
+
+	// Orders placed on or after from and before to, with their lines in the same query.
+	public List<Order> findOrdersBetween(Date from, Date to) {
+		return orderRepository.findByOrderDateRange(from, to);
+	}
+	
+	// Queue an event in the caller's transaction; OutboxDispatcher delivers it after commit.
+	@SuppressWarnings("unchecked")
+	private void publish(String eventType, Order order) {
+		JSONObject payload = new JSONObject();
+		payload.put("orderId", order.getOrderId());
+		payload.put("customerId", order.getCustomerId());
+		payload.put("orderDate", order.getOrderDate() == null ? null : order.getOrderDate().getTime());
+		payload.put("productsOrdered", order.getProductsOrdered());
+		outboxEventRepository.save(new OutboxEvent(eventType, order.getOrderId(), payload.toJSONString()));
+	}
 }
@@ -0,0 +1,343 @@
+package com.docker.atsea.service;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import org.json.simple.JSONArray;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.json.simple.parser.ParseException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.Product;
+
+/*
+ * Keeps order_view, the read model of whole order documents, in step with the
+ * orders table. Orders changed in a transaction are collected and their views
+ * written just before it commits, so a view commits or rolls back with its
+ * order. Lines are priced at the unit prices stored with the order, so a view
+ * rewritten after a catalog price change still shows what the order cost; the
+ * catalog's price is used only for a line stored without one. Product names
+ * are the catalog's when the view is written.
+ */
+@Component
+public class OrderViews {
+
+	public static final Logger logger = LoggerFactory.getLogger(OrderViews.class);
+
+	private static final String COLUMNS = "orderid, customerid, customername, orderdate, total, orderlines";
+
+	private static final String UPDATE = "UPDATE order_view SET customerid = ?, customername = ?, orderdate = ?, total = ?,"
+			+ " orderlines = ? WHERE orderid = ?";
+
+	private static final String INSERT = "INSERT INTO order_view (" + COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?)";
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ProductCache productCache;
+
+	private final int rebuildChunkSize;
+
+	private final boolean rebuildOnStart;
+
+	// A product's name and catalog price.
+	private static class CatalogEntry {
+
+		private final String name;
+
+		private final BigDecimal price;
+
+		private CatalogEntry(String name, BigDecimal price) {
+			this.name = name;
+			this.price = price;
+		}
+	}
+
+	@Autowired
+	public OrderViews(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ProductCache productCache,
+			@Value("${atsea.orderview.rebuildChunkSize:1000}") int rebuildChunkSize,
+			@Value("${atsea.orderview.rebuildOnStart:true}") boolean rebuildOnStart) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.productCache = productCache;
+		this.rebuildChunkSize = rebuildChunkSize;
+		this.rebuildOnStart = rebuildOnStart;
+	}
+
+	// A new order, or an order's state after a change; the view is written as the order stands at commit.
+	public void orderChanged(Order order) {
+		pending().put(order.getOrderId(), order);
+	}
+
+	public void orderRemoved(long orderId) {
+		pending().remove(orderId);
+		jdbcTemplate.update("DELETE FROM order_view WHERE orderid = ?", orderId);
+	}
+
+	// Called in the transaction that renames the customer.
+	public void customerRenamed(long customerId, String name) {
+		jdbcTemplate.update("UPDATE order_view SET customername = ? WHERE customerid = ?"
+				+ " AND (customername IS NULL OR customername <> ?)", name, customerId, name);
+	}
+
+	/*
+	 * The order document: orderId, customerId, customerName, orderDate, total
+	 * and lines, each line with productId, name, price, quantity and lineTotal.
+	 * Null if there is no view of the order.
+	 */
+	public JSONObject find(long orderId) {
+		List<JSONObject> documents = jdbcTemplate.query("SELECT " + COLUMNS + " FROM order_view WHERE orderid = ?",
+				documentMapper(), orderId);
+		return documents.isEmpty() ? null : documents.get(0);
+	}
+
+	// A customer's order documents, newest first.
+	public List<JSONObject> findByCustomer(long customerId, int limit) {
+		return jdbcTemplate.query(connection -> {
+			PreparedStatement statement = connection.prepareStatement("SELECT " + COLUMNS
+					+ " FROM order_view WHERE customerid = ? ORDER BY orderid DESC");
+			statement.setLong(1, customerId);
+			statement.setMaxRows(limit);
+			return statement;
+		}, documentMapper());
+	}
+
+	/*
+	 * Rewrites every view from the orders table, rebuildChunkSize order ids
+	 * per transaction, and drops the views of orders that no longer exist. An
+	 * order changed while its chunk is rewritten keeps the view its own
+	 * transaction writes, or the rebuilt one, whichever commits last; both are
+	 * of the order as committed. Returns the number of views written.
+	 */
+	public long rebuild() {
+		Map<String, Object> bounds = jdbcTemplate.queryForMap("SELECT MIN(orderid) lo, MAX(orderid) hi FROM orders");
+		if (bounds.get("lo") == null) {
+			jdbcTemplate.update("DELETE FROM order_view");
+			return 0;
+		}
+		long lo = ((Number) bounds.get("lo")).longValue();
+		long hi = ((Number) bounds.get("hi")).longValue();
+		long written = 0;
+		for (long start = lo; start <= hi; start += rebuildChunkSize) {
+			long from = start;
+			long to = start + rebuildChunkSize;
+			written += transactionTemplate.execute(status -> {
+				jdbcTemplate.update("DELETE FROM order_view WHERE orderid >= ? AND orderid < ?", from, to);
+				List<Object[]> rows = readOrders(from, to);
+				jdbcTemplate.batchUpdate(INSERT, rows);
+				return rows.size();
+			});
+		}
+		jdbcTemplate.update("DELETE FROM order_view WHERE orderid < ? OR orderid > ?", lo, hi);
+		return written;
+	}
+
+	// A deployment that already has orders starts with an empty order_view; build it once.
+	@EventListener(ApplicationReadyEvent.class)
+	public void rebuildIfEmpty() {
+		if (!rebuildOnStart || jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_view", Long.class) > 0) {
+			return;
+		}
+		long started = System.currentTimeMillis();
+		long written = rebuild();
+		if (written > 0) {
+			logger.info("Built {} order views in {} ms", written, System.currentTimeMillis() - started);
+		}
+	}
+
+	// Insert rows for the orders with ids in from..to, with their lines, customer names and products.
+	private List<Object[]> readOrders(long from, long to) {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		jdbcTemplate.query("SELECT o.orderid, o.customerid, c.name customername, o.orderdate, q.productid,"
+				+ " q.productsordered, p.name productname, COALESCE(op.unitprice, p.price) price FROM orders o"
+				+ " JOIN orderquantities q ON q.orderid = o.orderid"
+				+ " LEFT JOIN orderprices op ON op.orderid = q.orderid AND op.productid = q.productid"
+				+ " LEFT JOIN customer c ON c.customerid = o.customerid"
+				+ " LEFT JOIN product p ON p.productid = q.productid"
+				+ " WHERE o.orderid >= ? AND o.orderid < ? ORDER BY o.orderid, q.productid", resultSet -> {
+					long orderId = resultSet.getLong("orderid");
+					Object[] last = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+					if (last == null || ((Long) last[0]) != orderId) {
+						long customerId = resultSet.getLong("customerid");
+						last = new Object[] { orderId, resultSet.wasNull() ? null : customerId,
+								resultSet.getString("customername"), resultSet.getDate("orderdate"), BigDecimal.ZERO,
+								new JSONArray() };
+						rows.add(last);
+					}
+					double price = resultSet.getDouble("price");
+					boolean noPrice = resultSet.wasNull();
+					last[4] = ((BigDecimal) last[4]).add(addLine((JSONArray) last[5], resultSet.getInt("productid"),
+							resultSet.getInt("productsordered"), resultSet.getString("productname"),
+							noPrice ? BigDecimal.ZERO : BigDecimal.valueOf(price)));
+				}, from, to);
+		for (Object[] row : rows) {
+			row[4] = ((BigDecimal) row[4]).setScale(2, RoundingMode.HALF_UP);
+			row[5] = ((JSONArray) row[5]).toJSONString();
+		}
+		return rows;
+	}
+
+	/*
+	 * The orders for the current transaction, created and registered to be
+	 * written before commit on first use.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Long, Order> pending() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Order views can only be changed inside a transaction.");
+		}
+		Map<Long, Order> orders = (Map<Long, Order>) TransactionSynchronizationManager.getResource(this);
+		if (orders == null) {
+			Map<Long, Order> created = new LinkedHashMap<Long, Order>();
+			TransactionSynchronizationManager.bindResource(this, created);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void beforeCommit(boolean readOnly) {
+					write(created.values());
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(OrderViews.this);
+				}
+			});
+			orders = created;
+		}
+		return orders;
+	}
+
+	private void write(Collection<Order> orders) {
+		if (orders.isEmpty()) {
+			return;
+		}
+		List<Object[]> rows = new ArrayList<Object[]>(orders.size());
+		Set<Long> customerIds = new TreeSet<Long>();
+		for (Order order : orders) {
+			if (order.getCustomerId() != null) {
+				customerIds.add(order.getCustomerId());
+			}
+		}
+		Map<Long, String> customerNames = customerNames(customerIds);
+		Map<Integer, CatalogEntry> products = new HashMap<Integer, CatalogEntry>();
+		for (Order order : orders) {
+			JSONArray lines = new JSONArray();
+			BigDecimal total = BigDecimal.ZERO;
+			for (Map.Entry<Integer, Integer> line : new TreeMap<Integer, Integer>(order.getProductsOrdered()).entrySet()) {
+				CatalogEntry product = products.computeIfAbsent(line.getKey(), this::catalogEntry);
+				Double stored = order.getLinePrices().get(line.getKey());
+				total = total.add(addLine(lines, line.getKey(), line.getValue(), product.name,
+						stored != null ? BigDecimal.valueOf(stored) : product.price));
+			}
+			java.util.Date orderDate = order.getOrderDate() == null ? new java.util.Date() : order.getOrderDate();
+			rows.add(new Object[] { order.getCustomerId(), customerNames.get(order.getCustomerId()),
+					new java.sql.Date(orderDate.getTime()), total.setScale(2, RoundingMode.HALF_UP), lines.toJSONString(),
+					order.getOrderId() });
+		}
+		// Update first, then insert the views that were not there yet.
+		int[] updated = jdbcTemplate.batchUpdate(UPDATE, rows);
+		List<Object[]> inserts = new ArrayList<Object[]>();
+		for (int i = 0; i < rows.size(); i++) {
+			if (updated[i] == 0) {
+				Object[] row = rows.get(i);
+				inserts.add(new Object[] { row[5], row[0], row[1], row[2], row[3], row[4] });
+			}
+		}
+		for (Object[] insert : inserts) {
+			try {
+				jdbcTemplate.update(INSERT, insert);
+			} catch (DuplicateKeyException e) {
+				// Another transaction, or a rebuild, inserted it first.
+				jdbcTemplate.update(UPDATE, insert[1], insert[2], insert[3], insert[4], insert[5], insert[0]);
+			}
+		}
+	}
+
+	// Adds the line to lines and returns its total.
+	@SuppressWarnings("unchecked")
+	private static BigDecimal addLine(JSONArray lines, int productId, int quantity, String name, BigDecimal price) {
+		BigDecimal lineTotal = price.multiply(BigDecimal.valueOf(quantity));
+		JSONObject line = new JSONObject();
+		line.put("productId", productId);
+		line.put("name", name);
+		line.put("price", price.doubleValue());
+		line.put("quantity", quantity);
+		line.put("lineTotal", lineTotal.setScale(2, RoundingMode.HALF_UP).doubleValue());
+		lines.add(line);
+		return lineTotal;
+	}
+
+	private Map<Long, String> customerNames(Set<Long> customerIds) {
+		Map<Long, String> names = new HashMap<Long, String>();
+		if (customerIds.isEmpty()) {
+			return names;
+		}
+		jdbcTemplate.query("SELECT customerid, name FROM customer WHERE customerid IN (?" + ", ?".repeat(customerIds.size() - 1)
+				+ ")", resultSet -> {
+					names.put(resultSet.getLong("customerid"), resultSet.getString("name"));
+				}, customerIds.toArray());
+		return names;
+	}
+
+	// From the catalog cache, or the database for a product added since the cache was loaded.
+	private CatalogEntry catalogEntry(int productId) {
+		Product product = productCache.get(productId);
+		if (product != null) {
+			return new CatalogEntry(product.getName(), BigDecimal.valueOf(product.getPrice()));
+		}
+		List<CatalogEntry> entries = jdbcTemplate.query("SELECT name, price FROM product WHERE productid = ?",
+				(resultSet, row) -> new CatalogEntry(resultSet.getString("name"), BigDecimal.valueOf(resultSet.getDouble("price"))),
+				productId);
+		return entries.isEmpty() ? new CatalogEntry(null, BigDecimal.ZERO) : entries.get(0);
+	}
+
+	private static RowMapper<JSONObject> documentMapper() {
+		JSONParser parser = new JSONParser();
+		return (resultSet, row) -> document(resultSet, parser);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject document(ResultSet resultSet, JSONParser parser) throws SQLException {
+		JSONObject document = new JSONObject();
+		document.put("orderId", resultSet.getLong("orderid"));
+		long customerId = resultSet.getLong("customerid");
+		document.put("customerId", resultSet.wasNull() ? null : customerId);
+		document.put("customerName", resultSet.getString("customername"));
+		java.sql.Date orderDate = resultSet.getDate("orderdate");
+		document.put("orderDate", orderDate == null ? null : orderDate.getTime());
+		document.put("total", resultSet.getBigDecimal("total").doubleValue());
+		try {
+			document.put("lines", parser.parse(resultSet.getString("orderlines")));
+		} catch (ParseException e) {
+			throw new IllegalStateException("Order view " + resultSet.getLong("orderid") + " has unreadable lines", e);
+		}
+		return document;
+	}
+}
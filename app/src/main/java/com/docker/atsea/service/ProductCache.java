@@ -0,0 +1,116 @@
+package com.docker.atsea.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import jakarta.annotation.PostConstruct;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.repositories.ProductRepository;
+
+/*
+ * Read-only snapshot of the product catalog. The whole catalog is loaded with a
+ * single query and swapped in atomically, so lookups never touch the database.
+ * The search index is brought up to date with each snapshot. Any product
+ * invalidation, from this node or another, reloads the snapshot.
+ */
+@Component
+public class ProductCache {
+
+	public static final Logger logger = LoggerFactory.getLogger(ProductCache.class);
+
+	@Autowired
+	private ProductRepository productRepository;
+
+	@Autowired
+	private ProductSearchIndex productSearchIndex;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	private volatile Map<Long, Product> snapshot;
+
+	// Products only change in bulk, through imports, so the key is not used.
+	@PostConstruct
+	public void subscribe() {
+		invalidationBus.subscribe(InvalidationBus.PRODUCT, productId -> refresh());
+	}
+
+	public Product get(long productId) {
+		return snapshot().get(productId);
+	}
+
+	public Collection<Product> getAll() {
+		return snapshot().values();
+	}
+
+	/*
+	 * Prices a productId -> quantity map at current catalog prices.
+	 */
+	public double price(Map<Integer, Integer> productsOrdered) {
+		Map<Long, Product> products = snapshot();
+		double total = 0;
+		for (Map.Entry<Integer, Integer> line : productsOrdered.entrySet()) {
+			Product product = products.get(line.getKey().longValue());
+			if (product == null) {
+				throw new IllegalArgumentException("Product with id " + line.getKey() + " not found.");
+			}
+			total += product.getPrice() * line.getValue();
+		}
+		return total;
+	}
+
+	/*
+	 * Products matching a free-text query, best match first.
+	 */
+	public List<Product> search(String query, int limit) {
+		Map<Long, Product> products = snapshot();
+		List<Product> results = new ArrayList<Product>(limit);
+		for (Long productId : productSearchIndex.search(query, limit)) {
+			Product product = products.get(productId);
+			if (product != null) {
+				results.add(product);
+			}
+		}
+		return results;
+	}
+
+	public void invalidate() {
+		snapshot = null;
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.catalog.refreshMillis:300000}")
+	public synchronized void refresh() {
+		Map<Long, Product> products = new HashMap<Long, Product>();
+		for (Product product : productRepository.findAll()) {
+			products.put(product.getProductId(), product);
+		}
+		productSearchIndex.sync(products.values());
+		snapshot = Collections.unmodifiableMap(products);
+		logger.debug("Loaded {} products into the catalog cache", products.size());
+	}
+
+	private Map<Long, Product> snapshot() {
+		Map<Long, Product> current = snapshot;
+		if (current == null) {
+			synchronized (this) {
+				if (snapshot == null) {
+					refresh();
+				}
+				current = snapshot;
+			}
+		}
+		return current;
+	}
+}
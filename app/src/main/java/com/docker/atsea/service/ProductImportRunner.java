@@ -0,0 +1,59 @@
+package com.docker.atsea.service;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ApplicationContext;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.model.ProductImport;
+
+/*
+ * Command line import: started with --atsea.catalog.import.file=products.json
+ * (or .csv) the application imports the file and exits, with status 1 if the
+ * import failed. Add --spring.main.web-application-type=none to skip the web
+ * server altogether. The property is checked here rather than in a condition
+ * so that an AOT-processed build, whose bean definitions are fixed when it is
+ * built, can still run imports.
+ */
+@Component
+public class ProductImportRunner implements ApplicationRunner {
+
+	public static final Logger logger = LoggerFactory.getLogger(ProductImportRunner.class);
+
+	@Autowired
+	private ProductService productService;
+
+	@Autowired
+	private ApplicationContext context;
+
+	@Value("${atsea.catalog.import.file:}")
+	private String file;
+
+	public void run(ApplicationArguments args) {
+		if (file.isEmpty()) {
+			return;
+		}
+		int status = 0;
+		try (InputStream feed = new BufferedInputStream(Files.newInputStream(Paths.get(file)), 1 << 16)) {
+			ProductImport result = productService.importProducts(feed, file.toLowerCase().endsWith(".csv"));
+			for (String error : result.getErrors()) {
+				logger.warn("Rejected: {}", error);
+			}
+		} catch (Exception e) {
+			logger.error("Product import from {} failed", file, e);
+			status = 1;
+		}
+		final int exitCode = status;
+		System.exit(SpringApplication.exit(context, () -> exitCode));
+	}
+}
@@ -0,0 +1,271 @@
+package com.docker.atsea.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.model.ProductImport;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.dataformat.csv.CsvFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+
+/*
+ * Streams a product feed into the product table. The feed is a JSON array,
+ * newline-delimited JSON or CSV with a header row, read one row at a time with
+ * the Jackson streaming parser, so memory use does not depend on its size.
+ * Rows carrying a productId are upserted by id (ON CONFLICT on PostgreSQL,
+ * MERGE on H2); rows without one are inserted as new products, and the id
+ * generator is moved past the imported ids afterwards. Rows go out in
+ * JDBC batches, each committed on its own, so a failure part way through keeps
+ * what was already written and reports how far it got.
+ */
+@Component
+public class ProductImporter {
+
+	public static final Logger logger = LoggerFactory.getLogger(ProductImporter.class);
+
+	private static final String INSERT = "INSERT INTO product (name, description, image, price) VALUES (?, ?, ?, ?)";
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	private final CsvFactory csvFactory = new CsvFactory();
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final String dialect;
+
+	private final int batchSize;
+
+	private final long progressRows;
+
+	private final AtomicBoolean running = new AtomicBoolean();
+
+	private volatile ProductImport lastImport;
+
+	@Autowired
+	public ProductImporter(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+			@Value("${datasource.atsea.hibernate.dialect}") String dialect,
+			@Value("${atsea.catalog.import.batchSize:1000}") int batchSize,
+			@Value("${atsea.catalog.import.progressRows:100000}") long progressRows) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.dialect = dialect;
+		this.batchSize = batchSize;
+		this.progressRows = progressRows;
+	}
+
+	/*
+	 * Imports the feed on the calling thread. Only one import runs at a time.
+	 */
+	public ProductImport importProducts(InputStream feed, boolean csv) throws IOException {
+		if (!running.compareAndSet(false, true)) {
+			throw new IllegalStateException("A product import is already running.");
+		}
+		ProductImport progress = new ProductImport();
+		lastImport = progress;
+		List<Object[]> upserts = new ArrayList<Object[]>(batchSize);
+		List<Object[]> inserts = new ArrayList<Object[]>(batchSize);
+		boolean explicitIds = false;
+		try (JsonParser parser = open(feed, csv)) {
+			long row = 0;
+			JsonToken token;
+			while ((token = parser.nextToken()) != null) {
+				if (token == JsonToken.START_ARRAY || token == JsonToken.END_ARRAY) {
+					continue;
+				}
+				if (token != JsonToken.START_OBJECT) {
+					throw new JsonParseException(parser, "Expected a product object but found " + token);
+				}
+				row++;
+				progress.rowRead();
+				Object[] product = readProduct(parser, progress, row);
+				if (product == null) {
+					continue;
+				}
+				if (product[0] != null) {
+					upserts.add(product);
+					explicitIds = true;
+				} else {
+					inserts.add(new Object[] { product[1], product[2], product[3], product[4] });
+				}
+				if (upserts.size() + inserts.size() >= batchSize) {
+					write(upserts, inserts, progress);
+				}
+				if (row % progressRows == 0) {
+					logger.info("Product import at row {}: {}", row, progress);
+				}
+			}
+			write(upserts, inserts, progress);
+		} catch (IOException | RuntimeException e) {
+			progress.fail(e.getMessage());
+			throw e;
+		} finally {
+			if (explicitIds) {
+				try {
+					realignIdSequence();
+				} catch (RuntimeException e) {
+					logger.error("Unable to move the product id sequence past imported ids", e);
+				}
+			}
+			progress.finish();
+			running.set(false);
+			logger.info("Product import finished: {}", progress);
+		}
+		return progress;
+	}
+
+	public ProductImport getLastImport() {
+		return lastImport;
+	}
+
+	private JsonParser open(InputStream feed, boolean csv) throws IOException {
+		if (!csv) {
+			return jsonFactory.createParser(feed);
+		}
+		CsvParser parser = csvFactory.createParser(feed);
+		parser.setSchema(CsvSchema.emptySchema().withHeader());
+		return parser;
+	}
+
+	// Returns {productId, name, description, image, price}, or null if the row was rejected.
+	private Object[] readProduct(JsonParser parser, ProductImport progress, long row) throws IOException {
+		String productId = null;
+		String name = null;
+		String description = null;
+		String image = null;
+		String price = null;
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String field = parser.getCurrentName();
+			JsonToken value = parser.nextToken();
+			if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) {
+				parser.skipChildren();
+				continue;
+			}
+			String text = value == JsonToken.VALUE_NULL ? null : parser.getText();
+			switch (field) {
+			case "productId": productId = text; break;
+			case "name": name = text; break;
+			case "description": description = text; break;
+			case "image": image = text; break;
+			case "price": price = text; break;
+			default: break;
+			}
+		}
+		if (isBlank(name)) {
+			progress.reject(row, "name is required");
+			return null;
+		}
+		try {
+			Long id = isBlank(productId) ? null : Long.valueOf(productId.trim());
+			if (isBlank(price)) {
+				progress.reject(row, "price is required");
+				return null;
+			}
+			return new Object[] { id, name, description == null ? "" : description, image == null ? "" : image,
+					Double.valueOf(price.trim()) };
+		} catch (NumberFormatException e) {
+			progress.reject(row, "not a number: " + e.getMessage());
+			return null;
+		}
+	}
+
+	private void write(List<Object[]> upserts, List<Object[]> inserts, ProductImport progress) {
+		if (upserts.isEmpty() && inserts.isEmpty()) {
+			return;
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			if (!upserts.isEmpty()) {
+				upsert(upserts);
+			}
+			if (!inserts.isEmpty()) {
+				jdbcTemplate.batchUpdate(INSERT, inserts);
+			}
+		});
+		progress.written(upserts.size(), inserts.size());
+		upserts.clear();
+		inserts.clear();
+	}
+
+	private void upsert(List<Object[]> rows) {
+		if (dialect.contains("PostgreSQL")) {
+			jdbcTemplate.batchUpdate("INSERT INTO product (productid, name, description, image, price) VALUES (?, ?, ?, ?, ?)"
+					+ " ON CONFLICT (productid) DO UPDATE SET name = EXCLUDED.name, description = EXCLUDED.description,"
+					+ " image = EXCLUDED.image, price = EXCLUDED.price", rows);
+		} else if (dialect.contains("H2")) {
+			jdbcTemplate.batchUpdate("MERGE INTO product (productid, name, description, image, price) KEY (productid)"
+					+ " VALUES (?, ?, ?, ?, ?)", rows);
+		} else if (dialect.contains("MySQL")) {
+			jdbcTemplate.batchUpdate("INSERT INTO product (productid, name, description, image, price) VALUES (?, ?, ?, ?, ?)"
+					+ " ON DUPLICATE KEY UPDATE name = VALUES(name), description = VALUES(description),"
+					+ " image = VALUES(image), price = VALUES(price)", rows);
+		} else {
+			// No portable upsert: update by id, then insert the rows that matched nothing.
+			List<Object[]> updates = new ArrayList<Object[]>(rows.size());
+			for (Object[] row : rows) {
+				updates.add(new Object[] { row[1], row[2], row[3], row[4], row[0] });
+			}
+			int[] updated = jdbcTemplate.batchUpdate(
+					"UPDATE product SET name = ?, description = ?, image = ?, price = ? WHERE productid = ?", updates);
+			List<Object[]> missing = new ArrayList<Object[]>();
+			for (int i = 0; i < updated.length; i++) {
+				if (updated[i] == 0) {
+					missing.add(rows.get(i));
+				}
+			}
+			if (!missing.isEmpty()) {
+				// SQL Server refuses explicit values for an identity column unless asked, once per session.
+				boolean identityInsert = dialect.contains("SQLServer");
+				if (identityInsert) {
+					jdbcTemplate.execute("SET IDENTITY_INSERT product ON");
+				}
+				try {
+					jdbcTemplate.batchUpdate("INSERT INTO product (productid, name, description, image, price)"
+							+ " VALUES (?, ?, ?, ?, ?)", missing);
+				} finally {
+					if (identityInsert) {
+						jdbcTemplate.execute("SET IDENTITY_INSERT product OFF");
+					}
+				}
+			}
+		}
+	}
+
+	/*
+	 * Explicit ids do not advance a PostgreSQL serial or an H2 identity, so
+	 * move them past the imported ids before a later insert collides.
+	 * SQL Server identities are reseeded to the largest id; MySQL's
+	 * AUTO_INCREMENT already moves past explicit ids on its own.
+	 */
+	private void realignIdSequence() {
+		if (dialect.contains("PostgreSQL")) {
+			jdbcTemplate.queryForObject("SELECT setval(pg_get_serial_sequence('product', 'productid'),"
+					+ " (SELECT COALESCE(MAX(productid), 1) FROM product))", Long.class);
+		} else if (dialect.contains("H2")) {
+			long next = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(productid), 0) + 1 FROM product", Long.class);
+			jdbcTemplate.execute("ALTER TABLE product ALTER COLUMN productid RESTART WITH " + next);
+		} else if (dialect.contains("SQLServer")) {
+			jdbcTemplate.execute("DBCC CHECKIDENT ('product', RESEED)");
+		}
+	}
+
+	private static boolean isBlank(String text) {
+		return text == null || text.trim().isEmpty();
+	}
+}
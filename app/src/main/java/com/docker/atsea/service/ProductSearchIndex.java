@@ -0,0 +1,418 @@
+package com.docker.atsea.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.model.Product;
+
+/*
+ * Inverted index over product names and descriptions. Every query token must
+ * match a term exactly or as a prefix; results are ranked by a saturated,
+ * idf-weighted term frequency in which name matches count three times as much
+ * as description matches, and prefix matches half as much as exact ones.
+ *
+ * Terms live in a sorted concurrent map so prefixes are a range scan. Each
+ * posting list is immutable and replaced whole when it changes, so searches
+ * never lock. Small catalog changes only rewrite the posting lists of the
+ * terms they touch; large ones rebuild the index and swap it in.
+ */
+@Component
+public class ProductSearchIndex {
+
+	private static final float NAME_WEIGHT = 3f;
+
+	private static final float PREFIX_WEIGHT = 0.5f;
+
+	private static final int MIN_PREFIX = 2;
+
+	// Caps the terms a short prefix can expand to, so "do" stays as fast as "docker".
+	private static final int MAX_EXPANSIONS = 64;
+
+	private static final Set<String> STOP_WORDS = new HashSet<String>(Arrays.asList(
+			"a", "an", "and", "are", "as", "at", "be", "by", "for", "from", "in", "is", "it",
+			"of", "on", "or", "the", "to", "with"));
+
+	private volatile NavigableMap<String, Postings> terms = new ConcurrentSkipListMap<String, Postings>();
+
+	// What is currently indexed, so a refresh can tell which products changed.
+	private final Map<Long, Product> indexed = new HashMap<Long, Product>();
+
+	private volatile int documents;
+
+	/*
+	 * Brings the index in line with the given catalog, touching only the
+	 * products whose name or description changed.
+	 */
+	public synchronized void sync(Collection<Product> products) {
+		Map<Long, Product> current = new HashMap<Long, Product>(products.size() * 2);
+		List<Product> added = new ArrayList<Product>();
+		List<Product> removed = new ArrayList<Product>();
+		for (Product product : products) {
+			current.put(product.getProductId(), product);
+			Product previous = indexed.get(product.getProductId());
+			if (previous == null) {
+				added.add(product);
+			} else if (!sameText(previous, product)) {
+				removed.add(previous);
+				added.add(product);
+			}
+		}
+		for (Product previous : indexed.values()) {
+			if (!current.containsKey(previous.getProductId())) {
+				removed.add(previous);
+			}
+		}
+		indexed.clear();
+		indexed.putAll(current);
+
+		if (added.size() + removed.size() > Math.max(64, current.size() / 10)) {
+			rebuild(current.values());
+		} else if (!added.isEmpty() || !removed.isEmpty()) {
+			apply(added, removed);
+		}
+		documents = current.size();
+	}
+
+	/*
+	 * Returns up to limit product ids, best match first.
+	 */
+	public List<Long> search(String query, int limit) {
+		List<String> tokens = tokenize(query);
+		if (tokens.isEmpty() || limit <= 0) {
+			return Collections.emptyList();
+		}
+		NavigableMap<String, Postings> terms = this.terms;
+		int documents = Math.max(this.documents, 1);
+
+		List<List<Match>> matches = new ArrayList<List<Match>>(tokens.size());
+		for (String token : tokens) {
+			List<Match> expansions = expand(terms, token, documents);
+			if (expansions.isEmpty()) {
+				return Collections.emptyList();
+			}
+			matches.add(expansions);
+		}
+		// Rarest token first: it supplies the candidates, and each further token can only narrow them.
+		matches.sort((a, b) -> Integer.compare(count(a), count(b)));
+
+		// Candidates are the union of the rarest token's expansions, best score per product.
+		long[] candidates = new long[0];
+		float[] scores = new float[0];
+		for (Match match : matches.get(0)) {
+			long[] ids = match.postings.ids;
+			if (candidates.length == 0) {
+				candidates = ids;
+				scores = new float[ids.length];
+				for (int i = 0; i < ids.length; i++) {
+					scores[i] = match.boost * match.postings.weights[i];
+				}
+				continue;
+			}
+			long[] union = new long[candidates.length + ids.length];
+			float[] unionScores = new float[union.length];
+			int a = 0;
+			int b = 0;
+			int n = 0;
+			while (a < candidates.length || b < ids.length) {
+				if (b == ids.length || (a < candidates.length && candidates[a] < ids[b])) {
+					union[n] = candidates[a];
+					unionScores[n++] = scores[a++];
+				} else {
+					float score = match.boost * match.postings.weights[b];
+					if (a < candidates.length && candidates[a] == ids[b]) {
+						score = Math.max(score, scores[a++]);
+					}
+					union[n] = ids[b++];
+					unionScores[n++] = score;
+				}
+			}
+			candidates = n == union.length ? union : Arrays.copyOf(union, n);
+			scores = n == union.length ? unionScores : Arrays.copyOf(unionScores, n);
+		}
+
+		// Both sides are sorted by id, so each token is a galloping merge rather than a lookup per candidate.
+		for (int t = 1; t < matches.size() && candidates.length > 0; t++) {
+			float[] tokenScores = new float[candidates.length];
+			for (Match match : matches.get(t)) {
+				long[] ids = match.postings.ids;
+				int cursor = 0;
+				for (int c = 0; c < candidates.length; c++) {
+					cursor = advance(ids, cursor, candidates[c]);
+					if (cursor == ids.length) {
+						break;
+					}
+					if (ids[cursor] == candidates[c]) {
+						tokenScores[c] = Math.max(tokenScores[c], match.boost * match.postings.weights[cursor]);
+					}
+				}
+			}
+			int kept = 0;
+			for (int c = 0; c < candidates.length; c++) {
+				if (tokenScores[c] > 0) {
+					kept++;
+				}
+			}
+			long[] narrowed = new long[kept];
+			float[] narrowedScores = new float[kept];
+			for (int c = 0, k = 0; c < candidates.length; c++) {
+				if (tokenScores[c] > 0) {
+					narrowed[k] = candidates[c];
+					narrowedScores[k++] = scores[c] + tokenScores[c];
+				}
+			}
+			candidates = narrowed;
+			scores = narrowedScores;
+		}
+
+		TopHits best = new TopHits(limit);
+		for (int c = 0; c < candidates.length; c++) {
+			best.offer(candidates[c], scores[c]);
+		}
+		return best.ids();
+	}
+
+	public int getDocuments() {
+		return documents;
+	}
+
+	public int getTerms() {
+		return terms.size();
+	}
+
+	private static List<String> tokenize(String text) {
+		List<String> tokens = new ArrayList<String>();
+		if (text == null) {
+			return tokens;
+		}
+		int start = -1;
+		for (int i = 0; i <= text.length(); i++) {
+			boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+			if (letter && start < 0) {
+				start = i;
+			} else if (!letter && start >= 0) {
+				String token = text.substring(start, i).toLowerCase();
+				if (!STOP_WORDS.contains(token)) {
+					tokens.add(token);
+				}
+				start = -1;
+			}
+		}
+		return tokens;
+	}
+
+	private List<Match> expand(NavigableMap<String, Postings> terms, String token, int documents) {
+		List<Match> expansions = new ArrayList<Match>();
+		Postings exact = terms.get(token);
+		if (exact != null) {
+			expansions.add(new Match(exact, idf(exact, documents)));
+		}
+		if (token.length() >= MIN_PREFIX) {
+			for (Map.Entry<String, Postings> term : terms.subMap(token, false, token + Character.MAX_VALUE, false).entrySet()) {
+				if (expansions.size() >= MAX_EXPANSIONS) {
+					break;
+				}
+				expansions.add(new Match(term.getValue(), PREFIX_WEIGHT * idf(term.getValue(), documents)));
+			}
+		}
+		return expansions;
+	}
+
+	private static float idf(Postings postings, int documents) {
+		return (float) Math.log(1 + (double) documents / postings.ids.length);
+	}
+
+	private static int count(List<Match> expansions) {
+		int count = 0;
+		for (Match match : expansions) {
+			count += match.postings.ids.length;
+		}
+		return count;
+	}
+
+	// First index at or after from whose id is not below target.
+	private static int advance(long[] ids, int from, long target) {
+		int low = from;
+		int high = from;
+		int step = 1;
+		while (high < ids.length && ids[high] < target) {
+			low = high + 1;
+			high += step;
+			step <<= 1;
+		}
+		int i = Arrays.binarySearch(ids, low, Math.min(high, ids.length), target);
+		return i >= 0 ? i : -i - 1;
+	}
+
+	private void rebuild(Collection<Product> products) {
+		// Adding products in id order leaves every posting list sorted without a sort per term.
+		List<Product> ordered = new ArrayList<Product>(products);
+		ordered.sort((a, b) -> Long.compare(a.getProductId(), b.getProductId()));
+		Map<String, PostingsBuilder> builders = new HashMap<String, PostingsBuilder>();
+		for (Product product : ordered) {
+			for (Map.Entry<String, Float> term : termWeights(product).entrySet()) {
+				builders.computeIfAbsent(term.getKey(), t -> new PostingsBuilder(4)).add(product.getProductId(), term.getValue());
+			}
+		}
+		NavigableMap<String, Postings> rebuilt = new ConcurrentSkipListMap<String, Postings>();
+		for (Map.Entry<String, PostingsBuilder> term : builders.entrySet()) {
+			rebuilt.put(term.getKey(), term.getValue().build());
+		}
+		terms = rebuilt;
+	}
+
+	// Rewrites the posting list of each touched term once, merging the changes in by id.
+	private void apply(List<Product> added, List<Product> removed) {
+		Map<String, TreeMap<Long, Float>> changes = new HashMap<String, TreeMap<Long, Float>>();
+		for (Product product : removed) {
+			for (String term : termWeights(product).keySet()) {
+				changes.computeIfAbsent(term, t -> new TreeMap<Long, Float>()).put(product.getProductId(), null);
+			}
+		}
+		for (Product product : added) {
+			for (Map.Entry<String, Float> term : termWeights(product).entrySet()) {
+				changes.computeIfAbsent(term.getKey(), t -> new TreeMap<Long, Float>()).put(product.getProductId(), term.getValue());
+			}
+		}
+		NavigableMap<String, Postings> terms = this.terms;
+		for (Map.Entry<String, TreeMap<Long, Float>> change : changes.entrySet()) {
+			Postings previous = terms.get(change.getKey());
+			long[] ids = previous == null ? new long[0] : previous.ids;
+			float[] weights = previous == null ? new float[0] : previous.weights;
+			PostingsBuilder merged = new PostingsBuilder(ids.length + change.getValue().size());
+			int i = 0;
+			for (Map.Entry<Long, Float> entry : change.getValue().entrySet()) {
+				long id = entry.getKey();
+				while (i < ids.length && ids[i] < id) {
+					merged.add(ids[i], weights[i]);
+					i++;
+				}
+				if (i < ids.length && ids[i] == id) {
+					i++;
+				}
+				if (entry.getValue() != null) {
+					merged.add(id, entry.getValue());
+				}
+			}
+			for (; i < ids.length; i++) {
+				merged.add(ids[i], weights[i]);
+			}
+			if (merged.size == 0) {
+				terms.remove(change.getKey());
+			} else {
+				terms.put(change.getKey(), merged.build());
+			}
+		}
+	}
+
+	// Saturated term frequency, f / (f + 1.2), with name occurrences weighted up.
+	private static Map<String, Float> termWeights(Product product) {
+		Map<String, Float> frequencies = new HashMap<String, Float>();
+		for (String token : tokenize(product.getName())) {
+			frequencies.merge(token, NAME_WEIGHT, Float::sum);
+		}
+		for (String token : tokenize(product.getDescription())) {
+			frequencies.merge(token, 1f, Float::sum);
+		}
+		for (Map.Entry<String, Float> term : frequencies.entrySet()) {
+			term.setValue(term.getValue() / (term.getValue() + 1.2f));
+		}
+		return frequencies;
+	}
+
+	private static boolean sameText(Product a, Product b) {
+		return Objects.equals(a.getName(), b.getName()) && Objects.equals(a.getDescription(), b.getDescription());
+	}
+
+	// The limit highest scores, kept sorted; on a tie the earlier candidate stays ahead.
+	private static class TopHits {
+		final long[] ids;
+		final float[] scores;
+		int size;
+
+		TopHits(int limit) {
+			this.ids = new long[limit];
+			this.scores = new float[limit];
+		}
+
+		void offer(long id, float score) {
+			if (size == ids.length && score <= scores[size - 1]) {
+				return;
+			}
+			int i = size < ids.length ? size++ : size - 1;
+			while (i > 0 && scores[i - 1] < score) {
+				ids[i] = ids[i - 1];
+				scores[i] = scores[i - 1];
+				i--;
+			}
+			ids[i] = id;
+			scores[i] = score;
+		}
+
+		List<Long> ids() {
+			List<Long> ranked = new ArrayList<Long>(size);
+			for (int i = 0; i < size; i++) {
+				ranked.add(ids[i]);
+			}
+			return ranked;
+		}
+	}
+
+	private static class Match {
+		final Postings postings;
+		final float boost;
+
+		Match(Postings postings, float boost) {
+			this.postings = postings;
+			this.boost = boost;
+		}
+	}
+
+	// Product ids in ascending order with their term weights.
+	private static class Postings {
+		final long[] ids;
+		final float[] weights;
+
+		Postings(long[] ids, float[] weights) {
+			this.ids = ids;
+			this.weights = weights;
+		}
+	}
+
+	// Collects postings in ascending id order.
+	private static class PostingsBuilder {
+		long[] ids;
+		float[] weights;
+		int size;
+
+		PostingsBuilder(int capacity) {
+			ids = new long[Math.max(capacity, 1)];
+			weights = new float[ids.length];
+		}
+
+		void add(long id, float weight) {
+			if (size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+				weights = Arrays.copyOf(weights, size * 2);
+			}
+			ids[size] = id;
+			weights[size++] = weight;
+		}
+
+		Postings build() {
+			return new Postings(Arrays.copyOf(ids, size), Arrays.copyOf(weights, size));
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package com.docker.atsea.service;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 import com.docker.atsea.model.Product;
+import com.docker.atsea.model.ProductImport;
 
 public interface ProductService {
 	
@@ -11,6 +14,16 @@ public interface ProductService {
 	List<Product> findAllProducts();
 
 	Product findById(Long productId);
+
+	List<Product> searchProducts(String query, int limit);
+
+	List<Product> findRelated(long productId, int limit);
+
+	ProductImport importProducts(InputStream feed, boolean csv) throws IOException;
+
+	ProductImport getLastImport();
+
+	SingleFlight<Long, Product> getLookups();
 	
 
 }
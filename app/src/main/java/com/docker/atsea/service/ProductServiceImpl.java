@@ -1,12 +1,19 @@
 package com.docker.atsea.service;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 
+import com.docker.atsea.invalidation.InvalidationBus;
 import com.docker.atsea.model.Product;
+import com.docker.atsea.model.ProductImport;
 import com.docker.atsea.repositories.ProductRepository;
 
 @Service("productService")
@@ -16,6 +23,29 @@ public class ProductServiceImpl implements ProductService {
 	@Autowired
 	private ProductRepository productRepository;
 
+	@Autowired
+	private ProductCache productCache;
+
+	@Autowired
+	private ProductImporter productImporter;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private Recommendations recommendations;
+
+	private final SingleFlight<Long, Product> byId;
+
+	public ProductServiceImpl() {
+		this(2000);
+	}
+
+	@Autowired
+	public ProductServiceImpl(@Value("${atsea.singleflight.maxWaitMillis:2000}") long maxWaitMillis) {
+		this.byId = new SingleFlight<Long, Product>("product", maxWaitMillis);
+	}
+
 	public List<Product> findAllProducts() {
 		return productRepository.findAll();
 	}
@@ -24,7 +54,61 @@ public class ProductServiceImpl implements ProductService {
 		return productRepository.findByName(name);
 	}
 
+	/*
+	 * Concurrent lookups of the same product share one query. Runs outside the
+	 * service transaction, so callers waiting on another's query hold no connection.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
 	public Product findById(Long productId) {
-		return productRepository.findById(productId).orElse(null);
+		return byId.get(productId, () -> productRepository.findById(productId).orElse(null));
+	}
+
+	// Answered from the in-memory index, so no transaction (or connection) is needed.
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public List<Product> searchProducts(String query, int limit) {
+		return productCache.search(query, limit);
+	}
+
+	/*
+	 * Products most often ordered together with the given one, from the
+	 * precomputed counts and the catalog cache. Returns null if there is no
+	 * such product.
+	 */
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public List<Product> findRelated(long productId, int limit) {
+		if (productId > Integer.MAX_VALUE || productCache.get(productId) == null) {
+			return null;
+		}
+		List<Product> related = new ArrayList<Product>(limit);
+		for (int relatedId : recommendations.related((int) productId)) {
+			Product product = productCache.get(relatedId);
+			if (product != null) {
+				related.add(product);
+				if (related.size() == limit) {
+					break;
+				}
+			}
+		}
+		return related;
+	}
+
+	// The importer commits batch by batch; the catalog cache on every node reloads once it is done.
+	@Transactional(propagation = Propagation.NOT_SUPPORTED)
+	public ProductImport importProducts(InputStream feed, boolean csv) throws IOException {
+		try {
+			return productImporter.importProducts(feed, csv);
+		} finally {
+			if (productImporter.getLastImport() != null && !productImporter.getLastImport().isRunning()) {
+				invalidationBus.publish(InvalidationBus.PRODUCT, null);
+			}
+		}
+	}
+
+	public ProductImport getLastImport() {
+		return productImporter.getLastImport();
+	}
+
+	public SingleFlight<Long, Product> getLookups() {
+		return byId;
 	}
 }
@@ -0,0 +1,469 @@
+package com.docker.atsea.service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.OrderLines;
+
+/*
+ * "Frequently bought together": a CoOccurrence of the products in every
+ * order, kept in memory and changed as orders are. The changes an order
+ * transaction makes are collected and applied once it commits. Each
+ * application server counts the orders it writes; a fork-join rebuild of the
+ * whole order history takes in everyone's. Only a rebuild's counts are
+ * written to recommendation_snapshot, as one server's would miss the orders
+ * the others wrote below its last order id. A server with changes rebuilds
+ * and writes them every snapshotMillis. At startup the snapshot is loaded
+ * and the orders placed since are counted, or without one the whole history
+ * is. Orders with more than maxOrderLines lines are left out, as every pair
+ * of their lines would be counted.
+ */
+@Component
+public class Recommendations {
+
+	public static final Logger logger = LoggerFactory.getLogger(Recommendations.class);
+
+	private static final int[] NONE = new int[0];
+
+	private static final int SNAPSHOT_ID = 1;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final int maxOrderLines;
+
+	private final int maxRelated;
+
+	private final int rebuildChunkSize;
+
+	private final int rebuildParallelism;
+
+	private final boolean rebuildOnStart;
+
+	private volatile CoOccurrence matrix;
+
+	// Guarded by this, like the fields below it.
+	private long lastOrderId;
+
+	private long changesSinceSnapshot;
+
+	// Changes committed while the history is counted, replayed onto the result; null otherwise.
+	private List<Change> duringRecount;
+
+	private final AtomicBoolean recounting = new AtomicBoolean();
+
+	private volatile JSONObject lastRecount;
+
+	private volatile JSONObject lastSnapshot;
+
+	// One order's products as the transaction found it and as it left it; null for none.
+	private static class Change {
+
+		private final long orderId;
+
+		private final int[] before;
+
+		private int[] after;
+
+		private Change(long orderId, int[] before) {
+			this.orderId = orderId;
+			this.before = before;
+		}
+	}
+
+	@Autowired
+	public Recommendations(JdbcTemplate jdbcTemplate,
+			@Value("${atsea.recommendations.maxOrderLines:100}") int maxOrderLines,
+			@Value("${atsea.recommendations.maxRelated:10}") int maxRelated,
+			@Value("${atsea.recommendations.rebuildChunkSize:10000}") int rebuildChunkSize,
+			@Value("${atsea.recommendations.rebuildParallelism:4}") int rebuildParallelism,
+			@Value("${atsea.recommendations.rebuildOnStart:true}") boolean rebuildOnStart) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.maxOrderLines = maxOrderLines;
+		this.maxRelated = maxRelated;
+		this.rebuildChunkSize = rebuildChunkSize;
+		this.rebuildParallelism = rebuildParallelism;
+		this.rebuildOnStart = rebuildOnStart;
+		this.matrix = new CoOccurrence(maxRelated);
+	}
+
+	// A new order, or an order's state after a change.
+	public void orderAdded(Order order) {
+		Map<Long, Change> changes = pending();
+		Change change = changes.get(order.getOrderId());
+		if (change == null) {
+			change = new Change(order.getOrderId(), null);
+			changes.put(order.getOrderId(), change);
+		}
+		change.after = products(order.getProductsOrdered());
+	}
+
+	// An order as it stands in memory, before a change is made to it.
+	public void orderRemoved(Order order) {
+		removed(order.getOrderId(), order.getProductsOrdered());
+	}
+
+	/*
+	 * An order as it stands in the database, for callers that have already
+	 * changed the entity. Must run before those changes are flushed.
+	 */
+	public void orderRemoved(long orderId) {
+		removed(orderId, null);
+	}
+
+	private void removed(long orderId, Map<Integer, Integer> lines) {
+		Map<Long, Change> changes = pending();
+		Change change = changes.get(orderId);
+		if (change != null) {
+			// What this transaction added is what is now taken out.
+			change.after = null;
+			return;
+		}
+		changes.put(orderId, new Change(orderId, lines != null ? products(lines) : products(jdbcTemplate.queryForList(
+				"SELECT productid FROM orderquantities WHERE orderid = ?", Integer.class, orderId))));
+	}
+
+	// Up to maxRelated product ids, most often ordered with the product first.
+	public int[] related(int productId) {
+		return matrix.related(productId);
+	}
+
+	/*
+	 * Counts the whole order history again, rebuildParallelism ranges of
+	 * rebuildChunkSize order ids at a time, replaces the counts and writes
+	 * them to the snapshot. Returns the number of orders counted.
+	 */
+	public long rebuild() {
+		long started = System.currentTimeMillis();
+		long orders = recount(new CoOccurrence(maxRelated), 0);
+		logger.info("Counted {} orders for recommendations in {} ms", orders, System.currentTimeMillis() - started);
+		return orders;
+	}
+
+	// Forgets every order, for when they have all been deleted.
+	public void clear() {
+		synchronized (this) {
+			matrix = new CoOccurrence(maxRelated);
+			lastOrderId = 0;
+			changesSinceSnapshot = 0;
+			if (duringRecount != null) {
+				duringRecount.clear();
+			}
+		}
+		jdbcTemplate.update("DELETE FROM recommendation_snapshot");
+	}
+
+	// Loads the last snapshot and counts the orders placed since, or counts them all.
+	@EventListener(ApplicationReadyEvent.class)
+	public void load() {
+		List<Map<String, Object>> snapshots = jdbcTemplate.queryForList(
+				"SELECT lastorderid, counts FROM recommendation_snapshot WHERE snapshotid = ?", SNAPSHOT_ID);
+		if (snapshots.isEmpty()) {
+			if (rebuildOnStart && jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders", Long.class) > 0) {
+				rebuild();
+			}
+			return;
+		}
+		long started = System.currentTimeMillis();
+		long through = ((Number) snapshots.get(0).get("lastorderid")).longValue();
+		CoOccurrence loaded;
+		try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(
+				(byte[]) snapshots.get(0).get("counts"))))) {
+			loaded = CoOccurrence.read(in, maxRelated);
+		} catch (IOException e) {
+			logger.error("Unable to read the recommendation snapshot; counting every order instead", e);
+			rebuild();
+			return;
+		}
+		long orders = recount(loaded, through);
+		logger.info("Loaded recommendations for {} products through order {} and counted {} orders since in {} ms",
+				loaded.getProducts(), through, orders, System.currentTimeMillis() - started);
+	}
+
+	/*
+	 * Rebuilds, and so writes a snapshot, if this server has changed the counts
+	 * since its last one. Skipped while a rebuild is already running.
+	 */
+	@Scheduled(fixedDelayString = "${atsea.recommendations.snapshotMillis:300000}")
+	public void snapshot() {
+		synchronized (this) {
+			if (changesSinceSnapshot == 0 || recounting.get()) {
+				return;
+			}
+		}
+		try {
+			rebuild();
+		} catch (IllegalStateException e) {
+			logger.debug("Recommendations are being rebuilt; snapshot skipped");
+		}
+	}
+
+	/*
+	 * Writes counts that cover every order through the given id, unless a
+	 * snapshot through a later order has been written meanwhile.
+	 */
+	@SuppressWarnings("unchecked")
+	private void write(CoOccurrence counts, long through) {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+			counts.write(out);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		byte[] written = bytes.toByteArray();
+		Date takenAt = new Date();
+		String update = "UPDATE recommendation_snapshot SET takenat = ?, lastorderid = ?, counts = ?"
+				+ " WHERE snapshotid = ? AND lastorderid <= ?";
+		if (jdbcTemplate.update(update, takenAt, through, written, SNAPSHOT_ID, through) == 0) {
+			try {
+				jdbcTemplate.update("INSERT INTO recommendation_snapshot (snapshotid, takenat, lastorderid, counts)"
+						+ " VALUES (?, ?, ?, ?)", SNAPSHOT_ID, takenAt, through, written);
+			} catch (DuplicateKeyException e) {
+				if (jdbcTemplate.update(update, takenAt, through, written, SNAPSHOT_ID, through) == 0) {
+					return;
+				}
+			}
+		}
+		JSONObject snapshot = new JSONObject();
+		snapshot.put("takenAt", takenAt.getTime());
+		snapshot.put("lastOrderId", through);
+		snapshot.put("bytes", written.length);
+		lastSnapshot = snapshot;
+		logger.debug("Wrote recommendation snapshot through order {}, {} bytes", through, written.length);
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONObject getStatus() {
+		JSONObject status = new JSONObject();
+		CoOccurrence current = matrix;
+		status.put("products", current.getProducts());
+		status.put("pairs", current.getPairs());
+		synchronized (this) {
+			status.put("lastOrderId", lastOrderId);
+			status.put("changesSinceSnapshot", changesSinceSnapshot);
+		}
+		status.put("rebuilding", recounting.get());
+		status.put("lastRebuild", lastRecount);
+		status.put("lastSnapshot", lastSnapshot);
+		return status;
+	}
+
+	/*
+	 * Counts the orders with ids above after into base and makes it current.
+	 * Changes committed meanwhile to orders the count did not cover are
+	 * replayed onto it; a change to an order inside the counted range may be
+	 * missed or counted twice until the next rebuild. A count of the whole
+	 * history is written to the snapshot as it came from the database, before
+	 * the replay.
+	 */
+	@SuppressWarnings("unchecked")
+	private long recount(CoOccurrence base, long after) {
+		if (!recounting.compareAndSet(false, true)) {
+			throw new IllegalStateException("Recommendations are already being rebuilt.");
+		}
+		long started = System.currentTimeMillis();
+		try {
+			synchronized (this) {
+				duringRecount = new ArrayList<Change>();
+			}
+			Long hi = jdbcTemplate.queryForObject("SELECT MAX(orderid) FROM orderquantities", Long.class);
+			long through = hi == null ? after : Math.max(hi, after);
+			AtomicLong orders = new AtomicLong();
+			if (through > after) {
+				ForkJoinPool pool = new ForkJoinPool(rebuildParallelism);
+				try {
+					base.merge(pool.invoke(new Count(after + 1, through + 1, orders)));
+				} finally {
+					pool.shutdown();
+				}
+			}
+			if (after == 0) {
+				write(base, through);
+			}
+			synchronized (this) {
+				long replayed = 0;
+				for (Change change : duringRecount) {
+					if (change.orderId > through || change.orderId <= after) {
+						apply(base, change);
+						replayed++;
+					}
+				}
+				duringRecount = null;
+				matrix = base;
+				lastOrderId = Math.max(lastOrderId, through);
+				changesSinceSnapshot = after == 0 ? replayed : changesSinceSnapshot + orders.get();
+			}
+			JSONObject recount = new JSONObject();
+			recount.put("at", started);
+			recount.put("orders", orders.get());
+			recount.put("millis", System.currentTimeMillis() - started);
+			lastRecount = recount;
+			return orders.get();
+		} finally {
+			synchronized (this) {
+				duringRecount = null;
+			}
+			recounting.set(false);
+		}
+	}
+
+	// Counts the orders with ids in from..to, splitting the range until it is rebuildChunkSize ids or fewer.
+	private class Count extends RecursiveTask<CoOccurrence> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long from;
+
+		private final long to;
+
+		private final AtomicLong orders;
+
+		private Count(long from, long to, AtomicLong orders) {
+			this.from = from;
+			this.to = to;
+			this.orders = orders;
+		}
+
+		@Override
+		protected CoOccurrence compute() {
+			if (to - from > rebuildChunkSize) {
+				long middle = from + (to - from) / 2;
+				Count left = new Count(from, middle, orders);
+				left.fork();
+				CoOccurrence right = new Count(middle, to, orders).compute();
+				CoOccurrence counted = left.join();
+				counted.merge(right);
+				return counted;
+			}
+			CoOccurrence counted = new CoOccurrence(maxRelated);
+			long[] order = { -1 };
+			int[][] products = { new int[16] };
+			int[] size = { 0 };
+			jdbcTemplate.query("SELECT orderid, productid FROM orderquantities WHERE orderid >= ? AND orderid < ?"
+					+ " ORDER BY orderid", resultSet -> {
+						long orderId = resultSet.getLong("orderid");
+						if (orderId != order[0]) {
+							count(counted, products[0], size[0]);
+							order[0] = orderId;
+							size[0] = 0;
+						}
+						if (size[0] == products[0].length) {
+							products[0] = Arrays.copyOf(products[0], size[0] * 2);
+						}
+						products[0][size[0]++] = resultSet.getInt("productid");
+					}, from, to);
+			count(counted, products[0], size[0]);
+			return counted;
+		}
+
+		private void count(CoOccurrence counted, int[] products, int size) {
+			if (size == 0) {
+				return;
+			}
+			orders.incrementAndGet();
+			if (size <= maxOrderLines) {
+				counted.add(Arrays.copyOf(products, size), 1);
+			}
+		}
+	}
+
+	private synchronized void apply(Collection<Change> changes) {
+		for (Change change : changes) {
+			apply(matrix, change);
+			lastOrderId = Math.max(lastOrderId, change.orderId);
+			changesSinceSnapshot++;
+			if (duringRecount != null) {
+				duringRecount.add(change);
+			}
+		}
+	}
+
+	private static void apply(CoOccurrence counts, Change change) {
+		if (change.before != null) {
+			counts.add(change.before, -1);
+		}
+		if (change.after != null) {
+			counts.add(change.after, 1);
+		}
+	}
+
+	// The order's product ids, or none if it has too many lines to count.
+	private int[] products(Map<Integer, Integer> lines) {
+		if (lines == null || lines.size() > maxOrderLines) {
+			return NONE;
+		}
+		OrderLines orderLines = OrderLines.of(lines);
+		int[] products = new int[orderLines.size()];
+		for (int i = 0; i < products.length; i++) {
+			products[i] = orderLines.productIdAt(i);
+		}
+		return products;
+	}
+
+	private int[] products(List<Integer> productIds) {
+		if (productIds.size() > maxOrderLines) {
+			return NONE;
+		}
+		return productIds.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	/*
+	 * The changes for the current transaction, created and registered to be
+	 * applied after commit on first use.
+	 */
+	@SuppressWarnings("unchecked")
+	private Map<Long, Change> pending() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Recommendations can only be changed inside a transaction.");
+		}
+		Map<Long, Change> changes = (Map<Long, Change>) TransactionSynchronizationManager.getResource(this);
+		if (changes == null) {
+			Map<Long, Change> created = new LinkedHashMap<Long, Change>();
+			TransactionSynchronizationManager.bindResource(this, created);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					apply(created.values());
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(Recommendations.this);
+				}
+			});
+			changes = created;
+		}
+		return changes;
+	}
+}
@@ -0,0 +1,17 @@
+package com.docker.atsea.service;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+
+public interface ReportService {
+
+	List<JSONObject> dailySales(LocalDate from, LocalDate to);
+
+	List<JSONObject> dailyProductSales(long productId, LocalDate from, LocalDate to);
+
+	List<JSONObject> topProducts(LocalDate from, LocalDate to, int limit);
+
+	int backfill(LocalDate from, LocalDate to);
+}
@@ -0,0 +1,76 @@
+package com.docker.atsea.service;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import com.docker.atsea.model.Product;
+
+/*
+ * Sales reports, read from the daily rollups only. A report touches one row
+ * per day, or per day and product, in its range, however many orders those
+ * days hold.
+ */
+@Service("reportService")
+public class ReportServiceImpl implements ReportService {
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private SalesRollups salesRollups;
+
+	@Autowired
+	private ProductCache productCache;
+
+	public List<JSONObject> dailySales(LocalDate from, LocalDate to) {
+		return jdbcTemplate.query("SELECT saledate, orders, quantity, revenue FROM sales_daily"
+				+ " WHERE saledate >= ? AND saledate <= ? AND orders > 0 ORDER BY saledate",
+				(rs, row) -> counts(rs, "date", rs.getDate("saledate").toLocalDate().toString()),
+				Date.valueOf(from), Date.valueOf(to));
+	}
+
+	public List<JSONObject> dailyProductSales(long productId, LocalDate from, LocalDate to) {
+		return jdbcTemplate.query("SELECT saledate, orders, quantity, revenue FROM sales_daily_product"
+				+ " WHERE productid = ? AND saledate >= ? AND saledate <= ? AND orders > 0 ORDER BY saledate",
+				(rs, row) -> counts(rs, "date", rs.getDate("saledate").toLocalDate().toString()),
+				productId, Date.valueOf(from), Date.valueOf(to));
+	}
+
+	// Products by revenue over the range, best first; one row per product sold, so trimmed here rather than in SQL.
+	@SuppressWarnings("unchecked")
+	public List<JSONObject> topProducts(LocalDate from, LocalDate to, int limit) {
+		List<JSONObject> products = jdbcTemplate.query("SELECT productid, SUM(orders) orders, SUM(quantity) quantity,"
+				+ " SUM(revenue) revenue FROM sales_daily_product WHERE saledate >= ? AND saledate <= ?"
+				+ " GROUP BY productid HAVING SUM(orders) > 0 ORDER BY SUM(revenue) DESC, productid",
+				(rs, row) -> counts(rs, "productId", rs.getLong("productid")),
+				Date.valueOf(from), Date.valueOf(to));
+		products = products.subList(0, Math.min(limit, products.size()));
+		for (JSONObject product : products) {
+			Product cached = productCache.get((Long) product.get("productId"));
+			product.put("name", cached == null ? null : cached.getName());
+		}
+		return products;
+	}
+
+	public int backfill(LocalDate from, LocalDate to) {
+		return salesRollups.backfill(from, to);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject counts(ResultSet rs, String key, Object value) throws SQLException {
+		JSONObject counts = new JSONObject();
+		counts.put(key, value);
+		counts.put("orders", rs.getLong("orders"));
+		counts.put("quantity", rs.getLong("quantity"));
+		counts.put("revenue", rs.getBigDecimal("revenue"));
+		return counts;
+	}
+}
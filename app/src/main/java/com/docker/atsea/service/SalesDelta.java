@@ -0,0 +1,120 @@
+package com.docker.atsea.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.IntFunction;
+
+import com.docker.atsea.model.OrderLines;
+
+/*
+ * Changes to the daily sales rollups, netted per day and product: those of
+ * one transaction, or of every transaction committed since the last flush.
+ * An order taken out and put back unchanged nets to nothing, so it writes
+ * nothing. Each line's revenue is its quantity at the unit price the order
+ * stored for it, so an order is taken out at the revenue it was counted at.
+ * Rows come out sorted by key, so concurrent writers lock rollup rows in the
+ * same order.
+ */
+public class SalesDelta {
+
+	private static class Counts {
+		long orders;
+		long quantity;
+		BigDecimal revenue = BigDecimal.ZERO;
+
+		boolean isZero() {
+			return orders == 0 && quantity == 0 && revenue.signum() == 0;
+		}
+
+		void add(Counts other) {
+			orders += other.orders;
+			quantity += other.quantity;
+			revenue = revenue.add(other.revenue);
+		}
+	}
+
+	private final SortedMap<LocalDate, Counts> days = new TreeMap<LocalDate, Counts>();
+
+	private final SortedMap<LocalDate, SortedMap<Long, Counts>> products = new TreeMap<LocalDate, SortedMap<Long, Counts>>();
+
+	/*
+	 * Counts an order's lines on its day (sign 1), or takes them back out
+	 * (sign -1), each at the unit price given for its product.
+	 */
+	public void add(LocalDate day, Map<Integer, Integer> lines, IntFunction<BigDecimal> unitPrice, int sign) {
+		Counts total = days.computeIfAbsent(day, d -> new Counts());
+		total.orders += sign;
+		SortedMap<Long, Counts> dayProducts = products.computeIfAbsent(day, d -> new TreeMap<Long, Counts>());
+		OrderLines orderLines = OrderLines.of(lines);
+		for (int i = 0; i < orderLines.size(); i++) {
+			Counts counts = dayProducts.computeIfAbsent((long) orderLines.productIdAt(i), p -> new Counts());
+			long quantity = (long) sign * orderLines.quantityAt(i);
+			BigDecimal revenue = unitPrice.apply(orderLines.productIdAt(i)).multiply(BigDecimal.valueOf(quantity));
+			counts.orders += sign;
+			counts.quantity += quantity;
+			counts.revenue = counts.revenue.add(revenue);
+			total.quantity += quantity;
+			total.revenue = total.revenue.add(revenue);
+		}
+	}
+
+	// Adds another delta's changes to this one's.
+	public void add(SalesDelta other) {
+		for (Map.Entry<LocalDate, Counts> day : other.days.entrySet()) {
+			days.computeIfAbsent(day.getKey(), d -> new Counts()).add(day.getValue());
+		}
+		for (Map.Entry<LocalDate, SortedMap<Long, Counts>> day : other.products.entrySet()) {
+			SortedMap<Long, Counts> dayProducts = products.computeIfAbsent(day.getKey(), d -> new TreeMap<Long, Counts>());
+			for (Map.Entry<Long, Counts> product : day.getValue().entrySet()) {
+				dayProducts.computeIfAbsent(product.getKey(), p -> new Counts()).add(product.getValue());
+			}
+		}
+	}
+
+	public boolean isEmpty() {
+		for (SortedMap<Long, Counts> dayProducts : products.values()) {
+			for (Counts counts : dayProducts.values()) {
+				if (!counts.isZero()) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	// saledate, orders, quantity, revenue for each day that changed.
+	public List<Object[]> dayRows() {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (Map.Entry<LocalDate, Counts> day : days.entrySet()) {
+			Counts counts = day.getValue();
+			// One product swapped for another leaves the day's counts alone but not its revenue.
+			if (counts.isZero()) {
+				continue;
+			}
+			rows.add(new Object[] { Date.valueOf(day.getKey()), counts.orders, counts.quantity, counts.revenue });
+		}
+		return rows;
+	}
+
+	// saledate, productid, orders, quantity, revenue for each day and product that changed.
+	public List<Object[]> productRows() {
+		List<Object[]> rows = new ArrayList<Object[]>();
+		for (Map.Entry<LocalDate, SortedMap<Long, Counts>> day : products.entrySet()) {
+			for (Map.Entry<Long, Counts> product : day.getValue().entrySet()) {
+				Counts counts = product.getValue();
+				if (counts.isZero()) {
+					continue;
+				}
+				rows.add(new Object[] { Date.valueOf(day.getKey()), product.getKey(), counts.orders, counts.quantity,
+						counts.revenue });
+			}
+		}
+		return rows;
+	}
+}
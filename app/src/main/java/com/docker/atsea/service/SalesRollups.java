@@ -0,0 +1,337 @@
+package com.docker.atsea.service;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.Product;
+
+/*
+ * Keeps the daily sales rollups (sales_daily, sales_daily_product) in step
+ * with the orders table. Order changes are collected into one SalesDelta per
+ * transaction; when it commits, that delta is added to the changes waiting
+ * in memory, and those are written every flushMillis, one batched upsert per
+ * table. Order transactions never wait on a rollup row, so orders placed on
+ * the same day do not queue behind each other on that day's row. The
+ * rollups trail the orders by up to flushMillis, and changes not yet flushed
+ * are lost if the process dies; a backfill recounts them. Revenue is valued
+ * at the unit prices stored with each order line.
+ */
+@Component
+public class SalesRollups {
+
+	public static final Logger logger = LoggerFactory.getLogger(SalesRollups.class);
+
+	private static final String[] COUNTS = { "orders", "quantity", "revenue" };
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	private final ProductCache productCache;
+
+	private final String dialect;
+
+	private final boolean backfillOnStart;
+
+	private final BulkDelete bulkDelete;
+
+	// Held while the rollup tables are written, so flushes, backfills and clears run one at a time.
+	private final Object writeLock = new Object();
+
+	// Committed changes not written yet; guarded by this.
+	private SalesDelta unflushed = new SalesDelta();
+
+	@Autowired
+	public SalesRollups(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager, ProductCache productCache,
+			BulkDelete bulkDelete, @Value("${datasource.atsea.hibernate.dialect}") String dialect,
+			@Value("${atsea.report.backfillOnStart:true}") boolean backfillOnStart) {
+		this.jdbcTemplate = jdbcTemplate;
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.productCache = productCache;
+		this.bulkDelete = bulkDelete;
+		this.dialect = dialect;
+		this.backfillOnStart = backfillOnStart;
+	}
+
+	// Counts a new order, or an order's state after a change. Its lines must already be priced.
+	public void orderAdded(Order order) {
+		pending().add(day(order.getOrderDate()), order.getProductsOrdered(), unitPrices(order.getLinePrices()), 1);
+	}
+
+	// Takes out an order as it stands in memory, before a change is made to it.
+	public void orderRemoved(Order order) {
+		pending().add(day(order.getOrderDate()), order.getProductsOrdered(), unitPrices(order.getLinePrices()), -1);
+	}
+
+	/*
+	 * Takes out an order as it stands in the database, for callers that have
+	 * already changed the entity. Must run before those changes are flushed.
+	 */
+	public void orderRemoved(long orderId) {
+		List<Map<String, Object>> rows = jdbcTemplate.queryForList("SELECT o.orderdate, q.productid, q.productsordered,"
+				+ " op.unitprice FROM orders o JOIN orderquantities q ON q.orderid = o.orderid"
+				+ " LEFT JOIN orderprices op ON op.orderid = q.orderid AND op.productid = q.productid WHERE o.orderid = ?",
+				orderId);
+		if (rows.isEmpty()) {
+			return;
+		}
+		Map<Integer, Integer> lines = new HashMap<Integer, Integer>();
+		Map<Integer, Double> prices = new HashMap<Integer, Double>();
+		for (Map<String, Object> row : rows) {
+			int productId = ((Number) row.get("productid")).intValue();
+			lines.put(productId, ((Number) row.get("productsordered")).intValue());
+			if (row.get("unitprice") != null) {
+				prices.put(productId, ((Number) row.get("unitprice")).doubleValue());
+			}
+		}
+		pending().add(day((java.util.Date) rows.get(0).get("orderdate")), lines, unitPrices(prices), -1);
+	}
+
+	/*
+	 * Recounts the days from..to (either end open if null) from the orders
+	 * table, in one transaction, after writing the changes waiting in memory.
+	 * Days before the earliest remaining order are left alone unless from is
+	 * given, so purged history survives a backfill. An order committed while
+	 * it runs can be miscounted on its day, so run it when order traffic is
+	 * quiet. Returns the number of days counted.
+	 */
+	public int backfill(LocalDate from, LocalDate to) {
+		synchronized (writeLock) {
+			flush();
+			return recount(from, to);
+		}
+	}
+
+	private int recount(LocalDate from, LocalDate to) {
+		return transactionTemplate.execute(status -> {
+			LocalDate start = from;
+			if (start == null) {
+				java.util.Date earliest = jdbcTemplate.queryForObject("SELECT MIN(orderdate) FROM orders", java.util.Date.class);
+				if (earliest == null) {
+					return 0;
+				}
+				start = day(earliest);
+			}
+			List<Object> args = new ArrayList<Object>();
+			args.add(Date.valueOf(start));
+			String range = "saledate >= ?";
+			if (to != null) {
+				args.add(Date.valueOf(to));
+				range += " AND saledate <= ?";
+			}
+			String orderRange = range.replace("saledate", "o.orderdate");
+			jdbcTemplate.update("DELETE FROM sales_daily_product WHERE " + range, args.toArray());
+			jdbcTemplate.update("DELETE FROM sales_daily WHERE " + range, args.toArray());
+			// At the prices stored with the lines; the catalog's only for lines stored without one.
+			String revenue = "CAST(SUM(q.productsordered * COALESCE(op.unitprice, p.price, 0)) AS DECIMAL(19, 2))";
+			String source = " FROM orders o JOIN orderquantities q ON q.orderid = o.orderid"
+					+ " LEFT JOIN orderprices op ON op.orderid = q.orderid AND op.productid = q.productid"
+					+ " LEFT JOIN product p ON p.productid = q.productid WHERE " + orderRange;
+			jdbcTemplate.update("INSERT INTO sales_daily_product (saledate, productid, orders, quantity, revenue)"
+					+ " SELECT o.orderdate, q.productid, COUNT(*), SUM(q.productsordered), " + revenue + source
+					+ " GROUP BY o.orderdate, q.productid", args.toArray());
+			return jdbcTemplate.update("INSERT INTO sales_daily (saledate, orders, quantity, revenue)"
+					+ " SELECT o.orderdate, COUNT(DISTINCT o.orderid), SUM(q.productsordered), " + revenue + source
+					+ " GROUP BY o.orderdate", args.toArray());
+		});
+	}
+
+	// A deployment that already has orders starts with empty rollups; count them once.
+	@EventListener(ApplicationReadyEvent.class)
+	public void backfillIfEmpty() {
+		if (!backfillOnStart || jdbcTemplate.queryForObject("SELECT COUNT(*) FROM sales_daily", Long.class) > 0) {
+			return;
+		}
+		long started = System.currentTimeMillis();
+		int days = backfill(null, null);
+		if (days > 0) {
+			logger.info("Built sales rollups for {} days in {} ms", days, System.currentTimeMillis() - started);
+		}
+	}
+
+	/*
+	 * Writes the changes committed since the last flush in one transaction.
+	 * If the write fails they are kept for the next one. Returns the number of
+	 * days written.
+	 */
+	@Scheduled(fixedDelayString = "${atsea.report.flushMillis:1000}")
+	public int flush() {
+		synchronized (writeLock) {
+			SalesDelta delta;
+			synchronized (this) {
+				delta = unflushed;
+				unflushed = new SalesDelta();
+			}
+			if (delta.isEmpty()) {
+				return 0;
+			}
+			try {
+				return transactionTemplate.execute(status -> write(delta));
+			} catch (RuntimeException e) {
+				logger.warn("Sales rollup flush failed, will retry: {}", e.getMessage());
+				committed(delta);
+				return 0;
+			}
+		}
+	}
+
+	@PreDestroy
+	public void flushOnShutdown() {
+		flush();
+	}
+
+	// Empties the rollups, dropping the changes not written yet.
+	public void clear() {
+		synchronized (writeLock) {
+			synchronized (this) {
+				unflushed = new SalesDelta();
+			}
+			bulkDelete.truncate("sales_daily_product", "sales_daily");
+		}
+	}
+
+	/*
+	 * The delta for the current transaction, created on first use and handed
+	 * to the next flush if the transaction commits.
+	 */
+	private SalesDelta pending() {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			throw new IllegalStateException("Sales rollups can only be changed inside a transaction.");
+		}
+		SalesDelta delta = (SalesDelta) TransactionSynchronizationManager.getResource(this);
+		if (delta == null) {
+			SalesDelta created = new SalesDelta();
+			TransactionSynchronizationManager.bindResource(this, created);
+			TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+				@Override
+				public void afterCommit() {
+					committed(created);
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					TransactionSynchronizationManager.unbindResourceIfPossible(SalesRollups.this);
+				}
+			});
+			delta = created;
+		}
+		return delta;
+	}
+
+	private synchronized void committed(SalesDelta delta) {
+		if (!delta.isEmpty()) {
+			unflushed.add(delta);
+		}
+	}
+
+	private int write(SalesDelta delta) {
+		upsert("sales_daily_product", new String[] { "saledate", "productid" }, delta.productRows());
+		List<Object[]> days = delta.dayRows();
+		upsert("sales_daily", new String[] { "saledate" }, days);
+		return days.size();
+	}
+
+	/*
+	 * Adds each row's counts to the stored row with the same key, inserting
+	 * it if there is none. Rows are key columns followed by orders, quantity
+	 * and revenue.
+	 */
+	private void upsert(String table, String[] keys, List<Object[]> rows) {
+		if (rows.isEmpty()) {
+			return;
+		}
+		String columns = String.join(", ", keys) + ", " + String.join(", ", COUNTS);
+		String values = "?" + ", ?".repeat(keys.length + COUNTS.length - 1);
+		if (dialect.contains("PostgreSQL")) {
+			jdbcTemplate.batchUpdate("INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ") ON CONFLICT ("
+					+ String.join(", ", keys) + ") DO UPDATE SET " + increments(table + ".", "EXCLUDED.%s"), rows);
+			return;
+		}
+		if (dialect.contains("MySQL")) {
+			jdbcTemplate.batchUpdate("INSERT INTO " + table + " (" + columns + ") VALUES (" + values
+					+ ") ON DUPLICATE KEY UPDATE " + increments("", "VALUES(%s)"), rows);
+			return;
+		}
+		// Elsewhere: update, then insert the rows that were not there yet.
+		String update = "UPDATE " + table + " SET " + increments("", "?") + " WHERE " + String.join(" = ? AND ", keys) + " = ?";
+		List<Object[]> updateArgs = new ArrayList<Object[]>(rows.size());
+		for (Object[] row : rows) {
+			updateArgs.add(countsFirst(row, keys.length));
+		}
+		int[] updated = jdbcTemplate.batchUpdate(update, updateArgs);
+		for (int i = 0; i < rows.size(); i++) {
+			if (updated[i] != 0) {
+				continue;
+			}
+			try {
+				jdbcTemplate.update("INSERT INTO " + table + " (" + columns + ") VALUES (" + values + ")", rows.get(i));
+			} catch (DuplicateKeyException e) {
+				// Another transaction inserted it first.
+				jdbcTemplate.update(update, updateArgs.get(i));
+			}
+		}
+	}
+
+	// "orders = <table>orders + <addend>, ..." for each count, the column name filling any %s in addend.
+	private static String increments(String table, String addend) {
+		List<String> sets = new ArrayList<String>(COUNTS.length);
+		for (String count : COUNTS) {
+			sets.add(count + " = " + table + count + " + " + addend.replace("%s", count));
+		}
+		return String.join(", ", sets);
+	}
+
+	private static Object[] countsFirst(Object[] row, int keyCount) {
+		Object[] args = new Object[row.length];
+		System.arraycopy(row, keyCount, args, 0, row.length - keyCount);
+		System.arraycopy(row, 0, args, row.length - keyCount, keyCount);
+		return args;
+	}
+
+	// The stored unit prices, falling back to the catalog's for a line stored without one.
+	private IntFunction<BigDecimal> unitPrices(Map<Integer, Double> stored) {
+		return productId -> {
+			Double price = stored.get(productId);
+			return price != null ? BigDecimal.valueOf(price) : catalogPrice(productId);
+		};
+	}
+
+	// From the catalog cache, or the database for a product added since the cache was loaded.
+	private BigDecimal catalogPrice(long productId) {
+		Product product = productCache.get(productId);
+		if (product != null) {
+			return BigDecimal.valueOf(product.getPrice());
+		}
+		List<Double> price = jdbcTemplate.queryForList("SELECT price FROM product WHERE productid = ?", Double.class, productId);
+		return price.isEmpty() ? BigDecimal.ZERO : BigDecimal.valueOf(price.get(0));
+	}
+
+	// The day a DATE column holds for this instant, in the JVM's time zone as the JDBC driver stores it.
+	private static LocalDate day(java.util.Date date) {
+		return new Date((date == null ? new java.util.Date() : date).getTime()).toLocalDate();
+	}
+}
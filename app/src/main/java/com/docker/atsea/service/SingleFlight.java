@@ -0,0 +1,128 @@
+package com.docker.atsea.service;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/*
+ * Coalesces concurrent loads of the same key. The first caller for a key runs
+ * the load; callers arriving while it is in flight wait for its result, or its
+ * exception, instead of running the same query again. Nothing is kept once the
+ * load completes, so later callers see fresh data. A caller waits at most
+ * maxWaitMillis and then runs the load itself.
+ */
+public class SingleFlight<K, V> {
+
+	public static final Logger logger = LoggerFactory.getLogger(SingleFlight.class);
+
+	private static class Flight<V> {
+
+		private final CompletableFuture<V> result = new CompletableFuture<V>();
+
+		private final AtomicInteger waiters = new AtomicInteger();
+	}
+
+	private final String name;
+
+	private final long maxWaitMillis;
+
+	private final ConcurrentHashMap<K, Flight<V>> inFlight = new ConcurrentHashMap<K, Flight<V>>();
+
+	private final AtomicLong loads = new AtomicLong();
+
+	private final AtomicLong coalesced = new AtomicLong();
+
+	private final AtomicLong timedOut = new AtomicLong();
+
+	private final AtomicLong maxWaiting = new AtomicLong();
+
+	public SingleFlight(String name, long maxWaitMillis) {
+		this.name = name;
+		this.maxWaitMillis = maxWaitMillis;
+	}
+
+	public V get(K key, Supplier<V> loader) {
+		Flight<V> flight = new Flight<V>();
+		Flight<V> leader = inFlight.putIfAbsent(key, flight);
+		if (leader == null) {
+			return load(key, flight, loader);
+		}
+		int count = leader.waiters.incrementAndGet();
+		if (count > maxWaiting.get()) {
+			maxWaiting.accumulateAndGet(count, Math::max);
+		}
+		try {
+			V value = leader.result.get(maxWaitMillis, TimeUnit.MILLISECONDS);
+			coalesced.incrementAndGet();
+			return value;
+		} catch (TimeoutException e) {
+			timedOut.incrementAndGet();
+			logger.warn("{} load of {} still running after {} ms, loading again", name, key, maxWaitMillis);
+			loads.incrementAndGet();
+			return loader.get();
+		} catch (ExecutionException e) {
+			coalesced.incrementAndGet();
+			if (e.getCause() instanceof RuntimeException) {
+				throw (RuntimeException) e.getCause();
+			}
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw new IllegalStateException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted waiting for the " + name + " load of " + key, e);
+		} finally {
+			leader.waiters.decrementAndGet();
+		}
+	}
+
+	private V load(K key, Flight<V> flight, Supplier<V> loader) {
+		loads.incrementAndGet();
+		try {
+			V value = loader.get();
+			flight.result.complete(value);
+			return value;
+		} catch (RuntimeException | Error e) {
+			flight.result.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, flight);
+		}
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	// Loads run, by leaders and by callers that gave up waiting.
+	public long getLoads() {
+		return loads.get();
+	}
+
+	// Callers answered by another caller's load.
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	public long getTimedOut() {
+		return timedOut.get();
+	}
+
+	// Most callers seen waiting on one load at once.
+	public long getMaxWaiting() {
+		return maxWaiting.get();
+	}
+
+	public int getInFlight() {
+		return inFlight.size();
+	}
+}
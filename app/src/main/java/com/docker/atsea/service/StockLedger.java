@@ -0,0 +1,328 @@
+package com.docker.atsea.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.docker.atsea.model.StockReservation;
+
+/*
+ * In-memory stock counters. Taking stock is a compare-and-set on the product's
+ * available count, so concurrent checkouts on a hot product never queue on a
+ * lock or a row, and the count can never go below zero. Products without a
+ * counter are untracked and never run out.
+ *
+ * Stock moves from available to held when it is reserved, and from held to
+ * sold when an order commits. Sold reservations are queued until
+ * StockServiceImpl flushes them to the database.
+ */
+public class StockLedger {
+
+	static final class Counter {
+
+		final AtomicLong available;
+
+		final LongAdder held = new LongAdder();
+
+		final LongAdder sold = new LongAdder();
+
+		Counter(long available) {
+			this.available = new AtomicLong(available);
+		}
+
+		boolean take(long quantity) {
+			for (;;) {
+				long current = available.get();
+				if (current < quantity) {
+					return false;
+				}
+				if (available.compareAndSet(current, current - quantity)) {
+					return true;
+				}
+			}
+		}
+	}
+
+	private final Map<Long, Counter> counters = new ConcurrentHashMap<Long, Counter>();
+
+	private final Map<String, StockReservation> holds = new ConcurrentHashMap<String, StockReservation>();
+
+	private final ConcurrentLinkedQueue<StockReservation> sold = new ConcurrentLinkedQueue<StockReservation>();
+
+	public void track(long productId, long available) {
+		counters.put(productId, new Counter(available));
+	}
+
+	// Starts tracking a product with nothing on sale, unless it is tracked already.
+	public void trackIfAbsent(long productId) {
+		counters.computeIfAbsent(productId, id -> new Counter(0));
+	}
+
+	public void add(long productId, long quantity) {
+		counters.computeIfAbsent(productId, id -> new Counter(0)).available.addAndGet(quantity);
+	}
+
+	// Takes units off sale without holding them; false, taking nothing, if fewer are available.
+	public boolean withdraw(long productId, long quantity) {
+		Counter counter = counters.get(productId);
+		return counter != null && counter.take(quantity);
+	}
+
+	public boolean isTracked(long productId) {
+		return counters.containsKey(productId);
+	}
+
+	public Set<Long> tracked() {
+		return counters.keySet();
+	}
+
+	public long available(long productId) {
+		Counter counter = counters.get(productId);
+		return counter == null ? -1 : counter.available.get();
+	}
+
+	public long held(long productId) {
+		Counter counter = counters.get(productId);
+		return counter == null ? 0 : counter.held.sum();
+	}
+
+	public long sold(long productId) {
+		Counter counter = counters.get(productId);
+		return counter == null ? 0 : counter.sold.sum();
+	}
+
+	/*
+	 * Places a hold for a customer that is kept until it is claimed, released or
+	 * expires. A hold on untracked products only holds nothing, but is kept all
+	 * the same so the order can still claim it.
+	 */
+	public StockReservation reserve(Long customerId, Map<Integer, Integer> productsOrdered, long ttlMillis) {
+		if (productsOrdered == null || productsOrdered.isEmpty()) {
+			throw new IllegalArgumentException("A reservation needs at least one product.");
+		}
+		for (Map.Entry<Integer, Integer> line : productsOrdered.entrySet()) {
+			if (line.getKey() == null || line.getValue() == null || line.getValue() <= 0) {
+				throw new IllegalArgumentException("Quantity for product " + line.getKey() + " must be positive.");
+			}
+		}
+		StockReservation reservation = new StockReservation(UUID.randomUUID().toString(),
+				takeAll(productsOrdered), System.currentTimeMillis() + ttlMillis, true, customerId);
+		holds.put(reservation.getReservationId(), reservation);
+		return reservation;
+	}
+
+	/*
+	 * Takes stock for an order directly, without registering a hold.
+	 */
+	public StockReservation take(Map<Integer, Integer> productsOrdered) {
+		return new StockReservation(UUID.randomUUID().toString(), takeAll(productsOrdered), Long.MAX_VALUE, false);
+	}
+
+	public StockReservation find(String reservationId) {
+		return holds.get(reservationId);
+	}
+
+	/*
+	 * Removes a hold from the open set so it can no longer expire, ready to be
+	 * sold or restored.
+	 */
+	public StockReservation claim(String reservationId) {
+		StockReservation reservation = holds.remove(reservationId);
+		if (reservation == null) {
+			throw new IllegalStateException("Stock reservation " + reservationId + " has expired or was released.");
+		}
+		return reservation;
+	}
+
+	/*
+	 * Claims a hold for an order, which must be the hold's customer's and ask
+	 * for exactly the held quantities of the tracked products. A hold that does
+	 * not match stays open.
+	 */
+	public StockReservation claim(String reservationId, Long customerId, Map<Integer, Integer> productsOrdered) {
+		StockReservation reservation = claim(reservationId);
+		if (reservation.getCustomerId() != null && !reservation.getCustomerId().equals(customerId)) {
+			restore(reservation);
+			throw new IllegalArgumentException("Stock reservation " + reservationId + " was not made for customer "
+					+ customerId + ".");
+		}
+		Map<Long, Long> ordered = new HashMap<Long, Long>();
+		for (Map.Entry<Integer, Integer> line : productsOrdered.entrySet()) {
+			if (counters.containsKey((long) line.getKey()) && line.getValue() > 0) {
+				ordered.merge((long) line.getKey(), (long) line.getValue(), Long::sum);
+			}
+		}
+		if (!ordered.equals(reservation.getQuantities())) {
+			restore(reservation);
+			throw new IllegalArgumentException("Stock reservation " + reservationId + " holds " + reservation.getQuantities()
+					+ " but the order asks for " + ordered + ".");
+		}
+		return reservation;
+	}
+
+	/*
+	 * Changes the stock an order has from before to after. Increases are taken
+	 * now, all or nothing, and decreases are only handed back by complete(),
+	 * so the returned change holds positive and negative quantities.
+	 */
+	public StockReservation adjust(Map<Integer, Integer> before, Map<Integer, Integer> after) {
+		Map<Integer, Integer> increases = new HashMap<Integer, Integer>();
+		Map<Long, Long> decreases = new HashMap<Long, Long>();
+		for (Map.Entry<Long, Long> line : difference(before, after).entrySet()) {
+			if (!counters.containsKey(line.getKey())) {
+				continue;
+			}
+			if (line.getValue() > 0) {
+				increases.put(line.getKey().intValue(), line.getValue().intValue());
+			} else {
+				decreases.put(line.getKey(), line.getValue());
+			}
+		}
+		Map<Long, Long> change = takeAll(increases);
+		change.putAll(decreases);
+		return new StockReservation(UUID.randomUUID().toString(), change, Long.MAX_VALUE, false);
+	}
+
+	// Settles an adjustment: sold and given back if its order committed, untaken otherwise.
+	public void complete(StockReservation change, boolean committed) {
+		for (Map.Entry<Long, Long> line : change.getQuantities().entrySet()) {
+			Counter counter = counters.get(line.getKey());
+			long quantity = line.getValue();
+			if (counter == null) {
+				continue;
+			}
+			if (quantity > 0) {
+				counter.held.add(-quantity);
+				if (committed) {
+					counter.sold.add(quantity);
+				} else {
+					counter.available.addAndGet(quantity);
+				}
+			} else if (committed) {
+				counter.sold.add(quantity);
+				counter.available.addAndGet(-quantity);
+			}
+		}
+	}
+
+	// Per product, how much more after asks for than before; negative where it asks for less.
+	public static Map<Long, Long> difference(Map<Integer, Integer> before, Map<Integer, Integer> after) {
+		Map<Long, Long> difference = new TreeMap<Long, Long>();
+		for (Map.Entry<Integer, Integer> line : after.entrySet()) {
+			difference.merge((long) line.getKey(), (long) line.getValue(), Long::sum);
+		}
+		for (Map.Entry<Integer, Integer> line : before.entrySet()) {
+			difference.merge((long) line.getKey(), (long) -line.getValue(), Long::sum);
+		}
+		difference.values().removeIf(quantity -> quantity == 0);
+		return difference;
+	}
+
+	public void restore(StockReservation reservation) {
+		holds.put(reservation.getReservationId(), reservation);
+	}
+
+	public boolean release(String reservationId) {
+		StockReservation reservation = holds.remove(reservationId);
+		if (reservation == null) {
+			return false;
+		}
+		release(reservation);
+		return true;
+	}
+
+	// Releases a hold only for the customer it was placed for.
+	public boolean release(String reservationId, Long customerId) {
+		StockReservation reservation = holds.get(reservationId);
+		if (reservation == null || (reservation.getCustomerId() != null && !reservation.getCustomerId().equals(customerId))
+				|| !holds.remove(reservationId, reservation)) {
+			return false;
+		}
+		release(reservation);
+		return true;
+	}
+
+	public void release(StockReservation reservation) {
+		for (Map.Entry<Long, Long> line : reservation.getQuantities().entrySet()) {
+			Counter counter = counters.get(line.getKey());
+			if (counter != null) {
+				counter.available.addAndGet(line.getValue());
+				counter.held.add(-line.getValue());
+			}
+		}
+	}
+
+	public void sell(StockReservation reservation, Long orderId) {
+		for (Map.Entry<Long, Long> line : reservation.getQuantities().entrySet()) {
+			Counter counter = counters.get(line.getKey());
+			if (counter != null) {
+				counter.held.add(-line.getValue());
+				counter.sold.add(line.getValue());
+			}
+		}
+		reservation.setOrderId(orderId);
+		sold.add(reservation);
+	}
+
+	public int expire(long now) {
+		int expired = 0;
+		Iterator<StockReservation> open = holds.values().iterator();
+		while (open.hasNext()) {
+			StockReservation reservation = open.next();
+			if (reservation.getExpiresAt() <= now && release(reservation.getReservationId())) {
+				expired++;
+			}
+		}
+		return expired;
+	}
+
+	public List<StockReservation> drainSold() {
+		List<StockReservation> drained = new ArrayList<StockReservation>();
+		StockReservation reservation;
+		while ((reservation = sold.poll()) != null) {
+			drained.add(reservation);
+		}
+		return drained;
+	}
+
+	public void requeue(List<StockReservation> unflushed) {
+		sold.addAll(unflushed);
+	}
+
+	public boolean hasUnflushed() {
+		return !sold.isEmpty();
+	}
+
+	public int openHolds() {
+		return holds.size();
+	}
+
+	// Takes every tracked line or none: lines already taken are handed back if a later one runs short.
+	private Map<Long, Long> takeAll(Map<Integer, Integer> productsOrdered) {
+		Map<Long, Long> taken = new HashMap<Long, Long>();
+		for (Map.Entry<Integer, Integer> line : productsOrdered.entrySet()) {
+			long productId = line.getKey();
+			long quantity = line.getValue();
+			Counter counter = counters.get(productId);
+			if (counter == null || quantity <= 0) {
+				continue;
+			}
+			if (!counter.take(quantity)) {
+				release(new StockReservation(null, taken, 0, false));
+				throw new InsufficientStockException(productId, quantity, counter.available.get());
+			}
+			counter.held.add(quantity);
+			taken.merge(productId, quantity, Long::sum);
+		}
+		return taken;
+	}
+}
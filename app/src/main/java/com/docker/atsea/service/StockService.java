@@ -0,0 +1,37 @@
+package com.docker.atsea.service;
+
+import java.util.Map;
+
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.StockReservation;
+
+public interface StockService {
+
+	boolean isTracked(Long productId);
+
+	long available(Long productId);
+
+	void addStock(Long productId, long quantity);
+
+	StockReservation reserve(Long customerId, Map<Integer, Integer> productsOrdered);
+
+	StockReservation findReservation(String reservationId);
+
+	boolean release(String reservationId, Long customerId);
+
+	StockReservation takeForOrder(Long customerId, Map<Integer, Integer> productsOrdered, String reservationId);
+
+	void adjustForOrder(Long orderId, Map<Integer, Integer> productsOrdered);
+
+	void settleDeletedOrders(String condition, Object[] args, boolean restock);
+
+	int releaseAll();
+
+	void settleOnCompletion(StockReservation reservation, Order order);
+
+	void cancel(StockReservation reservation);
+
+	int flush();
+
+	int expireReservations();
+}
@@ -0,0 +1,546 @@
+package com.docker.atsea.service;
+
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.function.Supplier;
+
+import jakarta.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.ProductStock;
+import com.docker.atsea.model.StockReservation;
+import com.docker.atsea.repositories.ProductStockRepository;
+
+/*
+ * Stock reservations against the in-memory StockLedger, reconciled with the
+ * product_stock table in periodic batches instead of a row lock per order line.
+ *
+ * Each node only sells stock it has leased (see StockLease). The ledger starts
+ * every product at zero; when a checkout runs short the node leases more with
+ * a conditional update on product_stock.leased, which cannot lease out more
+ * than product_stock holds, so nodes never sell the same units twice. Sales
+ * are taken off the node's lease as they are flushed, units well beyond what
+ * the node needs are handed back, and the leases of a node that stops renewing
+ * them are reclaimed by the others.
+ *
+ * Orders that took stock are written with stockapplied = false and flipped in
+ * the same transaction that subtracts them from product_stock. The flip is
+ * conditional and an order's stock is only subtracted by whoever flipped it,
+ * so each order is applied exactly once whether that is this node's flush, a
+ * change to the order, or another node's startup. On startup, and before a
+ * lapsed lease is reclaimed, any order still unapplied (a process died before
+ * its flush) is subtracted, so sold stock is never given back.
+ */
+@Service("stockService")
+public class StockServiceImpl implements StockService, SmartInitializingSingleton {
+
+	public static final Logger logger = LoggerFactory.getLogger(StockServiceImpl.class);
+
+	@Autowired
+	private ProductStockRepository productStockRepository;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	private final TransactionTemplate transactionTemplate;
+
+	// Leases are taken in their own transaction, so they are not held up or undone by the order that needed them.
+	private final TransactionTemplate leaseTemplate;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Value("${atsea.stock.reservationTtlSeconds:600}")
+	private long reservationTtlSeconds;
+
+	@Value("${atsea.stock.leaseSize:20}")
+	private long leaseSize;
+
+	@Value("${atsea.stock.leaseTimeoutMillis:60000}")
+	private long leaseTimeoutMillis;
+
+	private final StockLedger ledger = new StockLedger();
+
+	private final String nodeId = UUID.randomUUID().toString();
+
+	@Autowired
+	public StockServiceImpl(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+		this.leaseTemplate = new TransactionTemplate(transactionManager);
+		this.leaseTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+	}
+
+	public void afterSingletonsInstantiated() {
+		invalidationBus.subscribe(InvalidationBus.STOCK, key -> {
+			if (key != null) {
+				ledger.trackIfAbsent(Long.parseLong(key));
+			}
+		});
+		transactionTemplate.executeWithoutResult(status -> {
+			int orders = applyUnapplied();
+			if (orders > 0) {
+				logger.info("Recovered stock for {} orders that were not flushed before shutdown", orders);
+			}
+		});
+		List<ProductStock> stock = productStockRepository.findAll();
+		for (ProductStock productStock : stock) {
+			ledger.trackIfAbsent(productStock.getProductId());
+		}
+		logger.info("Tracking stock for {} products as node {}", stock.size(), nodeId);
+	}
+
+	public boolean isTracked(Long productId) {
+		return ledger.isTracked(productId);
+	}
+
+	public long available(Long productId) {
+		return ledger.available(productId);
+	}
+
+	/*
+	 * Restocks units of a product, starting to track it if needed. Applied to
+	 * the table straight away, and leased to this node.
+	 */
+	public synchronized void addStock(Long productId, long quantity) {
+		if (quantity <= 0) {
+			throw new IllegalArgumentException("Quantity must be positive.");
+		}
+		transactionTemplate.executeWithoutResult(status -> {
+			int updated = jdbcTemplate.update("UPDATE product_stock SET quantity = quantity + ?, leased = leased + ? WHERE productid = ?",
+					quantity, quantity, productId);
+			if (updated == 0) {
+				productStockRepository.saveAndFlush(new ProductStock(productId, quantity, quantity));
+				invalidationBus.publish(InvalidationBus.STOCK, productId.toString());
+			}
+			leaseRow(productId, quantity);
+		});
+		ledger.add(productId, quantity);
+	}
+
+	public StockReservation reserve(Long customerId, Map<Integer, Integer> productsOrdered) {
+		return withLease(() -> ledger.reserve(customerId, productsOrdered, reservationTtlSeconds * 1000L));
+	}
+
+	public StockReservation findReservation(String reservationId) {
+		return ledger.find(reservationId);
+	}
+
+	public boolean release(String reservationId, Long customerId) {
+		return ledger.release(reservationId, customerId);
+	}
+
+	public StockReservation takeForOrder(Long customerId, Map<Integer, Integer> productsOrdered, String reservationId) {
+		return reservationId == null ? withLease(() -> ledger.take(productsOrdered))
+				: ledger.claim(reservationId, customerId, productsOrdered);
+	}
+
+	/*
+	 * Moves an existing order's stock from its stored lines to the given ones,
+	 * in the caller's transaction and before the order's own changes are
+	 * flushed. Extra units are taken from the ledger straight away and units
+	 * no longer ordered go back on sale once the transaction commits. The
+	 * table is updated here: by the difference if the order was already
+	 * flushed, or by all of its new lines if this settles it first. Extra
+	 * units come out of this node's lease, whichever node sold the order.
+	 */
+	public void adjustForOrder(Long orderId, Map<Integer, Integer> productsOrdered) {
+		Map<Integer, Integer> stored = new HashMap<Integer, Integer>();
+		jdbcTemplate.query("SELECT productid, productsordered FROM orderquantities WHERE orderid = ?",
+				rs -> {
+					stored.put(rs.getInt(1), rs.getInt(2));
+				}, orderId);
+		StockReservation change = withLease(() -> ledger.adjust(stored, productsOrdered));
+		try {
+			boolean settles = jdbcTemplate.update("UPDATE orders SET stockapplied = TRUE WHERE orderid = ? AND stockapplied = FALSE",
+					orderId) == 1;
+			subtract(StockLedger.difference(settles ? new HashMap<Integer, Integer>() : stored, productsOrdered));
+			// Units taken leave this node's lease for good; units handed back join it.
+			lease(negate(change.getQuantities()));
+		} catch (RuntimeException e) {
+			ledger.complete(change, false);
+			throw e;
+		}
+		completeOnCommit(change);
+	}
+
+	/*
+	 * Called in the transaction that deletes the orders matching condition (a
+	 * WHERE clause on orders, or null for all of them). Orders whose stock was
+	 * not applied yet are applied first, so their sale is not lost with them.
+	 * With restock, every unit they ordered then goes back on sale.
+	 */
+	public void settleDeletedOrders(String condition, Object[] args, boolean restock) {
+		Object[] params = args == null ? new Object[0] : args;
+		Map<Long, Map<Long, Long>> unapplied = new HashMap<Long, Map<Long, Long>>();
+		jdbcTemplate.query("SELECT orderid, productid, productsordered FROM orderquantities WHERE orderid IN"
+				+ " (SELECT orderid FROM orders WHERE stockapplied = FALSE" + (condition == null ? "" : " AND " + condition) + ")",
+				rs -> {
+					unapplied.computeIfAbsent(rs.getLong(1), id -> new HashMap<Long, Long>()).put(rs.getLong(2), rs.getLong(3));
+				}, params);
+		apply(unapplied);
+		if (!restock) {
+			return;
+		}
+		Map<Long, Long> returned = new HashMap<Long, Long>();
+		jdbcTemplate.query("SELECT productid, SUM(productsordered) FROM orderquantities WHERE orderid IN"
+				+ " (SELECT orderid FROM orders" + (condition == null ? "" : " WHERE " + condition) + ") GROUP BY productid",
+				rs -> {
+					returned.put(rs.getLong(1), -rs.getLong(2));
+				}, params);
+		subtract(returned);
+		// Restocked units go back on sale here, so they join this node's lease.
+		Map<Long, Long> tracked = new HashMap<Long, Long>();
+		for (Map.Entry<Long, Long> line : returned.entrySet()) {
+			if (ledger.isTracked(line.getKey())) {
+				tracked.put(line.getKey(), -line.getValue());
+			}
+		}
+		lease(tracked);
+		completeOnCommit(new StockReservation(null, returned, Long.MAX_VALUE, false));
+	}
+
+	public int releaseAll() {
+		return ledger.expire(Long.MAX_VALUE);
+	}
+
+	// Settles a change to the ledger once the surrounding transaction completes.
+	private void completeOnCommit(StockReservation change) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			ledger.complete(change, true);
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				ledger.complete(change, status == STATUS_COMMITTED);
+			}
+		});
+	}
+
+	/*
+	 * Sells the reservation to the order once the surrounding transaction
+	 * commits, or cancels it if the transaction rolls back.
+	 */
+	public void settleOnCompletion(StockReservation reservation, Order order) {
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+			ledger.sell(reservation, order.getOrderId());
+			return;
+		}
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+			@Override
+			public void afterCompletion(int status) {
+				if (status == STATUS_COMMITTED) {
+					ledger.sell(reservation, order.getOrderId());
+				} else {
+					cancel(reservation);
+				}
+			}
+		});
+	}
+
+	/*
+	 * Stock taken directly for an order goes back on sale; a customer's hold is
+	 * put back so the order can be retried against it.
+	 */
+	public void cancel(StockReservation reservation) {
+		if (reservation.isHold()) {
+			ledger.restore(reservation);
+		} else {
+			ledger.release(reservation);
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.stock.flushMillis:1000}")
+	public int flush() {
+		List<StockReservation> sold = ledger.drainSold();
+		if (sold.isEmpty()) {
+			return 0;
+		}
+		// Stock taken without an order has nothing to flip and always applies.
+		Map<Long, Map<Long, Long>> orders = new HashMap<Long, Map<Long, Long>>();
+		Map<Long, Long> unordered = new HashMap<Long, Long>();
+		// Everything sold here leaves this node's lease, even orders another node applied first.
+		Map<Long, Long> leased = new HashMap<Long, Long>();
+		for (StockReservation reservation : sold) {
+			Map<Long, Long> lines = reservation.getOrderId() == null ? unordered
+					: orders.computeIfAbsent(reservation.getOrderId(), id -> new HashMap<Long, Long>());
+			for (Map.Entry<Long, Long> line : reservation.getQuantities().entrySet()) {
+				lines.merge(line.getKey(), line.getValue(), Long::sum);
+				leased.merge(line.getKey(), -line.getValue(), Long::sum);
+			}
+		}
+
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				apply(orders);
+				subtract(unordered);
+				lease(leased);
+			});
+		} catch (RuntimeException e) {
+			logger.warn("Stock flush of {} orders failed, will retry: {}", sold.size(), e.getMessage());
+			ledger.requeue(sold);
+			return 0;
+		}
+		logger.debug("Flushed stock for {} orders", sold.size());
+		return sold.size();
+	}
+
+	/*
+	 * Flips each order to stockapplied and subtracts the lines of those it
+	 * flipped; an order someone else already applied is skipped. Returns the
+	 * number of orders applied.
+	 */
+	private int apply(Map<Long, Map<Long, Long>> orders) {
+		if (orders.isEmpty()) {
+			return 0;
+		}
+		List<Long> orderIds = new ArrayList<Long>(new TreeMap<Long, Map<Long, Long>>(orders).keySet());
+		List<Object[]> flips = new ArrayList<Object[]>(orderIds.size());
+		for (Long orderId : orderIds) {
+			flips.add(new Object[] { orderId });
+		}
+		int[] flipped = jdbcTemplate.batchUpdate("UPDATE orders SET stockapplied = TRUE WHERE orderid = ? AND stockapplied = FALSE",
+				flips);
+		Map<Long, Long> deltas = new HashMap<Long, Long>();
+		int applied = 0;
+		for (int i = 0; i < flipped.length; i++) {
+			// Drivers that cannot count batched rows report SUCCESS_NO_INFO; those orders are taken as flipped here.
+			if (flipped[i] == 1 || flipped[i] == Statement.SUCCESS_NO_INFO) {
+				for (Map.Entry<Long, Long> line : orders.get(orderIds.get(i)).entrySet()) {
+					deltas.merge(line.getKey(), line.getValue(), Long::sum);
+				}
+				applied++;
+			}
+		}
+		subtract(deltas);
+		return applied;
+	}
+
+	// In product id order, so concurrent writers lock the rows in the same order.
+	private void subtract(Map<Long, Long> deltas) {
+		if (deltas.isEmpty()) {
+			return;
+		}
+		List<Object[]> updates = new ArrayList<Object[]>(deltas.size());
+		for (Map.Entry<Long, Long> delta : new TreeMap<Long, Long>(deltas).entrySet()) {
+			updates.add(new Object[] { delta.getValue(), delta.getKey() });
+		}
+		jdbcTemplate.batchUpdate("UPDATE product_stock SET quantity = quantity - ? WHERE productid = ?", updates);
+	}
+
+	/*
+	 * Flushes what was sold and hands every lease back. If the flush failed the
+	 * leases are left to lapse, so whoever reclaims them applies the orders first.
+	 */
+	@PreDestroy
+	public void flushOnShutdown() {
+		flush();
+		if (ledger.hasUnflushed()) {
+			return;
+		}
+		try {
+			transactionTemplate.executeWithoutResult(status -> {
+				List<Object[]> returned = new ArrayList<Object[]>();
+				jdbcTemplate.query("SELECT quantity, productid FROM stock_lease WHERE nodeid = ? ORDER BY productid",
+						rs -> {
+							returned.add(new Object[] { rs.getLong(1), rs.getLong(2) });
+						}, nodeId);
+				jdbcTemplate.batchUpdate("UPDATE product_stock SET leased = leased - ? WHERE productid = ?", returned);
+				jdbcTemplate.update("DELETE FROM stock_lease WHERE nodeid = ?", nodeId);
+			});
+			for (Long productId : ledger.tracked()) {
+				ledger.withdraw(productId, ledger.available(productId));
+			}
+		} catch (RuntimeException e) {
+			logger.warn("Unable to hand back stock leases, they will lapse: {}", e.getMessage());
+		}
+	}
+
+	/*
+	 * Keeps this node's leases alive, hands back units well beyond a lease's
+	 * worth, starts tracking products it missed the news of, and reclaims the
+	 * leases of nodes that stopped renewing theirs. A lease this node finds
+	 * reclaimed (it stalled for longer than the timeout) is taken off sale.
+	 */
+	@Scheduled(fixedDelayString = "${atsea.stock.leaseRenewMillis:10000}")
+	public synchronized int renewLeases() {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		jdbcTemplate.update("UPDATE stock_lease SET renewedat = ? WHERE nodeid = ?", now, nodeId);
+		Set<Long> leasedHere = new HashSet<Long>(jdbcTemplate.queryForList("SELECT productid FROM stock_lease WHERE nodeid = ?",
+				Long.class, nodeId));
+		for (Long productId : ledger.tracked()) {
+			long available = ledger.available(productId);
+			if (!leasedHere.contains(productId)) {
+				if (available > 0 && ledger.withdraw(productId, available)) {
+					logger.warn("Lease on product {} was reclaimed, took {} units off sale", productId, available);
+				}
+			} else if (available > 2 * leaseSize && ledger.withdraw(productId, available - leaseSize)) {
+				try {
+					transactionTemplate.executeWithoutResult(status -> lease(Collections.singletonMap(productId, leaseSize - available)));
+				} catch (RuntimeException e) {
+					ledger.add(productId, available - leaseSize);
+					throw e;
+				}
+			}
+		}
+		for (Long productId : jdbcTemplate.queryForList("SELECT productid FROM product_stock", Long.class)) {
+			ledger.trackIfAbsent(productId);
+		}
+		return reclaimLapsedLeases(new Timestamp(now.getTime() - leaseTimeoutMillis));
+	}
+
+	private int reclaimLapsedLeases(Timestamp cutoff) {
+		List<Object[]> lapsed = jdbcTemplate.query("SELECT nodeid, productid, quantity FROM stock_lease WHERE renewedat < ?",
+				(rs, rowNum) -> new Object[] { rs.getString(1), rs.getLong(2), rs.getLong(3) }, cutoff);
+		if (lapsed.isEmpty()) {
+			return 0;
+		}
+		return transactionTemplate.execute(status -> {
+			// The lapsed node's sold units are still in its lease; they must come off product_stock before it is freed.
+			applyUnapplied();
+			int reclaimed = 0;
+			for (Object[] lease : lapsed) {
+				if (jdbcTemplate.update("DELETE FROM stock_lease WHERE nodeid = ? AND productid = ? AND renewedat < ?",
+						lease[0], lease[1], cutoff) == 1) {
+					jdbcTemplate.update("UPDATE product_stock SET leased = leased - ? WHERE productid = ?", lease[2], lease[1]);
+					reclaimed++;
+				}
+			}
+			logger.info("Reclaimed {} stock leases not renewed since {}", reclaimed, cutoff);
+			return reclaimed;
+		});
+	}
+
+	/*
+	 * Runs a take against the ledger, leasing more of a product each time it
+	 * runs short, until it succeeds or no more can be leased.
+	 */
+	private <T> T withLease(Supplier<T> take) {
+		for (;;) {
+			try {
+				return take.get();
+			} catch (InsufficientStockException e) {
+				if (!topUp(e.getProductId(), e.getRequested())) {
+					throw e;
+				}
+			}
+		}
+	}
+
+	/*
+	 * Leases enough of a product for requested units to be available here, and
+	 * at least a lease's worth. Returns false if product_stock cannot spare it.
+	 */
+	private synchronized boolean topUp(long productId, long requested) {
+		long needed = requested - ledger.available(productId);
+		if (needed <= 0) {
+			// Topped up by another thread meanwhile.
+			return true;
+		}
+		long granted = leaseTemplate.execute(status -> {
+			for (int attempt = 0; attempt < 3; attempt++) {
+				List<Long> free = jdbcTemplate.queryForList("SELECT quantity - leased FROM product_stock WHERE productid = ?",
+						Long.class, productId);
+				long amount = free.isEmpty() ? 0 : Math.min(Math.max(needed, leaseSize), free.get(0));
+				if (amount < needed) {
+					return 0L;
+				}
+				// Only succeeds if the units are still free; another node may have leased them since.
+				if (jdbcTemplate.update("UPDATE product_stock SET leased = leased + ? WHERE productid = ? AND quantity - leased >= ?",
+						amount, productId, amount) == 1) {
+					leaseRow(productId, amount);
+					return amount;
+				}
+			}
+			return 0L;
+		});
+		if (granted == 0) {
+			return false;
+		}
+		ledger.add(productId, granted);
+		logger.debug("Leased {} units of product {}", granted, productId);
+		return true;
+	}
+
+	/*
+	 * Moves units in or out of this node's leases, in the caller's transaction.
+	 * Units going out of a lease that was already reclaimed were freed with it.
+	 */
+	private void lease(Map<Long, Long> deltas) {
+		for (Map.Entry<Long, Long> delta : new TreeMap<Long, Long>(deltas).entrySet()) {
+			if (delta.getValue() == 0) {
+				continue;
+			}
+			if (jdbcTemplate.update("UPDATE stock_lease SET quantity = quantity + ?, renewedat = ? WHERE nodeid = ? AND productid = ?",
+					delta.getValue(), new Timestamp(System.currentTimeMillis()), nodeId, delta.getKey()) == 0) {
+				if (delta.getValue() < 0) {
+					continue;
+				}
+				leaseRow(delta.getKey(), delta.getValue());
+			}
+			jdbcTemplate.update("UPDATE product_stock SET leased = leased + ? WHERE productid = ?", delta.getValue(), delta.getKey());
+		}
+	}
+
+	// Adds units to this node's lease row; product_stock.leased is the caller's to move.
+	private void leaseRow(long productId, long quantity) {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		if (jdbcTemplate.update("UPDATE stock_lease SET quantity = quantity + ?, renewedat = ? WHERE nodeid = ? AND productid = ?",
+				quantity, now, nodeId, productId) == 0) {
+			jdbcTemplate.update("INSERT INTO stock_lease (nodeid, productid, quantity, renewedat) VALUES (?, ?, ?, ?)",
+					nodeId, productId, quantity, now);
+		}
+	}
+
+	// Applies every order whose stock was not yet subtracted, whoever sold it.
+	private int applyUnapplied() {
+		Map<Long, Map<Long, Long>> unapplied = new HashMap<Long, Map<Long, Long>>();
+		jdbcTemplate.query("SELECT oq.orderid, oq.productid, oq.productsordered FROM orderquantities oq"
+				+ " JOIN orders o ON o.orderid = oq.orderid WHERE o.stockapplied = FALSE",
+				rs -> {
+					unapplied.computeIfAbsent(rs.getLong(1), id -> new HashMap<Long, Long>()).put(rs.getLong(2), rs.getLong(3));
+				});
+		return apply(unapplied);
+	}
+
+	private static Map<Long, Long> negate(Map<Long, Long> quantities) {
+		Map<Long, Long> negated = new HashMap<Long, Long>();
+		for (Map.Entry<Long, Long> line : quantities.entrySet()) {
+			negated.put(line.getKey(), -line.getValue());
+		}
+		return negated;
+	}
+
+	@Scheduled(fixedDelayString = "${atsea.stock.expiryIntervalMillis:5000}")
+	public int expireReservations() {
+		int expired = ledger.expire(System.currentTimeMillis());
+		if (expired > 0) {
+			logger.info("Released {} expired stock reservations", expired);
+		}
+		return expired;
+	}
+}
@@ -0,0 +1,124 @@
+package com.docker.atsea.startup;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.aot.AotDetector;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.boot.context.metrics.buffering.StartupTimeline.TimelineEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.metrics.ApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+import org.springframework.stereotype.Component;
+import org.springframework.web.context.support.ServletRequestHandledEvent;
+
+/*
+ * Where startup time goes. AtSeaApp buffers Spring's startup steps (context
+ * refresh, bean instantiation, configuration class parsing and so on); this
+ * ranks them by the time spent in the step itself rather than in the steps it
+ * contains, logs the slowest once the application is ready and serves them at
+ * /utility/startup/, with the time from JVM start to ready and to the first
+ * request. Beans created lazily after startup are added as they are created.
+ */
+@Component
+public class StartupReport {
+
+	public static final Logger logger = LoggerFactory.getLogger(StartupReport.class);
+
+	private static final int LOGGED_STEPS = 10;
+
+	private final ApplicationStartup applicationStartup;
+
+	private final boolean lazyInitialization;
+
+	private final AtomicLong readyMillis = new AtomicLong(-1);
+
+	private final AtomicLong firstRequestMillis = new AtomicLong(-1);
+
+	@Autowired
+	public StartupReport(ApplicationStartup applicationStartup,
+			@Value("${spring.main.lazy-initialization:false}") boolean lazyInitialization) {
+		this.applicationStartup = applicationStartup;
+		this.lazyInitialization = lazyInitialization;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	public void ready() {
+		readyMillis.set(ManagementFactory.getRuntimeMXBean().getUptime());
+		StringBuilder slowest = new StringBuilder();
+		for (JSONObject step : steps(LOGGED_STEPS)) {
+			slowest.append(String.format("%n  %6d ms  %s %s", step.get("selfMillis"), step.get("name"), step.get("tags")));
+		}
+		logger.info("Ready {} ms after JVM start (AOT {}, lazy initialization {}). Slowest startup steps:{}",
+				readyMillis.get(), AotDetector.useGeneratedArtifacts(), lazyInitialization, slowest);
+	}
+
+	// Published by the DispatcherServlet after every request; only the first after ready, so not a warm-up request, is of interest.
+	@EventListener(ServletRequestHandledEvent.class)
+	public void requestHandled() {
+		if (readyMillis.get() >= 0 && firstRequestMillis.get() < 0
+				&& firstRequestMillis.compareAndSet(-1, ManagementFactory.getRuntimeMXBean().getUptime())) {
+			logger.info("First request handled {} ms after JVM start", firstRequestMillis.get());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	public JSONObject report(int limit) {
+		JSONObject report = new JSONObject();
+		report.put("readyMillis", readyMillis.get());
+		report.put("firstRequestMillis", firstRequestMillis.get());
+		report.put("aot", AotDetector.useGeneratedArtifacts());
+		report.put("lazyInitialization", lazyInitialization);
+		report.put("classDataSharing", ManagementFactory.getRuntimeMXBean().getInputArguments().stream()
+				.anyMatch(argument -> argument.startsWith("-XX:SharedArchiveFile")));
+		report.put("steps", steps(limit));
+		return report;
+	}
+
+	/*
+	 * The steps with the most time of their own, slowest first. A step's own
+	 * time is its duration less the durations of its buffered children.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<JSONObject> steps(int limit) {
+		if (!(applicationStartup instanceof BufferingApplicationStartup)) {
+			return new ArrayList<JSONObject>();
+		}
+		List<TimelineEvent> events = ((BufferingApplicationStartup) applicationStartup).getBufferedTimeline().getEvents();
+		Map<Long, Long> selfNanos = new HashMap<Long, Long>();
+		for (TimelineEvent event : events) {
+			selfNanos.merge(event.getStartupStep().getId(), event.getDuration().toNanos(), Long::sum);
+			Long parent = event.getStartupStep().getParentId();
+			if (parent != null) {
+				selfNanos.merge(parent, -event.getDuration().toNanos(), Long::sum);
+			}
+		}
+		List<JSONObject> steps = new ArrayList<JSONObject>();
+		for (TimelineEvent event : events) {
+			StartupStep step = event.getStartupStep();
+			JSONObject json = new JSONObject();
+			json.put("name", step.getName());
+			JSONObject tags = new JSONObject();
+			for (StartupStep.Tag tag : step.getTags()) {
+				tags.put(tag.getKey(), tag.getValue());
+			}
+			json.put("tags", tags);
+			json.put("millis", event.getDuration().toMillis());
+			json.put("selfMillis", selfNanos.get(step.getId()) / 1000000);
+			steps.add(json);
+		}
+		steps.sort(Comparator.comparingLong((JSONObject step) -> (Long) step.get("selfMillis")).reversed());
+		return steps.subList(0, Math.min(limit, steps.size()));
+	}
+}
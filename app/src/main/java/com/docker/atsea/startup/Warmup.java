@@ -0,0 +1,330 @@
+package com.docker.atsea.startup;
+
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.sql.DataSource;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+import org.json.simple.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.env.Environment;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.docker.atsea.model.Customer;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.repositories.CustomerRepository;
+import com.docker.atsea.service.ProductCache;
+import com.zaxxer.hikari.HikariDataSource;
+
+/*
+ * Runs once the web server is listening but before the application reports
+ * ready, so /utility/healthcheck/ answers 503 throughout. It opens the pool's
+ * minimum of connections, loads the product catalog, then sends rounds of
+ * requests from atsea.warmup.mix to the server over loopback until the 90th
+ * percentile latency of stableRounds rounds in a row is within tolerance of the
+ * round before, or maxMillis have passed. Requests are reads, and logins with
+ * a wrong password, so warm-up changes no data. They carry a per-process token
+ * that exempts them from rate limiting.
+ */
+@Component
+public class Warmup implements ApplicationRunner {
+
+	public static final Logger logger = LoggerFactory.getLogger(Warmup.class);
+
+	public static final String TOKEN_HEADER = "X-AtSea-Warmup";
+
+	private static final int SAMPLE_SIZE = 20;
+
+	private static final List<String> REQUEST_TYPES = Arrays.asList("products", "product", "search", "customer",
+			"username", "login");
+
+	private final String token = UUID.randomUUID().toString();
+
+	private final boolean enabled;
+
+	private final Map<String, Integer> mix;
+
+	private final int roundRequests;
+
+	private final int threads;
+
+	private final double tolerance;
+
+	private final int stableRounds;
+
+	private final long maxMillis;
+
+	private final AtomicLong errors = new AtomicLong();
+
+	private volatile JSONObject report;
+
+	@Autowired
+	private Environment environment;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private ProductCache productCache;
+
+	@Autowired
+	private CustomerRepository customerRepository;
+
+	public Warmup(@Value("${atsea.warmup.enabled:true}") boolean enabled,
+			@Value("${atsea.warmup.mix:products:2,product:4,search:2,customer:2,username:1,login:1}") String mix,
+			@Value("${atsea.warmup.roundRequests:200}") int roundRequests,
+			@Value("${atsea.warmup.threads:4}") int threads,
+			@Value("${atsea.warmup.tolerance:0.2}") double tolerance,
+			@Value("${atsea.warmup.stableRounds:3}") int stableRounds,
+			@Value("${atsea.warmup.maxMillis:60000}") long maxMillis) {
+		this.enabled = enabled;
+		this.mix = parseMix(mix);
+		this.roundRequests = roundRequests;
+		this.threads = threads;
+		this.tolerance = tolerance;
+		this.stableRounds = stableRounds;
+		this.maxMillis = maxMillis;
+	}
+
+	/*
+	 * Parses "type:weight,..." into weights by request type.
+	 */
+	public static Map<String, Integer> parseMix(String mix) {
+		Map<String, Integer> weights = new LinkedHashMap<String, Integer>();
+		for (String entry : mix.split(",")) {
+			String[] parts = entry.trim().split(":");
+			if (parts.length != 2 || !REQUEST_TYPES.contains(parts[0].trim())) {
+				throw new IllegalArgumentException("atsea.warmup.mix entries must be type:weight with a type of "
+						+ String.join(", ", REQUEST_TYPES) + ", not " + entry);
+			}
+			int weight = Integer.parseInt(parts[1].trim());
+			if (weight > 0) {
+				weights.put(parts[0].trim(), weight);
+			}
+		}
+		return weights;
+	}
+
+	/*
+	 * True for the warm-up's own requests.
+	 */
+	public boolean isWarmupRequest(HttpServletRequest request) {
+		return token.equals(request.getHeader(TOKEN_HEADER));
+	}
+
+	/*
+	 * How the warm-up went; null until it has finished or if it did not run.
+	 */
+	public JSONObject getReport() {
+		return report;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void run(ApplicationArguments args) throws Exception {
+		String port = environment.getProperty("local.server.port");
+		if (!enabled || port == null || mix.isEmpty()) {
+			return;
+		}
+		long started = System.nanoTime();
+		JSONObject result = new JSONObject();
+		result.put("connections", fillPool());
+		productCache.refresh();
+		result.put("products", productCache.getAll().size());
+		String base = "http://localhost:" + port + environment.getProperty("server.servlet.context-path", "");
+		List<HttpRequest> requests = requests(base);
+
+		HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		List<Double> p90s = new ArrayList<Double>();
+		long[] first = null;
+		long[] last = null;
+		int stable = 0;
+		try {
+			while (stable < stableRounds && (System.nanoTime() - started) / 1000000 < maxMillis) {
+				last = round(client, executor, requests);
+				if (first == null) {
+					first = last;
+				}
+				double p90 = percentile(last, 90);
+				if (!p90s.isEmpty()) {
+					double previous = p90s.get(p90s.size() - 1);
+					stable = Math.abs(p90 - previous) <= previous * tolerance ? stable + 1 : 0;
+				}
+				p90s.add(p90);
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		long elapsed = (System.nanoTime() - started) / 1000000;
+		result.put("millis", elapsed);
+		result.put("rounds", p90s.size());
+		result.put("requests", (long) p90s.size() * roundRequests);
+		result.put("errors", errors.get());
+		result.put("stable", stable >= stableRounds);
+		result.put("firstRound", latencies(first));
+		result.put("lastRound", latencies(last));
+		report = result;
+		logger.info("Warm-up {} in {} ms: {} rounds of {} requests, p90 {} ms in the first round and {} ms in the last, {} errors",
+				stable >= stableRounds ? "stable" : "stopped at atsea.warmup.maxMillis", elapsed, p90s.size(),
+				roundRequests, String.format("%.2f", percentile(first, 90)), String.format("%.2f", percentile(last, 90)),
+				errors.get());
+	}
+
+	/*
+	 * Holds the pool's minimum idle count of connections at once, so they are
+	 * all open before the first request, and returns how many were opened.
+	 */
+	private int fillPool() throws SQLException {
+		int minimum = dataSource.isWrapperFor(HikariDataSource.class)
+				? dataSource.unwrap(HikariDataSource.class).getMinimumIdle() : 1;
+		List<Connection> connections = new ArrayList<Connection>();
+		try {
+			for (int i = 0; i < minimum; i++) {
+				connections.add(dataSource.getConnection());
+			}
+		} finally {
+			for (Connection connection : connections) {
+				connection.close();
+			}
+		}
+		return connections.size();
+	}
+
+	/*
+	 * One round's requests, drawn by weight, against a sample of the catalog
+	 * and customers. Types that need a product or customer are left out while
+	 * there are none, rather than filling the log with not found errors.
+	 */
+	@SuppressWarnings("unchecked")
+	private List<HttpRequest> requests(String base) {
+		List<Product> products = new ArrayList<Product>(productCache.getAll());
+		List<Customer> customers = customerRepository.findAll(PageRequest.of(0, SAMPLE_SIZE)).getContent();
+		List<String> types = new ArrayList<String>();
+		for (Map.Entry<String, Integer> weight : mix.entrySet()) {
+			boolean needsProduct = weight.getKey().equals("product");
+			boolean needsCustomer = !needsProduct && !weight.getKey().equals("products") && !weight.getKey().equals("search");
+			if ((needsProduct && products.isEmpty()) || (needsCustomer && customers.isEmpty())) {
+				continue;
+			}
+			for (int i = 0; i < weight.getValue(); i++) {
+				types.add(weight.getKey());
+			}
+		}
+		if (types.isEmpty()) {
+			types.add("products");
+		}
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		List<HttpRequest> requests = new ArrayList<HttpRequest>(roundRequests);
+		for (int i = 0; i < roundRequests; i++) {
+			Product product = products.isEmpty() ? null : products.get(random.nextInt(products.size()));
+			Customer customer = customers.isEmpty() ? null : customers.get(random.nextInt(customers.size()));
+			switch (types.get(i % types.size())) {
+			case "products":
+				requests.add(get(base + "/api/product/"));
+				break;
+			case "product":
+				requests.add(get(base + "/api/product/" + product.getProductId()));
+				break;
+			case "search":
+				String word = product == null ? "docker" : product.getName().split("\\s+")[0];
+				requests.add(get(base + "/api/product/search?q=" + URLEncoder.encode(word, StandardCharsets.UTF_8)));
+				break;
+			case "customer":
+				requests.add(get(base + "/api/customer/" + customer.getCustomerId()));
+				break;
+			case "username":
+				requests.add(get(base + "/api/customer/username=" + URLEncoder.encode(customer.getUsername(), StandardCharsets.UTF_8)));
+				break;
+			default:
+				JSONObject login = new JSONObject();
+				login.put("username", customer.getUsername());
+				login.put("password", token);
+				requests.add(builder(base + "/login/").header("Content-Type", "application/json")
+						.POST(HttpRequest.BodyPublishers.ofString(login.toJSONString())).build());
+				break;
+			}
+		}
+		return requests;
+	}
+
+	private HttpRequest get(String url) {
+		return builder(url).GET().build();
+	}
+
+	private HttpRequest.Builder builder(String url) {
+		return HttpRequest.newBuilder(URI.create(url)).timeout(Duration.ofSeconds(30)).header(TOKEN_HEADER, token)
+				.header("Accept", "application/json");
+	}
+
+	// Each request's latency in microseconds, sorted.
+	private long[] round(HttpClient client, ExecutorService executor, List<HttpRequest> requests) throws Exception {
+		List<Future<Long>> timings = new ArrayList<Future<Long>>(requests.size());
+		for (HttpRequest request : requests) {
+			timings.add(executor.submit(() -> {
+				long start = System.nanoTime();
+				try {
+					HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+					if (response.statusCode() >= 500) {
+						errors.incrementAndGet();
+					}
+				} catch (Exception e) {
+					errors.incrementAndGet();
+				}
+				return (System.nanoTime() - start) / 1000;
+			}));
+		}
+		long[] micros = new long[timings.size()];
+		for (int i = 0; i < micros.length; i++) {
+			micros[i] = timings.get(i).get();
+		}
+		Arrays.sort(micros);
+		return micros;
+	}
+
+	// In milliseconds, from sorted microseconds.
+	private static double percentile(long[] micros, double percentile) {
+		if (micros == null || micros.length == 0) {
+			return 0;
+		}
+		int rank = (int) Math.ceil(micros.length * percentile / 100);
+		return micros[Math.max(rank, 1) - 1] / 1000.0;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static JSONObject latencies(long[] micros) {
+		JSONObject latencies = new JSONObject();
+		latencies.put("p50Millis", percentile(micros, 50));
+		latencies.put("p90Millis", percentile(micros, 90));
+		latencies.put("p99Millis", percentile(micros, 99));
+		latencies.put("maxMillis", percentile(micros, 100));
+		return latencies;
+	}
+}
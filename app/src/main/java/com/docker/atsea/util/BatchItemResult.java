@@ -0,0 +1,57 @@
+package com.docker.atsea.util;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * Outcome of one item in a batch request: the id it was created under, or the
+ * status and message it would have been rejected with on its own.
+ */
+@JsonInclude(Include.NON_NULL)
+public class BatchItemResult {
+
+	private final int index;
+
+	private final int status;
+
+	private final Long id;
+
+	private final String errorMessage;
+
+	private BatchItemResult(int index, int status, Long id, String errorMessage) {
+		this.index = index;
+		this.status = status;
+		this.id = id;
+		this.errorMessage = errorMessage;
+	}
+
+	public static BatchItemResult created(int index, Long id) {
+		return new BatchItemResult(index, 201, id, null);
+	}
+
+	public static BatchItemResult failed(int index, int status, String errorMessage) {
+		return new BatchItemResult(index, status, null, errorMessage);
+	}
+
+	public int getIndex() {
+		return index;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public Long getId() {
+		return id;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	@JsonIgnore
+	public boolean isCreated() {
+		return status == 201;
+	}
+}
@@ -0,0 +1,61 @@
+package com.docker.atsea.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * Answer to a batch request: one result per item read, in request order, and
+ * an error message if the body could not be read to the end.
+ */
+@JsonInclude(Include.NON_NULL)
+public class BatchResponse {
+
+	private final List<BatchItemResult> results = new ArrayList<BatchItemResult>();
+
+	private int created;
+
+	private int failed;
+
+	private int status = 200;
+
+	private String errorMessage;
+
+	public void add(BatchItemResult result) {
+		results.add(result);
+		if (result.isCreated()) {
+			created++;
+		} else {
+			failed++;
+		}
+	}
+
+	public void stop(int status, String errorMessage) {
+		this.status = status;
+		this.errorMessage = errorMessage;
+	}
+
+	public int getCreated() {
+		return created;
+	}
+
+	public int getFailed() {
+		return failed;
+	}
+
+	public String getErrorMessage() {
+		return errorMessage;
+	}
+
+	public List<BatchItemResult> getResults() {
+		return results;
+	}
+
+	@JsonIgnore
+	public int getStatus() {
+		return status;
+	}
+}
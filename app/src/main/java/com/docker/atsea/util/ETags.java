@@ -0,0 +1,61 @@
+package com.docker.atsea.util;
+
+import org.springframework.http.HttpHeaders;
+
+/*
+ * Entity tags built from an entity's version column. The version alone
+ * identifies the representation, so a conditional request can be answered
+ * without loading or serializing the entity.
+ */
+public class ETags {
+
+	private ETags() {
+	}
+
+	public static String of(Long version) {
+		return "\"" + version + "\"";
+	}
+
+	public static HttpHeaders headers(Long version) {
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag(of(version));
+		return headers;
+	}
+
+	/*
+	 * True if an If-Match header names this version: "*", or one of a comma
+	 * separated list of tags. If-Match compares strongly (RFC 9110 13.1.1), so
+	 * a weak tag never matches.
+	 */
+	public static boolean matches(String header, Long version) {
+		return matches(header, version, false);
+	}
+
+	/*
+	 * True if an If-None-Match header names this version, comparing weakly
+	 * (RFC 9110 13.1.2): W/"3" names version 3 as well as "3" does.
+	 */
+	public static boolean matchesWeakly(String header, Long version) {
+		return matches(header, version, true);
+	}
+
+	private static boolean matches(String header, Long version, boolean weak) {
+		if (header == null || version == null) {
+			return false;
+		}
+		String tag = of(version);
+		for (String candidate : header.split(",")) {
+			candidate = candidate.trim();
+			if (candidate.startsWith("W/")) {
+				if (!weak) {
+					continue;
+				}
+				candidate = candidate.substring(2);
+			}
+			if (candidate.equals("*") || candidate.equals(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
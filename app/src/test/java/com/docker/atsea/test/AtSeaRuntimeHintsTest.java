@@ -0,0 +1,38 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.aot.hint.MemberCategory;
+import org.springframework.aot.hint.RuntimeHints;
+import org.springframework.aot.hint.TypeReference;
+import org.springframework.aot.hint.predicate.RuntimeHintsPredicates;
+
+import com.docker.atsea.configuration.AtSeaRuntimeHints;
+import com.docker.atsea.model.Customer;
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.Product;
+import com.docker.atsea.util.CustomErrorType;
+
+public class AtSeaRuntimeHintsTest {
+
+	@Test
+	public void entitiesResponsesAndProxiesAreRegistered() {
+		RuntimeHints hints = new RuntimeHints();
+		new AtSeaRuntimeHints().registerHints(hints, getClass().getClassLoader());
+		for (Class<?> entity : new Class<?>[] { Customer.class, Order.class, Product.class }) {
+			assertTrue(RuntimeHintsPredicates.reflection().onType(entity)
+					.withMemberCategories(MemberCategory.DECLARED_FIELDS, MemberCategory.INVOKE_DECLARED_CONSTRUCTORS)
+					.test(hints), entity.getName());
+		}
+		assertTrue(RuntimeHintsPredicates.reflection().onMethod(CustomErrorType.class, "getErrorMessage").test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection().onType(JSONObject.class).test(hints));
+		assertTrue(RuntimeHintsPredicates.reflection().onType(TypeReference.of("io.jsonwebtoken.impl.DefaultClaims")).test(hints));
+		assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(Connection.class).test(hints));
+		assertTrue(RuntimeHintsPredicates.proxies().forInterfaces(ResultSet.class).test(hints));
+	}
+}
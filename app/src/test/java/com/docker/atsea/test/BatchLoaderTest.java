@@ -0,0 +1,73 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+import com.docker.atsea.service.BatchLoader;
+import com.docker.atsea.util.BatchItemResult;
+import com.docker.atsea.util.BatchResponse;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class BatchLoaderTest {
+
+	private final List<Integer> chunkSizes = new ArrayList<Integer>();
+
+	// Creates each number as its own id; a chunk holding a negative number fails as a whole.
+	private List<BatchItemResult> write(List<Integer> items, int firstIndex) {
+		chunkSizes.add(items.size());
+		List<BatchItemResult> results = new ArrayList<BatchItemResult>();
+		for (int i = 0; i < items.size(); i++) {
+			if (items.get(i) < 0) {
+				throw new DataIntegrityViolationException("negative " + items.get(i));
+			}
+			results.add(BatchItemResult.created(firstIndex + i, (long) items.get(i)));
+		}
+		return results;
+	}
+
+	private BatchResponse load(int chunkSize, int maxItems, String body) throws Exception {
+		BatchLoader loader = new BatchLoader(new ObjectMapper(), chunkSize, maxItems);
+		return loader.load(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), Integer.class, this::write);
+	}
+
+	@Test
+	public void arrayIsWrittenInChunks() throws Exception {
+		BatchResponse response = load(2, 100, "[1, 2, 3, 4, 5]");
+		assertEquals(5, response.getCreated());
+		assertEquals(List.of(2, 2, 1), chunkSizes);
+		assertEquals(5L, response.getResults().get(4).getId());
+		assertNull(response.getErrorMessage());
+	}
+
+	@Test
+	public void failedChunkIsRetriedItemByItem() throws Exception {
+		BatchResponse response = load(3, 100, "1\n-2\n3\n\"x\"\n4\n");
+		assertEquals(List.of(3, 1, 1, 1, 1), chunkSizes);
+		assertEquals(3, response.getCreated());
+		assertEquals(2, response.getFailed());
+		assertEquals(409, response.getResults().get(1).getStatus());
+		assertEquals(400, response.getResults().get(3).getStatus());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(i, response.getResults().get(i).getIndex());
+		}
+	}
+
+	@Test
+	public void readingStopsAtMalformedInputOrTheItemLimit() throws Exception {
+		BatchResponse response = load(10, 100, "[1, 2, {");
+		assertEquals(2, response.getCreated());
+		assertEquals(400, response.getStatus());
+
+		response = load(10, 3, "[1, 2, 3, 4, 5]");
+		assertEquals(3, response.getCreated());
+		assertEquals(413, response.getStatus());
+	}
+}
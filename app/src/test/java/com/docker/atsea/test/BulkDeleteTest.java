@@ -0,0 +1,82 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docker.atsea.service.BulkDelete;
+
+public class BulkDeleteTest {
+
+	private SingleConnectionDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private BulkDelete bulkDelete;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new SingleConnectionDataSource("jdbc:h2:mem:bulk-delete", "SA", "", true);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE parent (id BIGINT PRIMARY KEY, old BOOLEAN NOT NULL)");
+		jdbcTemplate.execute("CREATE TABLE child (id BIGINT NOT NULL REFERENCES parent (id), line INT NOT NULL)");
+		// Ids 1..20 with a gap, every third one old; each parent has two children.
+		for (long id = 1; id <= 20; id++) {
+			if (id >= 8 && id <= 12) {
+				continue;
+			}
+			jdbcTemplate.update("INSERT INTO parent (id, old) VALUES (?, ?)", id, id % 3 == 0);
+			jdbcTemplate.update("INSERT INTO child (id, line) VALUES (?, 1), (?, 2)", id, id);
+		}
+		bulkDelete = new BulkDelete(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+				"org.hibernate.dialect.H2Dialect", 4);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		jdbcTemplate.execute("DROP TABLE child");
+		jdbcTemplate.execute("DROP TABLE parent");
+		dataSource.destroy();
+	}
+
+	@Test
+	public void deletesMatchingRowsAndTheirChildrenOneRangeAtATime() {
+		List<String> chunks = new ArrayList<String>();
+		long deleted = bulkDelete.deleteInChunks("parent", "id", "old = ?", new Object[] { true }, (where, args) -> {
+			assertTrue(TransactionSynchronizationManager.isActualTransactionActive());
+			chunks.add(args[0] + "-" + args[1] + ":" + jdbcTemplate.queryForObject("SELECT COUNT(*) FROM parent WHERE " + where,
+					Integer.class, args));
+		}, "child");
+
+		// Old ids 3, 6, 15 and 18, found in ranges of four ids starting from the lowest.
+		assertEquals(4, deleted);
+		assertEquals(Arrays.asList("3-7:2", "7-11:0", "11-15:0", "15-19:2"), chunks);
+		assertEquals(11, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM parent", Integer.class));
+		assertEquals(22, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM child", Integer.class));
+		assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM parent WHERE old", Integer.class));
+	}
+
+	@Test
+	public void deletesEverythingWithoutACondition() {
+		assertEquals(15, bulkDelete.deleteInChunks("parent", "id", null, null, "child"));
+		assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM child", Integer.class));
+		assertEquals(0, bulkDelete.deleteInChunks("parent", "id", null, null, "child"));
+	}
+
+	@Test
+	public void truncatesChildrenFirst() {
+		bulkDelete.truncate("child", "parent");
+		assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM parent", Integer.class));
+	}
+}
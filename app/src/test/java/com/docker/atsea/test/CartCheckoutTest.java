@@ -0,0 +1,122 @@
+package com.docker.atsea.test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.AopTestUtils;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.service.CartService;
+import com.docker.atsea.service.ProductCache;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class CartCheckoutTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	CartService cartService;
+
+	@Test
+	public void onlyAnExistingCustomerGetsACart() throws Exception {
+		long unknown = -System.nanoTime();
+		mvc.perform(get("/api/cart/" + unknown)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.productsOrdered").isEmpty());
+		mvc.perform(delete("/api/cart/" + unknown + "/item/1")).andExpect(status().isOk());
+		int productId = TestData.product(jdbcTemplate, productCache, 3);
+		mvc.perform(post("/api/cart/" + unknown + "/item/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productId\":" + productId + ",\"quantity\":1}")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.errorMessage", containsString("Customer with id " + unknown + " not found.")));
+
+		Map<?, ?> carts = (Map<?, ?>) ReflectionTestUtils.getField((Object) AopTestUtils.getTargetObject(cartService), "carts");
+		assertFalse(carts.containsKey(unknown));
+	}
+
+	@Test
+	public void pricesLinesAtCatalogPrices() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 12.5);
+		int otherId = TestData.product(jdbcTemplate, productCache, 4);
+		add(customerId, productId, 2);
+		add(customerId, otherId, 3);
+
+		mvc.perform(get("/api/cart/" + customerId)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(37.0))
+				.andExpect(jsonPath("$.linePrices['" + productId + "']").value(12.5))
+				.andExpect(jsonPath("$.unavailable", empty()));
+	}
+
+	@Test
+	public void flagsProductsThatLeftTheCatalog() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 10);
+		int goneId = TestData.product(jdbcTemplate, productCache, 99);
+		add(customerId, productId, 1);
+		add(customerId, goneId, 1);
+		jdbcTemplate.update("DELETE FROM product WHERE productid = ?", goneId);
+		productCache.refresh();
+
+		mvc.perform(get("/api/cart/" + customerId)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.unavailable", contains(goneId)))
+				.andExpect(jsonPath("$.total").value(10.0));
+		mvc.perform(post("/api/cart/" + customerId + "/checkout/")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.errorMessage", containsString("no longer available")));
+
+		mvc.perform(delete("/api/cart/" + customerId + "/item/" + goneId)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.unavailable", empty()));
+		mvc.perform(post("/api/cart/" + customerId + "/checkout/")).andExpect(status().isCreated());
+	}
+
+	@Test
+	public void checkoutKeepsThePricesTheCartShowed() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 20);
+		add(customerId, productId, 3);
+
+		String checkout = mvc.perform(post("/api/cart/" + customerId + "/checkout/")).andExpect(status().isCreated())
+				.andExpect(jsonPath("$.total").value(60.0)).andReturn().getResponse().getContentAsString();
+		long orderId = ((Number) JsonPath.read(checkout, "$.orderId")).longValue();
+		mvc.perform(get("/api/cart/" + customerId)).andExpect(jsonPath("$.productsOrdered").isEmpty());
+
+		jdbcTemplate.update("UPDATE product SET price = 35 WHERE productid = ?", productId);
+		productCache.refresh();
+		mvc.perform(get("/api/order/" + orderId)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.total").value(60.0))
+				.andExpect(jsonPath("$.linePrices['" + productId + "']").value(20.0));
+		assertEquals(20.0, jdbcTemplate.queryForObject("SELECT unitprice FROM orderprices WHERE orderid = ? AND productid = ?",
+				Double.class, orderId, productId));
+	}
+
+	private void add(long customerId, int productId, int quantity) throws Exception {
+		mvc.perform(post("/api/cart/" + customerId + "/item/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productId\":" + productId + ",\"quantity\":" + quantity + "}")).andExpect(status().isOk());
+	}
+}
@@ -0,0 +1,141 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.payment.CircuitBreaker;
+import com.docker.atsea.payment.CircuitBreaker.State;
+import com.docker.atsea.payment.PaymentClient;
+import com.docker.atsea.payment.PaymentException;
+import com.docker.atsea.payment.PaymentGateway;
+import com.docker.atsea.payment.PaymentRequest;
+import com.docker.atsea.payment.PaymentResult;
+
+public class CircuitBreakerTest {
+
+	@Test
+	public void opensAfterConsecutiveFailuresAndLetsOneTrialThrough() throws Exception {
+		CircuitBreaker breaker = new CircuitBreaker(3, 50);
+		breaker.onFailure();
+		breaker.onFailure();
+		breaker.onSuccess();
+		breaker.onFailure();
+		breaker.onFailure();
+		assertEquals(State.CLOSED, breaker.getState());
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+
+		// A failed trial opens the circuit again straight away, a successful one closes it.
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+		assertFalse(breaker.allowRequest());
+		Thread.sleep(60);
+		assertTrue(breaker.allowRequest());
+		breaker.onSuccess();
+		assertEquals(State.CLOSED, breaker.getState());
+		assertTrue(breaker.allowRequest());
+	}
+
+	@Test
+	public void aFullBulkheadLeavesTheBreakerAsItWas() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 0);
+		StubGateway gateway = new StubGateway();
+		PaymentClient client = new PaymentClient(gateway, breaker, 1, 10000);
+
+		CompletableFuture<PaymentResult> inFlight = client.charge(new PaymentRequest(1L, 1L, 10));
+		breaker.onFailure();
+		assertEquals(State.OPEN, breaker.getState());
+
+		// Rejected for want of a permit, without taking the breaker's one trial call.
+		assertRejected(client.charge(new PaymentRequest(2L, 1L, 10)), "Too many payments in flight.");
+		assertEquals(State.OPEN, breaker.getState());
+		assertEquals(1, gateway.calls.size());
+
+		gateway.calls.get(0).complete(new PaymentResult("t1", "APPROVED"));
+		assertEquals("t1", inFlight.join().getTransactionId());
+		assertEquals(0, client.getInFlight());
+
+		// The next charge is the trial, and its success closes the circuit.
+		breaker.onFailure();
+		CompletableFuture<PaymentResult> trial = client.charge(new PaymentRequest(3L, 1L, 10));
+		assertEquals(State.HALF_OPEN, breaker.getState());
+		gateway.calls.get(1).complete(new PaymentResult("t3", "APPROVED"));
+		assertEquals("t3", trial.join().getTransactionId());
+		assertEquals(State.CLOSED, breaker.getState());
+		assertEquals(1, client.getRejected());
+		assertEquals(2, client.getApproved());
+	}
+
+	@Test
+	public void anOpenCircuitGivesItsPermitBack() {
+		CircuitBreaker breaker = new CircuitBreaker(1, 60000);
+		PaymentClient client = new PaymentClient(new StubGateway(), breaker, 1, 10000);
+		breaker.onFailure();
+		for (int i = 0; i < 3; i++) {
+			assertRejected(client.charge(new PaymentRequest(1L, 1L, 10)), "Payment gateway circuit is open.");
+		}
+		assertEquals(0, client.getInFlight());
+		assertEquals(3, client.getRejected());
+	}
+
+	@Test
+	public void aTimedOutChargeKeepsItsPermitUntilTheGatewayAnswers() {
+		StubGateway gateway = new StubGateway();
+		PaymentClient client = new PaymentClient(gateway, new CircuitBreaker(5, 0), 1, 20);
+		List<PaymentResult> settled = new ArrayList<PaymentResult>();
+
+		CompletableFuture<PaymentResult> charge = client.charge(new PaymentRequest(1L, 1L, 10), (result, error) -> settled.add(result));
+		CompletionException timedOut = assertThrows(CompletionException.class, charge::join);
+		assertEquals("Payment gateway timed out.", timedOut.getCause().getMessage());
+		assertEquals(1, client.getTimedOut());
+
+		// The gateway is still working on it, so the permit is still taken.
+		assertEquals(1, client.getInFlight());
+		assertRejected(client.charge(new PaymentRequest(2L, 1L, 10)), "Too many payments in flight.");
+		assertTrue(settled.isEmpty());
+
+		gateway.calls.get(0).complete(new PaymentResult("t1", "APPROVED"));
+		assertEquals(0, client.getInFlight());
+		assertEquals("t1", settled.get(0).getTransactionId());
+	}
+
+	private static void assertRejected(CompletableFuture<PaymentResult> charge, String message) {
+		try {
+			charge.join();
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof PaymentException);
+			assertTrue(((PaymentException) e.getCause()).isRejected());
+			assertEquals(message, e.getCause().getMessage());
+			return;
+		}
+		throw new AssertionError("Charge was not rejected");
+	}
+
+	// Charges stay in flight until the test completes them.
+	private static class StubGateway implements PaymentGateway {
+
+		final List<CompletableFuture<PaymentResult>> calls = new ArrayList<CompletableFuture<PaymentResult>>();
+
+		@Override
+		public CompletableFuture<PaymentResult> charge(PaymentRequest request) {
+			CompletableFuture<PaymentResult> call = new CompletableFuture<PaymentResult>();
+			calls.add(call);
+			return call;
+		}
+	}
+}
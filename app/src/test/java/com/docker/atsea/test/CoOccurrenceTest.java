@@ -0,0 +1,94 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.service.CoOccurrence;
+
+public class CoOccurrenceTest {
+
+	@Test
+	public void ranksByCountThenProductId() {
+		CoOccurrence matrix = new CoOccurrence(3);
+		matrix.add(new int[] { 1, 2, 3 }, 1);
+		matrix.add(new int[] { 1, 3 }, 1);
+		matrix.add(new int[] { 1, 4 }, 1);
+		matrix.add(new int[] { 1, 5 }, 1);
+		assertArrayEquals(new int[] { 3, 2, 4 }, matrix.related(1));
+		assertArrayEquals(new int[] { 1, 3 }, matrix.related(2));
+		assertArrayEquals(new int[0], matrix.related(6));
+		assertEquals(4, matrix.orders(1));
+		assertEquals(2, matrix.count(3, 1));
+
+		// Taking an order back out drops pairs whose count reaches nothing, and the cached ranking.
+		matrix.add(new int[] { 1, 3 }, -1);
+		matrix.add(new int[] { 1, 2, 3 }, -1);
+		assertArrayEquals(new int[] { 4, 5 }, matrix.related(1));
+		assertEquals(0, matrix.orders(2));
+		assertEquals(3, matrix.getProducts());
+		assertEquals(4, matrix.getPairs());
+	}
+
+	@Test
+	public void matchesPairCountsAcrossMergesAndSnapshots() throws Exception {
+		Random random = new Random(11);
+		CoOccurrence[] parts = { new CoOccurrence(10), new CoOccurrence(10) };
+		Map<Long, Integer> expected = new HashMap<Long, Integer>();
+		List<int[]> orders = new ArrayList<int[]>();
+		for (int i = 0; i < 3000; i++) {
+			int[] products = random.ints(1, 200).distinct().limit(1 + random.nextInt(6)).toArray();
+			orders.add(products);
+			parts[i % 2].add(products, 1);
+			count(expected, products, 1);
+		}
+		// Enough take-outs that removals hit probe chains.
+		for (int i = 0; i < 1000; i++) {
+			int[] products = orders.get(2 * i);
+			parts[0].add(products, -1);
+			count(expected, products, -1);
+		}
+		CoOccurrence matrix = new CoOccurrence(10);
+		matrix.merge(parts[0]);
+		matrix.merge(parts[1]);
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			matrix.write(out);
+		}
+		CoOccurrence read = CoOccurrence.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())), 10);
+
+		expected.values().removeIf(count -> count == 0);
+		assertEquals(expected.size(), matrix.getPairs());
+		assertEquals(expected.size(), read.getPairs());
+		for (int a = 1; a < 200; a++) {
+			for (int b = 1; b < 200; b++) {
+				int count = a == b ? 0 : expected.getOrDefault(((long) a << 32) | b, 0);
+				assertEquals(count, matrix.count(a, b));
+				assertEquals(count, read.count(a, b));
+			}
+			assertArrayEquals(matrix.related(a), read.related(a));
+		}
+	}
+
+	private static void count(Map<Long, Integer> expected, int[] products, int sign) {
+		for (int a : products) {
+			for (int b : products) {
+				if (a != b) {
+					expected.merge(((long) a << 32) | b, sign, Integer::sum);
+				}
+			}
+		}
+	}
+}
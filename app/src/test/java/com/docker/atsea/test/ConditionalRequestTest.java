@@ -0,0 +1,142 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.sql.DataSource;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+
+import com.docker.atsea.service.ProductCache;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class ConditionalRequestTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	DataSource dataSource;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Test
+	public void aCurrentTagGetsNotModifiedWeakOrStrong() throws Exception {
+		long orderId = create();
+
+		mvc.perform(get("/api/order/" + orderId).header("If-None-Match", "\"0\"")).andExpect(status().isNotModified())
+				.andExpect(header().string("ETag", "\"0\"")).andExpect(content().string(""));
+		mvc.perform(get("/api/order/" + orderId).header("If-None-Match", "\"7\", W/\"0\"")).andExpect(status().isNotModified());
+		mvc.perform(get("/api/order/" + orderId).header("If-None-Match", "\"7\"")).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"0\""));
+	}
+
+	@Test
+	public void aStaleOrWeakIfMatchIsAPreconditionFailure() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		long orderId = create(customerId, productId);
+		String body = "{\"customerId\":" + customerId + ",\"productsOrdered\":{\"" + productId + "\":3}}";
+
+		mvc.perform(put("/api/order/" + orderId).header("If-Match", "\"5\"").contentType(MediaType.APPLICATION_JSON)
+				.content(body)).andExpect(status().isPreconditionFailed());
+		mvc.perform(put("/api/order/" + orderId).header("If-Match", "W/\"0\"").contentType(MediaType.APPLICATION_JSON)
+				.content(body)).andExpect(status().isPreconditionFailed());
+		mvc.perform(patch("/api/order/" + orderId).header("If-Match", "W/\"0\"").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"" + productId + "\":3}}")).andExpect(status().isPreconditionFailed());
+		assertEquals(0, version(orderId));
+
+		mvc.perform(patch("/api/order/" + orderId).header("If-Match", "\"0\"").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"" + productId + "\":3}}")).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"1\""));
+		mvc.perform(patch("/api/order/" + orderId).header("If-Match", "\"0\", \"1\"").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"" + productId + "\":2}}")).andExpect(status().isOk())
+				.andExpect(header().string("ETag", "\"2\""));
+		mvc.perform(put("/api/order/" + orderId).header("If-Match", "\"0\"").contentType(MediaType.APPLICATION_JSON)
+				.content(body)).andExpect(status().isPreconditionFailed());
+	}
+
+	@Test
+	public void anUpdateThatRacesAnotherWithoutIfMatchIsAConflict() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		long orderId = create(customerId, productId);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try (Connection other = dataSource.getConnection()) {
+			// Another writer moves the order on and holds its row until the update has read the old version.
+			other.setAutoCommit(false);
+			try (PreparedStatement bump = other.prepareStatement("UPDATE orders SET version = version + 1 WHERE orderid = ?")) {
+				bump.setLong(1, orderId);
+				bump.executeUpdate();
+			}
+			Future<MvcResult> update = executor.submit(() -> mvc.perform(put("/api/order/" + orderId)
+					.contentType(MediaType.APPLICATION_JSON).content("{\"customerId\":" + customerId
+							+ ",\"productsOrdered\":{\"" + productId + "\":3}}")).andReturn());
+			awaitBlockedUpdate(other);
+			other.commit();
+			other.setAutoCommit(true);
+			assertEquals(409, update.get(10, TimeUnit.SECONDS).getResponse().getStatus());
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(1, version(orderId));
+		assertEquals(2, (int) jdbcTemplate.queryForObject("SELECT productsordered FROM orderquantities WHERE orderid = ?",
+				Integer.class, orderId));
+	}
+
+	// Waits until another session is stuck writing the orders row this connection holds.
+	private void awaitBlockedUpdate(Connection holder) throws InterruptedException {
+		for (int i = 0; i < 100; i++) {
+			Integer blocked = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM information_schema.sessions"
+					+ " WHERE LOWER(statement) LIKE 'update orders %' AND id <> SESSION_ID()", Integer.class);
+			if (blocked > 0) {
+				return;
+			}
+			Thread.sleep(10);
+		}
+		throw new AssertionError("The update never reached the orders row.");
+	}
+
+	private long create() throws Exception {
+		return create(TestData.customer(jdbcTemplate), TestData.product(jdbcTemplate, productCache, 5));
+	}
+
+	private long create(long customerId, int productId) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"productsOrdered\":{\"" + productId + "\":2}}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+
+	private long version(long orderId) {
+		return jdbcTemplate.queryForObject("SELECT version FROM orders WHERE orderid = ?", Long.class, orderId);
+	}
+}
@@ -0,0 +1,31 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.util.ETags;
+
+public class ETagsTest {
+
+	@Test
+	public void headerMatchesAnyListedVersion() {
+		assertEquals("\"3\"", ETags.of(3L));
+		assertTrue(ETags.matches("\"3\"", 3L));
+		assertTrue(ETags.matches("\"1\", \"3\"", 3L));
+		assertTrue(ETags.matches("*", 3L));
+		assertFalse(ETags.matches("\"2\"", 3L));
+		assertFalse(ETags.matches("*", null));
+	}
+
+	@Test
+	public void onlyIfNoneMatchAcceptsWeakTags() {
+		assertFalse(ETags.matches("W/\"3\"", 3L));
+		assertFalse(ETags.matches("\"1\", W/\"3\"", 3L));
+		assertTrue(ETags.matchesWeakly("\"1\", W/\"3\"", 3L));
+		assertTrue(ETags.matchesWeakly("\"3\"", 3L));
+		assertFalse(ETags.matchesWeakly("W/\"2\"", 3L));
+	}
+}
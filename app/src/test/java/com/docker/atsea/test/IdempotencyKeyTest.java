@@ -0,0 +1,96 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.sql.Timestamp;
+import java.util.UUID;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.docker.atsea.service.ProductCache;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class IdempotencyKeyTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Test
+	public void aRetryIsAnsweredWithTheFirstResponse() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		String key = UUID.randomUUID().toString();
+
+		String first = create(key, customerId, productId, 2).andExpect(status().isCreated())
+				.andExpect(header().doesNotExist("Idempotent-Replayed"))
+				.andReturn().getResponse().getContentAsString();
+		long orderId = ((Number) JsonPath.read(first, "$.orderId")).longValue();
+
+		create(key, customerId, productId, 2).andExpect(status().isCreated())
+				.andExpect(header().string("Idempotent-Replayed", "true"))
+				.andExpect(jsonPath("$.orderId").value(orderId));
+		assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders WHERE customerid = ?",
+				Integer.class, customerId));
+	}
+
+	@Test
+	public void aKeyCannotBeReusedForADifferentOrder() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		String key = UUID.randomUUID().toString();
+
+		create(key, customerId, productId, 2).andExpect(status().isCreated());
+		create(key, customerId, productId, 3).andExpect(status().isUnprocessableEntity());
+		create("", customerId, productId, 3).andExpect(status().isBadRequest());
+		assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM orders WHERE customerid = ?",
+				Integer.class, customerId));
+	}
+
+	@Test
+	public void anExpiredKeyIsReusedForANewOrder() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		String key = UUID.randomUUID().toString();
+		jdbcTemplate.update("INSERT INTO idempotency_key (idempotencykey, requesthash, statuscode, responsebody, createdat)"
+				+ " VALUES (?, 'stale', 201, '{}', ?)", key,
+				new Timestamp(System.currentTimeMillis() - 48 * 3600000L));
+
+		String first = create(key, customerId, productId, 2).andExpect(status().isCreated())
+				.andExpect(header().doesNotExist("Idempotent-Replayed"))
+				.andReturn().getResponse().getContentAsString();
+		long orderId = ((Number) JsonPath.read(first, "$.orderId")).longValue();
+
+		create(key, customerId, productId, 2).andExpect(status().isCreated())
+				.andExpect(header().string("Idempotent-Replayed", "true"))
+				.andExpect(jsonPath("$.orderId").value(orderId));
+		assertEquals(1, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM idempotency_key WHERE idempotencykey = ?",
+				Integer.class, key));
+	}
+
+	private ResultActions create(String key, long customerId, int productId, int quantity) throws Exception {
+		return mvc.perform(post("/api/order/").header("Idempotency-Key", key).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"orderDate\":\"2026-10-01T10:00:00.000+0000\","
+						+ "\"productsOrdered\":{\"" + productId + "\":" + quantity + "}}"));
+	}
+}
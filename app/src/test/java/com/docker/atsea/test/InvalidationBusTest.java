@@ -0,0 +1,58 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.invalidation.LoopbackInvalidationBus;
+
+public class InvalidationBusTest {
+
+	@Test
+	public void deliveredOnlyOnceCommitted() {
+		LoopbackInvalidationBus bus = new LoopbackInvalidationBus();
+		List<String> evicted = new ArrayList<String>();
+		bus.subscribe(InvalidationBus.CUSTOMER, evicted::add);
+		bus.subscribe(InvalidationBus.PRODUCT, key -> {
+			throw new IllegalStateException("catalog unavailable");
+		});
+
+		bus.publish(InvalidationBus.CUSTOMER, "7");
+		bus.publish(InvalidationBus.PRODUCT, null);
+		assertEquals(Arrays.asList("7"), evicted);
+
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			bus.publish(InvalidationBus.CUSTOMER, "8");
+			bus.publish(InvalidationBus.CUSTOMER, null);
+			assertEquals(Arrays.asList("7"), evicted);
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCommit();
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(Arrays.asList("7", "8", null), evicted);
+
+		// A rolled back transaction sends nothing.
+		TransactionSynchronizationManager.initSynchronization();
+		try {
+			bus.publish(InvalidationBus.CUSTOMER, "9");
+			for (TransactionSynchronization synchronization : TransactionSynchronizationManager.getSynchronizations()) {
+				synchronization.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+			}
+		} finally {
+			TransactionSynchronizationManager.clearSynchronization();
+		}
+		assertEquals(3, evicted.size());
+		assertEquals(5, bus.getPublished());
+		assertEquals(3, bus.getDelivered());
+	}
+}
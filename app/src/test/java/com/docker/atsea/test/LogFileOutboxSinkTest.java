@@ -0,0 +1,39 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import com.docker.atsea.model.OutboxEvent;
+import com.docker.atsea.outbox.LogFileOutboxSink;
+
+public class LogFileOutboxSinkTest {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	public void rollsTheFileOverAndKeepsTheNewestOldFiles() throws Exception {
+		Path file = dir.resolve("events.log");
+		LogFileOutboxSink sink = new LogFileOutboxSink(file.toString(), 10, 2);
+		for (long i = 1; i <= 4; i++) {
+			OutboxEvent event = new OutboxEvent("ORDER_CREATED", i, "{\"orderId\":" + i + "}");
+			event.setEventId(i);
+			sink.publish(Arrays.asList(event));
+		}
+
+		// Every event outgrows the 10 byte limit, so each one starts a new file and the first falls off the end.
+		assertTrue(Files.readString(file).contains("\"orderId\":4"));
+		assertTrue(Files.readString(dir.resolve("events.log.1")).contains("\"orderId\":3"));
+		assertTrue(Files.readString(dir.resolve("events.log.2")).contains("\"orderId\":2"));
+		assertFalse(Files.exists(dir.resolve("events.log.3")));
+		assertEquals(1, Files.readAllLines(file).size());
+	}
+}
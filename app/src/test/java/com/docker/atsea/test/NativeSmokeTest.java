@@ -0,0 +1,213 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.h2.tools.Server;
+import org.json.simple.JSONObject;
+import org.json.simple.parser.JSONParser;
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.Test;
+
+/*
+ * Starts the built server against an H2 database served from this JVM, calls
+ * every controller and reports the time to the first healthy response and the
+ * resident memory, for the native binary and the jar, whichever were given:
+ *
+ *   mvn -Pnative package       (builds target/atsea and runs this test on both)
+ *   mvn test -Dtest=NativeSmokeTest -Datsea.smoke.jar=target/AtSea-0.0.1-SNAPSHOT.jar
+ *
+ * Skipped unless atsea.smoke.native or atsea.smoke.jar is set.
+ */
+public class NativeSmokeTest {
+
+	private static final Duration STARTUP_TIMEOUT = Duration.ofMinutes(3);
+
+	private final HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+
+	private final JSONParser parser = new JSONParser();
+
+	@Test
+	public void everyControllerAnswersOnEachBuild() throws Exception {
+		Map<String, List<String>> builds = new LinkedHashMap<String, List<String>>();
+		String binary = System.getProperty("atsea.smoke.native");
+		if (binary != null && !binary.isEmpty()) {
+			builds.put("native", List.of(binary));
+		}
+		String jar = System.getProperty("atsea.smoke.jar");
+		if (jar != null && !jar.isEmpty()) {
+			builds.put("jvm", List.of(Paths.get(System.getProperty("java.home"), "bin", "java").toString(), "-jar", jar));
+		}
+		Assumptions.assumeFalse(builds.isEmpty(), "Set atsea.smoke.native or atsea.smoke.jar to run the smoke test");
+
+		List<String> report = new ArrayList<String>();
+		report.add(String.format("%-8s %12s %14s %14s", "build", "ready (ms)", "RSS ready (MB)", "RSS after (MB)"));
+		for (Map.Entry<String, List<String>> build : builds.entrySet()) {
+			report.add(run(build.getKey(), build.getValue()));
+		}
+		System.out.println(String.join(System.lineSeparator(), report));
+	}
+
+	private String run(String name, List<String> launch) throws Exception {
+		int databasePort = freePort();
+		int port = freePort();
+		Server database = Server.createTcpServer("-tcpPort", String.valueOf(databasePort)).start();
+		List<String> command = new ArrayList<String>(launch);
+		command.add("--server.port=" + port);
+		command.add("--spring.profiles.active=local");
+		command.add("--datasource.atsea.url=jdbc:h2:tcp://localhost:" + databasePort + "/mem:smoke;DB_CLOSE_DELAY=-1");
+		File log = new File(System.getProperty("java.io.tmpdir"), "atsea-smoke-" + name + ".log");
+		long started = System.nanoTime();
+		Process process = new ProcessBuilder(command).redirectErrorStream(true).redirectOutput(log).start();
+		try {
+			String base = "http://localhost:" + port;
+			long readyMillis = awaitHealthy(process, base + "/utility/healthcheck/", started, log);
+			long readyRss = rssMegabytes(process);
+			exercise(base);
+			return String.format("%-8s %12d %14d %14d", name, readyMillis, readyRss, rssMegabytes(process));
+		} finally {
+			process.destroy();
+			process.waitFor();
+			database.stop();
+		}
+	}
+
+	private long awaitHealthy(Process process, String url, long started, File log) throws Exception {
+		long deadline = started + STARTUP_TIMEOUT.toNanos();
+		while (System.nanoTime() < deadline) {
+			if (!process.isAlive()) {
+				fail("Server exited with " + process.exitValue() + " before it was healthy; see " + log);
+			}
+			try {
+				HttpResponse<String> response = client.send(HttpRequest.newBuilder(URI.create(url)).build(),
+						HttpResponse.BodyHandlers.ofString());
+				if (response.statusCode() == 200) {
+					return (System.nanoTime() - started) / 1000000;
+				}
+			} catch (IOException e) {
+				// Not listening yet.
+			}
+			Thread.sleep(20);
+		}
+		fail("Server was not healthy within " + STARTUP_TIMEOUT + "; see " + log);
+		return -1;
+	}
+
+	// -1 where /proc is not available.
+	private static long rssMegabytes(Process process) throws IOException {
+		File status = new File("/proc/" + process.pid() + "/status");
+		if (!status.exists()) {
+			return -1;
+		}
+		for (String line : Files.readAllLines(status.toPath())) {
+			if (line.startsWith("VmRSS:")) {
+				return Long.parseLong(line.replaceAll("[^0-9]", "")) / 1024;
+			}
+		}
+		return -1;
+	}
+
+	/*
+	 * One call to each endpoint that does not destroy data, in an order where
+	 * each finds what it needs: a customer to log in as, products, stock.
+	 */
+	private void exercise(String base) throws Exception {
+		JSONObject customer = json(call(base, "POST", "/api/customer/", null, "application/json",
+				"{\"name\":\"Smoke Tester\",\"address\":\"1 Test Street\",\"email\":\"smoke@example.com\","
+						+ "\"phone\":\"555 0100\",\"username\":\"smoke\",\"password\":\"smokepass\","
+						+ "\"enabled\":\"true\",\"role\":\"USER\"}"));
+		long customerId = (Long) customer.get("customerId");
+		String token = (String) json(call(base, "POST", "/login/", null, "application/json",
+				"{\"username\":\"smoke\",\"password\":\"smokepass\"}")).get("token");
+
+		call(base, "POST", "/api/product/import", token, "text/csv", "productId,name,description,image,price\n"
+				+ "1,Smoke Mug,A mug for smoke tests,/images/1.png,25\n2,Smoke Tee,A shirt for smoke tests,/images/2.png,30\n");
+		call(base, "GET", "/api/product/import", token, null, null);
+		call(base, "GET", "/api/product/", null, null, null);
+		call(base, "GET", "/api/product/1", null, null, null);
+		call(base, "GET", "/api/product/search?q=smoke", null, null, null);
+
+		call(base, "GET", "/api/customer/", null, null, null);
+		call(base, "GET", "/api/customer/" + customerId, null, null, null);
+		call(base, "GET", "/api/customer/username=smoke", null, null, null);
+		call(base, "GET", "/api/customer/name=Smoke%20Tester", null, null, null);
+		call(base, "PATCH", "/api/customer/" + customerId, null, "application/merge-patch+json", "{\"phone\":\"555 0199\"}");
+
+		call(base, "POST", "/api/stock/1", token, "application/json", "{\"quantity\":10}");
+		call(base, "POST", "/api/stock/2", token, "application/json", "{\"quantity\":10}");
+		call(base, "GET", "/api/stock/1", token, null, null);
+		String reservationId = (String) json(call(base, "POST", "/api/stock/reservation/", token, "application/json",
+				"{\"productsOrdered\":{\"1\":1}}")).get("reservationId");
+		call(base, "DELETE", "/api/stock/reservation/" + reservationId, token, null, null);
+
+		String cart = "/api/cart/" + customerId;
+		call(base, "POST", cart + "/item/", null, "application/json", "{\"productId\":1,\"quantity\":2}");
+		call(base, "PUT", cart + "/item/1", null, "application/json", "{\"quantity\":1}");
+		call(base, "POST", cart + "/item/", null, "application/json", "{\"productId\":2,\"quantity\":1}");
+		call(base, "DELETE", cart + "/item/2", null, null, null);
+		call(base, "GET", cart, null, null, null);
+		call(base, "POST", cart + "/checkout/", null, "application/json", null);
+
+		long orderId = (Long) json(call(base, "POST", "/api/order/", null, "application/json",
+				"{\"customerId\":" + customerId + ",\"productsOrdered\":{\"2\":1}}")).get("orderId");
+		call(base, "GET", "/api/order/", null, null, null);
+		call(base, "GET", "/api/order/" + orderId, null, null, null);
+		call(base, "PATCH", "/api/order/" + orderId, null, "application/merge-patch+json", "{\"productsOrdered\":{\"2\":2}}");
+		call(base, "GET", "/purchase/", token, null, null);
+		call(base, "POST", "/purchase/" + orderId, token, null, null);
+
+		String today = LocalDate.now().toString();
+		call(base, "GET", "/api/report/daily?from=" + today + "&to=" + today, null, null, null);
+		call(base, "GET", "/api/report/product/2?from=" + today + "&to=" + today, null, null, null);
+		call(base, "GET", "/api/report/products?from=" + today + "&to=" + today, null, null, null);
+
+		for (String utility : new String[] { "containerid", "payment", "outbox", "ratelimit", "queries", "startup" }) {
+			call(base, "GET", "/utility/" + utility + "/", null, null, null);
+		}
+		call(base, "DELETE", "/api/order/" + orderId, null, null, null);
+	}
+
+	// Fails unless the response is 2xx.
+	private HttpResponse<String> call(String base, String method, String path, String token, String contentType,
+			String body) throws Exception {
+		HttpRequest.Builder request = HttpRequest.newBuilder(URI.create(base + path)).timeout(Duration.ofSeconds(30))
+				.header("Accept", "application/json")
+				.method(method, body == null ? HttpRequest.BodyPublishers.noBody() : HttpRequest.BodyPublishers.ofString(body));
+		if (token != null) {
+			request.header("Authorization", "Bearer " + token);
+		}
+		if (contentType != null) {
+			request.header("Content-Type", contentType);
+		}
+		HttpResponse<String> response = client.send(request.build(), HttpResponse.BodyHandlers.ofString());
+		assertTrue(response.statusCode() / 100 == 2, method + " " + path + " answered " + response.statusCode() + ": "
+				+ response.body());
+		return response;
+	}
+
+	private JSONObject json(HttpResponse<String> response) throws Exception {
+		return (JSONObject) parser.parse(response.body());
+	}
+
+	private static int freePort() throws IOException {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			return socket.getLocalPort();
+		}
+	}
+}
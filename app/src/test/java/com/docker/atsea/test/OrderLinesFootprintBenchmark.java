@@ -0,0 +1,97 @@
+package com.docker.atsea.test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import com.docker.atsea.model.OrderLines;
+
+/*
+ * Heap held by orders of 10,000 lines as the HashMap<Integer, Integer> orders
+ * used to load into, against OrderLines, and the time to walk their lines
+ * the way pricing and the sales rollups do. Not a unit test; run it by hand:
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/classpath.txt) com.docker.atsea.test.OrderLinesFootprintBenchmark
+ */
+public class OrderLinesFootprintBenchmark {
+
+	private static final int LINES = 10000;
+
+	private static final int ORDERS = 200;
+
+	// Product ids drawn from a catalog this large, quantities mostly small.
+	private static final int CATALOG = 1000000;
+
+	public static void main(String[] args) throws Exception {
+		int[][] productIds = new int[ORDERS][];
+		int[][] quantities = new int[ORDERS][];
+		Random random = new Random(7);
+		for (int order = 0; order < ORDERS; order++) {
+			productIds[order] = random.ints(1, CATALOG).distinct().limit(LINES).toArray();
+			quantities[order] = random.ints(LINES, 1, 20).toArray();
+		}
+
+		long before = usedHeap();
+		List<Map<Integer, Integer>> boxed = new ArrayList<Map<Integer, Integer>>(ORDERS);
+		for (int order = 0; order < ORDERS; order++) {
+			Map<Integer, Integer> lines = new HashMap<Integer, Integer>();
+			for (int line = 0; line < LINES; line++) {
+				lines.put(productIds[order][line], quantities[order][line]);
+			}
+			boxed.add(lines);
+		}
+		long boxedBytes = usedHeap() - before;
+
+		before = usedHeap();
+		List<OrderLines> primitive = new ArrayList<OrderLines>(ORDERS);
+		for (int order = 0; order < ORDERS; order++) {
+			OrderLines lines = new OrderLines();
+			for (int line = 0; line < LINES; line++) {
+				lines.set(productIds[order][line], quantities[order][line]);
+			}
+			primitive.add(lines);
+		}
+		long primitiveBytes = usedHeap() - before;
+
+		System.out.printf("%d orders of %d lines%n", ORDERS, LINES);
+		System.out.printf("HashMap<Integer, Integer>: %6.1f bytes/line, %6.2f MB/order%n", (double) boxedBytes / ORDERS / LINES,
+				boxedBytes / (double) ORDERS / (1 << 20));
+		System.out.printf("OrderLines:                %6.1f bytes/line, %6.2f MB/order (%.0f%% less)%n",
+				(double) primitiveBytes / ORDERS / LINES, primitiveBytes / (double) ORDERS / (1 << 20),
+				100.0 * (boxedBytes - primitiveBytes) / boxedBytes);
+
+		for (int round = 0; round < 5; round++) {
+			long sum = 0;
+			long start = System.nanoTime();
+			for (Map<Integer, Integer> lines : boxed) {
+				for (Map.Entry<Integer, Integer> line : lines.entrySet()) {
+					sum += (long) line.getKey() * line.getValue();
+				}
+			}
+			long boxedNanos = System.nanoTime() - start;
+			start = System.nanoTime();
+			for (OrderLines lines : primitive) {
+				for (int i = 0; i < lines.size(); i++) {
+					sum -= (long) lines.productIdAt(i) * lines.quantityAt(i);
+				}
+			}
+			long primitiveNanos = System.nanoTime() - start;
+			System.out.printf("round %d: walking every line, HashMap %5.2f ns/line, OrderLines %5.2f ns/line%s%n", round + 1,
+					(double) boxedNanos / ORDERS / LINES, (double) primitiveNanos / ORDERS / LINES, sum == 0 ? "" : " (mismatch)");
+		}
+		// Keeps the inputs and both sets of orders reachable until everything has been measured.
+		System.out.println(boxed.size() + primitive.size() + productIds.length + quantities.length == 4 * ORDERS ? "" : "?");
+	}
+
+	private static long usedHeap() throws InterruptedException {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 4; i++) {
+			System.gc();
+			Thread.sleep(100);
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
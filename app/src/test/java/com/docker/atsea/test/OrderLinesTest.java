@@ -0,0 +1,76 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.model.Order;
+import com.docker.atsea.model.OrderLines;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+public class OrderLinesTest {
+
+	@Test
+	public void behavesAsAHashMap() {
+		Random random = new Random(42);
+		OrderLines lines = new OrderLines();
+		Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+		for (int i = 0; i < 20000; i++) {
+			// Few enough ids that removals hit probe chains.
+			int productId = random.nextInt(3000) - 500;
+			switch (random.nextInt(4)) {
+			case 0:
+				assertEquals(expected.remove(productId), lines.remove(productId));
+				break;
+			case 1:
+				Integer quantity = random.nextInt(100) + 1;
+				assertEquals(expected.put(productId, quantity), lines.put(productId, quantity));
+				break;
+			default:
+				assertEquals(expected.get(productId), lines.get(productId));
+				assertEquals(expected.getOrDefault(productId, 0).intValue(), lines.quantity(productId));
+			}
+		}
+		assertEquals(expected, lines);
+		assertEquals(expected.hashCode(), lines.hashCode());
+
+		// Removing while iterating visits the line moved into the gap.
+		for (Iterator<Integer> productIds = lines.keySet().iterator(); productIds.hasNext();) {
+			if (productIds.next() % 3 == 0) {
+				productIds.remove();
+			}
+		}
+		expected.keySet().removeIf(productId -> productId % 3 == 0);
+		assertEquals(expected, lines);
+
+		Set<Integer> kept = Set.of(1, 2, 4, 5, 7);
+		lines.keySet().retainAll(kept);
+		expected.keySet().retainAll(kept);
+		assertEquals(expected, lines);
+		for (int i = 0; i < lines.size(); i++) {
+			assertEquals(expected.get(lines.productIdAt(i)).intValue(), lines.quantityAt(i));
+		}
+	}
+
+	@Test
+	public void keepsTheJsonContract() throws Exception {
+		ObjectMapper objectMapper = new ObjectMapper();
+		Order order = objectMapper.readValue("{\"orderId\":9,\"customerId\":3,\"productsOrdered\":{\"7\":2,\"12\":1}}",
+				Order.class);
+		assertTrue(order.getProductsOrdered() instanceof OrderLines);
+		assertEquals(Map.of(7, 2, 12, 1), order.getProductsOrdered());
+		assertTrue(objectMapper.writeValueAsString(order).contains("\"productsOrdered\":{\"7\":2,\"12\":1}"));
+
+		assertThrows(JsonMappingException.class,
+				() -> objectMapper.readValue("{\"productsOrdered\":{\"7\":null}}", Order.class));
+	}
+}
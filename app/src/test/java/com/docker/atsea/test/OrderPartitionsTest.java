@@ -0,0 +1,41 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.service.OrderPartitions;
+import com.docker.atsea.service.OrderPartitions.Plan;
+
+public class OrderPartitionsTest {
+
+	private static final LocalDate TODAY = LocalDate.of(2026, 10, 19);
+
+	@Test
+	public void missingMonthsAreCreatedAhead() {
+		Plan plan = OrderPartitions.plan(TODAY, 3, 12, List.of("orders_default", "orders_y2026m10", "orders_y2026m12"),
+				Collections.<String>emptyList());
+		assertEquals(List.of(YearMonth.of(2026, 11), YearMonth.of(2027, 1)), plan.getCreate());
+		assertTrue(plan.getArchive().isEmpty());
+		assertEquals("orders_y2027m01", OrderPartitions.name(YearMonth.of(2027, 1)));
+	}
+
+	@Test
+	public void partitionsPastRetentionAreArchivedOldestFirst() {
+		List<String> attached = List.of("orders_default", "orders_y2025m10", "orders_y2025m08", "orders_y2025m09",
+				"orders_y2026m10", "orders_y2026m11", "orders_y2026m12", "orders_y2027m01");
+		Plan plan = OrderPartitions.plan(TODAY, 3, 12, attached, List.of("orders_y2025m07"));
+		assertTrue(plan.getCreate().isEmpty());
+		assertEquals(List.of("orders_y2025m07", "orders_y2025m08", "orders_y2025m09"), plan.getArchive());
+
+		// A partition left detached by an interrupted run is still finished off when nothing is retained.
+		plan = OrderPartitions.plan(TODAY, 3, 0, attached, List.of("orders_y2025m07"));
+		assertEquals(List.of("orders_y2025m07"), plan.getArchive());
+	}
+}
@@ -0,0 +1,103 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockService;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class OrderPurgeTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	StockService stockService;
+
+	@Test
+	public void purgeKeepsTheStockOfPurgedOrdersSold() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+		long oldId = create(customerId, productId, 3);
+		long recentId = create(customerId, productId, 1);
+		// Orders are dated when they are written, so age one by hand.
+		jdbcTemplate.update("UPDATE orders SET orderdate = DATE '1999-06-01' WHERE orderid = ?", oldId);
+
+		// Purged before its stock was flushed: the purge applies it, and the flush does not apply it again.
+		mvc.perform(delete("/utility/orders/").param("before", "2000-01-01").header("Authorization", TestData.bearer()))
+				.andExpect(status().isOk());
+		stockService.flush();
+
+		mvc.perform(get("/api/order/" + oldId)).andExpect(status().isNotFound());
+		mvc.perform(get("/api/order/" + recentId)).andExpect(status().isOk());
+		assertEquals(0, count("SELECT COUNT(*) FROM orderquantities WHERE orderid = ?", oldId));
+		assertEquals(0, count("SELECT COUNT(*) FROM order_view WHERE orderid = ?", oldId));
+		assertStock(productId, 6);
+	}
+
+	@Test
+	public void resetPutsStockBackAndClearsEveryDerivedTable() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+		create(customerId, productId, 2);
+		stockService.flush();
+		create(customerId, productId, 1);
+		String holdId = stockService.reserve(customerId, Collections.singletonMap(productId, 3)).getReservationId();
+		assertEquals(4, stockService.available((long) productId));
+
+		mvc.perform(delete("/utility/data/").header("Authorization", TestData.bearer())).andExpect(status().isNoContent());
+		stockService.flush();
+
+		assertStock(productId, 10);
+		assertNull(stockService.findReservation(holdId));
+		for (String table : new String[] { "orders", "orderquantities", "orderprices", "order_view", "outbox", "customer",
+				"sales_daily", "sales_daily_product" }) {
+			assertEquals(0, count("SELECT COUNT(*) FROM " + table), table);
+		}
+	}
+
+	private long create(long customerId, int productId, int quantity) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"productsOrdered\":{\""
+						+ productId + "\":" + quantity + "}}")).andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+
+	private int count(String sql, Object... args) {
+		return jdbcTemplate.queryForObject(sql, Integer.class, args);
+	}
+
+	private void assertStock(int productId, long expected) {
+		assertEquals(expected, stockService.available((long) productId));
+		assertEquals(expected, (long) jdbcTemplate.queryForObject("SELECT quantity FROM product_stock WHERE productid = ?",
+				Long.class, productId));
+	}
+}
@@ -0,0 +1,120 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.Collections;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockService;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class OrderStockTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	StockService stockService;
+
+	@Test
+	public void changingAnOrderMovesOnlyTheDifference() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+
+		long orderId = create(customerId, productId, 2);
+		stockService.flush();
+		assertStock(productId, 8);
+
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"" + productId + "\":5}}")).andExpect(status().isOk());
+		assertStock(productId, 5);
+
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, 1))).andExpect(status().isOk());
+		assertStock(productId, 9);
+
+		// More than is left: refused, and nothing moves.
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, 11))).andExpect(status().isConflict());
+		assertStock(productId, 9);
+
+		mvc.perform(delete("/api/order/" + orderId)).andExpect(status().isNoContent());
+		assertStock(productId, 10);
+	}
+
+	@Test
+	public void changingAnOrderBeforeItsFlushAppliesItOnce() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+
+		long orderId = create(customerId, productId, 3);
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, 4))).andExpect(status().isOk());
+		stockService.flush();
+		assertStock(productId, 6);
+
+		long deletedId = create(customerId, productId, 2);
+		mvc.perform(delete("/api/order/" + deletedId)).andExpect(status().isNoContent());
+		stockService.flush();
+		assertStock(productId, 6);
+	}
+
+	@Test
+	public void aHoldMustMatchTheOrderThatClaimsIt() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+		String reservationId = stockService.reserve(customerId, Collections.singletonMap(productId, 1)).getReservationId();
+
+		mvc.perform(post("/api/order/").header("Stock-Reservation", reservationId).contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, 10))).andExpect(status().isBadRequest());
+		assertEquals(9, stockService.available((long) productId));
+		mvc.perform(post("/api/order/").header("Stock-Reservation", reservationId).contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, 1))).andExpect(status().isCreated());
+		assertEquals(9, stockService.available((long) productId));
+	}
+
+	private long create(long customerId, int productId, int quantity) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content(order(customerId, productId, quantity))).andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+
+	private static String order(long customerId, int productId, int quantity) {
+		return "{\"customerId\":" + customerId + ",\"orderDate\":\"2026-10-01T10:00:00.000+0000\",\"productsOrdered\":{\""
+				+ productId + "\":" + quantity + "}}";
+	}
+
+	// The ledger and the table agree once the order's transaction has committed.
+	private void assertStock(int productId, long expected) {
+		assertEquals(expected, stockService.available((long) productId));
+		assertEquals(expected, (long) jdbcTemplate.queryForObject("SELECT quantity FROM product_stock WHERE productid = ?",
+				Long.class, productId));
+	}
+}
@@ -0,0 +1,121 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.jdbc.QueryStats;
+import com.docker.atsea.service.ProductCache;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class OrderUpdateTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	QueryStats queryStats;
+
+	@Test
+	public void writesOnlyTheColumnsAndLinesThatChanged() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		int otherId = TestData.product(jdbcTemplate, productCache, 7);
+		long orderId = create(customerId, "{\"" + productId + "\":2,\"" + otherId + "\":1}");
+
+		queryStats.reset();
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"orderDate\":\"2026-01-02\"}")).andExpect(status().isOk());
+		assertEquals(Arrays.asList("update orders set orderdate=?,version=? where orderid=? and version=?"),
+				writes("update orders set", "update orderquantities"));
+		assertEquals(1, version(orderId));
+
+		// The same customer and date, with one line changed in place.
+		queryStats.reset();
+		String date = jdbcTemplate.queryForObject("SELECT orderdate FROM orders WHERE orderid = ?", String.class, orderId);
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"orderDate\":\"" + date + "\",\"productsOrdered\":{\""
+						+ productId + "\":3,\"" + otherId + "\":1}}")).andExpect(status().isOk());
+		assertEquals(Arrays.asList("update orderquantities set productsordered=? where orderid=? and productid=?",
+				"update orders set total=?,version=? where orderid=? and version=?"),
+				writes("update orders set", "update orderquantities"));
+		assertEquals(2, version(orderId));
+	}
+
+	@Test
+	public void aPatchIsValidatedLikeAnUpdate() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		long orderId = create(customerId, "{\"" + productId + "\":2}");
+
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":-1}")).andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.errorMessage").value("Unable to patch. Customer with id -1 not found."));
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"-1\":1}}")).andExpect(status().isBadRequest());
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":-1,\"productsOrdered\":{\"" + productId + "\":2}}"))
+				.andExpect(status().isBadRequest());
+
+		Map<String, Object> row = jdbcTemplate.queryForMap("SELECT customerid, version FROM orders WHERE orderid = ?", orderId);
+		assertEquals(customerId, ((Number) row.get("CUSTOMERID")).longValue());
+		assertEquals(0, ((Number) row.get("VERSION")).longValue());
+		assertEquals(Arrays.asList(productId), jdbcTemplate.queryForList(
+				"SELECT productid FROM orderquantities WHERE orderid = ?", Integer.class, orderId));
+	}
+
+	// The writes run since the last reset that start with one of the prefixes, with a count when it is not one.
+	private List<String> writes(String... prefixes) {
+		List<String> writes = new ArrayList<String>();
+		for (JSONObject statement : queryStats.top(1000, "count")) {
+			String sql = ((String) statement.get("sql")).toLowerCase();
+			for (String prefix : prefixes) {
+				if (sql.startsWith(prefix) && !sql.contains("stockapplied")) {
+					long count = (Long) statement.get("count");
+					writes.add(count == 1 ? sql : sql + " x" + count);
+				}
+			}
+		}
+		Collections.sort(writes);
+		return writes;
+	}
+
+	private long create(long customerId, String productsOrdered) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"productsOrdered\":" + productsOrdered + "}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+
+	private long version(long orderId) {
+		return jdbcTemplate.queryForObject("SELECT version FROM orders WHERE orderid = ?", Long.class, orderId);
+	}
+}
@@ -0,0 +1,97 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.service.OrderViews;
+import com.docker.atsea.service.ProductCache;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class OrderViewTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	OrderViews orderViews;
+
+	@Test
+	public void theViewFollowsTheOrderAtItsStoredPrices() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		int otherId = TestData.product(jdbcTemplate, productCache, 20);
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"productsOrdered\":{\"" + productId + "\":2}}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		long orderId = ((Number) JsonPath.read(created, "$.orderId")).longValue();
+		assertView(orderId, customerId, "10");
+
+		// Repriced in the catalog; a patch of the date alone leaves the total the order was placed at.
+		reprice(productId, 8);
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"orderDate\":\"2026-02-03\"}")).andExpect(status().isOk());
+		assertView(orderId, customerId, "10");
+		assertEquals("2026-02-03", jdbcTemplate.queryForObject("SELECT orderdate FROM order_view WHERE orderid = ?",
+				String.class, orderId));
+
+		// The existing line keeps its price; the added one takes the catalog's.
+		mvc.perform(put("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"orderDate\":\"2026-02-03\",\"productsOrdered\":{\""
+						+ productId + "\":3,\"" + otherId + "\":1}}")).andExpect(status().isOk());
+		assertView(orderId, customerId, "35");
+		mvc.perform(get("/api/order/view/" + orderId)).andExpect(status().isOk())
+				.andExpect(jsonPath("$.lines[0].productId").value(productId))
+				.andExpect(jsonPath("$.lines[0].price").value(5.0))
+				.andExpect(jsonPath("$.lines[0].lineTotal").value(15.0))
+				.andExpect(jsonPath("$.lines[1].price").value(20.0));
+
+		// A rebuild reads the same stored prices.
+		orderViews.rebuild();
+		assertView(orderId, customerId, "35");
+
+		mvc.perform(delete("/api/order/" + orderId)).andExpect(status().isNoContent());
+		assertEquals(0, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM order_view WHERE orderid = ?", Integer.class,
+				orderId));
+		mvc.perform(get("/api/order/view/" + orderId)).andExpect(status().isNotFound());
+	}
+
+	private void reprice(int productId, double price) {
+		jdbcTemplate.update("UPDATE product SET price = ? WHERE productid = ?", price, productId);
+		productCache.refresh();
+	}
+
+	private void assertView(long orderId, long customerId, String total) {
+		Map<String, Object> view = jdbcTemplate.queryForMap("SELECT customerid, customername, total FROM order_view"
+				+ " WHERE orderid = ?", orderId);
+		assertEquals(customerId, ((Number) view.get("CUSTOMERID")).longValue());
+		assertEquals("Test Customer", view.get("CUSTOMERNAME"));
+		assertEquals(0, new BigDecimal(total).compareTo((BigDecimal) view.get("TOTAL")), view.toString());
+	}
+}
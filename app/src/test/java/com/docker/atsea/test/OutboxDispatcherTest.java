@@ -0,0 +1,158 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.io.IOException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import com.docker.atsea.model.OutboxEvent;
+import com.docker.atsea.outbox.OutboxDispatcher;
+import com.docker.atsea.outbox.OutboxSink;
+
+// Same configuration as the other context tests, so they share one context and one schema.
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class OutboxDispatcherTest {
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	// Leaves only the events each test writes for its dispatcher to find.
+	@BeforeEach
+	public void settleOtherEvents() {
+		jdbcTemplate.update("UPDATE outbox SET status = 'SENT' WHERE status <> 'SENT'");
+	}
+
+	@Test
+	public void publishesAClaimedBatchOutsideTheClaimingTransaction() {
+		long first = event();
+		long second = event();
+		StubSink sink = new StubSink();
+		OutboxDispatcher dispatcher = dispatcher(sink, 3);
+		OutboxDispatcher other = dispatcher(new StubSink(), 3);
+		sink.during = events -> {
+			assertFalse(TransactionSynchronizationManager.isActualTransactionActive());
+			assertEquals(OutboxEvent.CLAIMED, status(first));
+			assertNotNull(jdbcTemplate.queryForObject("SELECT claimedat FROM outbox WHERE eventid = ?", Timestamp.class, first));
+			// The claim is committed, so a second dispatcher neither waits on the rows nor gets them.
+			assertEquals(0, other.dispatchBatch());
+		};
+
+		assertEquals(2, dispatcher.dispatchBatch());
+		assertEquals(Arrays.asList(first, second), sink.published);
+		assertEquals(OutboxEvent.SENT, status(first));
+		assertEquals(OutboxEvent.SENT, status(second));
+		assertEquals(0, dispatcher.dispatchBatch());
+		assertEquals(2, dispatcher.getDispatched());
+	}
+
+	@Test
+	public void retriesAFailedBatchThenGivesUp() {
+		long eventId = event();
+		StubSink sink = new StubSink();
+		sink.during = events -> {
+			throw new IOException("sink down");
+		};
+		OutboxDispatcher dispatcher = dispatcher(sink, 2);
+
+		assertEquals(0, dispatcher.dispatchBatch());
+		assertEquals(OutboxEvent.NEW, status(eventId));
+		assertEquals(1, attempts(eventId));
+
+		assertEquals(0, dispatcher.dispatchBatch());
+		assertEquals(OutboxEvent.FAILED, status(eventId));
+		assertEquals(2, attempts(eventId));
+		assertEquals(1, dispatcher.getAbandoned());
+		assertEquals(2, dispatcher.getFailedBatches());
+
+		// Given up on, so no longer claimed.
+		sink.during = null;
+		assertEquals(0, dispatcher.dispatchBatch());
+		assertEquals(2, sink.published.size());
+	}
+
+	@Test
+	public void takesOverAClaimWhoseDispatcherDied() {
+		long stale = event();
+		long fresh = event();
+		jdbcTemplate.update("UPDATE outbox SET status = 'CLAIMED', claimedat = ? WHERE eventid = ?",
+				new Timestamp(System.currentTimeMillis() - 120000), stale);
+		jdbcTemplate.update("UPDATE outbox SET status = 'CLAIMED', claimedat = ? WHERE eventid = ?",
+				new Timestamp(System.currentTimeMillis()), fresh);
+		StubSink sink = new StubSink();
+
+		assertEquals(1, dispatcher(sink, 3).dispatchBatch());
+		assertEquals(Arrays.asList(stale), sink.published);
+		assertEquals(OutboxEvent.SENT, status(stale));
+		assertEquals(OutboxEvent.CLAIMED, status(fresh));
+	}
+
+	private OutboxDispatcher dispatcher(OutboxSink sink, int maxAttempts) {
+		OutboxDispatcher dispatcher = new OutboxDispatcher(jdbcTemplate, transactionManager, Arrays.asList(sink), "stub",
+				"org.hibernate.dialect.H2Dialect");
+		ReflectionTestUtils.setField(dispatcher, "batchSize", 100);
+		ReflectionTestUtils.setField(dispatcher, "maxAttempts", maxAttempts);
+		ReflectionTestUtils.setField(dispatcher, "claimTimeoutMillis", 60000L);
+		return dispatcher;
+	}
+
+	private long event() {
+		long aggregateId = System.nanoTime();
+		jdbcTemplate.update("INSERT INTO outbox (eventtype, aggregateid, payload, status, attempts, createdat)"
+				+ " VALUES ('ORDER_CREATED', ?, '{}', 'NEW', 0, ?)", aggregateId, new Timestamp(System.currentTimeMillis()));
+		return jdbcTemplate.queryForObject("SELECT eventid FROM outbox WHERE aggregateid = ?", Long.class, aggregateId);
+	}
+
+	private String status(long eventId) {
+		return jdbcTemplate.queryForObject("SELECT status FROM outbox WHERE eventid = ?", String.class, eventId);
+	}
+
+	private int attempts(long eventId) {
+		return jdbcTemplate.queryForObject("SELECT attempts FROM outbox WHERE eventid = ?", Integer.class, eventId);
+	}
+
+	private interface Step {
+		void run(List<OutboxEvent> events) throws Exception;
+	}
+
+	// Records what it is sent, after running the test's step.
+	private static class StubSink implements OutboxSink {
+
+		final List<Long> published = new ArrayList<Long>();
+
+		Step during;
+
+		public String getName() {
+			return "stub";
+		}
+
+		public void publish(List<OutboxEvent> events) throws Exception {
+			for (OutboxEvent event : events) {
+				published.add(event.getEventId());
+			}
+			if (during != null) {
+				during.run(events);
+			}
+		}
+	}
+}
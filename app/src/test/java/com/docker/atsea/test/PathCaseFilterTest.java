@@ -0,0 +1,59 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+
+import com.docker.atsea.controller.CartController;
+import com.docker.atsea.controller.CustomerController;
+import com.docker.atsea.controller.ProductController;
+import com.docker.atsea.security.PathCaseFilter;
+
+public class PathCaseFilterTest {
+
+	private static PathCaseFilter filter;
+
+	// The real routes of a few controllers, without starting the application.
+	@BeforeAll
+	public static void setUp() {
+		StaticApplicationContext context = new StaticApplicationContext();
+		for (Object controller : new Object[] { new CartController(), new CustomerController(), new ProductController() }) {
+			context.getBeanFactory().registerSingleton(controller.getClass().getSimpleName(), controller);
+		}
+		context.refresh();
+		RequestMappingHandlerMapping mapping = new RequestMappingHandlerMapping();
+		mapping.setApplicationContext(context);
+		mapping.afterPropertiesSet();
+		context.getBeanFactory().registerSingleton("requestMappingHandlerMapping", mapping);
+		filter = new PathCaseFilter(context.getBeanProvider(RequestMappingHandlerMapping.class));
+	}
+
+	@Test
+	public void fixedPartsTakeTheRoutesCase() {
+		assertEquals("/api/product/", filter.canonicalPath("/API/Product/"));
+		assertEquals("/api/customer/username=Sally", filter.canonicalPath("/api/customer/USERNAME=Sally"));
+		assertEquals("/api/cart/42/item/", filter.canonicalPath("/Api/Cart/42/ITEM/"));
+		// Also a productId, but the fixed route is the more specific.
+		assertEquals("/api/product/search", filter.canonicalPath("/api/product/SEARCH"));
+	}
+
+	@Test
+	public void variablesKeepTheirCaseWhereverTheyAre() {
+		// "Product" here is the customerId variable, not the fixed segment of the product routes.
+		assertEquals("/api/customer/Product", filter.canonicalPath("/API/customer/Product"));
+		assertEquals("/api/customer/name=Product", filter.canonicalPath("/api/customer/NAME=Product"));
+	}
+
+	@Test
+	public void pathsMatchingNoRouteAreLeftAlone() {
+		String path = "/api/customer/username/Product";
+		assertSame(path, filter.canonicalPath(path));
+		assertSame("/static/Main.JS", filter.canonicalPath("/static/Main.JS"));
+		String lower = "/api/product/";
+		assertSame(lower, filter.canonicalPath(lower));
+	}
+}
@@ -0,0 +1,88 @@
+package com.docker.atsea.test;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import com.docker.atsea.model.ProductImport;
+import com.docker.atsea.service.ProductImporter;
+
+/*
+ * Imports generated product feeds and reports throughput. Not a unit test; run
+ * it by hand against a scratch H2 file database, or point it at a PostgreSQL
+ * product table. A small -Xmx shows the import does not hold the feed in memory:
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=cp.txt
+ *   java -Xmx128m -cp target/classes:target/test-classes:$(cat cp.txt) com.docker.atsea.test.ProductImportBenchmark \
+ *       [rows] [json|csv] [jdbcUrl user password dialect]
+ *
+ * The first feed creates new products; the second carries their ids and
+ * upserts over every one of them.
+ */
+public class ProductImportBenchmark {
+
+	public static void main(String[] args) throws Exception {
+		int rows = args.length > 0 ? Integer.parseInt(args[0]) : 1000000;
+		boolean csv = args.length > 1 && args[1].equals("csv");
+		String url = args.length > 2 ? args[2] : "jdbc:h2:" + System.getProperty("java.io.tmpdir") + "/atsea-import-benchmark";
+		String user = args.length > 3 ? args[3] : "SA";
+		String password = args.length > 4 ? args[4] : "";
+		String dialect = args.length > 5 ? args[5] : "org.hibernate.dialect.H2Dialect";
+
+		File inserts = writeFeed(rows, csv, false);
+		File upserts = writeFeed(rows, csv, true);
+
+		SingleConnectionDataSource dataSource = new SingleConnectionDataSource(url, user, password, true);
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+		if (url.startsWith("jdbc:h2:")) {
+			jdbcTemplate.execute("DROP TABLE IF EXISTS product");
+			jdbcTemplate.execute("CREATE TABLE product (productid BIGINT AUTO_INCREMENT PRIMARY KEY,"
+					+ " description VARCHAR(10485760) NOT NULL, image VARCHAR(255) NOT NULL, name VARCHAR(255) NOT NULL,"
+					+ " price DOUBLE NOT NULL)");
+		}
+		ProductImporter importer = new ProductImporter(jdbcTemplate, new DataSourceTransactionManager(dataSource), dialect,
+				1000, rows / 4);
+		for (File feed : new File[] { inserts, upserts }) {
+			try (InputStream in = new BufferedInputStream(Files.newInputStream(feed.toPath()), 1 << 16)) {
+				ProductImport result = importer.importProducts(in, csv);
+				System.out.printf("%s: %s in %d ms, max heap %d MB%n", feed == inserts ? "New products" : "Upserts by id",
+						result, result.getFinishedAt() - result.getStartedAt(), Runtime.getRuntime().maxMemory() >> 20);
+			}
+		}
+		System.out.printf("product table now holds %d rows%n", jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product", Long.class));
+		dataSource.destroy();
+	}
+
+	// Rows 1..count, with ids (to update what the first feed created) or without (new products).
+	private static File writeFeed(int count, boolean csv, boolean withIds) throws IOException {
+		File feed = File.createTempFile(withIds ? "upserts" : "products", csv ? ".csv" : ".json");
+		feed.deleteOnExit();
+		try (Writer out = new BufferedWriter(Files.newBufferedWriter(feed.toPath(), StandardCharsets.UTF_8), 1 << 16)) {
+			out.write(csv ? "productId,name,description,image,price\n" : "[\n");
+			for (int i = 1; i <= count; i++) {
+				String id = withIds ? String.valueOf(i) : "";
+				int price = withIds ? 11 + i % 90 : 10 + i % 90;
+				if (csv) {
+					out.write(id + ",Product " + i + ",\"Synthetic product " + i + ", for the import benchmark\",/images/"
+							+ (i % 9 + 1) + ".png," + price + "\n");
+				} else {
+					out.write((i > 1 ? ",\n" : "") + "{" + (withIds ? "\"productId\":" + id + "," : "") + "\"name\":\"Product "
+							+ i + "\",\"description\":\"Synthetic product " + i + ", for the import benchmark\",\"image\":\"/images/"
+							+ (i % 9 + 1) + ".png\",\"price\":" + price + "}");
+				}
+			}
+			out.write(csv ? "" : "\n]\n");
+		}
+		return feed;
+	}
+
+}
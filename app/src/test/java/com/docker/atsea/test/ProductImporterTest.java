@@ -0,0 +1,103 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+import com.docker.atsea.model.ProductImport;
+import com.docker.atsea.service.ProductImporter;
+import com.fasterxml.jackson.core.JsonParseException;
+
+public class ProductImporterTest {
+
+	private SingleConnectionDataSource dataSource;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private ProductImporter importer;
+
+	@BeforeEach
+	public void setUp() {
+		dataSource = new SingleConnectionDataSource("jdbc:h2:mem:product-import", "SA", "", true);
+		jdbcTemplate = new JdbcTemplate(dataSource);
+		jdbcTemplate.execute("CREATE TABLE product (productid BIGINT AUTO_INCREMENT PRIMARY KEY,"
+				+ " description VARCHAR(10485760) NOT NULL, image VARCHAR(255) NOT NULL, name VARCHAR(255) NOT NULL,"
+				+ " price DOUBLE NOT NULL)");
+		importer = new ProductImporter(jdbcTemplate, new DataSourceTransactionManager(dataSource),
+				"org.hibernate.dialect.H2Dialect", 2, 1000);
+	}
+
+	@AfterEach
+	public void tearDown() {
+		jdbcTemplate.execute("DROP TABLE product");
+		dataSource.destroy();
+	}
+
+	@Test
+	public void readsCsvWithQuotedFieldsAndRejectsIncompleteRows() throws Exception {
+		ProductImport result = importFeed("productId,name,description,image,price\n"
+				+ ",Boat,\"Small, blue\",/images/1.png,12.50\n"
+				+ ",,No name,/images/2.png,3\n"
+				+ ",Oar,,/images/3.png,cheap\n"
+				+ ",Sail,Canvas,,40\n", true);
+
+		assertEquals(4, result.getRead());
+		assertEquals(2, result.getInserted());
+		assertEquals(2, result.getRejected());
+		assertEquals(Arrays.asList("Row 2: name is required", "Row 3: not a number: For input string: \"cheap\""),
+				result.getErrors());
+		Map<String, Object> boat = jdbcTemplate.queryForMap("SELECT * FROM product WHERE name = 'Boat'");
+		assertEquals("Small, blue", boat.get("DESCRIPTION"));
+		assertEquals(12.5, boat.get("PRICE"));
+		assertEquals("", jdbcTemplate.queryForObject("SELECT image FROM product WHERE name = 'Sail'", String.class));
+	}
+
+	@Test
+	public void readsAJsonArrayOrOneObjectPerLineAndSkipsNestedMembers() throws Exception {
+		ProductImport array = importFeed("[{\"name\":\"Boat\",\"price\":10,\"tags\":[\"a\",{\"b\":1}]},\n"
+				+ "{\"name\":\"Oar\",\"price\":\"2.5\",\"extra\":{\"x\":[1,2]}}]", false);
+		ProductImport lines = importFeed("{\"name\":\"Sail\",\"price\":40}\n{\"name\":null,\"price\":1}\n", false);
+
+		assertEquals(2, array.getInserted());
+		assertEquals(0, array.getRejected());
+		assertEquals(1, lines.getInserted());
+		assertEquals(1, lines.getRejected());
+		assertEquals(2.5, jdbcTemplate.queryForObject("SELECT price FROM product WHERE name = 'Oar'", Double.class));
+		assertEquals(3, (int) jdbcTemplate.queryForObject("SELECT COUNT(*) FROM product", Integer.class));
+	}
+
+	@Test
+	public void upsertsByIdAndMovesTheIdentityPastImportedIds() throws Exception {
+		importFeed("{\"name\":\"Boat\",\"price\":10}", false);
+		ProductImport result = importFeed("{\"productId\":1,\"name\":\"Boat\",\"price\":11}\n"
+				+ "{\"productId\":500,\"name\":\"Oar\",\"price\":2}\n", false);
+		assertEquals(2, result.getUpserted());
+		assertEquals(11.0, jdbcTemplate.queryForObject("SELECT price FROM product WHERE productid = 1", Double.class));
+
+		importFeed("{\"name\":\"Sail\",\"price\":40}", false);
+		assertEquals(501L, jdbcTemplate.queryForObject("SELECT productid FROM product WHERE name = 'Sail'", Long.class));
+	}
+
+	@Test
+	public void stopsAtAFeedThatIsNotProducts() {
+		assertThrows(JsonParseException.class, () -> importFeed("[1, 2]", false));
+		assertTrue(importer.getLastImport().getFailure().startsWith("Expected a product object but found VALUE_NUMBER_INT"));
+	}
+
+	private ProductImport importFeed(String feed, boolean csv) throws IOException {
+		return importer.importProducts(new ByteArrayInputStream(feed.getBytes(StandardCharsets.UTF_8)), csv);
+	}
+}
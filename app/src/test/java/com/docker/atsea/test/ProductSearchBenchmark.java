@@ -0,0 +1,93 @@
+package com.docker.atsea.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import com.docker.atsea.model.Product;
+import com.docker.atsea.service.ProductSearchIndex;
+
+/*
+ * Builds the search index over a synthetic catalog and times queries against it.
+ * Not a unit test; run it by hand:
+ *
+ *   mvn -q test-compile
+ *   java -cp target/classes:target/test-classes com.docker.atsea.test.ProductSearchBenchmark 100000
+ */
+public class ProductSearchBenchmark {
+
+	private static final String[] WORDS = ("docker whale container swarm compose image volume network secret "
+			+ "service stack node cluster registry build ship run cloud native kube pod helm mascot moby gordon "
+			+ "shirt hoodie mug sticker poster hat sock bottle notebook pen badge laptop cable charger lamp tote "
+			+ "blue red green black white grey navy orange yellow purple small medium large limited vintage classic "
+			+ "cotton steel ceramic wooden recycled organic soft warm portable durable official edition").split(" ");
+
+	public static void main(String[] args) {
+		int size = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+		Random random = new Random(42);
+		List<Product> catalog = new ArrayList<Product>(size);
+		for (long id = 1; id <= size; id++) {
+			catalog.add(new Product(id, words(random, 3) + " " + id, words(random, 20), 10 + random.nextInt(90), null));
+		}
+
+		System.gc();
+		long heapBefore = usedHeap();
+		ProductSearchIndex index = new ProductSearchIndex();
+		long start = System.nanoTime();
+		index.sync(catalog);
+		long buildMillis = (System.nanoTime() - start) / 1000000;
+		System.gc();
+		System.out.printf("Indexed %d products, %d terms in %d ms, ~%d MB heap%n", size, index.getTerms(), buildMillis,
+				(usedHeap() - heapBefore) >> 20);
+
+		String[] queries = new String[1000];
+		for (int i = 0; i < queries.length; i++) {
+			switch (i % 4) {
+			case 0: queries[i] = WORDS[random.nextInt(WORDS.length)]; break;
+			case 1: queries[i] = words(random, 2); break;
+			case 2: queries[i] = WORDS[random.nextInt(WORDS.length)].substring(0, 3); break;
+			default: queries[i] = words(random, 2) + " " + WORDS[random.nextInt(WORDS.length)].substring(0, 2); break;
+			}
+		}
+		for (int round = 0; round < 3; round++) {
+			for (String query : queries) {
+				index.search(query, 20);
+			}
+		}
+		for (String kind : new String[] { "one word", "two words", "prefix", "two words + prefix" }) {
+			int offset = Arrays.asList("one word", "two words", "prefix", "two words + prefix").indexOf(kind);
+			long[] micros = new long[queries.length / 4];
+			for (int i = 0; i < micros.length; i++) {
+				long t = System.nanoTime();
+				index.search(queries[i * 4 + offset], 20);
+				micros[i] = (System.nanoTime() - t) / 1000;
+			}
+			Arrays.sort(micros);
+			System.out.printf("%-20s p50 %6d us  p99 %6d us%n", kind, micros[micros.length / 2], micros[micros.length * 99 / 100]);
+		}
+
+		List<Product> changed = new ArrayList<Product>(catalog);
+		for (int i = 0; i < 100; i++) {
+			int slot = random.nextInt(size);
+			Product old = changed.get(slot);
+			changed.set(slot, new Product(old.getProductId(), words(random, 3), words(random, 20), old.getPrice(), null));
+		}
+		start = System.nanoTime();
+		index.sync(changed);
+		System.out.printf("Incremental sync of 100 changed products in %d ms%n", (System.nanoTime() - start) / 1000000);
+	}
+
+	private static String words(Random random, int count) {
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < count; i++) {
+			text.append(i == 0 ? "" : " ").append(WORDS[random.nextInt(WORDS.length)]);
+		}
+		return text.toString();
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
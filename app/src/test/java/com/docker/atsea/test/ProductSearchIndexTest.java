@@ -0,0 +1,59 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.model.Product;
+import com.docker.atsea.service.ProductSearchIndex;
+
+public class ProductSearchIndexTest {
+
+	private ProductSearchIndex index;
+
+	private List<Product> catalog;
+
+	@BeforeEach
+	public void setUp() {
+		catalog = new ArrayList<Product>(Arrays.asList(
+				new Product(1L, "Unusable Security", "Unusuable security is not security", 25, "/images/1.png"),
+				new Product(2L, "Valentine's Day", "Love is meant to be shared", 25, "/images/2.png"),
+				new Product(3L, "Docker Tooling", "Docker provides a whole suite of tools", 25, "/images/3.png"),
+				new Product(4L, "Gordon's Hat", "The hat of the Docker mascot", 25, "/images/4.png")));
+		index = new ProductSearchIndex();
+		index.sync(catalog);
+	}
+
+	@Test
+	public void nameMatchesRankAboveDescriptionMatches() {
+		assertEquals(Arrays.asList(3L, 4L), index.search("docker", 10));
+		assertEquals(Arrays.asList(3L), index.search("Docker tools", 10));
+		assertTrue(index.search("docker love", 10).isEmpty());
+	}
+
+	@Test
+	public void prefixesMatch() {
+		assertEquals(Arrays.asList(3L, 4L), index.search("dock", 10));
+		assertEquals(Arrays.asList(3L), index.search("too", 10));
+		assertEquals(Arrays.asList(1L), index.search("secur", 10));
+	}
+
+	@Test
+	public void syncAppliesChanges() {
+		catalog.set(3, new Product(4L, "Whale Hat", "A hat for Moby", 25, "/images/4.png"));
+		catalog.remove(0);
+		catalog.add(new Product(5L, "Docker Whale Plush", "Soft toy", 30, "/images/5.png"));
+		index.sync(catalog);
+
+		assertEquals(Arrays.asList(3L, 5L), index.search("docker", 10));
+		assertEquals(Arrays.asList(4L, 5L), index.search("whale", 10));
+		assertTrue(index.search("security", 10).isEmpty());
+		assertEquals(4, index.getDocuments());
+	}
+}
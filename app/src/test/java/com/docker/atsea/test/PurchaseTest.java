@@ -0,0 +1,98 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import jakarta.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.docker.atsea.payment.PaymentClient;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockService;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class PurchaseTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	StockService stockService;
+
+	@Autowired
+	PaymentClient paymentClient;
+
+	@Test
+	public void anOrderIsChargedOnce() throws Exception {
+		long orderId = order();
+		long attempts = paymentClient.getAttempts();
+
+		String paid = pay(orderId).andExpect(status().isOk()).andExpect(jsonPath("$.amount").value(8.0))
+				.andReturn().getResponse().getContentAsString();
+		String transactionId = JsonPath.read(paid, "$.transactionId");
+		assertEquals("PAID", jdbcTemplate.queryForObject("SELECT status FROM payment WHERE orderid = ?", String.class, orderId));
+
+		// A retry is answered from the payment row, without going back to the gateway.
+		pay(orderId).andExpect(status().isOk()).andExpect(jsonPath("$.transactionId").value(transactionId));
+		assertEquals(attempts + 1, paymentClient.getAttempts());
+	}
+
+	@Test
+	public void aPaymentInProgressIsNotStartedAgain() throws Exception {
+		long orderId = order();
+		jdbcTemplate.update("INSERT INTO payment (orderid, amount, status, createdat) VALUES (?, 8, 'PENDING', CURRENT_TIMESTAMP)",
+				orderId);
+		long attempts = paymentClient.getAttempts();
+
+		pay(orderId).andExpect(status().isConflict())
+				.andExpect(jsonPath("$.errorMessage").value("A payment for order " + orderId + " is already in progress."));
+		assertEquals(attempts, paymentClient.getAttempts());
+	}
+
+	@Test
+	public void degradingTheFakeGatewayNeedsAToken() throws Exception {
+		assertThrows(ServletException.class, () -> mvc.perform(put("/utility/payment/fake/")
+				.contentType(MediaType.APPLICATION_JSON).content("{\"latencyMillis\":50}")));
+		mvc.perform(put("/utility/payment/fake/").header("Authorization", TestData.bearer())
+				.contentType(MediaType.APPLICATION_JSON).content("{\"latencyMillis\":50}")).andExpect(status().isOk());
+	}
+
+	private ResultActions pay(long orderId) throws Exception {
+		return mvc.perform(asyncDispatch(mvc.perform(post("/purchase/" + orderId).header("Authorization", TestData.bearer()))
+				.andReturn()));
+	}
+
+	private long order() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 4);
+		stockService.addStock((long) productId, 10);
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"orderDate\":\"2026-10-01T10:00:00.000+0000\",\"productsOrdered\":{\""
+						+ productId + "\":2}}")).andExpect(status().isCreated())
+				.andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+}
@@ -0,0 +1,62 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.jdbc.QueryStats;
+
+public class QueryStatsTest {
+
+	@Test
+	public void literalsAndParameterListsAreFingerprinted() {
+		assertEquals("select p1_0.productid from product p1_0 where p1_0.name=? and p1_0.price>? and p1_0.productid in (?...)",
+				QueryStats.fingerprintOf("select p1_0.productid\n  from product p1_0 where p1_0.name='It''s' "
+						+ "and p1_0.price>25.50 and p1_0.productid in (1, 2,3)"));
+		assertEquals("insert into t (a,b) values (?...), ...",
+				QueryStats.fingerprintOf("insert into t (a,b) values (?, ?), (?, ?), (?,?) /* import */"));
+		assertEquals("SELECT \"Order 1\" FROM t WHERE x = ?", QueryStats.fingerprintOf("SELECT \"Order 1\" FROM t -- note\nWHERE x = 5"));
+	}
+
+	@Test
+	public void executionsAreAggregatedPerFingerprint() {
+		QueryStats stats = new QueryStats(-1, 10);
+		for (int i = 1; i <= 100; i++) {
+			stats.record("SELECT * FROM orders WHERE orderid = " + i, i * 1000000L, 1, false);
+		}
+		stats.record("DELETE FROM orders", 500000, 700, true);
+		List<JSONObject> top = stats.top(10, "total");
+		assertEquals(2, top.size());
+		JSONObject select = top.get(0);
+		assertEquals("SELECT * FROM orders WHERE orderid = ?", select.get("sql"));
+		assertEquals(100L, select.get("count"));
+		assertEquals(100L, select.get("rows"));
+		assertEquals(5050.0, select.get("totalMillis"));
+		assertEquals(100.0, select.get("maxMillis"));
+		// Within the histogram's 12.5% of the true 99th percentile, 99 ms, and never above the maximum.
+		double p99 = (Double) select.get("p99Millis");
+		assertTrue(p99 >= 99 && p99 <= 100, "p99 " + p99);
+		assertEquals(1L, top.get(1).get("errors"));
+		assertEquals("DELETE FROM orders", stats.top(1, "rows").get(0).get("sql"));
+		assertThrows(IllegalArgumentException.class, () -> stats.top(1, "name"));
+	}
+
+	@Test
+	public void statementsPastTheLimitAreCountedTogether() {
+		QueryStats stats = new QueryStats(-1, 2);
+		stats.record("SELECT a FROM t", 1000, 0, false);
+		stats.record("SELECT b FROM t", 1000, 0, false);
+		stats.record("SELECT c FROM t", 1000, 0, false);
+		stats.record("SELECT d FROM t", 1000, 0, false);
+		JSONObject first = stats.top(3, "count").get(0);
+		assertEquals(QueryStats.OTHER, first.get("sql"));
+		assertEquals(2L, first.get("count"));
+		stats.reset();
+		assertTrue(stats.top(3, "count").isEmpty());
+	}
+}
@@ -0,0 +1,70 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.security.ConcurrencyLimiter;
+import com.docker.atsea.security.RateLimiter;
+
+public class RateLimiterTest {
+
+	private final AtomicLong now = new AtomicLong(-TimeUnit.HOURS.toNanos(1));
+
+	@Test
+	public void burstThenSteadyRate() {
+		RateLimiter limiter = new RateLimiter(2, 3, 100, 16, now::get);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+		}
+		long wait = limiter.tryAcquire("10.0.0.1");
+		assertEquals(TimeUnit.MILLISECONDS.toNanos(500), wait);
+		assertEquals(0, limiter.tryAcquire("10.0.0.2"));
+
+		now.addAndGet(wait);
+		assertEquals(0, limiter.tryAcquire("10.0.0.1"));
+		assertTrue(limiter.tryAcquire("10.0.0.1") > 0);
+	}
+
+	@Test
+	public void idleKeysAreEvictedAndOverflowStaysLimited() {
+		RateLimiter limiter = new RateLimiter(1, 1, 2, 1, now::get);
+		assertEquals(0, limiter.tryAcquire("a"));
+		assertEquals(0, limiter.tryAcquire("b"));
+		assertEquals(2, limiter.size());
+
+		// Beyond maxKeys, new keys share the single overflow bucket.
+		assertEquals(0, limiter.tryAcquire("c"));
+		assertTrue(limiter.tryAcquire("d") > 0);
+		assertEquals(2, limiter.size());
+
+		assertEquals(0, limiter.evictIdle());
+		now.addAndGet(TimeUnit.SECONDS.toNanos(1));
+		assertEquals(2, limiter.evictIdle());
+		assertEquals(0, limiter.size());
+	}
+
+	@Test
+	public void concurrencyLimitBacksOffWhenLatencyRises() {
+		ConcurrencyLimiter limiter = new ConcurrencyLimiter(4, 1, 8, 2.0, 0.5);
+		for (int i = 0; i < 4; i++) {
+			assertTrue(limiter.tryAcquire());
+		}
+		assertFalse(limiter.tryAcquire());
+
+		for (int i = 0; i < 4; i++) {
+			limiter.release(TimeUnit.MILLISECONDS.toNanos(10));
+		}
+		assertTrue(limiter.getLimit() >= 4);
+
+		assertTrue(limiter.tryAcquire());
+		limiter.release(TimeUnit.MILLISECONDS.toNanos(100));
+		assertEquals(2, limiter.getLimit());
+		assertEquals(0, limiter.getInFlight());
+	}
+}
@@ -0,0 +1,77 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.docker.atsea.service.OrderService;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.Recommendations;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class RecommendationSnapshotTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	OrderService orderService;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Test
+	public void aSnapshotHoldsTheOrdersOtherServersWrote() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int[] products = new int[4];
+		for (int i = 0; i < products.length; i++) {
+			products[i] = TestData.product(jdbcTemplate, productCache, 5);
+		}
+		Recommendations other = node();
+		other.load();
+
+		// This server writes the first order; the other server counts only the second, which it writes.
+		create(customerId, products[0], products[1]);
+		long later = create(customerId, products[2], products[3]);
+		new TransactionTemplate(transactionManager).executeWithoutResult(
+				status -> other.orderAdded(orderService.findById(later)));
+		other.snapshot();
+
+		Recommendations restarted = node();
+		restarted.load();
+		assertArrayEquals(new int[] { products[1] }, restarted.related(products[0]));
+		assertArrayEquals(new int[] { products[3] }, restarted.related(products[2]));
+	}
+
+	private Recommendations node() {
+		return new Recommendations(jdbcTemplate, 100, 10, 1000, 2, false);
+	}
+
+	private long create(long customerId, int first, int second) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"orderDate\":\"2026-10-01T10:00:00.000+0000\","
+						+ "\"productsOrdered\":{\"" + first + "\":1,\"" + second + "\":1}}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+}
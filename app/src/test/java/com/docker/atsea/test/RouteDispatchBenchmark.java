@@ -0,0 +1,113 @@
+package com.docker.atsea.test;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.util.AntPathMatcher;
+import org.springframework.web.servlet.mvc.method.annotation.RequestMappingHandlerMapping;
+import org.springframework.web.util.ServletRequestPathUtils;
+
+import com.docker.atsea.controller.CartController;
+import com.docker.atsea.controller.CustomerController;
+import com.docker.atsea.controller.LoginController;
+import com.docker.atsea.controller.OrderController;
+import com.docker.atsea.controller.ProductController;
+import com.docker.atsea.controller.PurchaseController;
+import com.docker.atsea.controller.ReportController;
+import com.docker.atsea.controller.StockController;
+import com.docker.atsea.controller.UtilityController;
+import com.docker.atsea.security.PathCaseFilter;
+
+/*
+ * Times handler lookup over the application's real route table: the old
+ * case-insensitive AntPathMatcher mapping against the path pattern mapping
+ * with PathCaseFilter's canonical path check and the request path parsing the
+ * DispatcherServlet does for it. Not a unit test; run it by hand:
+ *
+ *   mvn -q test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt
+ *   java -cp target/classes:target/test-classes:$(cat target/classpath.txt) com.docker.atsea.test.RouteDispatchBenchmark
+ */
+public class RouteDispatchBenchmark {
+
+	private static final String[][] REQUESTS = {
+			{ "GET", "/api/product/" }, { "GET", "/api/product/12" }, { "GET", "/api/product/search" },
+			{ "POST", "/api/product/import" }, { "GET", "/api/customer/" }, { "GET", "/api/customer/42" },
+			{ "GET", "/api/customer/username=sally" }, { "GET", "/api/customer/name=Sally" }, { "POST", "/api/customer/" },
+			{ "PATCH", "/api/customer/42" }, { "POST", "/api/order/" }, { "GET", "/api/order/" },
+			{ "GET", "/api/order/1001" }, { "PUT", "/api/order/1001" }, { "GET", "/api/cart/42" },
+			{ "POST", "/api/cart/42/item/" }, { "PUT", "/api/cart/42/item/7" }, { "POST", "/api/cart/42/checkout/" },
+			{ "GET", "/api/stock/7" }, { "POST", "/api/stock/reservation/" }, { "GET", "/api/report/daily" },
+			{ "GET", "/api/report/products" }, { "POST", "/login/" }, { "POST", "/purchase/1001" },
+			{ "GET", "/utility/healthcheck/" }, { "GET", "/utility/queries/" },
+			// Falls through every route to the storefront.
+			{ "GET", "/static/js/main.1a2b3c4d.js" } };
+
+	private static final int ITERATIONS = 200000;
+
+	public static void main(String[] args) throws Exception {
+		StaticApplicationContext context = new StaticApplicationContext();
+		for (Object controller : new Object[] { new CartController(), new CustomerController(), new LoginController(),
+				new OrderController(), new ProductController(), new PurchaseController(), new ReportController(),
+				new StockController(), new UtilityController() }) {
+			context.getBeanFactory().registerSingleton(controller.getClass().getSimpleName(), controller);
+		}
+		context.refresh();
+
+		RequestMappingHandlerMapping antMapping = new RequestMappingHandlerMapping();
+		AntPathMatcher matcher = new AntPathMatcher();
+		matcher.setCaseSensitive(false);
+		antMapping.setPatternParser(null);
+		antMapping.setPathMatcher(matcher);
+		antMapping.setApplicationContext(context);
+		antMapping.afterPropertiesSet();
+
+		RequestMappingHandlerMapping patternMapping = new RequestMappingHandlerMapping();
+		patternMapping.setApplicationContext(context);
+		patternMapping.afterPropertiesSet();
+		context.getBeanFactory().registerSingleton("requestMappingHandlerMapping", patternMapping);
+		ObjectProvider<RequestMappingHandlerMapping> provider = context.getBeanProvider(RequestMappingHandlerMapping.class);
+		PathCaseFilter pathCaseFilter = new PathCaseFilter(provider);
+
+		System.out.printf("%d routes, %d request paths, %d lookups per round%n",
+				patternMapping.getHandlerMethods().size(), REQUESTS.length, ITERATIONS);
+		for (int round = 0; round < 5; round++) {
+			long ant = time(() -> {
+				for (int i = 0; i < ITERATIONS; i++) {
+					String[] request = REQUESTS[i % REQUESTS.length];
+					antMapping.getHandler(request(request[0], request[1]));
+				}
+			});
+			long pattern = time(() -> {
+				for (int i = 0; i < ITERATIONS; i++) {
+					String[] request = REQUESTS[i % REQUESTS.length];
+					MockHttpServletRequest servletRequest = request(request[0], pathCaseFilter.canonicalPath(request[1]));
+					ServletRequestPathUtils.parseAndCache(servletRequest);
+					patternMapping.getHandler(servletRequest);
+				}
+			});
+			System.out.printf("round %d: AntPathMatcher %5d ns/lookup, PathPattern %5d ns/lookup (%.0f%% less)%n", round + 1,
+					ant / ITERATIONS, pattern / ITERATIONS, 100.0 * (ant - pattern) / ant);
+		}
+		context.close();
+	}
+
+	private static MockHttpServletRequest request(String method, String path) {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		if (method.equals("PATCH")) {
+			request.setContentType("application/merge-patch+json");
+		} else if (!method.equals("GET")) {
+			request.setContentType("application/json");
+		}
+		return request;
+	}
+
+	private interface Body {
+		void run() throws Exception;
+	}
+
+	private static long time(Body body) throws Exception {
+		long start = System.nanoTime();
+		body.run();
+		return System.nanoTime() - start;
+	}
+}
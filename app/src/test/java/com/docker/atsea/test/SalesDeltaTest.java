@@ -0,0 +1,89 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.math.BigDecimal;
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntFunction;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.service.SalesDelta;
+
+public class SalesDeltaTest {
+
+	private static final LocalDate MONDAY = LocalDate.of(2026, 10, 12);
+
+	private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+
+	// Product 1 costs 10, product 2 costs 25.
+	private static final IntFunction<BigDecimal> PRICE = productId -> BigDecimal.valueOf(productId == 1 ? 10 : 25);
+
+	@Test
+	public void unchangedOrderWritesNothing() {
+		SalesDelta delta = new SalesDelta();
+		delta.add(MONDAY, Map.of(1, 2, 2, 1), PRICE, -1);
+		delta.add(MONDAY, Map.of(1, 2, 2, 1), PRICE, 1);
+		assertTrue(delta.isEmpty());
+		assertTrue(delta.productRows().isEmpty());
+		assertTrue(delta.dayRows().isEmpty());
+	}
+
+	@Test
+	public void changedLinesAreNetted() {
+		SalesDelta delta = new SalesDelta();
+		delta.add(MONDAY, Map.of(1, 2, 2, 1), PRICE, -1);
+		delta.add(MONDAY, Map.of(1, 5), PRICE, 1);
+		List<Object[]> products = delta.productRows();
+		assertEquals(2, products.size());
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), 1L, 0L, 3L, BigDecimal.valueOf(30) }, products.get(0));
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), 2L, -1L, -1L, BigDecimal.valueOf(-25) }, products.get(1));
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), 0L, 2L, BigDecimal.valueOf(5) }, delta.dayRows().get(0));
+	}
+
+	@Test
+	public void swapAtSameQuantityStillChangesDayRevenue() {
+		SalesDelta delta = new SalesDelta();
+		delta.add(MONDAY, Map.of(1, 1), PRICE, -1);
+		delta.add(MONDAY, Map.of(2, 1), PRICE, 1);
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), 0L, 0L, BigDecimal.valueOf(15) }, delta.dayRows().get(0));
+	}
+
+	@Test
+	public void movedOrderLeavesOneDayForAnother() {
+		SalesDelta delta = new SalesDelta();
+		delta.add(TUESDAY, Map.of(2, 1), PRICE, 1);
+		delta.add(MONDAY, Map.of(2, 1), PRICE, -1);
+		List<Object[]> days = delta.dayRows();
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), -1L, -1L, BigDecimal.valueOf(-25) }, days.get(0));
+		assertArrayEquals(new Object[] { Date.valueOf(TUESDAY), 1L, 1L, BigDecimal.valueOf(25) }, days.get(1));
+	}
+
+	@Test
+	public void aLineComesOutAtThePriceItWentInAt() {
+		SalesDelta delta = new SalesDelta();
+		delta.add(MONDAY, Map.of(1, 2), productId -> new BigDecimal("9.99"), 1);
+		delta.add(MONDAY, Map.of(1, 2), productId -> new BigDecimal("9.99"), -1);
+		delta.add(MONDAY, Map.of(1, 3), productId -> new BigDecimal("9.99"), 1);
+		assertArrayEquals(new Object[] { Date.valueOf(MONDAY), 1L, 3L, new BigDecimal("29.97") }, delta.dayRows().get(0));
+	}
+
+	@Test
+	public void deltasAddUp() {
+		SalesDelta first = new SalesDelta();
+		first.add(MONDAY, Map.of(1, 2), PRICE, 1);
+		SalesDelta second = new SalesDelta();
+		second.add(MONDAY, Map.of(1, 2), PRICE, -1);
+		second.add(TUESDAY, Map.of(2, 1), PRICE, 1);
+		first.add(second);
+		List<Object[]> days = first.dayRows();
+		assertEquals(1, days.size());
+		assertArrayEquals(new Object[] { Date.valueOf(TUESDAY), 1L, 1L, BigDecimal.valueOf(25) }, days.get(0));
+		assertEquals(1, first.productRows().size());
+	}
+}
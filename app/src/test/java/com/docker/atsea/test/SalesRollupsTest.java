@@ -0,0 +1,96 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.SalesRollups;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class SalesRollupsTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	SalesRollups salesRollups;
+
+	@Test
+	public void ordersComeOutAtThePricesTheyWentInAt() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		long orderId = create(customerId, productId, 2);
+		salesRollups.flush();
+		assertProductSales(productId, 1, 2, "10");
+
+		// Repriced in the catalog: the order keeps its price, in the rollups too.
+		jdbcTemplate.update("UPDATE product SET price = 9 WHERE productid = ?", productId);
+		productCache.refresh();
+		mvc.perform(patch("/api/order/" + orderId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"productsOrdered\":{\"" + productId + "\":3}}")).andExpect(status().isOk());
+		salesRollups.flush();
+		assertProductSales(productId, 1, 3, "15");
+
+		mvc.perform(delete("/api/order/" + orderId)).andExpect(status().isNoContent());
+		salesRollups.flush();
+		assertProductSales(productId, 0, 0, "0");
+	}
+
+	@Test
+	public void changesWaitInMemoryUntilTheFlush() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 4);
+		salesRollups.flush();
+		create(customerId, productId, 1);
+		create(customerId, productId, 2);
+		assertEquals(0, rows(productId).size());
+
+		salesRollups.flush();
+		assertProductSales(productId, 2, 3, "12");
+		assertEquals(0, salesRollups.flush());
+	}
+
+	private long create(long customerId, int productId, int quantity) throws Exception {
+		String created = mvc.perform(post("/api/order/").contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + customerId + ",\"productsOrdered\":{\"" + productId + "\":" + quantity + "}}"))
+				.andExpect(status().isCreated()).andReturn().getResponse().getContentAsString();
+		return ((Number) JsonPath.read(created, "$.orderId")).longValue();
+	}
+
+	private List<Map<String, Object>> rows(int productId) {
+		return jdbcTemplate.queryForList("SELECT orders, quantity, revenue FROM sales_daily_product WHERE productid = ?",
+				productId);
+	}
+
+	private void assertProductSales(int productId, long orders, long quantity, String revenue) {
+		Map<String, Object> row = rows(productId).get(0);
+		assertEquals(orders, ((Number) row.get("ORDERS")).longValue());
+		assertEquals(quantity, ((Number) row.get("QUANTITY")).longValue());
+		assertEquals(0, new BigDecimal(revenue).compareTo((BigDecimal) row.get("REVENUE")));
+	}
+}
@@ -0,0 +1,116 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.service.SingleFlight;
+
+@SuppressWarnings("unchecked")
+public class SingleFlightTest {
+
+	@Test
+	public void concurrentCallersShareOneLoad() throws Exception {
+		SingleFlight<Long, String> flight = new SingleFlight<Long, String>("test", 5000);
+		AtomicInteger queries = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int i = 0; i < 8; i++) {
+				results.add(pool.submit(() -> flight.get(1L, () -> {
+					queries.incrementAndGet();
+					await(release);
+					return "product 1";
+				})));
+			}
+			while (flight.getLoads() + flight.getMaxWaiting() < 8) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+			String first = results.get(0).get(5, TimeUnit.SECONDS);
+			for (Future<String> result : results) {
+				assertSame(first, result.get(5, TimeUnit.SECONDS));
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(1, queries.get());
+		assertEquals(7, flight.getCoalesced());
+		assertEquals(0, flight.getInFlight());
+
+		// Nothing is kept once the load is done.
+		assertEquals("again", flight.get(1L, () -> "again"));
+		assertEquals(2, flight.getLoads());
+	}
+
+	@Test
+	public void waitersShareTheLoadsException() throws Exception {
+		SingleFlight<Long, String> flight = new SingleFlight<Long, String>("test", 5000);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newFixedThreadPool(2);
+		try {
+			Future<String> leader = pool.submit(() -> flight.get(1L, () -> {
+				await(release);
+				throw new IllegalStateException("database down");
+			}));
+			while (flight.getInFlight() == 0) {
+				Thread.sleep(5);
+			}
+			Future<String> waiter = pool.submit(() -> flight.get(1L, () -> "unused"));
+			while (flight.getMaxWaiting() == 0) {
+				Thread.sleep(5);
+			}
+			release.countDown();
+			for (Future<String> result : new Future[] { leader, waiter }) {
+				assertEquals("database down", assertThrows(ExecutionException.class,
+						() -> result.get(5, TimeUnit.SECONDS)).getCause().getMessage());
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		assertEquals(1, flight.getLoads());
+	}
+
+	@Test
+	public void waitersGiveUpAfterMaxWait() throws Exception {
+		SingleFlight<Long, String> flight = new SingleFlight<Long, String>("test", 50);
+		CountDownLatch release = new CountDownLatch(1);
+		ExecutorService pool = Executors.newSingleThreadExecutor();
+		try {
+			pool.submit(() -> flight.get(1L, () -> {
+				await(release);
+				return "slow";
+			}));
+			while (flight.getInFlight() == 0) {
+				Thread.sleep(5);
+			}
+			assertEquals("own", flight.get(1L, () -> "own"));
+			assertEquals(1, flight.getTimedOut());
+			assertEquals(2, flight.getLoads());
+		} finally {
+			release.countDown();
+			pool.shutdownNow();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.List;
+
+import org.json.simple.JSONObject;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.boot.context.metrics.buffering.BufferingApplicationStartup;
+import org.springframework.core.metrics.StartupStep;
+
+import com.docker.atsea.configuration.StartupConfiguration;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.startup.StartupReport;
+import com.docker.atsea.util.ETags;
+
+import jakarta.persistence.EntityManagerFactory;
+
+public class StartupTest {
+
+	@Test
+	public void scheduledBeansAndTheEntityManagerFactoryStayEager() {
+		LazyInitializationExcludeFilter eager = StartupConfiguration.eagerBeans();
+		assertTrue(eager.isExcluded("productCache", null, ProductCache.class));
+		assertTrue(eager.isExcluded("entityManagerFactory", null, EntityManagerFactory.class));
+		assertFalse(eager.isExcluded("eTags", null, ETags.class));
+		assertFalse(eager.isExcluded("unknown", null, null));
+	}
+
+	@Test
+	@SuppressWarnings("unchecked")
+	public void stepsAreRankedByTheTimeSpentInThemselves() throws InterruptedException {
+		BufferingApplicationStartup startup = new BufferingApplicationStartup(100);
+		StartupStep refresh = startup.start("refresh");
+		StartupStep bean = startup.start("bean").tag("beanName", "slow");
+		Thread.sleep(60);
+		bean.end();
+		Thread.sleep(20);
+		refresh.end();
+		StartupReport report = new StartupReport(startup, true);
+
+		JSONObject json = report.report(10);
+		List<JSONObject> steps = (List<JSONObject>) json.get("steps");
+		assertEquals(2, steps.size());
+		assertEquals("bean", steps.get(0).get("name"));
+		assertEquals("slow", ((JSONObject) steps.get(0).get("tags")).get("beanName"));
+		assertTrue((Long) steps.get(0).get("selfMillis") >= 60);
+		// The refresh took longer in all, but most of it was the bean's.
+		assertEquals("refresh", steps.get(1).get("name"));
+		assertTrue((Long) steps.get(1).get("millis") >= 80);
+		assertTrue((Long) steps.get(1).get("selfMillis") < (Long) steps.get(0).get("selfMillis"));
+		assertEquals(1, ((List<JSONObject>) report.report(1).get("steps")).size());
+		assertEquals(true, json.get("lazyInitialization"));
+	}
+
+	@Test
+	public void onlyTheFirstRequestAfterReadyIsTimed() {
+		StartupReport report = new StartupReport(new BufferingApplicationStartup(10), false);
+		report.requestHandled();
+		assertEquals(-1L, report.report(1).get("firstRequestMillis"));
+
+		report.ready();
+		report.requestHandled();
+		long first = (Long) report.report(1).get("firstRequestMillis");
+		assertTrue(first >= (Long) report.report(1).get("readyMillis"));
+		report.requestHandled();
+		assertEquals(first, report.report(1).get("firstRequestMillis"));
+	}
+}
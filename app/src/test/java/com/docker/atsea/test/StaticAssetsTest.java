@@ -0,0 +1,93 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import com.docker.atsea.assets.StaticAssets;
+
+public class StaticAssetsTest {
+
+	@TempDir
+	Path root;
+
+	@Test
+	public void textIsServedCompressedWithAnETag() throws IOException {
+		String script = "console.log('AtSea');\n".repeat(200);
+		Files.createDirectories(root.resolve("static/js"));
+		Files.write(root.resolve("static/js/main.0123abcd.js"), script.getBytes(StandardCharsets.UTF_8));
+		Files.write(root.resolve("static/js/main.0123abcd.js.br"), new byte[] { 1, 2, 3 });
+		StaticAssets assets = new StaticAssets(root.toString(), 65536, 1 << 20);
+
+		MockHttpServletResponse gzip = get(assets, "/static/js/main.0123abcd.js", "gzip, deflate", null);
+		assertEquals(200, gzip.getStatus());
+		assertEquals("gzip", gzip.getHeader("Content-Encoding"));
+		assertEquals("public, max-age=31536000, immutable", gzip.getHeader("Cache-Control"));
+		assertEquals("Accept-Encoding", gzip.getHeader("Vary"));
+		assertEquals(script, new String(new GZIPInputStream(new ByteArrayInputStream(gzip.getContentAsByteArray()))
+				.readAllBytes(), StandardCharsets.UTF_8));
+
+		MockHttpServletResponse brotli = get(assets, "/static/js/main.0123abcd.js", "gzip, br", null);
+		assertEquals("br", brotli.getHeader("Content-Encoding"));
+		assertArrayEquals(new byte[] { 1, 2, 3 }, brotli.getContentAsByteArray());
+
+		MockHttpServletResponse identity = get(assets, "/static/js/main.0123abcd.js", "br;q=0, gzip;q=0", null);
+		assertNull(identity.getHeader("Content-Encoding"));
+		assertEquals(script, identity.getContentAsString());
+
+		MockHttpServletResponse revalidated = get(assets, "/static/js/main.0123abcd.js", "gzip", gzip.getHeader("ETag"));
+		assertEquals(304, revalidated.getStatus());
+		assertEquals(0, revalidated.getContentAsByteArray().length);
+		assertEquals(404, get(assets, "/static/js/main.0123abcd.js.br", null, null).getStatus());
+	}
+
+	@Test
+	public void largeFilesAreSentFromDisk() throws IOException {
+		byte[] image = new byte[4096];
+		Files.createDirectories(root.resolve("images"));
+		Files.write(root.resolve("images/1.png"), image);
+		StaticAssets assets = new StaticAssets(root.toString(), 1024, 1 << 20);
+
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", "/images/1.png");
+		request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assets.handleRequest(request, response);
+		assertEquals(200, response.getStatus());
+		assertEquals("image/png", response.getContentType());
+		assertEquals("no-cache", response.getHeader("Cache-Control"));
+		assertEquals(4096, response.getContentLengthLong());
+		assertEquals(root.resolve("images/1.png").toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+		assertEquals(0, response.getContentAsByteArray().length);
+
+		// Without sendfile the file is copied.
+		assertEquals(4096, get(assets, "/images/1.png", null, null).getContentAsByteArray().length);
+		assertTrue(get(assets, "/images/1.png", null, null).getHeader("ETag").startsWith("\""));
+	}
+
+	private static MockHttpServletResponse get(StaticAssets assets, String path, String acceptEncoding, String ifNoneMatch)
+			throws IOException {
+		MockHttpServletRequest request = new MockHttpServletRequest("GET", path);
+		if (acceptEncoding != null) {
+			request.addHeader("Accept-Encoding", acceptEncoding);
+		}
+		if (ifNoneMatch != null) {
+			request.addHeader("If-None-Match", ifNoneMatch);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		assets.handleRequest(request, response);
+		return response;
+	}
+}
@@ -0,0 +1,117 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import jakarta.servlet.ServletException;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockService;
+import com.jayway.jsonpath.JsonPath;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+@ActiveProfiles({ "local", "test" })
+public class StockControllerTest {
+
+	@Autowired
+	MockMvc mvc;
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Autowired
+	StockService stockService;
+
+	@Test
+	public void restockingNeedsATokenAProductAndAPositiveQuantity() throws Exception {
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		assertThrows(ServletException.class, () -> mvc.perform(post("/api/stock/" + productId)
+				.contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":5}")));
+		restock(-1, 5).andExpect(status().isNotFound());
+		restock(productId, 0).andExpect(status().isBadRequest());
+		restock(productId, -3).andExpect(status().isBadRequest());
+		restock(productId, 5).andExpect(status().isOk()).andExpect(jsonPath("$.available").value(5));
+	}
+
+	@Test
+	public void aHoldBelongsToTheCustomerWhoPlacedIt() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		long otherId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		stockService.addStock((long) productId, 10);
+
+		String reserved = reserve(customerId, "{\"productsOrdered\":{\"" + productId + "\":2}}")
+				.andExpect(status().isCreated()).andExpect(jsonPath("$.customerId").value(customerId))
+				.andReturn().getResponse().getContentAsString();
+		String reservationId = JsonPath.read(reserved, "$.reservationId");
+
+		// Another customer can neither order against the hold nor release it.
+		mvc.perform(post("/api/order/").header("Stock-Reservation", reservationId).contentType(MediaType.APPLICATION_JSON)
+				.content("{\"customerId\":" + otherId + ",\"orderDate\":\"2026-10-01T10:00:00.000+0000\",\"productsOrdered\":{\""
+						+ productId + "\":2}}")).andExpect(status().isBadRequest());
+		mvc.perform(delete("/api/stock/reservation/" + reservationId).header("Authorization", TestData.bearer(jdbcTemplate, otherId)))
+				.andExpect(status().isNotFound());
+		assertEquals(8, stockService.available((long) productId));
+
+		mvc.perform(delete("/api/stock/reservation/" + reservationId).header("Authorization", TestData.bearer(jdbcTemplate, customerId)))
+				.andExpect(status().isNoContent());
+		assertEquals(10, stockService.available((long) productId));
+	}
+
+	@Test
+	public void reservationsAreCheckedBeforeAnythingIsHeld() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		reserve(customerId, "{\"productsOrdered\":{\"-1\":1}}").andExpect(status().isBadRequest())
+				.andExpect(jsonPath("$.errorMessage").value("Unable to reserve stock. Product with id -1 not found."));
+		reserve(customerId, "{\"productsOrdered\":{\"" + productId + "\":0}}").andExpect(status().isBadRequest());
+		reserve(customerId, "{\"productsOrdered\":{}}").andExpect(status().isBadRequest());
+		reserve(customerId, "{}").andExpect(status().isBadRequest());
+		// A token for someone who is not a customer places nothing.
+		mvc.perform(post("/api/stock/reservation/").header("Authorization", TestData.bearer("nobody-" + System.nanoTime()))
+				.contentType(MediaType.APPLICATION_JSON).content("{\"productsOrdered\":{\"" + productId + "\":1}}"))
+				.andExpect(status().isForbidden());
+	}
+
+	@Test
+	public void eachCustomerIsRateLimited() throws Exception {
+		long customerId = TestData.customer(jdbcTemplate);
+		int productId = TestData.product(jdbcTemplate, productCache, 5);
+		String lines = "{\"productsOrdered\":{\"" + productId + "\":1}}";
+		// The default burst is 10 holds.
+		for (int i = 0; i < 10; i++) {
+			reserve(customerId, lines).andExpect(status().isCreated());
+		}
+		reserve(customerId, lines).andExpect(status().isTooManyRequests()).andExpect(header().exists("Retry-After"));
+		reserve(TestData.customer(jdbcTemplate), lines).andExpect(status().isCreated());
+	}
+
+	private ResultActions restock(long productId, long quantity) throws Exception {
+		return mvc.perform(post("/api/stock/" + productId).header("Authorization", TestData.bearer())
+				.contentType(MediaType.APPLICATION_JSON).content("{\"quantity\":" + quantity + "}"));
+	}
+
+	private ResultActions reserve(long customerId, String body) throws Exception {
+		return mvc.perform(post("/api/stock/reservation/").header("Authorization", TestData.bearer(jdbcTemplate, customerId))
+				.contentType(MediaType.APPLICATION_JSON).content(body));
+	}
+}
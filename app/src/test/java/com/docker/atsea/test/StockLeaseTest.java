@@ -0,0 +1,156 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import com.docker.atsea.invalidation.InvalidationBus;
+import com.docker.atsea.repositories.ProductStockRepository;
+import com.docker.atsea.service.InsufficientStockException;
+import com.docker.atsea.service.ProductCache;
+import com.docker.atsea.service.StockServiceImpl;
+
+/*
+ * Several nodes selling from one product_stock table. Each node here is a
+ * StockServiceImpl of its own on the test database, as another replica would be.
+ */
+@SpringBootTest
+@ActiveProfiles({ "local", "test" })
+public class StockLeaseTest {
+
+	@Autowired
+	JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	PlatformTransactionManager transactionManager;
+
+	@Autowired
+	ProductStockRepository productStockRepository;
+
+	@Autowired
+	InvalidationBus invalidationBus;
+
+	@Autowired
+	ProductCache productCache;
+
+	@Test
+	public void nodesCannotSellTheSameUnits() {
+		long productId = TestData.product(jdbcTemplate, productCache, 5);
+		StockServiceImpl a = node();
+		StockServiceImpl b = node();
+		a.addStock(productId, 30);
+
+		// Everything restocked on a is leased to a.
+		assertThrows(InsufficientStockException.class, () -> b.reserve(1L, Collections.singletonMap((int) productId, 1)));
+
+		a.flushOnShutdown();
+		assertEquals(0, leased(productId));
+		b.reserve(1L, Collections.singletonMap((int) productId, 25));
+		assertEquals(25, leased(productId));
+
+		StockServiceImpl c = node();
+		assertThrows(InsufficientStockException.class, () -> c.reserve(2L, Collections.singletonMap((int) productId, 10)));
+		c.reserve(2L, Collections.singletonMap((int) productId, 5));
+		assertThrows(InsufficientStockException.class, () -> c.reserve(2L, Collections.singletonMap((int) productId, 1)));
+		assertEquals(30, leased(productId));
+	}
+
+	@Test
+	public void aLapsedLeaseIsReclaimedAndItsNodeStopsSelling() {
+		long productId = TestData.product(jdbcTemplate, productCache, 5);
+		StockServiceImpl a = node();
+		StockServiceImpl b = node();
+		a.addStock(productId, 10);
+		a.reserve(1L, Collections.singletonMap((int) productId, 4));
+
+		// a stalls: its lease is not renewed for longer than the timeout.
+		jdbcTemplate.update("UPDATE stock_lease SET renewedat = ? WHERE productid = ?",
+				new java.sql.Timestamp(System.currentTimeMillis() - 120000), productId);
+		assertEquals(1, b.renewLeases());
+		assertEquals(0, leased(productId));
+		b.reserve(2L, Collections.singletonMap((int) productId, 10));
+
+		// When a wakes up it finds its lease gone and takes what it had left off sale.
+		a.renewLeases();
+		assertEquals(0, a.available(productId));
+		assertEquals(10, leased(productId));
+	}
+
+	@Test
+	public void manyReservationsOnTwoNodesNeverOversell() throws Exception {
+		long productId = TestData.product(jdbcTemplate, productCache, 5);
+		StockServiceImpl restocked = node();
+		restocked.addStock(productId, 500);
+		restocked.flushOnShutdown();
+		assertEquals(0, restocked.available(productId));
+		StockServiceImpl a = node();
+		StockServiceImpl b = node();
+
+		AtomicInteger reserved = new AtomicInteger();
+		ExecutorService pool = Executors.newFixedThreadPool(32);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			List<Future<Object>> results = new ArrayList<Future<Object>>();
+			Callable<Object> reserve = () -> {
+				start.await();
+				StockServiceImpl node = ThreadLocalRandom.current().nextBoolean() ? a : b;
+				try {
+					node.reserve(1L, Collections.singletonMap((int) productId, 1));
+					reserved.incrementAndGet();
+				} catch (InsufficientStockException e) {
+					// Sold out, on this node at least.
+				}
+				return null;
+			};
+			for (int i = 0; i < 2000; i++) {
+				results.add(pool.submit(reserve));
+			}
+			start.countDown();
+			for (Future<Object> result : results) {
+				result.get(60, TimeUnit.SECONDS);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+
+		assertTrue(reserved.get() <= 500, reserved.get() + " units reserved");
+		assertTrue(leased(productId) <= 500);
+		assertEquals(500 - reserved.get(), a.available(productId) + b.available(productId) + (500 - leased(productId)));
+	}
+
+	private StockServiceImpl node() {
+		StockServiceImpl node = new StockServiceImpl(transactionManager);
+		ReflectionTestUtils.setField(node, "productStockRepository", productStockRepository);
+		ReflectionTestUtils.setField(node, "jdbcTemplate", jdbcTemplate);
+		ReflectionTestUtils.setField(node, "invalidationBus", invalidationBus);
+		ReflectionTestUtils.setField(node, "reservationTtlSeconds", 600L);
+		ReflectionTestUtils.setField(node, "leaseSize", 20L);
+		ReflectionTestUtils.setField(node, "leaseTimeoutMillis", 60000L);
+		node.afterSingletonsInstantiated();
+		return node;
+	}
+
+	private long leased(long productId) {
+		return jdbcTemplate.queryForObject("SELECT leased FROM product_stock WHERE productid = ?", Long.class, productId);
+	}
+}
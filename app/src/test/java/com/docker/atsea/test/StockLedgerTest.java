@@ -0,0 +1,242 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.model.StockReservation;
+import com.docker.atsea.service.InsufficientStockException;
+import com.docker.atsea.service.StockLedger;
+
+public class StockLedgerTest {
+
+	private static final int THREADS = 64;
+
+	private ExecutorService pool;
+
+	private StockLedger ledger;
+
+	@BeforeEach
+	public void setUp() {
+		pool = Executors.newFixedThreadPool(THREADS);
+		ledger = new StockLedger();
+	}
+
+	@AfterEach
+	public void tearDown() throws InterruptedException {
+		pool.shutdownNow();
+		pool.awaitTermination(10, TimeUnit.SECONDS);
+	}
+
+	// Stress test: 10,000 concurrent single-unit checkouts against 1,000 units.
+	@Test
+	public void whenThousandsReserveConcurrently_exactlyTheStockOnHandIsSold() throws Exception {
+		ledger.track(1L, 1000);
+		AtomicInteger sold = new AtomicInteger();
+		AtomicInteger refused = new AtomicInteger();
+
+		runConcurrently(10000, () -> {
+			try {
+				StockReservation reservation = ledger.take(lines(1, 1));
+				ledger.sell(reservation, null);
+				sold.incrementAndGet();
+			} catch (InsufficientStockException e) {
+				refused.incrementAndGet();
+			}
+		});
+
+		assertEquals(1000, sold.get());
+		assertEquals(9000, refused.get());
+		assertEquals(0, ledger.available(1L));
+		assertEquals(1000, ledger.sold(1L));
+		assertEquals(0, ledger.held(1L));
+	}
+
+	// Multi-line orders on contended products are all-or-nothing: no partial takes leak stock.
+	@Test
+	public void whenMultiLineOrdersCompete_noStockIsLostOrOversold() throws Exception {
+		ledger.track(1L, 700);
+		ledger.track(2L, 500);
+		List<StockReservation> granted = Collections.synchronizedList(new ArrayList<StockReservation>());
+
+		runConcurrently(5000, () -> {
+			Map<Integer, Integer> order = ThreadLocalRandom.current().nextBoolean()
+					? lines(1, 1, 2, 1) : lines(1, ThreadLocalRandom.current().nextInt(1, 4));
+			try {
+				granted.add(ledger.take(order));
+			} catch (InsufficientStockException e) {
+				// expected once a product sells out
+			}
+		});
+
+		long taken1 = 0;
+		long taken2 = 0;
+		for (StockReservation reservation : granted) {
+			taken1 += reservation.getQuantities().getOrDefault(1L, 0L);
+			taken2 += reservation.getQuantities().getOrDefault(2L, 0L);
+		}
+		assertTrue(ledger.available(1L) >= 0);
+		assertTrue(ledger.available(2L) >= 0);
+		assertEquals(700, ledger.available(1L) + taken1);
+		assertEquals(500, ledger.available(2L) + taken2);
+		assertEquals(taken1, ledger.held(1L));
+		assertEquals(taken2, ledger.held(2L));
+	}
+
+	// Holds placed, released, expired and sold concurrently always add back up to the initial stock.
+	@Test
+	public void whenHoldsChurnConcurrently_availableHeldAndSoldBalance() throws Exception {
+		ledger.track(1L, 2000);
+
+		runConcurrently(20000, () -> {
+			StockReservation hold;
+			try {
+				hold = ledger.reserve(1L, lines(1, ThreadLocalRandom.current().nextInt(1, 3)), 60000);
+			} catch (InsufficientStockException e) {
+				return;
+			}
+			switch (ThreadLocalRandom.current().nextInt(3)) {
+			case 0:
+				ledger.release(hold.getReservationId());
+				break;
+			case 1:
+				ledger.sell(ledger.claim(hold.getReservationId()), null);
+				break;
+			default:
+				ledger.expire(System.currentTimeMillis());
+			}
+		});
+		ledger.expire(Long.MAX_VALUE);
+
+		assertTrue(ledger.available(1L) >= 0);
+		assertEquals(0, ledger.held(1L));
+		assertEquals(2000, ledger.available(1L) + ledger.sold(1L));
+		assertEquals(0, ledger.openHolds());
+	}
+
+	@Test
+	public void whenHoldExpires_itCanNoLongerBeClaimed() {
+		ledger.track(1L, 5);
+		StockReservation hold = ledger.reserve(1L, lines(1, 5), 0);
+		assertEquals(0, ledger.available(1L));
+
+		assertEquals(1, ledger.expire(System.currentTimeMillis()));
+		assertEquals(5, ledger.available(1L));
+		assertThrows(IllegalStateException.class, () -> ledger.claim(hold.getReservationId()));
+	}
+
+	@Test
+	public void whenClaimDoesNotMatchTheOrder_itIsRefusedAndTheHoldStaysOpen() {
+		ledger.track(1L, 1000);
+		ledger.track(2L, 1000);
+		StockReservation hold = ledger.reserve(1L, lines(1, 1, 42, 3), 60000);
+
+		assertThrows(IllegalArgumentException.class, () -> ledger.claim(hold.getReservationId(), 1L, lines(1, 1000)));
+		assertThrows(IllegalArgumentException.class, () -> ledger.claim(hold.getReservationId(), 1L, lines(1, 1, 2, 1)));
+		// Nor can another customer claim or release it.
+		assertThrows(IllegalArgumentException.class, () -> ledger.claim(hold.getReservationId(), 2L, lines(1, 1, 42, 3)));
+		assertFalse(ledger.release(hold.getReservationId(), 2L));
+		assertEquals(999, ledger.available(1L));
+		assertEquals(1, ledger.openHolds());
+
+		// Untracked products are not held, so they do not have to match.
+		assertSame(hold, ledger.claim(hold.getReservationId(), 1L, lines(1, 1, 42, 7)));
+		assertEquals(0, ledger.openHolds());
+	}
+
+	@Test
+	public void whenAnOrderChanges_onlyTheDifferenceMovesAndOnlyOnCommit() {
+		ledger.track(1L, 10);
+		ledger.track(2L, 10);
+		ledger.sell(ledger.take(lines(1, 4, 2, 4)), 7L);
+
+		StockReservation change = ledger.adjust(lines(1, 4, 2, 4), lines(1, 6, 2, 1));
+		assertEquals(4, ledger.available(1L));
+		assertEquals(6, ledger.available(2L));
+		ledger.complete(change, true);
+		assertEquals(4, ledger.available(1L));
+		assertEquals(9, ledger.available(2L));
+		assertEquals(6, ledger.sold(1L));
+		assertEquals(1, ledger.sold(2L));
+
+		StockReservation rolledBack = ledger.adjust(lines(1, 6, 2, 1), lines(1, 9));
+		ledger.complete(rolledBack, false);
+		assertEquals(4, ledger.available(1L));
+		assertEquals(9, ledger.available(2L));
+		assertEquals(0, ledger.held(1L));
+
+		assertThrows(InsufficientStockException.class, () -> ledger.adjust(lines(1, 6), lines(1, 11, 2, 1)));
+		assertEquals(4, ledger.available(1L));
+		assertEquals(9, ledger.available(2L));
+	}
+
+	@Test
+	public void whenProductIsUntracked_itNeverRunsOut() {
+		StockReservation reservation = ledger.take(lines(42, 1000000));
+		assertTrue(reservation.isEmpty());
+		assertEquals(-1, ledger.available(42L));
+	}
+
+	@Test
+	public void whenReservationAsksForNothing_itIsRefused() {
+		ledger.track(1L, 10);
+		assertThrows(IllegalArgumentException.class, () -> ledger.reserve(1L, null, 60000));
+		assertThrows(IllegalArgumentException.class, () -> ledger.reserve(1L, lines(), 60000));
+		assertThrows(IllegalArgumentException.class, () -> ledger.reserve(1L, lines(1, 0), 60000));
+		assertThrows(IllegalArgumentException.class, () -> ledger.reserve(1L, lines(1, 2, 42, -1), 60000));
+		assertEquals(10, ledger.available(1L));
+		assertEquals(0, ledger.openHolds());
+	}
+
+	@Test
+	public void whenHoldIsOnUntrackedProductsOnly_itCanStillBeClaimed() {
+		StockReservation hold = ledger.reserve(1L, lines(42, 3), 60000);
+		assertTrue(hold.isEmpty());
+		assertSame(hold, ledger.claim(hold.getReservationId(), 1L, lines(42, 3)));
+	}
+
+	private void runConcurrently(int tasks, Runnable task) throws Exception {
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Object>> results = new ArrayList<Future<Object>>(tasks);
+		Callable<Object> gated = () -> {
+			start.await();
+			task.run();
+			return null;
+		};
+		for (int i = 0; i < tasks; i++) {
+			results.add(pool.submit(gated));
+		}
+		start.countDown();
+		for (Future<Object> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+	}
+
+	private static Map<Integer, Integer> lines(int... productQuantityPairs) {
+		Map<Integer, Integer> lines = new HashMap<Integer, Integer>();
+		for (int i = 0; i < productQuantityPairs.length; i += 2) {
+			lines.put(productQuantityPairs[i], productQuantityPairs[i + 1]);
+		}
+		return lines;
+	}
+}
@@ -0,0 +1,54 @@
+package com.docker.atsea.test;
+
+import java.util.UUID;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import com.docker.atsea.service.ProductCache;
+
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+
+/*
+ * Rows for the tests that run against the application context, written
+ * straight to the database. Names are unique so tests sharing the context
+ * never see each other's data.
+ */
+final class TestData {
+
+	private TestData() {
+
+	}
+
+	// A new catalog product, loaded into the catalog cache.
+	static int product(JdbcTemplate jdbcTemplate, ProductCache productCache, double price) {
+		String name = "Product " + UUID.randomUUID();
+		jdbcTemplate.update("INSERT INTO product (name, description, image, price) VALUES (?, 'Test product', '/images/1.png', ?)",
+				name, price);
+		productCache.refresh();
+		return jdbcTemplate.queryForObject("SELECT productid FROM product WHERE name = ?", Integer.class, name);
+	}
+
+	static long customer(JdbcTemplate jdbcTemplate) {
+		String username = "user-" + UUID.randomUUID();
+		jdbcTemplate.update("INSERT INTO customer (name, address, email, phone, username, password, enabled, role, version)"
+				+ " VALUES ('Test Customer', '1 Test Street', 'test@example.com', '555-0100', ?, 'secret', TRUE, 'USER', 0)",
+				username);
+		return jdbcTemplate.queryForObject("SELECT customerid FROM customer WHERE username = ?", Long.class, username);
+	}
+
+	// An Authorization header for the endpoints behind the JWT filter, as Login would issue it.
+	static String bearer() {
+		return bearer("test");
+	}
+
+	static String bearer(String username) {
+		return "Bearer " + Jwts.builder().setSubject(username).claim("roles", username)
+				.signWith(SignatureAlgorithm.HS256, "secretkey").compact();
+	}
+
+	// The token a customer written by customer() would get from Login.
+	static String bearer(JdbcTemplate jdbcTemplate, long customerId) {
+		return bearer(jdbcTemplate.queryForObject("SELECT username FROM customer WHERE customerid = ?", String.class, customerId));
+	}
+}
@@ -0,0 +1,33 @@
+package com.docker.atsea.test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+
+import com.docker.atsea.startup.Warmup;
+
+public class WarmupTest {
+
+	@Test
+	public void mixKeepsItsOrderAndDropsZeroWeights() {
+		Map<String, Integer> mix = Warmup.parseMix(" products:2, search : 3,login:0,product:1");
+		assertEquals(Arrays.asList("products", "search", "product"), new ArrayList<String>(mix.keySet()));
+		assertEquals(3, (int) mix.get("search"));
+		assertTrue(Warmup.parseMix("login:0").isEmpty());
+	}
+
+	@Test
+	public void mixRejectsUnknownTypesAndMalformedEntries() {
+		IllegalArgumentException unknown = assertThrows(IllegalArgumentException.class, () -> Warmup.parseMix("products:2,orders:1"));
+		assertTrue(unknown.getMessage().endsWith("not orders:1"), unknown.getMessage());
+		assertThrows(IllegalArgumentException.class, () -> Warmup.parseMix("products"));
+		assertThrows(IllegalArgumentException.class, () -> Warmup.parseMix("products:1:2"));
+		assertThrows(IllegalArgumentException.class, () -> Warmup.parseMix("products:many"));
+	}
+}
@@ -14,6 +14,56 @@ ALTER TABLE product
 
 ALTER ROLE gordonuser CONNECTION LIMIT -1;
 
+-- create orders, range partitioned by month of orderdate
+-- note: the app creates the monthly partitions and archives old ones (atsea.partitions);
+-- orders outside every monthly partition land in orders_default
+
+CREATE TABLE orders
+(
+  orderid bigserial NOT NULL,
+  orderdate date NOT NULL,
+  customerid bigint,
+  stockapplied boolean,
+  version bigint NOT NULL DEFAULT 0,
+  total double precision,
+  PRIMARY KEY (orderid, orderdate)
+) PARTITION BY RANGE (orderdate);
+
+CREATE TABLE orders_default PARTITION OF orders DEFAULT;
+
+ALTER TABLE orders
+  OWNER TO gordonuser;
+
+ALTER TABLE orders_default
+  OWNER TO gordonuser;
+
+-- order lines carry no foreign key, which would need orderdate too; they are
+-- deleted with their order, or with its partition when it is archived
+
+CREATE TABLE orderquantities
+(
+  orderid bigint NOT NULL,
+  productsordered integer,
+  productid integer NOT NULL,
+  PRIMARY KEY (orderid, productid)
+);
+
+ALTER TABLE orderquantities
+  OWNER TO gordonuser;
+
+-- unit price of each line when it was ordered
+
+CREATE TABLE orderprices
+(
+  orderid bigint NOT NULL,
+  unitprice double precision,
+  productid integer NOT NULL,
+  PRIMARY KEY (orderid, productid)
+);
+
+ALTER TABLE orderprices
+  OWNER TO gordonuser;
+
 -- add product data
 -- note: images are pulled from the public folder at atsea/app/react-app/public
 INSERT INTO product (name, description, image, price) VALUES ('Unusable Security', 'Unusuable security is not security', '/images/1.png', 25);